@@ -3,9 +3,16 @@ package rime.source.ast;
 import norswap.uranium.Attribute;
 import rime.source.semantic.AttributeName;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 
 
 public abstract class RimeNode {
+	private static final AtomicInteger NEXT_ID = new AtomicInteger();
+	
+	/** Unique to the node, and never changed: the analyses of a tree are kept in tables indexed by it */
+	public final int id = NEXT_ID.getAndIncrement();
+	
 	protected RimeNode() { }
 	
 	public final Attribute attr(AttributeName attribute) {
@@ -0,0 +1,501 @@
+package rime.source.bytecode;
+
+import norswap.utils.visitors.ValuedVisitor;
+import rime.source.ast.RimeNode;
+import rime.source.ast.constants.BinaryOperator;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.*;
+import rime.source.ast.expressions.literals.BoolLiteral;
+import rime.source.ast.expressions.literals.IntLiteral;
+import rime.source.ast.expressions.literals.NullLiteral;
+import rime.source.ast.expressions.literals.StringLiteral;
+import rime.source.ast.statements.*;
+import rime.source.runtime.CollectionKind;
+import rime.source.semantic.FrozenAttributes;
+import rime.source.semantic.types.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static rime.source.bytecode.Opcodes.*;
+
+
+
+/**
+ * Compiles an analysed program to bytecode, taking the same decisions from the static types as the
+ * {@link rime.source.closure.ClosureEngine}. Expressions leave exactly one value on the operand stack,
+ * statements leave it as they found it, which lets the compiler track the maximum depth of the stack.
+ */
+final class BytecodeCompiler {
+	private final ValuedVisitor<RimeNode, Void> visitor = new ValuedVisitor<>();
+	private final FrozenAttributes attributes;
+	private final IdentityHashMap<Declaration, BytecodeFunction> functions = new IdentityHashMap<>();
+	private final ArrayList<Object> constants = new ArrayList<>();
+	private final HashMap<Object, Integer> constantIndices = new HashMap<>();
+	
+	private int[] code;
+	private int size;
+	private int depth;
+	private int maxDepth;
+	
+	BytecodeCompiler(FrozenAttributes attributes) {
+		this.attributes = attributes;
+		
+		// EXPRESSIONS
+		visitor.register(BoolLiteral.class, this::boolLiteral);
+		visitor.register(IntLiteral.class, this::intLiteral);
+		visitor.register(StringLiteral.class, this::stringLiteral);
+		visitor.register(NullLiteral.class, this::nullLiteral);
+		visitor.register(Identifier.class, this::identifier);
+		visitor.register(IndexedCollectionAccess.class, this::indexedCollectionAccess);
+		visitor.register(BinaryExpression.class, this::binaryExpression);
+		visitor.register(UnaryExpression.class, this::unaryExpression);
+		visitor.register(EmptyList.class, this::emptyList);
+		visitor.register(EmptySet.class, this::emptySet);
+		visitor.register(EmptyDict.class, this::emptyDict);
+		visitor.register(ListElements.class, this::listElements);
+		visitor.register(SetElements.class, this::setElements);
+		visitor.register(DictElements.class, this::dictElements);
+		visitor.register(FunctionCall.class, this::functionCall);
+		
+		// STATEMENTS
+		visitor.register(Block.class, this::block);
+		visitor.register(ExpressionStatement.class, this::expressionStatement);
+		visitor.register(EmptyStatement.class, this::emptyStatement);
+		visitor.register(Assignment.class, this::assignment);
+		visitor.register(IfStatement.class, this::ifStatement);
+		visitor.register(WhileStatement.class, this::whileStatement);
+		visitor.register(ExitStatement.class, this::exitStatement);
+		visitor.register(ReturnStatement.class, this::returnStatement);
+		visitor.register(VariableDefinition.class, this::variableDefinition);
+		
+		// FALLBACK
+		visitor.registerFallback(node -> {
+			throw new Error("Cannot compile " + node);
+		});
+	}
+	
+	BytecodeProgram compile(RootNode root) {
+		final List<FunctionDefinition> definitions = new ArrayList<>(root.preMainDefinitions);
+		definitions.add(root.entryPoint.definition);
+		
+		for (FunctionDefinition definition : definitions) {
+			final Parameters parameters = definition instanceof ProcDefinition
+				? ((ProcDefinition) definition).parameters
+				: ((FuncDefinition) definition).parameters;
+			final String name = definition instanceof ProcDefinition
+				? ((ProcDefinition) definition).name.value
+				: ((FuncDefinition) definition).name.value;
+			final int[] parameterSlots = parameters.params.stream().mapToInt(attributes::slot).toArray();
+			
+			functions.put(definition, new BytecodeFunction(name, definition, parameterSlots, attributes.frameSize(definition)));
+		}
+		
+		for (FunctionDefinition definition : definitions) {
+			final Block body = definition instanceof ProcDefinition
+				? ((ProcDefinition) definition).body
+				: ((FuncDefinition) definition).body;
+			
+			code = new int[64];
+			size = 0;
+			depth = 0;
+			maxDepth = 0;
+			
+			visitor.apply(body);
+			emit(RETURN_VOID, 0);
+			
+			final BytecodeFunction function = functions.get(definition);
+			function.code = Arrays.copyOf(code, size);
+			function.maxStack = maxDepth;
+		}
+		
+		final List<BytecodeFunction> compiled = definitions.stream().map(functions::get).collect(Collectors.toList());
+		return new BytecodeProgram(compiled, functions.get(root.entryPoint.definition), constants.toArray(), functions);
+	}
+	
+	//region EXPRESSIONS
+	private Void boolLiteral(BoolLiteral node) {
+		emit(node.value ? TRUE : FALSE, 1);
+		return null;
+	}
+	
+	private Void intLiteral(IntLiteral node) {
+		emit(INT, node.value, 1);
+		return null;
+	}
+	
+	private Void stringLiteral(StringLiteral node) {
+		emit(CONST, constant(node.value), 1);
+		return null;
+	}
+	
+	private Void nullLiteral(NullLiteral node) {
+		emit(NULL, 1);
+		return null;
+	}
+	
+	private Void identifier(Identifier node) {
+		final int slot = attributes.slot(node);
+		
+		if (slot >= 0) {
+			emit(LOAD, slot, 1);
+			return null;
+		}
+		
+		final Declaration decl = attributes.declaration(node);
+		
+		if (decl == attributes.rootScope.mainArgs) {
+			emit(MAIN_ARGS, 1);
+		}
+		else {
+			emit(CONST, constant(decl), 1);
+		}
+		
+		return null;
+	}
+	
+	private Void indexedCollectionAccess(IndexedCollectionAccess node) {
+		final Type collectionType = attributes.type(node.identifier);
+		
+		if (attributes.isUnchecked(node)) {
+			visitor.apply(node.identifier);
+			visitor.apply(node.index);
+			emit(LIST_GET_UNCHECKED, -1);
+		}
+		else if (collectionType instanceof ListType) {
+			visitor.apply(node.identifier);
+			emit(CHECK_LIST, 0);
+			visitor.apply(node.index);
+			emit(LIST_GET, -1);
+		}
+		else if (collectionType instanceof DictType) {
+			visitor.apply(node.identifier);
+			emit(CHECK_DICT, 0);
+			visitor.apply(node.index);
+			emit(DICT_GET, -1);
+		}
+		else {
+			throw new IllegalArgumentException("Node should be either a list or a dict");
+		}
+		
+		return null;
+	}
+	
+	private Void binaryExpression(BinaryExpression node) {
+		final Type leftType = attributes.type(node.left);
+		final Type rightType = attributes.type(node.right);
+		
+		visitor.apply(node.left);
+		visitor.apply(node.right);
+		emit(binaryOpcode(node.operator, leftType, rightType), -1);
+		return null;
+	}
+	
+	private static int binaryOpcode(BinaryOperator operator, Type leftType, Type rightType) {
+		if (leftType instanceof BoolType && rightType instanceof BoolType) {
+			switch (operator) {
+				case LOGICAL_AND:
+					return AND;
+				case LOGICAL_OR:
+					return OR;
+				case EQUAL_TO:
+					return BOOL_EQUAL;
+				case NOT_EQUAL_TO:
+					return BOOL_NOT_EQUAL;
+			}
+		}
+		
+		if (operator == BinaryOperator.ADD && (leftType instanceof StringType || rightType instanceof StringType)) {
+			return CONCAT;
+		}
+		
+		if (leftType instanceof IntType && rightType instanceof IntType) {
+			return switch (operator) {
+				case ADD -> ADD;
+				case SUBTRACT -> SUBTRACT;
+				case MULTIPLY -> MULTIPLY;
+				case DIVIDE -> DIVIDE;
+				case REMAINDER -> REMAINDER;
+				case LESS_THAN -> LESS_THAN;
+				case LESS_THAN_EQUAL -> LESS_THAN_EQUAL;
+				case GREATER_THAN -> GREATER_THAN;
+				case GREATER_THAN_EQUAL -> GREATER_THAN_EQUAL;
+				case EQUAL_TO -> INT_EQUAL;
+				case NOT_EQUAL_TO -> INT_NOT_EQUAL;
+				default -> throw new Error("Should not reach here");
+			};
+		}
+		
+		return switch (operator) {
+			case EQUAL_TO -> leftType.isPrimitive() ? VALUE_EQUAL : REFERENCE_EQUAL;
+			case NOT_EQUAL_TO -> leftType.isPrimitive() ? VALUE_NOT_EQUAL : REFERENCE_NOT_EQUAL;
+			default -> throw new Error("Should not reach here");
+		};
+	}
+	
+	private Void unaryExpression(UnaryExpression node) {
+		visitor.apply(node.operand);
+		
+		switch (node.operator) {
+			case NEGATIVE -> emit(NEGATE, 0);
+			case LOGICAL_COMPLEMENT -> emit(NOT, 0);
+		}
+		
+		return null;
+	}
+	
+	private Void emptyList(EmptyList node) {
+		emit(NEW_LIST, 0, kind(node), 1);
+		return null;
+	}
+	
+	private Void emptySet(EmptySet node) {
+		emit(NEW_SET, 0, kind(node), 1);
+		return null;
+	}
+	
+	private Void emptyDict(EmptyDict node) {
+		emit(NEW_DICT, 0, kind(node), 1);
+		return null;
+	}
+	
+	private Void listElements(ListElements node) {
+		node.elements.forEach(visitor::apply);
+		emit(NEW_LIST, node.elements.size(), kind(node), 1 - node.elements.size());
+		return null;
+	}
+	
+	private Void setElements(SetElements node) {
+		node.elements.forEach(visitor::apply);
+		emit(NEW_SET, node.elements.size(), kind(node), 1 - node.elements.size());
+		return null;
+	}
+	
+	private Void dictElements(DictElements node) {
+		for (DictElement element : node.elements) {
+			visitor.apply(element.key);
+			visitor.apply(element.value);
+		}
+		
+		emit(NEW_DICT, node.elements.size(), kind(node), 1 - 2 * node.elements.size());
+		return null;
+	}
+	
+	private Void functionCall(FunctionCall node) {
+		final int argc = node.arguments.size();
+		final Declaration decl = attributes.slot(node.name) >= 0 ? null : attributes.declaration(node.name);
+		
+		if (decl instanceof FunctionDefinition) {
+			node.arguments.forEach(visitor::apply);
+			emit(CALL, constant(functions.get(decl)), argc, 1 - argc);
+		}
+		else if (decl instanceof PredefinedFunction) {
+			node.arguments.forEach(visitor::apply);
+			
+			switch (((PredefinedFunction) decl).name) {
+				case "print" -> emit(PRINT, 0);
+				case "parseInt" -> emit(PARSE_INT, 0);
+				case "length" -> emit(LENGTH, 0);
+				case "append" -> emit(attributes.isInPlace(node) ? APPEND_IN_PLACE : APPEND, -1);
+				case "add" -> emit(attributes.isInPlace(node) ? ADD_TO_SET_IN_PLACE : ADD_TO_SET, -1);
+				case "contains" -> emit(CONTAINS, -1);
+				default -> throw new Error("Should not reach here");
+			}
+		}
+		else {
+			visitor.apply(node.name);
+			node.arguments.forEach(visitor::apply);
+			emit(CALL_DYNAMIC, argc, -argc);
+		}
+		
+		return null;
+	}
+	//endregion
+	
+	//region STATEMENTS
+	private Void block(Block node) {
+		node.statements.forEach(visitor::apply);
+		return null;
+	}
+	
+	private Void expressionStatement(ExpressionStatement node) {
+		// Like the interpreter, only calls are executed as statements
+		if (node.expression instanceof FunctionCall && attributes.isTailCall((FunctionCall) node.expression)) {
+			tailCall((FunctionCall) node.expression);
+		}
+		else if (node.expression instanceof FunctionCall) {
+			visitor.apply(node.expression);
+			emit(POP, -1);
+		}
+		
+		return null;
+	}
+	
+	private Void emptyStatement(EmptyStatement node) {
+		return null;
+	}
+	
+	private Void assignment(Assignment node) {
+		if (node.left instanceof Identifier) {
+			visitor.apply(node.right);
+			emit(STORE, attributes.slot((Identifier) node.left), -1);
+			return null;
+		}
+		
+		final IndexedCollectionAccess access = (IndexedCollectionAccess) node.left;
+		final Type collectionType = attributes.type(access.identifier);
+		
+		if (collectionType instanceof ListType) {
+			visitor.apply(access.identifier);
+			emit(CHECK_LIST, 0);
+			visitor.apply(access.index);
+			emit(CHECK_INDEX, 0);
+			visitor.apply(node.right);
+			emit(LIST_SET, -3);
+		}
+		else if (collectionType instanceof DictType) {
+			visitor.apply(access.identifier);
+			emit(CHECK_DICT, 0);
+			visitor.apply(access.index);
+			visitor.apply(node.right);
+			emit(DICT_SET, -3);
+		}
+		else {
+			throw new Error("Should not reach here");
+		}
+		
+		return null;
+	}
+	
+	private Void ifStatement(IfStatement node) {
+		visitor.apply(node.condition);
+		final int jumpToFalse = emitJump(JUMP_IF_FALSE, -1);
+		visitor.apply(node.trueBody);
+		
+		if (node.falseBody == null) {
+			patch(jumpToFalse);
+		}
+		else {
+			final int jumpToEnd = emitJump(JUMP, 0);
+			patch(jumpToFalse);
+			visitor.apply(node.falseBody);
+			patch(jumpToEnd);
+		}
+		
+		return null;
+	}
+	
+	private Void whileStatement(WhileStatement node) {
+		final int start = size;
+		visitor.apply(node.condition);
+		final int jumpToEnd = emitJump(JUMP_IF_FALSE, -1);
+		visitor.apply(node.body);
+		emit(JUMP, start, 0);
+		patch(jumpToEnd);
+		return null;
+	}
+	
+	private Void exitStatement(ExitStatement node) {
+		emit(RETURN_VOID, 0);
+		return null;
+	}
+	
+	private Void returnStatement(ReturnStatement node) {
+		if (node.expression instanceof FunctionCall && attributes.isTailCall((FunctionCall) node.expression)) {
+			tailCall((FunctionCall) node.expression);
+			return null;
+		}
+		
+		if (node.expression == null) {
+			emit(NULL, 1);
+		}
+		else {
+			visitor.apply(node.expression);
+		}
+		
+		emit(RETURN, -1);
+		return null;
+	}
+	
+	/**
+	 * Compiles a tail call of the function to itself: the arguments replace the parameters in the same frame, then
+	 * the function starts over.
+	 */
+	private void tailCall(FunctionCall node) {
+		final int[] parameterSlots = functions.get(attributes.declaration(node.name)).parameterSlots;
+		node.arguments.forEach(visitor::apply);
+		
+		for (int i = parameterSlots.length - 1; i >= 0; i--) {
+			emit(STORE, parameterSlots[i], -1);
+		}
+		
+		emit(JUMP, 0, 0);
+	}
+	
+	private Void variableDefinition(VariableDefinition node) {
+		visitor.apply(node.assignment.right);
+		emit(STORE, attributes.slot(node), -1);
+		return null;
+	}
+	//endregion
+	
+	//region EMISSION
+	private int kind(Expression node) {
+		return CollectionKind.of(attributes, node).ordinal();
+	}
+	
+	private int constant(Object value) {
+		return constantIndices.computeIfAbsent(value, key -> {
+			constants.add(key);
+			return constants.size() - 1;
+		});
+	}
+	
+	private void emit(int opcode, int stackEffect) {
+		append(opcode);
+		adjustDepth(stackEffect);
+	}
+	
+	private void emit(int opcode, int operand, int stackEffect) {
+		append(opcode);
+		append(operand);
+		adjustDepth(stackEffect);
+	}
+	
+	private void emit(int opcode, int first, int second, int stackEffect) {
+		append(opcode);
+		append(first);
+		append(second);
+		adjustDepth(stackEffect);
+	}
+	
+	/**
+	 * Emits a jump whose target is set later by {@link #patch(int)}, returns the position of the target operand.
+	 */
+	private int emitJump(int opcode, int stackEffect) {
+		emit(opcode, -1, stackEffect);
+		return size - 1;
+	}
+	
+	private void patch(int operandPosition) {
+		code[operandPosition] = size;
+	}
+	
+	private void append(int value) {
+		if (size == code.length) {
+			code = Arrays.copyOf(code, size * 2);
+		}
+		
+		code[size++] = value;
+	}
+	
+	private void adjustDepth(int stackEffect) {
+		depth += stackEffect;
+		maxDepth = Math.max(maxDepth, depth);
+	}
+	//endregion
+}
@@ -0,0 +1,466 @@
+package rime.source.bytecode;
+
+import norswap.uranium.Reactor;
+import norswap.utils.exceptions.Exceptions;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.PredefinedFunction;
+import rime.source.interpreter.Engine;
+import rime.source.interpreter.exceptions.CallStackOverflowException;
+import rime.source.interpreter.exceptions.InterpreterException;
+import rime.source.interpreter.exceptions.PassthroughException;
+import rime.source.runtime.Arithmetic;
+import rime.source.runtime.Builtins;
+import rime.source.runtime.CollectionKind;
+import rime.source.runtime.CollectionMode;
+import rime.source.runtime.Concatenation;
+import rime.source.runtime.Indexing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static norswap.utils.Util.cast;
+import static rime.source.bytecode.Opcodes.*;
+
+
+
+/**
+ * Engine compiling the program to bytecode (see {@link BytecodeCompiler}) and running it in a dispatch loop.
+ * Each call gets one {@code Object[]} frame holding its locals followed by its operand stack.
+ * <p>
+ * Calls do not recurse on the Java stack: the dispatch loop suspends the caller on a Rime call stack kept on the
+ * heap, and resumes it when the callee returns. Recursion is therefore only bounded by the budget of that stack,
+ * counted in frame slots; exceeding it raises a {@link CallStackOverflowException} listing the Rime calls.
+ */
+public final class BytecodeEngine implements Engine {
+	public static final int DEFAULT_STACK_SLOTS = 1 << 24;
+	
+	private final Reactor reactor;
+	private final CollectionMode collectionMode;
+	private final boolean countInstructions;
+	private final int stackSlots;
+	private BytecodeProgram program;
+	private Object[] constants;
+	private ArrayList<String> mainArgs;
+	private long instructionCount;
+	
+	//region CALL STACK
+	/** The suspended callers, outermost first, with the position to resume them at and the slot of the result */
+	private BytecodeFunction[] callers;
+	private Object[][] callerFrames;
+	private int[] resumePcs;
+	private int[] resultSlots;
+	private int depth;
+	
+	/** The slots of the frames of the callers and of the running function */
+	private long usedSlots;
+	//endregion
+	
+	public BytecodeEngine(Reactor reactor) {
+		this(reactor, false);
+	}
+	
+	public BytecodeEngine(Reactor reactor, CollectionMode collectionMode) {
+		this(reactor, collectionMode, false, DEFAULT_STACK_SLOTS);
+	}
+	
+	/**
+	 * @param countInstructions whether to count the executed instructions, see {@link #instructionCount()}
+	 */
+	public BytecodeEngine(Reactor reactor, boolean countInstructions) {
+		this(reactor, countInstructions, DEFAULT_STACK_SLOTS);
+	}
+	
+	/**
+	 * @param stackSlots the budget of the Rime call stack: how many frame slots the active calls may use together
+	 */
+	public BytecodeEngine(Reactor reactor, boolean countInstructions, int stackSlots) {
+		this(reactor, CollectionMode.COPYING, countInstructions, stackSlots);
+	}
+	
+	public BytecodeEngine(Reactor reactor, CollectionMode collectionMode, boolean countInstructions, int stackSlots) {
+		this.reactor = reactor;
+		this.collectionMode = collectionMode;
+		this.countInstructions = countInstructions;
+		this.stackSlots = stackSlots;
+	}
+	
+	/**
+	 * Returns the number of instructions executed by the last run, if the engine was created to count them.
+	 */
+	public long instructionCount() {
+		return instructionCount;
+	}
+	
+	@Override
+	public void interpret(RimeNode root, ArrayList<String> mainArgs) {
+		program = BytecodeProgram.compile(reactor, cast(root), collectionMode);
+		constants = program.constants;
+		this.mainArgs = new ArrayList<>(mainArgs);
+		instructionCount = 0;
+		
+		final Object[] frame = new Object[program.main.frameLength()];
+		frame[program.main.parameterSlots[0]] = this.mainArgs;
+		
+		try {
+			execute(program.main, frame);
+		}
+		catch (PassthroughException e) {
+			throw Exceptions.runtime(e.getCause());
+		}
+		catch (CallStackOverflowException e) {
+			throw e;
+		}
+		catch (RuntimeException e) {
+			throw InterpreterException.wrap(e, program.main.name);
+		}
+		finally {
+			callers = null;
+			callerFrames = null;
+		}
+	}
+	
+	private Object execute(BytecodeFunction entry, Object[] entryFrame) {
+		BytecodeFunction function = entry;
+		Object[] frame = entryFrame;
+		int[] code = function.code;
+		int pc = 0;
+		int sp = function.localCount;
+		
+		callers = new BytecodeFunction[64];
+		callerFrames = new Object[64][];
+		resumePcs = new int[64];
+		resultSlots = new int[64];
+		depth = 0;
+		usedSlots = function.frameLength();
+		
+		try {
+			while (true) {
+				if (countInstructions) {
+					instructionCount++;
+				}
+				
+				switch (code[pc++]) {
+					//region CONSTANTS AND VARIABLES
+					case CONST -> frame[sp++] = constants[code[pc++]];
+					case INT -> frame[sp++] = code[pc++];
+					case TRUE -> frame[sp++] = true;
+					case FALSE -> frame[sp++] = false;
+					case NULL -> frame[sp++] = null;
+					case MAIN_ARGS -> frame[sp++] = mainArgs;
+					case LOAD -> frame[sp++] = frame[code[pc++]];
+					case STORE -> frame[code[pc++]] = frame[--sp];
+					case POP -> --sp;
+					//endregion
+					
+					//region OPERATIONS
+					case ADD -> {
+						final int right = (Integer) frame[--sp];
+						frame[sp - 1] = (Integer) frame[sp - 1] + right;
+					}
+					case SUBTRACT -> {
+						final int right = (Integer) frame[--sp];
+						frame[sp - 1] = (Integer) frame[sp - 1] - right;
+					}
+					case MULTIPLY -> {
+						final int right = (Integer) frame[--sp];
+						frame[sp - 1] = (Integer) frame[sp - 1] * right;
+					}
+					case DIVIDE -> {
+						final int right = (Integer) frame[--sp];
+						frame[sp - 1] = Arithmetic.divide((Integer) frame[sp - 1], right);
+					}
+					case REMAINDER -> {
+						final int right = (Integer) frame[--sp];
+						frame[sp - 1] = (Integer) frame[sp - 1] % right;
+					}
+					case NEGATE -> frame[sp - 1] = -(Integer) frame[sp - 1];
+					case LESS_THAN -> {
+						final int right = (Integer) frame[--sp];
+						frame[sp - 1] = (Integer) frame[sp - 1] < right;
+					}
+					case LESS_THAN_EQUAL -> {
+						final int right = (Integer) frame[--sp];
+						frame[sp - 1] = (Integer) frame[sp - 1] <= right;
+					}
+					case GREATER_THAN -> {
+						final int right = (Integer) frame[--sp];
+						frame[sp - 1] = (Integer) frame[sp - 1] > right;
+					}
+					case GREATER_THAN_EQUAL -> {
+						final int right = (Integer) frame[--sp];
+						frame[sp - 1] = (Integer) frame[sp - 1] >= right;
+					}
+					case INT_EQUAL -> {
+						final int right = (Integer) frame[--sp];
+						frame[sp - 1] = (Integer) frame[sp - 1] == right;
+					}
+					case INT_NOT_EQUAL -> {
+						final int right = (Integer) frame[--sp];
+						frame[sp - 1] = (Integer) frame[sp - 1] != right;
+					}
+					case AND -> {
+						final boolean right = (Boolean) frame[--sp];
+						frame[sp - 1] = (Boolean) frame[sp - 1] & right;
+					}
+					case OR -> {
+						final boolean right = (Boolean) frame[--sp];
+						frame[sp - 1] = (Boolean) frame[sp - 1] | right;
+					}
+					case NOT -> frame[sp - 1] = !(Boolean) frame[sp - 1];
+					case BOOL_EQUAL -> {
+						final boolean right = (Boolean) frame[--sp];
+						frame[sp - 1] = (Boolean) frame[sp - 1] == right;
+					}
+					case BOOL_NOT_EQUAL -> {
+						final boolean right = (Boolean) frame[--sp];
+						frame[sp - 1] = (Boolean) frame[sp - 1] != right;
+					}
+					case CONCAT -> {
+						final Object right = frame[--sp];
+						frame[sp - 1] = Concatenation.concat(frame[sp - 1], right);
+					}
+					case VALUE_EQUAL -> {
+						final Object right = frame[--sp];
+						frame[sp - 1] = Builtins.valueEqual(frame[sp - 1], right);
+					}
+					case VALUE_NOT_EQUAL -> {
+						final Object right = frame[--sp];
+						frame[sp - 1] = !Builtins.valueEqual(frame[sp - 1], right);
+					}
+					case REFERENCE_EQUAL -> {
+						final Object right = frame[--sp];
+						frame[sp - 1] = frame[sp - 1] == right;
+					}
+					case REFERENCE_NOT_EQUAL -> {
+						final Object right = frame[--sp];
+						frame[sp - 1] = frame[sp - 1] != right;
+					}
+					//endregion
+					
+					//region COLLECTIONS
+					case NEW_LIST -> {
+						final int count = code[pc++];
+						final List<Object> list = CollectionKind.of(code[pc++]).newList(count);
+						sp -= count;
+						
+						for (int i = 0; i < count; i++) {
+							list.add(frame[sp + i]);
+						}
+						
+						frame[sp++] = list;
+					}
+					case NEW_SET -> {
+						final int count = code[pc++];
+						final Set<Object> set = CollectionKind.of(code[pc++]).newSet(count);
+						sp -= count;
+						
+						for (int i = 0; i < count; i++) {
+							set.add(frame[sp + i]);
+						}
+						
+						frame[sp++] = set;
+					}
+					case NEW_DICT -> {
+						final int count = code[pc++];
+						final Map<Object, Object> dict = CollectionKind.of(code[pc++]).newDict(count);
+						sp -= 2 * count;
+						
+						for (int i = 0; i < count; i++) {
+							dict.put(frame[sp + 2 * i], frame[sp + 2 * i + 1]);
+						}
+						
+						frame[sp++] = dict;
+					}
+					case CHECK_LIST -> Indexing.list(frame[sp - 1]);
+					case CHECK_DICT -> Indexing.dict(frame[sp - 1]);
+					case CHECK_INDEX -> Indexing.checkIndex((Integer) frame[sp - 1]);
+					case LIST_GET -> {
+						final int index = (Integer) frame[--sp];
+						frame[sp - 1] = Indexing.get(cast(frame[sp - 1]), index);
+					}
+					case LIST_GET_UNCHECKED -> {
+						final int index = (Integer) frame[--sp];
+						frame[sp - 1] = Indexing.getUnchecked(frame[sp - 1], index);
+					}
+					case DICT_GET -> {
+						final Object key = frame[--sp];
+						frame[sp - 1] = ((Map<?, ?>) frame[sp - 1]).get(key);
+					}
+					case LIST_SET -> {
+						sp -= 3;
+						Indexing.set(cast(frame[sp]), (Integer) frame[sp + 1], frame[sp + 2]);
+					}
+					case DICT_SET -> {
+						sp -= 3;
+						final Map<Object, Object> dict = cast(frame[sp]);
+						dict.put(frame[sp + 1], frame[sp + 2]);
+					}
+					//endregion
+					
+					//region CALLS AND CONTROL FLOW
+					case CALL -> {
+						final BytecodeFunction callee = (BytecodeFunction) constants[code[pc++]];
+						final int argc = code[pc++];
+						sp -= argc;
+						
+						final Object[] calleeFrame = bind(callee, frame, sp, argc);
+						suspend(function, frame, pc, sp, callee);
+						function = callee;
+						frame = calleeFrame;
+						code = callee.code;
+						pc = 0;
+						sp = callee.localCount;
+					}
+					case CALL_DYNAMIC -> {
+						final int argc = code[pc++];
+						sp -= argc;
+						final Object callee = frame[sp - 1];
+						
+						if (callee == null) {
+							throw new PassthroughException(new NullPointerException("Calling a null function"));
+						}
+						
+						if (callee instanceof PredefinedFunction) {
+							final Object[] args = new Object[argc];
+							System.arraycopy(frame, sp, args, 0, argc);
+							frame[sp - 1] = Builtins.call(((PredefinedFunction) callee).name, args);
+						}
+						else {
+							final BytecodeFunction calleeFunction = program.byDeclaration.get(callee);
+							final Object[] calleeFrame = bind(calleeFunction, frame, sp, argc);
+							suspend(function, frame, pc, sp - 1, calleeFunction);
+							function = calleeFunction;
+							frame = calleeFrame;
+							code = calleeFunction.code;
+							pc = 0;
+							sp = calleeFunction.localCount;
+						}
+					}
+					case PRINT -> frame[sp - 1] = Builtins.print(frame[sp - 1]);
+					case PARSE_INT -> frame[sp - 1] = Builtins.parseInt(frame[sp - 1]);
+					case LENGTH -> frame[sp - 1] = Builtins.length(frame[sp - 1]);
+					case APPEND -> {
+						final Object element = frame[--sp];
+						frame[sp - 1] = Builtins.append(frame[sp - 1], element);
+					}
+					case APPEND_IN_PLACE -> {
+						final Object element = frame[--sp];
+						frame[sp - 1] = Builtins.appendInPlace(frame[sp - 1], element);
+					}
+					case ADD_TO_SET -> {
+						final Object element = frame[--sp];
+						frame[sp - 1] = Builtins.add(frame[sp - 1], element);
+					}
+					case ADD_TO_SET_IN_PLACE -> {
+						final Object element = frame[--sp];
+						frame[sp - 1] = Builtins.addInPlace(frame[sp - 1], element);
+					}
+					case CONTAINS -> {
+						final Object element = frame[--sp];
+						frame[sp - 1] = Builtins.contains(frame[sp - 1], element);
+					}
+					case JUMP -> pc = code[pc];
+					case JUMP_IF_FALSE -> {
+						final Object condition = frame[--sp];
+						pc = condition instanceof Boolean && (Boolean) condition ? pc + 1 : code[pc];
+					}
+					case RETURN, RETURN_VOID -> {
+						final Object value = code[pc - 1] == RETURN ? frame[sp - 1] : null;
+						
+						if (depth == 0) {
+							return value;
+						}
+						
+						usedSlots -= function.frameLength();
+						depth--;
+						function = callers[depth];
+						frame = callerFrames[depth];
+						callerFrames[depth] = null;
+						code = function.code;
+						pc = resumePcs[depth];
+						sp = resultSlots[depth];
+						frame[sp++] = value;
+					}
+					//endregion
+					default -> throw new Error("Unknown opcode " + code[pc - 1] + " at " + (pc - 1) + " in " + function.name);
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			throw InterpreterException.wrap(e, function.name);
+		}
+	}
+	
+	/**
+	 * Returns a frame for {@code function} holding the {@code argc} arguments starting at {@code frame[from]}.
+	 */
+	private static Object[] bind(BytecodeFunction function, Object[] frame, int from, int argc) {
+		final Object[] calleeFrame = new Object[function.frameLength()];
+		
+		for (int i = 0; i < argc; i++) {
+			calleeFrame[function.parameterSlots[i]] = frame[from + i];
+		}
+		
+		return calleeFrame;
+	}
+	
+	/**
+	 * Pushes {@code caller} on the call stack before it calls {@code callee}, to be resumed at {@code resumePc}
+	 * with the returned value in {@code frame[resultSlot]}.
+	 */
+	private void suspend(BytecodeFunction caller, Object[] frame, int resumePc, int resultSlot, BytecodeFunction callee) {
+		usedSlots += callee.frameLength();
+		
+		if (usedSlots > stackSlots) {
+			throw overflow(caller, callee);
+		}
+		
+		if (depth == callers.length) {
+			final int capacity = 2 * depth;
+			callers = Arrays.copyOf(callers, capacity);
+			callerFrames = Arrays.copyOf(callerFrames, capacity);
+			resumePcs = Arrays.copyOf(resumePcs, capacity);
+			resultSlots = Arrays.copyOf(resultSlots, capacity);
+		}
+		
+		callers[depth] = caller;
+		callerFrames[depth] = frame;
+		resumePcs[depth] = resumePc;
+		resultSlots[depth] = resultSlot;
+		depth++;
+	}
+	
+	/**
+	 * Describes the call chain, innermost call first, collapsing the runs of calls to the same function.
+	 */
+	private CallStackOverflowException overflow(BytecodeFunction caller, BytecodeFunction callee) {
+		final StringBuilder message = new StringBuilder("Rime call stack overflow: ")
+			.append(depth + 2).append(" nested calls exceed the budget of ").append(stackSlots).append(" frame slots");
+		
+		String name = callee.name;
+		int count = 1;
+		
+		for (int i = depth; i >= -1; i--) {
+			final String next = i == depth ? caller.name : i >= 0 ? callers[i].name : null;
+			
+			if (name.equals(next)) {
+				count++;
+				continue;
+			}
+			
+			message.append(System.lineSeparator()).append("\tat ").append(name);
+			
+			if (count > 1) {
+				message.append(" (").append(count).append(" calls)");
+			}
+			
+			name = next;
+			count = 1;
+		}
+		
+		return new CallStackOverflowException(message.toString());
+	}
+}
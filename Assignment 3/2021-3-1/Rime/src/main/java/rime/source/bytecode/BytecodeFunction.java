@@ -0,0 +1,33 @@
+package rime.source.bytecode;
+
+import rime.source.ast.declarations.FunctionDefinition;
+
+
+
+/**
+ * The code of one proc or func. Its frame holds the locals in {@code [0, localCount)}, followed by the
+ * operand stack, which never grows deeper than {@code maxStack}.
+ */
+public final class BytecodeFunction {
+	public final String name;
+	public final FunctionDefinition definition;
+	public final int[] parameterSlots;
+	public final int localCount;
+	int[] code;
+	int maxStack;
+	
+	BytecodeFunction(String name, FunctionDefinition definition, int[] parameterSlots, int localCount) {
+		this.name = name;
+		this.definition = definition;
+		this.parameterSlots = parameterSlots;
+		this.localCount = localCount;
+	}
+	
+	public int[] code() {
+		return code;
+	}
+	
+	public int frameLength() {
+		return localCount + maxStack;
+	}
+}
@@ -0,0 +1,38 @@
+package rime.source.bytecode;
+
+import norswap.uranium.Reactor;
+import rime.source.ast.declarations.Declaration;
+import rime.source.ast.declarations.RootNode;
+import rime.source.runtime.CollectionMode;
+import rime.source.semantic.FrozenAttributes;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+
+
+/**
+ * A whole program compiled to bytecode: the code of every function and the constant pool they share,
+ * which holds the string literals and the functions referred to by calls and function values.
+ */
+public final class BytecodeProgram {
+	public final List<BytecodeFunction> functions;
+	public final BytecodeFunction main;
+	public final Object[] constants;
+	final IdentityHashMap<Declaration, BytecodeFunction> byDeclaration;
+	
+	BytecodeProgram(List<BytecodeFunction> functions, BytecodeFunction main, Object[] constants, IdentityHashMap<Declaration, BytecodeFunction> byDeclaration) {
+		this.functions = functions;
+		this.main = main;
+		this.constants = constants;
+		this.byDeclaration = byDeclaration;
+	}
+	
+	public static BytecodeProgram compile(Reactor reactor, RootNode root) {
+		return compile(reactor, root, CollectionMode.COPYING);
+	}
+	
+	public static BytecodeProgram compile(Reactor reactor, RootNode root, CollectionMode collectionMode) {
+		return new BytecodeCompiler(FrozenAttributes.prepare(reactor, root, collectionMode)).compile(root);
+	}
+}
@@ -0,0 +1,56 @@
+package rime.source.bytecode;
+
+import rime.source.runtime.Builtins;
+
+
+
+/**
+ * Renders compiled bytecode in a human readable form, for debugging.
+ */
+public final class Disassembler {
+	private Disassembler() { }
+	
+	public static String disassemble(BytecodeProgram program) {
+		final StringBuilder sb = new StringBuilder();
+		
+		for (BytecodeFunction function : program.functions) {
+			disassemble(program, function, sb);
+			sb.append("\n");
+		}
+		
+		sb.append("constants:\n");
+		
+		for (int i = 0; i < program.constants.length; i++) {
+			sb.append(String.format("\t#%d %s\n", i, describe(program.constants[i])));
+		}
+		
+		return sb.toString();
+	}
+	
+	public static void disassemble(BytecodeProgram program, BytecodeFunction function, StringBuilder sb) {
+		final int[] code = function.code;
+		
+		sb.append(String.format("%s (locals: %d, stack: %d)\n", function.name, function.localCount, function.maxStack));
+		
+		for (int pc = 0; pc < code.length; pc += 1 + Opcodes.operandCount(code[pc])) {
+			final int opcode = code[pc];
+			sb.append(String.format("\t%04d %s", pc, Opcodes.name(opcode)));
+			
+			for (int i = 1; i <= Opcodes.operandCount(opcode); i++) {
+				sb.append(" ").append(code[pc + i]);
+			}
+			
+			if (opcode == Opcodes.CONST || opcode == Opcodes.CALL) {
+				sb.append(" (").append(describe(program.constants[code[pc + 1]])).append(")");
+			}
+			
+			sb.append("\n");
+		}
+	}
+	
+	private static String describe(Object constant) {
+		return constant instanceof BytecodeFunction
+			? "function " + ((BytecodeFunction) constant).name
+			: Builtins.convertToString(constant);
+	}
+}
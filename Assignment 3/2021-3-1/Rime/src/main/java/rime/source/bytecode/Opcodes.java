@@ -0,0 +1,175 @@
+package rime.source.bytecode;
+
+/**
+ * Instruction set of the bytecode VM. An instruction is its opcode followed by its operands, all stored inline
+ * in the {@code int[]} code of a function. Unless stated otherwise, operations pop their operands from the
+ * operand stack and push their result.
+ */
+public final class Opcodes {
+	private Opcodes() { }
+	
+	//region CONSTANTS AND VARIABLES
+	/** {@code CONST k}: pushes {@code constants[k]} */
+	public static final int CONST = 0;
+	/** {@code INT n}: pushes the int {@code n} */
+	public static final int INT = 1;
+	public static final int TRUE = 2;
+	public static final int FALSE = 3;
+	public static final int NULL = 4;
+	/** Pushes the arguments passed to the program */
+	public static final int MAIN_ARGS = 5;
+	/** {@code LOAD slot}: pushes the local in {@code slot} */
+	public static final int LOAD = 6;
+	/** {@code STORE slot}: pops the top of the stack into the local in {@code slot} */
+	public static final int STORE = 7;
+	public static final int POP = 8;
+	//endregion
+	
+	//region OPERATIONS
+	public static final int ADD = 9;
+	public static final int SUBTRACT = 10;
+	public static final int MULTIPLY = 11;
+	public static final int DIVIDE = 12;
+	public static final int REMAINDER = 13;
+	public static final int NEGATE = 14;
+	public static final int LESS_THAN = 15;
+	public static final int LESS_THAN_EQUAL = 16;
+	public static final int GREATER_THAN = 17;
+	public static final int GREATER_THAN_EQUAL = 18;
+	public static final int INT_EQUAL = 19;
+	public static final int INT_NOT_EQUAL = 20;
+	/** Rime does not short-circuit: both operands are on the stack */
+	public static final int AND = 21;
+	public static final int OR = 22;
+	public static final int NOT = 23;
+	public static final int BOOL_EQUAL = 24;
+	public static final int BOOL_NOT_EQUAL = 25;
+	public static final int CONCAT = 26;
+	public static final int VALUE_EQUAL = 27;
+	public static final int VALUE_NOT_EQUAL = 28;
+	public static final int REFERENCE_EQUAL = 29;
+	public static final int REFERENCE_NOT_EQUAL = 30;
+	//endregion
+	
+	//region COLLECTIONS
+	/** {@code NEW_LIST n k}: pops {@code n} elements into a new list, represented as the {@link rime.source.runtime.CollectionKind} of ordinal {@code k} */
+	public static final int NEW_LIST = 31;
+	/** {@code NEW_SET n k}: pops {@code n} elements into a new set, like {@link #NEW_LIST} */
+	public static final int NEW_SET = 32;
+	/** {@code NEW_DICT n k}: pops {@code n} key-value pairs into a new dict, like {@link #NEW_LIST} */
+	public static final int NEW_DICT = 33;
+	/** Fails if the top of the stack is a null list, leaves it in place otherwise */
+	public static final int CHECK_LIST = 34;
+	/** Fails if the top of the stack is a null dict, leaves it in place otherwise */
+	public static final int CHECK_DICT = 35;
+	/** Fails if the top of the stack is not a valid list index, leaves it in place otherwise */
+	public static final int CHECK_INDEX = 36;
+	public static final int LIST_GET = 37;
+	/** Like {@link #LIST_GET}, at an index known to be within the list, see {@link rime.source.semantic.BoundsChecks} */
+	public static final int LIST_GET_UNCHECKED = 38;
+	public static final int DICT_GET = 39;
+	/** Pops the value, index and list, pushes nothing */
+	public static final int LIST_SET = 40;
+	/** Pops the value, key and dict, pushes nothing */
+	public static final int DICT_SET = 41;
+	//endregion
+	
+	//region CALLS AND CONTROL FLOW
+	/** {@code CALL k argc}: calls the function in {@code constants[k]} with the {@code argc} topmost values */
+	public static final int CALL = 42;
+	/** {@code CALL_DYNAMIC argc}: calls the function value found below the {@code argc} topmost values */
+	public static final int CALL_DYNAMIC = 43;
+	public static final int PRINT = 44;
+	public static final int PARSE_INT = 45;
+	public static final int LENGTH = 46;
+	public static final int APPEND = 47;
+	public static final int ADD_TO_SET = 48;
+	public static final int CONTAINS = 49;
+	/** Like {@link #APPEND} and {@link #ADD_TO_SET}, adding to the collection itself, see {@link rime.source.semantic.InPlaceAppends} */
+	public static final int APPEND_IN_PLACE = 50;
+	public static final int ADD_TO_SET_IN_PLACE = 51;
+	/** {@code JUMP target} */
+	public static final int JUMP = 52;
+	/** {@code JUMP_IF_FALSE target}: pops the condition, anything but {@code true} jumps */
+	public static final int JUMP_IF_FALSE = 53;
+	/** Returns the top of the stack to the caller */
+	public static final int RETURN = 54;
+	/** Returns null to the caller, ends procs and implements exit */
+	public static final int RETURN_VOID = 55;
+	//endregion
+	
+	private static final String[] names = new String[56];
+	private static final int[] operandCounts = new int[56];
+	
+	static {
+		define(CONST, "CONST", 1);
+		define(INT, "INT", 1);
+		define(TRUE, "TRUE", 0);
+		define(FALSE, "FALSE", 0);
+		define(NULL, "NULL", 0);
+		define(MAIN_ARGS, "MAIN_ARGS", 0);
+		define(LOAD, "LOAD", 1);
+		define(STORE, "STORE", 1);
+		define(POP, "POP", 0);
+		define(ADD, "ADD", 0);
+		define(SUBTRACT, "SUBTRACT", 0);
+		define(MULTIPLY, "MULTIPLY", 0);
+		define(DIVIDE, "DIVIDE", 0);
+		define(REMAINDER, "REMAINDER", 0);
+		define(NEGATE, "NEGATE", 0);
+		define(LESS_THAN, "LESS_THAN", 0);
+		define(LESS_THAN_EQUAL, "LESS_THAN_EQUAL", 0);
+		define(GREATER_THAN, "GREATER_THAN", 0);
+		define(GREATER_THAN_EQUAL, "GREATER_THAN_EQUAL", 0);
+		define(INT_EQUAL, "INT_EQUAL", 0);
+		define(INT_NOT_EQUAL, "INT_NOT_EQUAL", 0);
+		define(AND, "AND", 0);
+		define(OR, "OR", 0);
+		define(NOT, "NOT", 0);
+		define(BOOL_EQUAL, "BOOL_EQUAL", 0);
+		define(BOOL_NOT_EQUAL, "BOOL_NOT_EQUAL", 0);
+		define(CONCAT, "CONCAT", 0);
+		define(VALUE_EQUAL, "VALUE_EQUAL", 0);
+		define(VALUE_NOT_EQUAL, "VALUE_NOT_EQUAL", 0);
+		define(REFERENCE_EQUAL, "REFERENCE_EQUAL", 0);
+		define(REFERENCE_NOT_EQUAL, "REFERENCE_NOT_EQUAL", 0);
+		define(NEW_LIST, "NEW_LIST", 2);
+		define(NEW_SET, "NEW_SET", 2);
+		define(NEW_DICT, "NEW_DICT", 2);
+		define(CHECK_LIST, "CHECK_LIST", 0);
+		define(CHECK_DICT, "CHECK_DICT", 0);
+		define(CHECK_INDEX, "CHECK_INDEX", 0);
+		define(LIST_GET, "LIST_GET", 0);
+		define(LIST_GET_UNCHECKED, "LIST_GET_UNCHECKED", 0);
+		define(DICT_GET, "DICT_GET", 0);
+		define(LIST_SET, "LIST_SET", 0);
+		define(DICT_SET, "DICT_SET", 0);
+		define(CALL, "CALL", 2);
+		define(CALL_DYNAMIC, "CALL_DYNAMIC", 1);
+		define(PRINT, "PRINT", 0);
+		define(PARSE_INT, "PARSE_INT", 0);
+		define(LENGTH, "LENGTH", 0);
+		define(APPEND, "APPEND", 0);
+		define(ADD_TO_SET, "ADD_TO_SET", 0);
+		define(CONTAINS, "CONTAINS", 0);
+		define(APPEND_IN_PLACE, "APPEND_IN_PLACE", 0);
+		define(ADD_TO_SET_IN_PLACE, "ADD_TO_SET_IN_PLACE", 0);
+		define(JUMP, "JUMP", 1);
+		define(JUMP_IF_FALSE, "JUMP_IF_FALSE", 1);
+		define(RETURN, "RETURN", 0);
+		define(RETURN_VOID, "RETURN_VOID", 0);
+	}
+	
+	private static void define(int opcode, String name, int operandCount) {
+		names[opcode] = name;
+		operandCounts[opcode] = operandCount;
+	}
+	
+	public static String name(int opcode) {
+		return names[opcode];
+	}
+	
+	public static int operandCount(int opcode) {
+		return operandCounts[opcode];
+	}
+}
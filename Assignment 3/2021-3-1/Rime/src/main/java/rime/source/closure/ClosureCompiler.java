@@ -0,0 +1,366 @@
+package rime.source.closure;
+
+import norswap.utils.visitors.ValuedVisitor;
+import rime.source.ast.RimeNode;
+import rime.source.ast.constants.BinaryOperator;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.*;
+import rime.source.ast.expressions.literals.BoolLiteral;
+import rime.source.ast.expressions.literals.IntLiteral;
+import rime.source.ast.expressions.literals.NullLiteral;
+import rime.source.ast.expressions.literals.StringLiteral;
+import rime.source.ast.statements.*;
+import rime.source.closure.ExpressionNode.BooleanNode;
+import rime.source.closure.ExpressionNodes.*;
+import rime.source.closure.StatementNodes.*;
+import rime.source.runtime.CollectionKind;
+import rime.source.semantic.FrozenAttributes;
+import rime.source.semantic.types.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static norswap.utils.Util.cast;
+
+
+
+/**
+ * Compiles an analysed program into a tree of {@link ExpressionNode} and {@link StatementNode}. All the decisions
+ * the {@link rime.source.interpreter.Interpreter} takes on every evaluation (which operation to perform for the
+ * static types of the operands, which function a call refers to, where a variable lives) are taken here, once.
+ * <p>
+ * Requires the slots computed by {@link rime.source.semantic.SlotResolution}.
+ */
+final class ClosureCompiler {
+	private final ValuedVisitor<RimeNode, Object> visitor = new ValuedVisitor<>();
+	private final FrozenAttributes attributes;
+	private final ArrayList<String> mainArgs;
+	private final IdentityHashMap<Declaration, CompiledFunction> functions = new IdentityHashMap<>();
+	private CompiledFunction function;
+	
+	ClosureCompiler(FrozenAttributes attributes, ArrayList<String> mainArgs) {
+		this.attributes = attributes;
+		this.mainArgs = mainArgs;
+		
+		// EXPRESSIONS
+		visitor.register(BoolLiteral.class, this::boolLiteral);
+		visitor.register(IntLiteral.class, this::intLiteral);
+		visitor.register(StringLiteral.class, this::stringLiteral);
+		visitor.register(NullLiteral.class, this::nullLiteral);
+		visitor.register(Identifier.class, this::identifier);
+		visitor.register(IndexedCollectionAccess.class, this::indexedCollectionAccess);
+		visitor.register(BinaryExpression.class, this::binaryExpression);
+		visitor.register(UnaryExpression.class, this::unaryExpression);
+		visitor.register(EmptyList.class, this::emptyList);
+		visitor.register(EmptySet.class, this::emptySet);
+		visitor.register(EmptyDict.class, this::emptyDict);
+		visitor.register(ListElements.class, this::listElements);
+		visitor.register(SetElements.class, this::setElements);
+		visitor.register(DictElements.class, this::dictElements);
+		visitor.register(FunctionCall.class, this::functionCall);
+		
+		// STATEMENTS
+		visitor.register(Block.class, this::block);
+		visitor.register(ExpressionStatement.class, this::expressionStatement);
+		visitor.register(EmptyStatement.class, this::emptyStatement);
+		visitor.register(Assignment.class, this::assignment);
+		visitor.register(IfStatement.class, this::ifStatement);
+		visitor.register(WhileStatement.class, this::whileStatement);
+		visitor.register(ExitStatement.class, this::exitStatement);
+		visitor.register(ReturnStatement.class, this::returnStatement);
+		visitor.register(VariableDefinition.class, this::variableDefinition);
+		
+		// FALLBACK
+		visitor.registerFallback(node -> {
+			throw new Error("Cannot compile " + node);
+		});
+	}
+	
+	/**
+	 * Compiles every function of the program and returns the entry point.
+	 */
+	CompiledFunction compile(RootNode root) {
+		final List<FunctionDefinition> definitions = new ArrayList<>(root.preMainDefinitions);
+		definitions.add(root.entryPoint.definition);
+		
+		for (FunctionDefinition definition : definitions) {
+			final int[] parameterSlots = parameters(definition).params.stream().mapToInt(attributes::slot).toArray();
+			functions.put(definition, new CompiledFunction(definition, parameterSlots, attributes.frameSize(definition)));
+		}
+		
+		for (FunctionDefinition definition : definitions) {
+			function = functions.get(definition);
+			function.body = statement(body(definition));
+		}
+		
+		return functions.get(root.entryPoint.definition);
+	}
+	
+	private ExpressionNode expression(Expression node) {
+		return cast(visitor.apply(node));
+	}
+	
+	private ExpressionNode[] expressions(List<? extends Expression> nodes) {
+		return nodes.stream().map(this::expression).toArray(ExpressionNode[]::new);
+	}
+	
+	private StatementNode statement(Statement node) {
+		return cast(visitor.apply(node));
+	}
+	
+	private ExpressionNode condition(Expression node) {
+		final ExpressionNode condition = expression(node);
+		return condition instanceof BooleanNode ? condition : new Condition(condition);
+	}
+	
+	//region EXPRESSIONS
+	private ExpressionNode boolLiteral(BoolLiteral node) {
+		return new BooleanConstant(node.value);
+	}
+	
+	private ExpressionNode intLiteral(IntLiteral node) {
+		return new IntConstant(node.value);
+	}
+	
+	private ExpressionNode stringLiteral(StringLiteral node) {
+		return new Constant(node.value);
+	}
+	
+	private ExpressionNode nullLiteral(NullLiteral node) {
+		return new Constant(null);
+	}
+	
+	private ExpressionNode identifier(Identifier node) {
+		final int slot = attributes.slot(node);
+		
+		if (slot >= 0) {
+			return new Local(slot);
+		}
+		
+		final Declaration decl = attributes.declaration(node);
+		return new Constant(decl == attributes.rootScope.mainArgs ? mainArgs : decl);
+	}
+	
+	private ExpressionNode indexedCollectionAccess(IndexedCollectionAccess node) {
+		final Type collectionType = attributes.type(node.identifier);
+		
+		if (attributes.isUnchecked(node)) {
+			return new UncheckedListIndex(expression(node.identifier), expression(node.index));
+		}
+		else if (collectionType instanceof ListType) {
+			return new ListIndex(expression(node.identifier), expression(node.index));
+		}
+		else if (collectionType instanceof DictType) {
+			return new DictIndex(expression(node.identifier), expression(node.index));
+		}
+		else {
+			throw new IllegalArgumentException("Node should be either a list or a dict");
+		}
+	}
+	
+	private ExpressionNode binaryExpression(BinaryExpression node) {
+		final Type leftType = attributes.type(node.left);
+		final Type rightType = attributes.type(node.right);
+		final ExpressionNode left = expression(node.left);
+		final ExpressionNode right = expression(node.right);
+		
+		if (leftType instanceof BoolType && rightType instanceof BoolType) {
+			switch (node.operator) {
+				case LOGICAL_AND:
+					return new And(left, right);
+				case LOGICAL_OR:
+					return new Or(left, right);
+				case EQUAL_TO:
+					return new BooleanEqual(left, right);
+				case NOT_EQUAL_TO:
+					return new BooleanNotEqual(left, right);
+			}
+		}
+		
+		if (node.operator == BinaryOperator.ADD && (leftType instanceof StringType || rightType instanceof StringType)) {
+			return new Concat(left, right);
+		}
+		
+		if (leftType instanceof IntType && rightType instanceof IntType) {
+			return switch (node.operator) {
+				case ADD -> new Add(left, right);
+				case SUBTRACT -> new Subtract(left, right);
+				case MULTIPLY -> new Multiply(left, right);
+				case DIVIDE -> new Divide(left, right);
+				case REMAINDER -> new Remainder(left, right);
+				case LESS_THAN -> new LessThan(left, right);
+				case LESS_THAN_EQUAL -> new LessThanEqual(left, right);
+				case GREATER_THAN -> new GreaterThan(left, right);
+				case GREATER_THAN_EQUAL -> new GreaterThanEqual(left, right);
+				case EQUAL_TO -> new IntEqual(left, right);
+				case NOT_EQUAL_TO -> new IntNotEqual(left, right);
+				default -> throw new Error("Should not reach here");
+			};
+		}
+		
+		return switch (node.operator) {
+			case EQUAL_TO -> leftType.isPrimitive() ? new ValueEqual(left, right, false) : new ReferenceEqual(left, right, false);
+			case NOT_EQUAL_TO -> leftType.isPrimitive() ? new ValueEqual(left, right, true) : new ReferenceEqual(left, right, true);
+			default -> throw new Error("Should not reach here");
+		};
+	}
+	
+	private ExpressionNode unaryExpression(UnaryExpression node) {
+		return switch (node.operator) {
+			case NEGATIVE -> new Negate(expression(node.operand));
+			case LOGICAL_COMPLEMENT -> new Not(expression(node.operand));
+		};
+	}
+	
+	private ExpressionNode emptyList(EmptyList node) {
+		return new NewList(CollectionKind.of(attributes, node), new ExpressionNode[0]);
+	}
+	
+	private ExpressionNode emptySet(EmptySet node) {
+		return new NewSet(CollectionKind.of(attributes, node), new ExpressionNode[0]);
+	}
+	
+	private ExpressionNode emptyDict(EmptyDict node) {
+		return new NewDict(CollectionKind.of(attributes, node), new ExpressionNode[0], new ExpressionNode[0]);
+	}
+	
+	private ExpressionNode listElements(ListElements node) {
+		return new NewList(CollectionKind.of(attributes, node), expressions(node.elements));
+	}
+	
+	private ExpressionNode setElements(SetElements node) {
+		return new NewSet(CollectionKind.of(attributes, node), expressions(node.elements));
+	}
+	
+	private ExpressionNode dictElements(DictElements node) {
+		final ExpressionNode[] keys = node.elements.stream().map(element -> expression(element.key)).toArray(ExpressionNode[]::new);
+		final ExpressionNode[] values = node.elements.stream().map(element -> expression(element.value)).toArray(ExpressionNode[]::new);
+		
+		return new NewDict(CollectionKind.of(attributes, node), keys, values);
+	}
+	
+	private ExpressionNode functionCall(FunctionCall node) {
+		final ExpressionNode[] arguments = expressions(node.arguments);
+		
+		if (attributes.slot(node.name) >= 0) {
+			return new DynamicCall(expression(node.name), arguments, functions);
+		}
+		
+		final Declaration decl = attributes.declaration(node.name);
+		
+		if (decl instanceof FunctionDefinition) {
+			return new Call(functions.get(decl), arguments);
+		}
+		
+		if (decl instanceof PredefinedFunction) {
+			return switch (((PredefinedFunction) decl).name) {
+				case "print" -> new Print(arguments[0]);
+				case "parseInt" -> new ParseInt(arguments[0]);
+				case "length" -> new Length(arguments[0]);
+				case "append" -> new Append(arguments[0], arguments[1], attributes.isInPlace(node));
+				case "add" -> new AddToSet(arguments[0], arguments[1], attributes.isInPlace(node));
+				case "contains" -> new Contains(arguments[0], arguments[1]);
+				default -> throw new Error("Should not reach here");
+			};
+		}
+		
+		return new DynamicCall(expression(node.name), arguments, functions);
+	}
+	//endregion
+	
+	//region STATEMENTS
+	private StatementNode block(Block node) {
+		final ArrayList<StatementNode> statements = new ArrayList<>();
+		final ArrayList<Statement> sources = new ArrayList<>();
+		
+		for (Statement statement : node.statements) {
+			final StatementNode compiled = statement(statement);
+			
+			if (compiled != null) {
+				statements.add(compiled);
+				sources.add(statement);
+			}
+		}
+		
+		return new Sequence(statements.toArray(new StatementNode[0]), sources.toArray(new Statement[0]));
+	}
+	
+	private StatementNode expressionStatement(ExpressionStatement node) {
+		// Like the interpreter, only calls are executed as statements
+		if (!(node.expression instanceof FunctionCall)) {
+			return null;
+		}
+		
+		final FunctionCall call = (FunctionCall) node.expression;
+		return attributes.isTailCall(call) ? tailCall(call) : new Evaluate(expression(call));
+	}
+	
+	private StatementNode emptyStatement(EmptyStatement node) {
+		return null;
+	}
+	
+	private StatementNode assignment(Assignment node) {
+		if (node.left instanceof Identifier) {
+			return new StoreLocal(attributes.slot((Identifier) node.left), expression(node.right));
+		}
+		
+		final IndexedCollectionAccess access = (IndexedCollectionAccess) node.left;
+		final Type collectionType = attributes.type(access.identifier);
+		
+		if (collectionType instanceof ListType) {
+			return new StoreListElement(expression(access.identifier), expression(access.index), expression(node.right));
+		}
+		else if (collectionType instanceof DictType) {
+			return new StoreDictElement(expression(access.identifier), expression(access.index), expression(node.right));
+		}
+		else {
+			throw new Error("Should not reach here");
+		}
+	}
+	
+	private StatementNode ifStatement(IfStatement node) {
+		final StatementNode falseBody = node.falseBody == null ? null : statement(node.falseBody);
+		return new If(condition(node.condition), statement(node.trueBody), falseBody);
+	}
+	
+	private StatementNode whileStatement(WhileStatement node) {
+		return new While(condition(node.condition), statement(node.body));
+	}
+	
+	private StatementNode exitStatement(ExitStatement node) {
+		return new Exit();
+	}
+	
+	private StatementNode returnStatement(ReturnStatement node) {
+		if (node.expression instanceof FunctionCall && attributes.isTailCall((FunctionCall) node.expression)) {
+			return tailCall((FunctionCall) node.expression);
+		}
+		
+		final ExpressionNode value = node.expression == null ? null : expression(node.expression);
+		return new Return(value, function.returnSlot);
+	}
+	
+	private StatementNode tailCall(FunctionCall node) {
+		return new TailCall(function.parameterSlots, expressions(node.arguments));
+	}
+	
+	private StatementNode variableDefinition(VariableDefinition node) {
+		return new StoreLocal(attributes.slot(node), expression(node.assignment.right));
+	}
+	//endregion
+	
+	//region UTILS
+	private static Parameters parameters(FunctionDefinition definition) {
+		return definition instanceof ProcDefinition
+			? ((ProcDefinition) definition).parameters
+			: ((FuncDefinition) definition).parameters;
+	}
+	
+	private static Block body(FunctionDefinition definition) {
+		return definition instanceof ProcDefinition
+			? ((ProcDefinition) definition).body
+			: ((FuncDefinition) definition).body;
+	}
+	//endregion
+}
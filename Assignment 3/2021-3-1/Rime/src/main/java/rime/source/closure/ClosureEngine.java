@@ -0,0 +1,57 @@
+package rime.source.closure;
+
+import norswap.uranium.Reactor;
+import norswap.utils.exceptions.Exceptions;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.RootNode;
+import rime.source.interpreter.Engine;
+import rime.source.interpreter.exceptions.InterpreterException;
+import rime.source.interpreter.exceptions.PassthroughException;
+import rime.source.runtime.CollectionMode;
+import rime.source.semantic.FrozenAttributes;
+
+import java.util.ArrayList;
+
+import static norswap.utils.Util.cast;
+
+
+
+/**
+ * Engine compiling the program to a tree of executable nodes specialized for the static types of their
+ * operands (see {@link ClosureCompiler}), then running it. Errors are reported with the statement they were thrown
+ * in, like the interpreter does, by the sequence of statements holding it rather than at every node.
+ */
+public final class ClosureEngine implements Engine {
+	private final Reactor reactor;
+	private final CollectionMode collectionMode;
+	
+	public ClosureEngine(Reactor reactor) {
+		this(reactor, CollectionMode.COPYING);
+	}
+	
+	public ClosureEngine(Reactor reactor, CollectionMode collectionMode) {
+		this.reactor = reactor;
+		this.collectionMode = collectionMode;
+	}
+	
+	@Override
+	public void interpret(RimeNode root, ArrayList<String> mainArgs) {
+		final RootNode rootNode = cast(root);
+		final FrozenAttributes attributes = FrozenAttributes.prepare(reactor, rootNode, collectionMode);
+		
+		final ArrayList<String> args = new ArrayList<>(mainArgs);
+		final CompiledFunction main = new ClosureCompiler(attributes, args).compile(rootNode);
+		final Object[] frame = new Object[main.frameLength];
+		frame[main.parameterSlots[0]] = args;
+		
+		try {
+			main.invoke(frame);
+		}
+		catch (PassthroughException e) {
+			throw Exceptions.runtime(e.getCause());
+		}
+		catch (RuntimeException e) {
+			throw InterpreterException.wrap(e, rootNode.entryPoint);
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package rime.source.closure;
+
+import rime.source.ast.declarations.FunctionDefinition;
+
+
+
+/**
+ * A proc or func compiled to a {@link StatementNode} body. The body is set once every function has been
+ * declared, so that (mutually) recursive calls can refer to functions whose body is not compiled yet.
+ */
+final class CompiledFunction {
+	final FunctionDefinition definition;
+	final int[] parameterSlots;
+	final int frameLength;
+	final int returnSlot;
+	StatementNode body;
+	
+	CompiledFunction(FunctionDefinition definition, int[] parameterSlots, int frameSize) {
+		this.definition = definition;
+		this.parameterSlots = parameterSlots;
+		this.returnSlot = frameSize;
+		this.frameLength = frameSize + 1;
+	}
+	
+	/**
+	 * Runs the body in {@code frame}, whose parameters are bound, and returns the returned value.
+	 */
+	Object invoke(Object[] frame) {
+		int completion;
+		
+		// A tail call to itself rebinds the parameters in the same frame, then the body runs again
+		do {
+			completion = body.execute(frame);
+		}
+		while (completion == StatementNode.TAIL_CALL);
+		
+		return frame[returnSlot];
+	}
+}
@@ -0,0 +1,37 @@
+package rime.source.closure;
+
+/**
+ * Executable form of an expression. Nodes whose static type is int or bool override the matching
+ * unboxed entry point, so that chains of arithmetic and comparisons never box their intermediate results.
+ */
+abstract class ExpressionNode {
+	abstract Object execute(Object[] frame);
+	
+	int executeInt(Object[] frame) {
+		return (Integer) execute(frame);
+	}
+	
+	boolean executeBoolean(Object[] frame) {
+		return (Boolean) execute(frame);
+	}
+	
+	static abstract class IntNode extends ExpressionNode {
+		@Override
+		final Object execute(Object[] frame) {
+			return executeInt(frame);
+		}
+		
+		@Override
+		abstract int executeInt(Object[] frame);
+	}
+	
+	static abstract class BooleanNode extends ExpressionNode {
+		@Override
+		final Object execute(Object[] frame) {
+			return executeBoolean(frame);
+		}
+		
+		@Override
+		abstract boolean executeBoolean(Object[] frame);
+	}
+}
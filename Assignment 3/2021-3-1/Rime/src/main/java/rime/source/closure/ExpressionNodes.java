@@ -0,0 +1,662 @@
+package rime.source.closure;
+
+import rime.source.ast.declarations.Declaration;
+import rime.source.ast.declarations.PredefinedFunction;
+import rime.source.closure.ExpressionNode.BooleanNode;
+import rime.source.closure.ExpressionNode.IntNode;
+import rime.source.interpreter.exceptions.PassthroughException;
+import rime.source.runtime.Arithmetic;
+import rime.source.runtime.Builtins;
+import rime.source.runtime.CollectionKind;
+import rime.source.runtime.Concatenation;
+import rime.source.runtime.Indexing;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+
+/**
+ * The expression nodes produced by {@link ClosureCompiler}, each one specialized for the static types of its operands.
+ */
+final class ExpressionNodes {
+	private ExpressionNodes() { }
+	
+	//region LITERALS AND VARIABLES
+	static final class Constant extends ExpressionNode {
+		final Object value;
+		
+		Constant(Object value) {
+			this.value = value;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			return value;
+		}
+	}
+	
+	static final class IntConstant extends IntNode {
+		final int value;
+		
+		IntConstant(int value) {
+			this.value = value;
+		}
+		
+		@Override
+		int executeInt(Object[] frame) {
+			return value;
+		}
+	}
+	
+	static final class BooleanConstant extends BooleanNode {
+		final boolean value;
+		
+		BooleanConstant(boolean value) {
+			this.value = value;
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			return value;
+		}
+	}
+	
+	static final class Local extends ExpressionNode {
+		final int slot;
+		
+		Local(int slot) {
+			this.slot = slot;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			return frame[slot];
+		}
+	}
+	//endregion
+	
+	//region INT OPERATIONS
+	static abstract class IntBinary extends IntNode {
+		final ExpressionNode left;
+		final ExpressionNode right;
+		
+		IntBinary(ExpressionNode left, ExpressionNode right) {
+			this.left = left;
+			this.right = right;
+		}
+	}
+	
+	static final class Add extends IntBinary {
+		Add(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		int executeInt(Object[] frame) {
+			return left.executeInt(frame) + right.executeInt(frame);
+		}
+	}
+	
+	static final class Subtract extends IntBinary {
+		Subtract(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		int executeInt(Object[] frame) {
+			return left.executeInt(frame) - right.executeInt(frame);
+		}
+	}
+	
+	static final class Multiply extends IntBinary {
+		Multiply(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		int executeInt(Object[] frame) {
+			return left.executeInt(frame) * right.executeInt(frame);
+		}
+	}
+	
+	static final class Divide extends IntBinary {
+		Divide(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		int executeInt(Object[] frame) {
+			return Arithmetic.divide(left.executeInt(frame), right.executeInt(frame));
+		}
+	}
+	
+	static final class Remainder extends IntBinary {
+		Remainder(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		int executeInt(Object[] frame) {
+			return left.executeInt(frame) % right.executeInt(frame);
+		}
+	}
+	
+	static final class Negate extends IntNode {
+		final ExpressionNode operand;
+		
+		Negate(ExpressionNode operand) {
+			this.operand = operand;
+		}
+		
+		@Override
+		int executeInt(Object[] frame) {
+			return -operand.executeInt(frame);
+		}
+	}
+	
+	static abstract class IntComparison extends BooleanNode {
+		final ExpressionNode left;
+		final ExpressionNode right;
+		
+		IntComparison(ExpressionNode left, ExpressionNode right) {
+			this.left = left;
+			this.right = right;
+		}
+	}
+	
+	static final class LessThan extends IntComparison {
+		LessThan(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			return left.executeInt(frame) < right.executeInt(frame);
+		}
+	}
+	
+	static final class LessThanEqual extends IntComparison {
+		LessThanEqual(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			return left.executeInt(frame) <= right.executeInt(frame);
+		}
+	}
+	
+	static final class GreaterThan extends IntComparison {
+		GreaterThan(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			return left.executeInt(frame) > right.executeInt(frame);
+		}
+	}
+	
+	static final class GreaterThanEqual extends IntComparison {
+		GreaterThanEqual(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			return left.executeInt(frame) >= right.executeInt(frame);
+		}
+	}
+	
+	static final class IntEqual extends IntComparison {
+		IntEqual(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			return left.executeInt(frame) == right.executeInt(frame);
+		}
+	}
+	
+	static final class IntNotEqual extends IntComparison {
+		IntNotEqual(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			return left.executeInt(frame) != right.executeInt(frame);
+		}
+	}
+	//endregion
+	
+	//region BOOL OPERATIONS
+	static abstract class BooleanBinary extends BooleanNode {
+		final ExpressionNode left;
+		final ExpressionNode right;
+		
+		BooleanBinary(ExpressionNode left, ExpressionNode right) {
+			this.left = left;
+			this.right = right;
+		}
+	}
+	
+	// Rime evaluates both operands of && and ||, hence the non short-circuiting operators
+	static final class And extends BooleanBinary {
+		And(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			return left.executeBoolean(frame) & right.executeBoolean(frame);
+		}
+	}
+	
+	static final class Or extends BooleanBinary {
+		Or(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			return left.executeBoolean(frame) | right.executeBoolean(frame);
+		}
+	}
+	
+	static final class BooleanEqual extends BooleanBinary {
+		BooleanEqual(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			return left.executeBoolean(frame) == right.executeBoolean(frame);
+		}
+	}
+	
+	static final class BooleanNotEqual extends BooleanBinary {
+		BooleanNotEqual(ExpressionNode left, ExpressionNode right) {
+			super(left, right);
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			return left.executeBoolean(frame) != right.executeBoolean(frame);
+		}
+	}
+	
+	static final class Not extends BooleanNode {
+		final ExpressionNode operand;
+		
+		Not(ExpressionNode operand) {
+			this.operand = operand;
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			return !operand.executeBoolean(frame);
+		}
+	}
+	
+	/**
+	 * Condition of an if or while statement whose value is not statically known to be a non-null bool.
+	 */
+	static final class Condition extends BooleanNode {
+		final ExpressionNode operand;
+		
+		Condition(ExpressionNode operand) {
+			this.operand = operand;
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			final Object value = operand.execute(frame);
+			return value instanceof Boolean && (Boolean) value;
+		}
+	}
+	//endregion
+	
+	//region OTHER BINARY OPERATIONS
+	static final class Concat extends ExpressionNode {
+		final ExpressionNode left;
+		final ExpressionNode right;
+		
+		Concat(ExpressionNode left, ExpressionNode right) {
+			this.left = left;
+			this.right = right;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			final Object leftValue = left.execute(frame);
+			final Object rightValue = right.execute(frame);
+			return Concatenation.concat(leftValue, rightValue);
+		}
+	}
+	
+	static final class ValueEqual extends BooleanBinary {
+		final boolean negated;
+		
+		ValueEqual(ExpressionNode left, ExpressionNode right, boolean negated) {
+			super(left, right);
+			this.negated = negated;
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			final Object leftValue = left.execute(frame);
+			final Object rightValue = right.execute(frame);
+			return Builtins.valueEqual(leftValue, rightValue) != negated;
+		}
+	}
+	
+	static final class ReferenceEqual extends BooleanBinary {
+		final boolean negated;
+		
+		ReferenceEqual(ExpressionNode left, ExpressionNode right, boolean negated) {
+			super(left, right);
+			this.negated = negated;
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			final Object leftValue = left.execute(frame);
+			final Object rightValue = right.execute(frame);
+			return (leftValue == rightValue) != negated;
+		}
+	}
+	//endregion
+	
+	//region COLLECTIONS
+	static final class ListIndex extends ExpressionNode {
+		final ExpressionNode list;
+		final ExpressionNode index;
+		
+		ListIndex(ExpressionNode list, ExpressionNode index) {
+			this.list = list;
+			this.index = index;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			final List<Object> value = Indexing.list(list.execute(frame));
+			return Indexing.get(value, index.executeInt(frame));
+		}
+		
+		@Override
+		int executeInt(Object[] frame) {
+			final List<Object> value = Indexing.list(list.execute(frame));
+			return Indexing.getInt(value, index.executeInt(frame));
+		}
+	}
+	
+	/**
+	 * A {@link ListIndex} at an index known to be within the list, see {@link rime.source.semantic.BoundsChecks}.
+	 */
+	static final class UncheckedListIndex extends ExpressionNode {
+		final ExpressionNode list;
+		final ExpressionNode index;
+		
+		UncheckedListIndex(ExpressionNode list, ExpressionNode index) {
+			this.list = list;
+			this.index = index;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			return Indexing.getUnchecked(list.execute(frame), index.executeInt(frame));
+		}
+		
+		@Override
+		int executeInt(Object[] frame) {
+			return Indexing.getIntUnchecked(list.execute(frame), index.executeInt(frame));
+		}
+	}
+	
+	static final class DictIndex extends ExpressionNode {
+		final ExpressionNode dict;
+		final ExpressionNode key;
+		
+		DictIndex(ExpressionNode dict, ExpressionNode key) {
+			this.dict = dict;
+			this.key = key;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			final Map<Object, Object> value = Indexing.dict(dict.execute(frame));
+			return value.get(key.execute(frame));
+		}
+	}
+	
+	static final class NewList extends ExpressionNode {
+		final CollectionKind kind;
+		final ExpressionNode[] elements;
+		
+		NewList(CollectionKind kind, ExpressionNode[] elements) {
+			this.kind = kind;
+			this.elements = elements;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			final List<Object> list = kind.newList(elements.length);
+			
+			for (ExpressionNode element : elements) {
+				list.add(element.execute(frame));
+			}
+			
+			return list;
+		}
+	}
+	
+	static final class NewSet extends ExpressionNode {
+		final CollectionKind kind;
+		final ExpressionNode[] elements;
+		
+		NewSet(CollectionKind kind, ExpressionNode[] elements) {
+			this.kind = kind;
+			this.elements = elements;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			final Set<Object> set = kind.newSet(elements.length);
+			
+			for (ExpressionNode element : elements) {
+				set.add(element.execute(frame));
+			}
+			
+			return set;
+		}
+	}
+	
+	static final class NewDict extends ExpressionNode {
+		final CollectionKind kind;
+		final ExpressionNode[] keys;
+		final ExpressionNode[] values;
+		
+		NewDict(CollectionKind kind, ExpressionNode[] keys, ExpressionNode[] values) {
+			this.kind = kind;
+			this.keys = keys;
+			this.values = values;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			final Map<Object, Object> dict = kind.newDict(keys.length);
+			
+			for (int i = 0; i < keys.length; i++) {
+				final Object key = keys[i].execute(frame);
+				dict.put(key, values[i].execute(frame));
+			}
+			
+			return dict;
+		}
+	}
+	//endregion
+	
+	//region CALLS
+	static final class Call extends ExpressionNode {
+		final CompiledFunction function;
+		final ExpressionNode[] arguments;
+		
+		Call(CompiledFunction function, ExpressionNode[] arguments) {
+			this.function = function;
+			this.arguments = arguments;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			final Object[] callee = new Object[function.frameLength];
+			
+			for (int i = 0; i < arguments.length; i++) {
+				callee[function.parameterSlots[i]] = arguments[i].execute(frame);
+			}
+			
+			return function.invoke(callee);
+		}
+	}
+	
+	/**
+	 * Call through a variable holding a function, resolved at runtime.
+	 */
+	static final class DynamicCall extends ExpressionNode {
+		final ExpressionNode callee;
+		final ExpressionNode[] arguments;
+		final Map<Declaration, CompiledFunction> functions;
+		
+		DynamicCall(ExpressionNode callee, ExpressionNode[] arguments, Map<Declaration, CompiledFunction> functions) {
+			this.callee = callee;
+			this.arguments = arguments;
+			this.functions = functions;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			final Object decl = callee.execute(frame);
+			final Object[] args = new Object[arguments.length];
+			
+			for (int i = 0; i < args.length; i++) {
+				args[i] = arguments[i].execute(frame);
+			}
+			
+			if (decl == null) {
+				throw new PassthroughException(new NullPointerException("Calling a null function"));
+			}
+			
+			if (decl instanceof PredefinedFunction) {
+				return Builtins.call(((PredefinedFunction) decl).name, args);
+			}
+			
+			final CompiledFunction function = functions.get(decl);
+			final Object[] calleeFrame = new Object[function.frameLength];
+			
+			for (int i = 0; i < args.length; i++) {
+				calleeFrame[function.parameterSlots[i]] = args[i];
+			}
+			
+			return function.invoke(calleeFrame);
+		}
+	}
+	
+	static final class Print extends ExpressionNode {
+		final ExpressionNode argument;
+		
+		Print(ExpressionNode argument) {
+			this.argument = argument;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			return Builtins.print(argument.execute(frame));
+		}
+	}
+	
+	static final class ParseInt extends IntNode {
+		final ExpressionNode argument;
+		
+		ParseInt(ExpressionNode argument) {
+			this.argument = argument;
+		}
+		
+		@Override
+		int executeInt(Object[] frame) {
+			return Builtins.parseInt(argument.execute(frame));
+		}
+	}
+	
+	static final class Length extends IntNode {
+		final ExpressionNode argument;
+		
+		Length(ExpressionNode argument) {
+			this.argument = argument;
+		}
+		
+		@Override
+		int executeInt(Object[] frame) {
+			return Builtins.length(argument.execute(frame));
+		}
+	}
+	
+	static final class Append extends ExpressionNode {
+		final ExpressionNode list;
+		final ExpressionNode element;
+		final boolean inPlace;
+		
+		Append(ExpressionNode list, ExpressionNode element, boolean inPlace) {
+			this.list = list;
+			this.element = element;
+			this.inPlace = inPlace;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			final Object listValue = list.execute(frame);
+			final Object elementValue = element.execute(frame);
+			
+			return inPlace ? Builtins.appendInPlace(listValue, elementValue) : Builtins.append(listValue, elementValue);
+		}
+	}
+	
+	static final class AddToSet extends ExpressionNode {
+		final ExpressionNode set;
+		final ExpressionNode element;
+		final boolean inPlace;
+		
+		AddToSet(ExpressionNode set, ExpressionNode element, boolean inPlace) {
+			this.set = set;
+			this.element = element;
+			this.inPlace = inPlace;
+		}
+		
+		@Override
+		Object execute(Object[] frame) {
+			final Object setValue = set.execute(frame);
+			final Object elementValue = element.execute(frame);
+			
+			return inPlace ? Builtins.addInPlace(setValue, elementValue) : Builtins.add(setValue, elementValue);
+		}
+	}
+	
+	static final class Contains extends BooleanNode {
+		final ExpressionNode set;
+		final ExpressionNode element;
+		
+		Contains(ExpressionNode set, ExpressionNode element) {
+			this.set = set;
+			this.element = element;
+		}
+		
+		@Override
+		boolean executeBoolean(Object[] frame) {
+			final Object setValue = set.execute(frame);
+			return Builtins.contains(setValue, element.execute(frame));
+		}
+	}
+	//endregion
+}
@@ -0,0 +1,17 @@
+package rime.source.closure;
+
+/**
+ * Executable form of a statement. Instead of unwinding the Java stack with exceptions, executing a statement
+ * reports how it completed: normally, or through a return or exit statement that the enclosing blocks and
+ * loops must propagate up to the function call. The returned value is stored in the last slot of the frame.
+ * A tail call of the function to itself completes after storing the arguments in the frame, for the call to
+ * run the body again.
+ */
+abstract class StatementNode {
+	static final int NORMAL = 0;
+	static final int RETURN = 1;
+	static final int EXIT = 2;
+	static final int TAIL_CALL = 3;
+	
+	abstract int execute(Object[] frame);
+}
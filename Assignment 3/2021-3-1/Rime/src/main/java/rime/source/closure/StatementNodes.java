@@ -0,0 +1,217 @@
+package rime.source.closure;
+
+import rime.source.ast.statements.Statement;
+import rime.source.interpreter.exceptions.InterpreterException;
+import rime.source.runtime.Indexing;
+
+import java.util.List;
+import java.util.Map;
+
+
+
+/**
+ * The statement nodes produced by {@link ClosureCompiler}.
+ */
+final class StatementNodes {
+	private StatementNodes() { }
+	
+	/**
+	 * Runs its statements in order. An exception is reported with the statement it was thrown in, the innermost
+	 * one, like the interpreter does: the nested sequences wrap it first.
+	 */
+	static final class Sequence extends StatementNode {
+		final StatementNode[] statements;
+		final Statement[] sources;
+		
+		Sequence(StatementNode[] statements, Statement[] sources) {
+			this.statements = statements;
+			this.sources = sources;
+		}
+		
+		@Override
+		int execute(Object[] frame) {
+			for (int i = 0; i < statements.length; i++) {
+				final int completion;
+				
+				try {
+					completion = statements[i].execute(frame);
+				}
+				catch (RuntimeException e) {
+					throw InterpreterException.wrap(e, sources[i]);
+				}
+				
+				if (completion != NORMAL) {
+					return completion;
+				}
+			}
+			
+			return NORMAL;
+		}
+	}
+	
+	static final class Evaluate extends StatementNode {
+		final ExpressionNode expression;
+		
+		Evaluate(ExpressionNode expression) {
+			this.expression = expression;
+		}
+		
+		@Override
+		int execute(Object[] frame) {
+			expression.execute(frame);
+			return NORMAL;
+		}
+	}
+	
+	static final class If extends StatementNode {
+		final ExpressionNode condition;
+		final StatementNode trueBody;
+		final StatementNode falseBody;
+		
+		If(ExpressionNode condition, StatementNode trueBody, StatementNode falseBody) {
+			this.condition = condition;
+			this.trueBody = trueBody;
+			this.falseBody = falseBody;
+		}
+		
+		@Override
+		int execute(Object[] frame) {
+			if (condition.executeBoolean(frame)) {
+				return trueBody.execute(frame);
+			}
+			else if (falseBody != null) {
+				return falseBody.execute(frame);
+			}
+			
+			return NORMAL;
+		}
+	}
+	
+	static final class While extends StatementNode {
+		final ExpressionNode condition;
+		final StatementNode body;
+		
+		While(ExpressionNode condition, StatementNode body) {
+			this.condition = condition;
+			this.body = body;
+		}
+		
+		@Override
+		int execute(Object[] frame) {
+			while (condition.executeBoolean(frame)) {
+				final int completion = body.execute(frame);
+				
+				if (completion != NORMAL) {
+					return completion;
+				}
+			}
+			
+			return NORMAL;
+		}
+	}
+	
+	static final class StoreLocal extends StatementNode {
+		final int slot;
+		final ExpressionNode value;
+		
+		StoreLocal(int slot, ExpressionNode value) {
+			this.slot = slot;
+			this.value = value;
+		}
+		
+		@Override
+		int execute(Object[] frame) {
+			frame[slot] = value.execute(frame);
+			return NORMAL;
+		}
+	}
+	
+	static final class StoreListElement extends StatementNode {
+		final ExpressionNode list;
+		final ExpressionNode index;
+		final ExpressionNode value;
+		
+		StoreListElement(ExpressionNode list, ExpressionNode index, ExpressionNode value) {
+			this.list = list;
+			this.index = index;
+			this.value = value;
+		}
+		
+		@Override
+		int execute(Object[] frame) {
+			final List<Object> listValue = Indexing.list(list.execute(frame));
+			final int indexValue = Indexing.checkIndex(index.executeInt(frame));
+			Indexing.set(listValue, indexValue, value.execute(frame));
+			return NORMAL;
+		}
+	}
+	
+	static final class StoreDictElement extends StatementNode {
+		final ExpressionNode dict;
+		final ExpressionNode key;
+		final ExpressionNode value;
+		
+		StoreDictElement(ExpressionNode dict, ExpressionNode key, ExpressionNode value) {
+			this.dict = dict;
+			this.key = key;
+			this.value = value;
+		}
+		
+		@Override
+		int execute(Object[] frame) {
+			final Map<Object, Object> dictValue = Indexing.dict(dict.execute(frame));
+			final Object keyValue = key.execute(frame);
+			dictValue.put(keyValue, value.execute(frame));
+			return NORMAL;
+		}
+	}
+	
+	static final class Return extends StatementNode {
+		final ExpressionNode value;
+		final int returnSlot;
+		
+		Return(ExpressionNode value, int returnSlot) {
+			this.value = value;
+			this.returnSlot = returnSlot;
+		}
+		
+		@Override
+		int execute(Object[] frame) {
+			frame[returnSlot] = value == null ? null : value.execute(frame);
+			return RETURN;
+		}
+	}
+	
+	static final class TailCall extends StatementNode {
+		final int[] parameterSlots;
+		final ExpressionNode[] arguments;
+		
+		TailCall(int[] parameterSlots, ExpressionNode[] arguments) {
+			this.parameterSlots = parameterSlots;
+			this.arguments = arguments;
+		}
+		
+		@Override
+		int execute(Object[] frame) {
+			// Every argument is evaluated before the parameters it may read are overwritten
+			final Object[] values = new Object[arguments.length];
+			
+			for (int i = 0; i < values.length; i++) {
+				values[i] = arguments[i].execute(frame);
+			}
+			
+			for (int i = 0; i < values.length; i++) {
+				frame[parameterSlots[i]] = values[i];
+			}
+			
+			return TAIL_CALL;
+		}
+	}
+	
+	static final class Exit extends StatementNode {
+		@Override
+		int execute(Object[] frame) {
+			return EXIT;
+		}
+	}
+}
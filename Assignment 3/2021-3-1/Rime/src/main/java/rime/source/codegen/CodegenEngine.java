@@ -0,0 +1,77 @@
+package rime.source.codegen;
+
+import norswap.uranium.Reactor;
+import norswap.utils.exceptions.Exceptions;
+import rime.source.ast.RimeNode;
+import rime.source.interpreter.Engine;
+import rime.source.interpreter.exceptions.InterpreterException;
+import rime.source.interpreter.exceptions.PassthroughException;
+import rime.source.runtime.CollectionMode;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+import static norswap.utils.Util.cast;
+
+
+
+/**
+ * Engine translating the program to Java source (see {@link JavaGenerator}) and compiling it with
+ * {@link InMemoryCompiler}, which reuses the class of an identical program compiled before. Each run gets its own
+ * instance of the class, holding the constants and the arguments of the run.
+ */
+public final class CodegenEngine implements Engine {
+	private final Reactor reactor;
+	private final CollectionMode collectionMode;
+	
+	public CodegenEngine(Reactor reactor) {
+		this(reactor, CollectionMode.COPYING);
+	}
+	
+	public CodegenEngine(Reactor reactor, CollectionMode collectionMode) {
+		this.reactor = reactor;
+		this.collectionMode = collectionMode;
+	}
+	
+	@Override
+	public void interpret(RimeNode root, ArrayList<String> mainArgs) {
+		final JavaProgram program = JavaProgram.generate(reactor, cast(root), collectionMode);
+		final ArrayList<Object> args = new ArrayList<>(mainArgs);
+		final MethodHandle main = load(program, args);
+		
+		try {
+			main.invoke(args);
+		}
+		catch (PassthroughException e) {
+			throw Exceptions.runtime(e.getCause());
+		}
+		catch (RuntimeException e) {
+			throw InterpreterException.wrap(e, "main");
+		}
+		catch (Error e) {
+			throw e;
+		}
+		catch (Throwable t) {
+			throw new InterpreterException("exception while executing main", t);
+		}
+	}
+	
+	/**
+	 * Compiles {@code program} unless it is cached, creates the instance of a run and returns its main method.
+	 */
+	public static MethodHandle load(JavaProgram program, ArrayList<Object> mainArgs) {
+		final Class<?> programClass = InMemoryCompiler.compile(program.className, program.source);
+		
+		try {
+			final Object instance = programClass.getConstructor(Object[].class, List.class).newInstance(program.constants, mainArgs);
+			final MethodType type = MethodType.methodType(void.class, List.class);
+			return MethodHandles.publicLookup().findVirtual(programClass, "main", type).bindTo(instance);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new Error("Cannot load the generated program", e);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package rime.source.codegen;
+
+import norswap.utils.exceptions.Exceptions;
+import rime.source.ast.declarations.FuncDefinition;
+import rime.source.ast.declarations.PredefinedFunction;
+import rime.source.ast.declarations.ProcDefinition;
+import rime.source.interpreter.exceptions.InterpreterException;
+import rime.source.interpreter.exceptions.PassthroughException;
+import rime.source.runtime.Arithmetic;
+import rime.source.runtime.Builtins;
+import rime.source.runtime.CollectionKind;
+import rime.source.runtime.Concatenation;
+import rime.source.runtime.Indexing;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+
+/**
+ * Runtime support of the Java sources generated by {@link JavaGenerator}, which import these methods statically
+ * so that the generated code reads like the hand-written programs of {@code rime/examples/java}.
+ */
+public final class CodegenRuntime {
+	private CodegenRuntime() { }
+	
+	/** The methods of each generated class, by name, for the calls through function values */
+	private static final ClassValue<HashMap<String, Method>> METHODS = new ClassValue<>() {
+		@Override
+		protected HashMap<String, Method> computeValue(Class<?> type) {
+			final HashMap<String, Method> methods = new HashMap<>();
+			
+			for (Method method : type.getDeclaredMethods()) {
+				if (!Modifier.isStatic(method.getModifiers())) {
+					methods.put(method.getName(), method);
+				}
+			}
+			
+			return methods;
+		}
+	};
+	
+	//region BUILTINS
+	public static void print(Object value) {
+		Builtins.print(value);
+	}
+	
+	public static int parseInt(Object value) {
+		return Builtins.parseInt(value);
+	}
+	
+	public static int length(Object list) {
+		return Builtins.length(list);
+	}
+	
+	public static List<Object> append(Object list, Object element) {
+		return Builtins.append(list, element);
+	}
+	
+	public static List<Object> appendInPlace(Object list, Object element) {
+		return Builtins.appendInPlace(list, element);
+	}
+	
+	public static Set<Object> add(Object set, Object element) {
+		return Builtins.add(set, element);
+	}
+	
+	public static Set<Object> addInPlace(Object set, Object element) {
+		return Builtins.addInPlace(set, element);
+	}
+	
+	public static boolean contains(Object set, Object element) {
+		return Builtins.contains(set, element);
+	}
+	//endregion
+	
+	//region OPERATIONS
+	public static int divide(int left, int right) {
+		return Arithmetic.divide(left, right);
+	}
+	
+	public static CharSequence concat(Object left, Object right) {
+		return (CharSequence) Concatenation.concat(left, right);
+	}
+	
+	public static boolean valueEqual(Object left, Object right) {
+		return Builtins.valueEqual(left, right);
+	}
+	
+	/**
+	 * Truth of a condition whose static type is not bool, with the same leniency as the interpreter.
+	 */
+	public static boolean isTrue(Object value) {
+		return value instanceof Boolean && (Boolean) value;
+	}
+	//endregion
+	
+	//region COLLECTIONS
+	public static List<Object> list(Object... elements) {
+		return collect(CollectionKind.BOXED.newList(elements.length), elements);
+	}
+	
+	public static List<Object> intList(Object... elements) {
+		return collect(CollectionKind.INT.newList(elements.length), elements);
+	}
+	
+	public static Set<Object> set(Object... elements) {
+		return collect(CollectionKind.BOXED.newSet(elements.length), elements);
+	}
+	
+	public static Set<Object> intSet(Object... elements) {
+		return collect(CollectionKind.INT.newSet(elements.length), elements);
+	}
+	
+	public static Map<Object, Object> dict(Object... keysAndValues) {
+		return collect(CollectionKind.BOXED.newDict(keysAndValues.length / 2), keysAndValues);
+	}
+	
+	public static Map<Object, Object> intIntDict(Object... keysAndValues) {
+		return collect(CollectionKind.INT_TO_INT.newDict(keysAndValues.length / 2), keysAndValues);
+	}
+	
+	public static Map<Object, Object> intObjectDict(Object... keysAndValues) {
+		return collect(CollectionKind.INT_TO_OBJECT.newDict(keysAndValues.length / 2), keysAndValues);
+	}
+	
+	public static List<Object> persistentList(Object... elements) {
+		return collect(CollectionKind.PERSISTENT.newList(elements.length), elements);
+	}
+	
+	public static Set<Object> persistentSet(Object... elements) {
+		return collect(CollectionKind.PERSISTENT.newSet(elements.length), elements);
+	}
+	
+	public static Map<Object, Object> persistentDict(Object... keysAndValues) {
+		return collect(CollectionKind.PERSISTENT.newDict(keysAndValues.length / 2), keysAndValues);
+	}
+	
+	private static <T extends Collection<Object>> T collect(T collection, Object[] elements) {
+		Collections.addAll(collection, elements);
+		return collection;
+	}
+	
+	private static Map<Object, Object> collect(Map<Object, Object> dict, Object[] keysAndValues) {
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			dict.put(keysAndValues[i], keysAndValues[i + 1]);
+		}
+		
+		return dict;
+	}
+	
+	public static List<Object> checkList(Object list) {
+		return Indexing.list(list);
+	}
+	
+	public static Map<Object, Object> checkDict(Object dict) {
+		return Indexing.dict(dict);
+	}
+	
+	public static int checkIndex(int index) {
+		return Indexing.checkIndex(index);
+	}
+	
+	public static Object at(Object list, int index) {
+		return Indexing.get(Indexing.list(list), index);
+	}
+	
+	public static int atInt(Object list, int index) {
+		return Indexing.getInt(Indexing.list(list), index);
+	}
+	
+	public static Object atUnchecked(Object list, int index) {
+		return Indexing.getUnchecked(list, index);
+	}
+	
+	public static int atIntUnchecked(Object list, int index) {
+		return Indexing.getIntUnchecked(list, index);
+	}
+	
+	public static Object lookup(Object dict, Object key) {
+		return Indexing.dict(dict).get(key);
+	}
+	
+	public static void setAt(Object list, int index, Object value) {
+		Indexing.set(Indexing.list(list), Indexing.checkIndex(index), value);
+	}
+	
+	public static void put(Object dict, Object key, Object value) {
+		Indexing.dict(dict).put(key, value);
+	}
+	//endregion
+	
+	/**
+	 * Reports an exception thrown by a generated method with the name of its function, see {@link InterpreterException#wrap}.
+	 */
+	public static RuntimeException wrap(RuntimeException e, String function) {
+		return InterpreterException.wrap(e, function);
+	}
+	
+	/**
+	 * Calls a function value, whose definition was generated as a method of {@code program}, the running instance.
+	 */
+	public static Object callDynamic(Object program, Object callee, Object... args) {
+		if (callee == null) {
+			throw new PassthroughException(new NullPointerException("Calling a null function"));
+		}
+		
+		if (callee instanceof PredefinedFunction) {
+			return Builtins.call(((PredefinedFunction) callee).name, args);
+		}
+		
+		final String name = callee instanceof ProcDefinition
+			? ((ProcDefinition) callee).name.value
+			: ((FuncDefinition) callee).name.value;
+		
+		try {
+			return METHODS.get(program.getClass()).get(JavaGenerator.methodName(name)).invoke(program, args);
+		}
+		catch (InvocationTargetException e) {
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			
+			throw Exceptions.runtime(e.getCause());
+		}
+		catch (IllegalAccessException e) {
+			throw new Error("Cannot call the generated method of " + name, e);
+		}
+	}
+}
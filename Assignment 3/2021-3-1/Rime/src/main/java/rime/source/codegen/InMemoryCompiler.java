@@ -0,0 +1,165 @@
+package rime.source.codegen;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+
+
+/**
+ * Compiles Java sources with the compiler of the running JDK, entirely in memory, and caches the resulting
+ * classes by the hash of their source: a program that is run again is neither compiled nor loaded again.
+ */
+public final class InMemoryCompiler {
+	private static final int CACHE_SIZE = 256;
+	
+	private static final Map<String, Class<?>> cache = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	
+	private InMemoryCompiler() { }
+	
+	/**
+	 * Returns the class named {@code className} defined by {@code source}, compiling it unless an identical
+	 * source was compiled before. Each compiled source gets its own class loader.
+	 */
+	public static Class<?> compile(String className, String source) {
+		final String hash = sha256(source);
+		
+		synchronized (cache) {
+			final Class<?> cached = cache.get(hash);
+			
+			if (cached != null) {
+				return cached;
+			}
+		}
+		
+		final Class<?> compiled = load(className, javac(className, source));
+		
+		synchronized (cache) {
+			return cache.computeIfAbsent(hash, key -> compiled);
+		}
+	}
+	
+	private static Map<String, byte[]> javac(String className, String source) {
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		
+		if (compiler == null) {
+			throw new Error("No Java compiler available, the code generator needs a JDK");
+		}
+		
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		final HashMap<String, byte[]> classes = new HashMap<>();
+		final StandardJavaFileManager standardManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+		
+		final JavaFileManager fileManager = new ForwardingJavaFileManager<>(standardManager) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind, FileObject sibling) {
+				return new SimpleJavaFileObject(uri(name, kind), kind) {
+					@Override
+					public OutputStream openOutputStream() {
+						return new ByteArrayOutputStream() {
+							@Override
+							public void close() {
+								classes.put(name, toByteArray());
+							}
+						};
+					}
+				};
+			}
+		};
+		
+		final JavaFileObject file = new SimpleJavaFileObject(uri(className, JavaFileObject.Kind.SOURCE), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		
+		final List<String> options = List.of("-classpath", classPath(), "-proc:none", "-nowarn", "-Xlint:none");
+		final boolean success = compiler.getTask(null, fileManager, diagnostics, options, null, List.of(file)).call();
+		
+		if (!success) {
+			final String errors = diagnostics.getDiagnostics().stream()
+				.filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+				.map(diagnostic -> "line " + diagnostic.getLineNumber() + ": " + diagnostic.getMessage(null))
+				.collect(Collectors.joining("\n"));
+			
+			throw new Error("Generated code does not compile:\n" + errors + "\n" + source);
+		}
+		
+		return classes;
+	}
+	
+	private static Class<?> load(String className, Map<String, byte[]> classes) {
+		final ClassLoader loader = new ClassLoader(InMemoryCompiler.class.getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String name) throws ClassNotFoundException {
+				final byte[] bytes = classes.get(name);
+				
+				if (bytes == null) {
+					throw new ClassNotFoundException(name);
+				}
+				
+				return defineClass(name, bytes, 0, bytes.length);
+			}
+		};
+		
+		try {
+			return loader.loadClass(className);
+		}
+		catch (ClassNotFoundException e) {
+			throw new Error("The generated code does not define " + className, e);
+		}
+	}
+	
+	/**
+	 * The class path of the application, along with the location of the runtime the generated code calls,
+	 * which is not on it when a build tool loads the classes itself.
+	 */
+	private static String classPath() {
+		final String classPath = System.getProperty("java.class.path");
+		
+		try {
+			final String runtime = new File(CodegenRuntime.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+			return classPath.isEmpty() ? runtime : classPath + File.pathSeparator + runtime;
+		}
+		catch (URISyntaxException | NullPointerException | SecurityException e) {
+			return classPath;
+		}
+	}
+	
+	private static URI uri(String name, JavaFileObject.Kind kind) {
+		return URI.create("string:///" + name.replace('.', '/') + kind.extension);
+	}
+	
+	private static String sha256(String source) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder hex = new StringBuilder();
+			
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new Error("SHA-256 is always available", e);
+		}
+	}
+}
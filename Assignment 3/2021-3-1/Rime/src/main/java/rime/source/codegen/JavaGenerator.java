@@ -0,0 +1,895 @@
+package rime.source.codegen;
+
+import norswap.utils.visitors.ValuedVisitor;
+import rime.source.ast.RimeNode;
+import rime.source.ast.constants.BinaryOperator;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.*;
+import rime.source.ast.expressions.literals.BoolLiteral;
+import rime.source.ast.expressions.literals.IntLiteral;
+import rime.source.ast.expressions.literals.NullLiteral;
+import rime.source.ast.expressions.literals.StringLiteral;
+import rime.source.ast.statements.*;
+import rime.source.runtime.BoxedMap;
+import rime.source.runtime.BoxedSet;
+import rime.source.runtime.CollectionKind;
+import rime.source.runtime.IntIntMap;
+import rime.source.runtime.IntList;
+import rime.source.runtime.IntObjectMap;
+import rime.source.runtime.IntSet;
+import rime.source.semantic.FrozenAttributes;
+import rime.source.semantic.types.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+
+
+/**
+ * Translates an analysed program to the source of a Java class with one method per proc and func, written the way
+ * the hand-written programs of {@code rime/examples/java} are. The methods run on an instance created for each run,
+ * which holds the constants and the arguments of the run.
+ * <p>
+ * Variables, parameters and return values whose static type is int or bool are Java primitives, strings are
+ * {@code CharSequence}s, a {@code String} or a {@link rime.source.runtime.Concatenation}, and collections are the
+ * {@code ArrayList}, {@code BoxedSet} and {@code BoxedMap} every engine uses. Builtins, and the operations needing the checks of the interpreter, are calls to {@link CodegenRuntime};
+ * values read from collections are only cast back to their static type where Java needs it. Rime's {@code &&}
+ * and {@code ||} evaluate both operands, which Java's {@code &} and {@code |} do as well.
+ */
+final class JavaGenerator {
+	static final String PACKAGE = "rime.generated";
+	static final String CLASS_NAME = "RimeProgram";
+	private static final String INDENT = "    ";
+	
+	// Precedences of the generated Java expressions, from the loosest to the tightest
+	private static final int OR = 1;
+	private static final int AND = 2;
+	private static final int EQUALITY = 3;
+	private static final int RELATIONAL = 4;
+	private static final int ADDITIVE = 5;
+	private static final int MULTIPLICATIVE = 6;
+	private static final int UNARY = 7;
+	private static final int PRIMARY = 8;
+	
+	/** Names a Rime identifier cannot keep in Java: keywords, runtime methods, generated fields and methods of Object */
+	private static final Set<String> RESERVED = Set.of(
+		"abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const", "continue",
+		"default", "do", "double", "else", "enum", "extends", "final", "finally", "float", "for", "goto", "if",
+		"implements", "import", "instanceof", "int", "interface", "long", "native", "new", "package", "private",
+		"protected", "public", "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this",
+		"throw", "throws", "transient", "try", "void", "volatile", "while", "true", "false", "null", "_",
+		"var", "yield", "record", "sealed", "permits",
+		"at", "atInt", "atUnchecked", "atIntUnchecked", "lookup", "setAt", "put", "checkList", "checkDict", "checkIndex", "list", "set", "dict", "concat",
+		"intList", "intSet", "intIntDict", "intObjectDict", "persistentList", "persistentSet", "persistentDict",
+		"divide", "valueEqual", "isTrue", "callDynamic", "wrap",
+		"constants", "mainArgs", CLASS_NAME,
+		"equals", "hashCode", "toString", "getClass", "notify", "notifyAll", "wait", "clone", "finalize");
+	
+	/** A generated Java expression, along with its static Java type */
+	private static final class Code {
+		final String text;
+		final String type;
+		final int precedence;
+		
+		/** Whether Java sees a constant expression, whose value it takes into account for reachability */
+		final boolean constant;
+		
+		Code(String text, String type, int precedence, boolean constant) {
+			this.text = text;
+			this.type = type;
+			this.precedence = precedence;
+			this.constant = constant;
+		}
+		
+		Code(String text, String type, int precedence) {
+			this(text, type, precedence, false);
+		}
+	}
+	
+	private final ValuedVisitor<RimeNode, Code> visitor = new ValuedVisitor<>();
+	private final FrozenAttributes attributes;
+	private final StringBuilder methods = new StringBuilder();
+	private final ArrayList<Object> constants = new ArrayList<>();
+	private final IdentityHashMap<Object, Integer> constantIndices = new IdentityHashMap<>();
+	private boolean usesMainArgs;
+	private ProcDefinition main;
+	
+	private final IdentityHashMap<Declaration, String> locals = new IdentityHashMap<>();
+	
+	/** Names of the locals in scope, which Java forbids to shadow */
+	private final ArrayList<String> scope = new ArrayList<>();
+	private FunctionDefinition function;
+	private String returnType;
+	private int depth;
+	
+	JavaGenerator(FrozenAttributes attributes) {
+		this.attributes = attributes;
+		
+		// EXPRESSIONS
+		visitor.register(BoolLiteral.class, node -> new Code(String.valueOf(node.value), "boolean", PRIMARY, true));
+		visitor.register(IntLiteral.class, this::intLiteral);
+		visitor.register(StringLiteral.class, node -> new Code(javaString(node.value), "String", PRIMARY, true));
+		visitor.register(NullLiteral.class, node -> new Code("null", "null", PRIMARY));
+		visitor.register(Identifier.class, this::identifier);
+		visitor.register(IndexedCollectionAccess.class, node -> indexedCollectionAccess(node, !attributes.isIntListsNullable()));
+		visitor.register(BinaryExpression.class, this::binaryExpression);
+		visitor.register(UnaryExpression.class, this::unaryExpression);
+		visitor.register(EmptyList.class, node -> new Code(switch (CollectionKind.of(attributes, node)) {
+			case INT -> "new IntList()";
+			case PERSISTENT -> "persistentList()";
+			default -> "new ArrayList<>()";
+		}, "List<Object>", PRIMARY));
+		visitor.register(EmptySet.class, node -> new Code(switch (CollectionKind.of(attributes, node)) {
+			case INT -> "new IntSet()";
+			case PERSISTENT -> "persistentSet()";
+			default -> "new BoxedSet()";
+		}, "Set<Object>", PRIMARY));
+		visitor.register(EmptyDict.class, node -> new Code(switch (CollectionKind.of(attributes, node)) {
+			case INT_TO_INT -> "new IntIntMap()";
+			case INT_TO_OBJECT -> "new IntObjectMap()";
+			case PERSISTENT -> "persistentDict()";
+			default -> "new BoxedMap()";
+		}, "Map<Object, Object>", PRIMARY));
+		visitor.register(ListElements.class, node -> call(switch (CollectionKind.of(attributes, node)) {
+			case INT -> "intList";
+			case PERSISTENT -> "persistentList";
+			default -> "list";
+		}, "List<Object>", objects(node.elements)));
+		visitor.register(SetElements.class, node -> call(switch (CollectionKind.of(attributes, node)) {
+			case INT -> "intSet";
+			case PERSISTENT -> "persistentSet";
+			default -> "set";
+		}, "Set<Object>", objects(node.elements)));
+		visitor.register(DictElements.class, this::dictElements);
+		visitor.register(FunctionCall.class, this::functionCall);
+		
+		// STATEMENTS
+		visitor.register(Block.class, this::block);
+		visitor.register(ExpressionStatement.class, this::expressionStatement);
+		visitor.register(EmptyStatement.class, node -> null);
+		visitor.register(Assignment.class, this::assignment);
+		visitor.register(IfStatement.class, this::ifStatement);
+		visitor.register(WhileStatement.class, this::whileStatement);
+		visitor.register(ExitStatement.class, this::exitStatement);
+		visitor.register(ReturnStatement.class, this::returnStatement);
+		visitor.register(VariableDefinition.class, this::variableDefinition);
+		
+		// FALLBACK
+		visitor.registerFallback(node -> {
+			throw new Error("Cannot generate " + node);
+		});
+	}
+	
+	JavaProgram generate(RootNode root) {
+		final List<FunctionDefinition> definitions = new ArrayList<>(root.preMainDefinitions);
+		definitions.add(root.entryPoint.definition);
+		main = root.entryPoint.definition;
+		
+		for (FunctionDefinition definition : definitions) {
+			method(definition);
+		}
+		
+		final StringBuilder source = new StringBuilder()
+			.append("package ").append(PACKAGE).append(";\n\n")
+			.append("import java.util.ArrayList;\n")
+			.append("import java.util.List;\n")
+			.append("import java.util.Map;\n")
+			.append("import java.util.Set;\n\n")
+			.append("import ").append(BoxedMap.class.getName()).append(";\n")
+			.append("import ").append(BoxedSet.class.getName()).append(";\n")
+			.append("import ").append(IntList.class.getName()).append(";\n")
+			.append("import ").append(IntSet.class.getName()).append(";\n")
+			.append("import ").append(IntIntMap.class.getName()).append(";\n")
+			.append("import ").append(IntObjectMap.class.getName()).append(";\n\n")
+			.append("import static ").append(CodegenRuntime.class.getName()).append(".*;\n\n")
+			.append("public final class ").append(CLASS_NAME).append(" {\n");
+		
+		// The values of a run are held by an instance, the class itself is shared by the runs of the same source
+		if (!constants.isEmpty()) {
+			source.append(INDENT).append("private final Object[] constants;\n");
+		}
+		
+		if (usesMainArgs) {
+			source.append(INDENT).append("private final List<Object> mainArgs;\n");
+		}
+		
+		if (!constants.isEmpty() || usesMainArgs) {
+			source.append("\n");
+		}
+		
+		source.append(INDENT).append("public ").append(CLASS_NAME).append("(Object[] constants, List<Object> mainArgs) {\n");
+		
+		if (!constants.isEmpty()) {
+			source.append(INDENT.repeat(2)).append("this.constants = constants;\n");
+		}
+		
+		if (usesMainArgs) {
+			source.append(INDENT.repeat(2)).append("this.mainArgs = mainArgs;\n");
+		}
+		
+		source.append(INDENT).append("}\n\n");
+		source.append(methods).append("}\n");
+		return new JavaProgram(source.toString(), PACKAGE + "." + CLASS_NAME, constants.toArray());
+	}
+	
+	private void method(FunctionDefinition definition) {
+		final List<Parameter> params = parameters(definition).params;
+		final Block body = definition instanceof ProcDefinition
+			? ((ProcDefinition) definition).body
+			: ((FuncDefinition) definition).body;
+		
+		locals.clear();
+		scope.clear();
+		function = definition;
+		returnType = definition instanceof FuncDefinition
+			? javaType(definition, ((FunctionType) attributes.type(definition)).returnType)
+			: "void";
+		
+		final String signature = params.stream()
+			.map(param -> javaType(param, attributes.type(param)) + " " + declareLocal(param, param.identifier.value))
+			.collect(Collectors.joining(", "));
+		
+		if (methods.length() > 0) {
+			methods.append("\n");
+		}
+		
+		line("public " + returnType + " " + methodName(name(definition)) + "(" + signature + ") {");
+		depth++;
+		line("try {");
+		depth++;
+		
+		if (attributes.isTailRecursive(definition)) {
+			// Tail calls to itself assign the parameters and start the loop over
+			line("start: while (true) {");
+			depth++;
+			
+			if (statements(body.statements)) {
+				exitStatement(null);
+			}
+			
+			depth--;
+			line("}");
+		}
+		// The semantic analysis makes the end of a func unreachable, but Java's flow analysis is not as precise
+		else if (statements(body.statements) && !returnType.equals("void")) {
+			line("return " + defaultValue(returnType) + ";");
+		}
+		
+		// The callees wrap the exceptions they throw first, the interpreter reports the innermost statement
+		final String exception = freshName("e");
+		depth--;
+		line("}");
+		line("catch (RuntimeException " + exception + ") {");
+		line(INDENT + "throw wrap(" + exception + ", " + javaString(name(definition)) + ");");
+		line("}");
+		depth--;
+		line("}");
+	}
+	
+	//region EXPRESSIONS
+	private Code intLiteral(IntLiteral node) {
+		return new Code(String.valueOf(node.value), "int", node.value < 0 ? UNARY : PRIMARY, true);
+	}
+	
+	private Code identifier(Identifier node) {
+		final Declaration decl = attributes.declaration(node);
+		final String local = locals.get(decl);
+		
+		if (local != null) {
+			return new Code(local, javaType(decl, attributes.type(decl)), PRIMARY);
+		}
+		
+		if (decl == attributes.rootScope.mainArgs) {
+			// The parameter of main holds the same list
+			if (function == main) {
+				return new Code(locals.get(main.parameters.params.get(0)), "List<Object>", PRIMARY);
+			}
+			
+			usesMainArgs = true;
+			return new Code("mainArgs", "List<Object>", PRIMARY);
+		}
+		
+		return new Code("constants[" + constant(decl) + "]", "Object", PRIMARY);
+	}
+	
+	private Code indexedCollectionAccess(IndexedCollectionAccess node, boolean unboxed) {
+		final Type collectionType = attributes.type(node.identifier);
+		final String collection = visitor.apply(node.identifier).text;
+		
+		// The interpreter checks the collection before it evaluates the index
+		if (attributes.isUnchecked(node)) {
+			final boolean ints = unboxed && ((ListType) collectionType).elementType instanceof IntType;
+			return call(ints ? "atIntUnchecked" : "atUnchecked", ints ? "int" : "Object", List.of(collection, expression(node.index, "int").text));
+		}
+		else if (collectionType instanceof ListType) {
+			final String list = isTrivial(node.index) ? collection : "checkList(" + collection + ")";
+			final boolean ints = unboxed && ((ListType) collectionType).elementType instanceof IntType;
+			return call(ints ? "atInt" : "at", ints ? "int" : "Object", List.of(list, expression(node.index, "int").text));
+		}
+		else if (collectionType instanceof DictType) {
+			final String dict = isTrivial(node.index) ? collection : "checkDict(" + collection + ")";
+			return call("lookup", "Object", List.of(dict, visitor.apply(node.index).text));
+		}
+		else {
+			throw new IllegalArgumentException("Node should be either a list or a dict");
+		}
+	}
+	
+	private Code binaryExpression(BinaryExpression node) {
+		final Type leftType = attributes.type(node.left);
+		final Type rightType = attributes.type(node.right);
+		
+		if (leftType instanceof BoolType && rightType instanceof BoolType) {
+			final Code left = expression(node.left, "boolean");
+			final Code right = expression(node.right, "boolean");
+			
+			switch (node.operator) {
+				case LOGICAL_AND:
+					return binary(left, "&", right, AND, "boolean");
+				case LOGICAL_OR:
+					return binary(left, "|", right, OR, "boolean");
+				case EQUAL_TO:
+					return equality(left, "==", right);
+				case NOT_EQUAL_TO:
+					return equality(left, "!=", right);
+			}
+		}
+		
+		if (node.operator == BinaryOperator.ADD && (leftType instanceof StringType || rightType instanceof StringType)) {
+			final Code left = visitor.apply(node.left);
+			final Code right = visitor.apply(node.right);
+			
+			// Java converts these to strings the way the interpreter does
+			return isPrintable(left) && isPrintable(right)
+				? binary(left, "+", right, ADDITIVE, "String")
+				: call("concat", "CharSequence", List.of(left.text, right.text));
+		}
+		
+		if (leftType instanceof IntType && rightType instanceof IntType) {
+			final Code left = expression(node.left, "int");
+			final Code right = expression(node.right, "int");
+			
+			return switch (node.operator) {
+				case ADD -> binary(left, "+", right, ADDITIVE, "int");
+				case SUBTRACT -> binary(left, "-", right, ADDITIVE, "int");
+				case MULTIPLY -> binary(left, "*", right, MULTIPLICATIVE, "int");
+				case DIVIDE -> call("divide", "int", List.of(left.text, right.text));
+				case REMAINDER -> binary(left, "%", right, MULTIPLICATIVE, "int");
+				case LESS_THAN -> binary(left, "<", right, RELATIONAL, "boolean");
+				case LESS_THAN_EQUAL -> binary(left, "<=", right, RELATIONAL, "boolean");
+				case GREATER_THAN -> binary(left, ">", right, RELATIONAL, "boolean");
+				case GREATER_THAN_EQUAL -> binary(left, ">=", right, RELATIONAL, "boolean");
+				case EQUAL_TO -> equality(left, "==", right);
+				case NOT_EQUAL_TO -> equality(left, "!=", right);
+				default -> throw new Error("Should not reach here");
+			};
+		}
+		
+		final Code left = visitor.apply(node.left);
+		final Code right = visitor.apply(node.right);
+		
+		if (leftType.isPrimitive()) {
+			final Code equal = call("valueEqual", "boolean", List.of(left.text, right.text));
+			
+			return switch (node.operator) {
+				case EQUAL_TO -> equal;
+				case NOT_EQUAL_TO -> new Code("!" + equal.text, "boolean", UNARY);
+				default -> throw new Error("Should not reach here");
+			};
+		}
+		
+		// Java rejects comparing references of unrelated static types
+		final Code reference = left.type.equals(right.type) || isAnyReference(left) || isAnyReference(right)
+			? left
+			: new Code("(Object) " + parenthesize(left, PRIMARY), "Object", UNARY);
+		
+		return switch (node.operator) {
+			case EQUAL_TO -> binary(reference, "==", right, EQUALITY, "boolean");
+			case NOT_EQUAL_TO -> binary(reference, "!=", right, EQUALITY, "boolean");
+			default -> throw new Error("Should not reach here");
+		};
+	}
+	
+	/**
+	 * Compares two ints or two bools, which must not both be boxed: Java would compare the boxes.
+	 */
+	private Code equality(Code left, String operator, Code right) {
+		final Code unboxed = left.type.equals("Integer") && right.type.equals("Integer")
+			|| left.type.equals("Boolean") && right.type.equals("Boolean")
+			? new Code("(" + (left.type.equals("Integer") ? "int" : "boolean") + ") " + left.text, left.type, UNARY)
+			: left;
+		
+		return binary(unboxed, operator, right, EQUALITY, "boolean");
+	}
+	
+	private Code unaryExpression(UnaryExpression node) {
+		switch (node.operator) {
+			case NEGATIVE -> {
+				final Code operand = expression(node.operand, "int");
+				final String text = operand.text.startsWith("-") ? "(" + operand.text + ")" : parenthesize(operand, UNARY);
+				return new Code("-" + text, "int", UNARY, operand.constant);
+			}
+			case LOGICAL_COMPLEMENT -> {
+				final Code operand = expression(node.operand, "boolean");
+				return new Code("!" + parenthesize(operand, UNARY), "boolean", UNARY, operand.constant);
+			}
+			default -> throw new Error("Should not reach here");
+		}
+	}
+	
+	private Code dictElements(DictElements node) {
+		final List<Expression> keysAndValues = new ArrayList<>();
+		
+		for (DictElement element : node.elements) {
+			keysAndValues.add(element.key);
+			keysAndValues.add(element.value);
+		}
+		
+		final String factory = switch (CollectionKind.of(attributes, node)) {
+			case INT_TO_INT -> "intIntDict";
+			case INT_TO_OBJECT -> "intObjectDict";
+			case PERSISTENT -> "persistentDict";
+			default -> "dict";
+		};
+		
+		return call(factory, "Map<Object, Object>", objects(keysAndValues));
+	}
+	
+	private Code functionCall(FunctionCall node) {
+		final Declaration decl = attributes.declaration(node.name);
+		
+		if (decl instanceof FunctionDefinition) {
+			final List<Parameter> params = parameters((FunctionDefinition) decl).params;
+			final List<String> args = new ArrayList<>();
+			
+			for (int i = 0; i < params.size(); i++) {
+				args.add(expression(node.arguments.get(i), javaType(params.get(i), attributes.type(params.get(i)))).text);
+			}
+			
+			final String returns = decl instanceof FuncDefinition
+				? javaType(decl, ((FunctionType) attributes.type(decl)).returnType)
+				: "void";
+			
+			return call(methodName(name((FunctionDefinition) decl)), returns, args);
+		}
+		
+		if (decl instanceof PredefinedFunction) {
+			final String name = ((PredefinedFunction) decl).name;
+			final List<String> args = node.arguments.stream()
+				.map(argument -> visitor.apply(argument).text)
+				.collect(Collectors.toList());
+			
+			return call(attributes.isInPlace(node) ? name + "InPlace" : name, switch (name) {
+				case "print" -> "void";
+				case "parseInt", "length" -> "int";
+				case "append" -> "List<Object>";
+				case "add" -> "Set<Object>";
+				case "contains" -> "boolean";
+				default -> throw new Error("Should not reach here");
+			}, args);
+		}
+		
+		final List<String> args = new ArrayList<>(List.of("this", visitor.apply(node.name).text));
+		args.addAll(objects(node.arguments));
+		return call("callDynamic", "Object", args);
+	}
+	//endregion
+	
+	//region STATEMENTS
+	/**
+	 * Generates {@code statements} in their own scope, leaving out those Java would reject as unreachable,
+	 * and returns whether the last one can complete normally.
+	 */
+	private boolean statements(List<Statement> statements) {
+		final int outerScope = scope.size();
+		boolean completes = true;
+		
+		for (Statement statement : statements) {
+			visitor.apply(statement);
+			
+			if (!completesNormally(statement)) {
+				completes = false;
+				break;
+			}
+		}
+		
+		scope.subList(outerScope, scope.size()).clear();
+		return completes;
+	}
+	
+	private Code block(Block node) {
+		line("{");
+		depth++;
+		statements(node.statements);
+		depth--;
+		line("}");
+		return null;
+	}
+	
+	private Code expressionStatement(ExpressionStatement node) {
+		// Like the interpreter, only calls are executed as statements
+		if (isTailCall(node.expression)) {
+			tailCall((FunctionCall) node.expression);
+		}
+		else if (node.expression instanceof FunctionCall) {
+			line(visitor.apply(node.expression).text + ";");
+		}
+		
+		return null;
+	}
+	
+	private Code assignment(Assignment node) {
+		if (node.left instanceof Identifier) {
+			final Code variable = visitor.apply(node.left);
+			line(variable.text + " = " + expression(node.right, variable.type).text + ";");
+			return null;
+		}
+		
+		final IndexedCollectionAccess access = (IndexedCollectionAccess) node.left;
+		final Type collectionType = attributes.type(access.identifier);
+		final String collection = visitor.apply(access.identifier).text;
+		final boolean trivialValue = isTrivial(node.right);
+		
+		// The interpreter checks the collection, then evaluates and checks the index, then evaluates the value
+		if (collectionType instanceof ListType) {
+			final String list = isTrivial(access.index) && trivialValue ? collection : "checkList(" + collection + ")";
+			final String index = expression(access.index, "int").text;
+			final String checkedIndex = trivialValue ? index : "checkIndex(" + index + ")";
+			line(call("setAt", "void", List.of(list, checkedIndex, visitor.apply(node.right).text)).text + ";");
+		}
+		else if (collectionType instanceof DictType) {
+			final String dict = isTrivial(access.index) && trivialValue ? collection : "checkDict(" + collection + ")";
+			final List<String> args = List.of(dict, visitor.apply(access.index).text, visitor.apply(node.right).text);
+			line(call("put", "void", args).text + ";");
+		}
+		else {
+			throw new Error("Should not reach here");
+		}
+		
+		return null;
+	}
+	
+	private Code ifStatement(IfStatement node) {
+		IfStatement current = node;
+		line("if (" + condition(current.condition).text + ") {");
+		
+		while (true) {
+			depth++;
+			statements(current.trueBody.statements);
+			depth--;
+			
+			if (current.falseBody == null) {
+				break;
+			}
+			
+			final List<Statement> falseStatements = current.falseBody.statements;
+			
+			if (falseStatements.size() == 1 && falseStatements.get(0) instanceof IfStatement) {
+				current = (IfStatement) falseStatements.get(0);
+				line("} else if (" + condition(current.condition).text + ") {");
+				continue;
+			}
+			
+			line("} else {");
+			depth++;
+			statements(falseStatements);
+			depth--;
+			break;
+		}
+		
+		line("}");
+		return null;
+	}
+	
+	private Code whileStatement(WhileStatement node) {
+		final Code condition = condition(node.condition);
+		
+		// Java would take a constant condition into account, rejecting the code after an infinite loop
+		line("while (" + (condition.constant ? "isTrue(" + condition.text + ")" : condition.text) + ") {");
+		depth++;
+		statements(node.body.statements);
+		depth--;
+		line("}");
+		return null;
+	}
+	
+	private Code exitStatement(ExitStatement node) {
+		line(returnType.equals("void") ? "return;" : "return " + defaultValue(returnType) + ";");
+		return null;
+	}
+	
+	private Code returnStatement(ReturnStatement node) {
+		if (node.expression == null) {
+			return exitStatement(null);
+		}
+		
+		if (isTailCall(node.expression)) {
+			tailCall((FunctionCall) node.expression);
+			return null;
+		}
+		
+		if (returnType.equals("void")) {
+			if (node.expression instanceof FunctionCall) {
+				line(visitor.apply(node.expression).text + ";");
+			}
+			
+			line("return;");
+		}
+		else {
+			line("return " + expression(node.expression, returnType).text + ";");
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Generates a tail call of the function to itself. The arguments are evaluated before any parameter they may
+	 * read is assigned.
+	 */
+	private void tailCall(FunctionCall node) {
+		final List<Parameter> params = parameters(function).params;
+		final List<String> values = new ArrayList<>();
+		final int outerScope = scope.size();
+		
+		for (int i = 0; i < params.size(); i++) {
+			final String type = javaType(params.get(i), attributes.type(params.get(i)));
+			final String value = expression(node.arguments.get(i), type).text;
+			
+			if (params.size() == 1 || value.equals(locals.get(params.get(i)))) {
+				values.add(value);
+			}
+			else {
+				final String temporary = freshName(locals.get(params.get(i)) + "_next");
+				line(type + " " + temporary + " = " + value + ";");
+				values.add(temporary);
+			}
+		}
+		
+		for (int i = 0; i < params.size(); i++) {
+			final String param = locals.get(params.get(i));
+			
+			if (!values.get(i).equals(param)) {
+				line(param + " = " + values.get(i) + ";");
+			}
+		}
+		
+		line("continue start;");
+		scope.subList(outerScope, scope.size()).clear();
+	}
+	
+	private Code variableDefinition(VariableDefinition node) {
+		final String type = javaType(node, attributes.type(node));
+		final String value = expression(node.assignment.right, type).text;
+		line(type + " " + declareLocal(node, ((Identifier) node.assignment.left).value) + " = " + value + ";");
+		return null;
+	}
+	
+	/**
+	 * Mirrors Java's rules on statements that can complete normally, for the statements as generated.
+	 */
+	private boolean completesNormally(Statement node) {
+		if (node instanceof ReturnStatement || node instanceof ExitStatement) {
+			return false;
+		}
+		
+		if (node instanceof ExpressionStatement && isTailCall(((ExpressionStatement) node).expression)) {
+			return false;
+		}
+		
+		if (node instanceof Block) {
+			return ((Block) node).statements.stream().allMatch(this::completesNormally);
+		}
+		
+		if (node instanceof IfStatement) {
+			final IfStatement ifStatement = (IfStatement) node;
+			return ifStatement.falseBody == null
+				|| completesNormally(ifStatement.trueBody)
+				|| completesNormally(ifStatement.falseBody);
+		}
+		
+		return true;
+	}
+	//endregion
+	
+	//region UTILS
+	/**
+	 * Generates {@code node} for a context expecting a value of the given Java type.
+	 */
+	private Code expression(Expression node, String type) {
+		// An element of a list of ints may be null, it is then only read unboxed where an int is expected
+		final Code code = type.equals("int") && node instanceof IndexedCollectionAccess
+			? indexedCollectionAccess((IndexedCollectionAccess) node, true)
+			: visitor.apply(node);
+		
+		if (code.type.equals(type) || type.equals("Object") || code.type.equals("null") && !isPrimitive(type)
+			|| type.equals("CharSequence") && code.type.equals("String")
+			|| type.equals("int") && code.type.equals("Integer") || type.equals("boolean") && code.type.equals("Boolean")) {
+			return code;
+		}
+		
+		final String cast = type.equals("int") ? "Integer" : type.equals("boolean") ? "Boolean" : type;
+		return new Code("(" + cast + ") " + parenthesize(code, PRIMARY), cast, UNARY);
+	}
+	
+	private Code condition(Expression node) {
+		final Code code = visitor.apply(node);
+		
+		// A bool which may be null is false when it is, as in the interpreter
+		return code.type.equals("boolean") ? code : call("isTrue", "boolean", List.of(code.text));
+	}
+	
+	private static Code binary(Code left, String operator, Code right, int precedence, String type) {
+		return new Code(
+			parenthesize(left, precedence) + " " + operator + " " + parenthesize(right, precedence + 1),
+			type,
+			precedence,
+			left.constant && right.constant);
+	}
+	
+	private static Code call(String method, String type, List<String> args) {
+		return new Code(method + "(" + String.join(", ", args) + ")", type, PRIMARY);
+	}
+	
+	/**
+	 * Generates the arguments of a variadic runtime method, where a lone null would be taken for the array.
+	 */
+	private List<String> objects(List<? extends Expression> elements) {
+		return elements.stream()
+			.map(visitor::apply)
+			.map(code -> code.type.equals("null") ? "(Object) null" : code.text)
+			.collect(Collectors.toList());
+	}
+	
+	private static String parenthesize(Code code, int precedence) {
+		return code.precedence < precedence ? "(" + code.text + ")" : code.text;
+	}
+	
+	/**
+	 * Whether evaluating {@code node} can neither fail nor have an effect, so that it can be moved past the checks.
+	 */
+	private static boolean isTrivial(Expression node) {
+		return node instanceof Identifier || node instanceof IntLiteral || node instanceof BoolLiteral
+			|| node instanceof StringLiteral || node instanceof NullLiteral;
+	}
+	
+	private boolean isTailCall(Expression node) {
+		return node instanceof FunctionCall && attributes.isTailCall((FunctionCall) node);
+	}
+	
+	private static boolean isPrintable(Code code) {
+		return Set.of("String", "int", "boolean", "Integer", "Boolean").contains(code.type);
+	}
+	
+	private static boolean isAnyReference(Code code) {
+		return code.type.equals("Object") || code.type.equals("null");
+	}
+	
+	private static boolean isPrimitive(String type) {
+		return type.equals("int") || type.equals("boolean");
+	}
+	
+	private static String defaultValue(String type) {
+		return switch (type) {
+			case "int" -> "0";
+			case "boolean" -> "false";
+			default -> "null";
+		};
+	}
+	
+	/**
+	 * Returns the Java type of a variable, parameter or func return, boxed for the ints and bools which may be null.
+	 */
+	private String javaType(Declaration decl, Type type) {
+		final String javaType = javaType(type);
+		
+		if (!attributes.isNullable(decl)) {
+			return javaType;
+		}
+		
+		return javaType.equals("int") ? "Integer" : javaType.equals("boolean") ? "Boolean" : javaType;
+	}
+	
+	private static String javaType(Type type) {
+		if (type instanceof IntType) {
+			return "int";
+		}
+		else if (type instanceof BoolType) {
+			return "boolean";
+		}
+		else if (type instanceof StringType) {
+			return "CharSequence";
+		}
+		else if (type instanceof ListType) {
+			return "List<Object>";
+		}
+		else if (type instanceof SetType) {
+			return "Set<Object>";
+		}
+		else if (type instanceof DictType) {
+			return "Map<Object, Object>";
+		}
+		else if (type instanceof VoidType) {
+			return "void";
+		}
+		
+		return "Object";
+	}
+	
+	/**
+	 * Gives {@code decl} a Java name, renamed if it would shadow a local still in scope.
+	 */
+	private String declareLocal(Declaration decl, String rimeName) {
+		final String name = freshName(RESERVED.contains(rimeName) ? rimeName + "_" : rimeName);
+		locals.put(decl, name);
+		return name;
+	}
+	
+	/**
+	 * Adds a name based on {@code base} to the scope, renamed if it would shadow a local still in scope.
+	 */
+	private String freshName(String base) {
+		String name = base;
+		
+		for (int i = 1; scope.contains(name); i++) {
+			name = base + "_" + i;
+		}
+		
+		scope.add(name);
+		return name;
+	}
+	
+	static String methodName(String rimeName) {
+		return RESERVED.contains(rimeName) ? rimeName + "_" : rimeName;
+	}
+	
+	private static String name(FunctionDefinition definition) {
+		return definition instanceof ProcDefinition
+			? ((ProcDefinition) definition).name.value
+			: ((FuncDefinition) definition).name.value;
+	}
+	
+	private static Parameters parameters(FunctionDefinition definition) {
+		return definition instanceof ProcDefinition
+			? ((ProcDefinition) definition).parameters
+			: ((FuncDefinition) definition).parameters;
+	}
+	
+	private int constant(Object value) {
+		return constantIndices.computeIfAbsent(value, key -> {
+			constants.add(key);
+			return constants.size() - 1;
+		});
+	}
+	
+	private static String javaString(String value) {
+		final StringBuilder literal = new StringBuilder("\"");
+		
+		for (char c : value.toCharArray()) {
+			switch (c) {
+				case '"' -> literal.append("\\\"");
+				case '\\' -> literal.append("\\\\");
+				case '\n' -> literal.append("\\n");
+				case '\r' -> literal.append("\\r");
+				case '\t' -> literal.append("\\t");
+				default -> {
+					if (c < ' ' || c > '~') {
+						literal.append(String.format("\\u%04x", (int) c));
+					}
+					else {
+						literal.append(c);
+					}
+				}
+			}
+		}
+		
+		return literal.append('"').toString();
+	}
+	
+	private void line(String text) {
+		methods.append(INDENT.repeat(depth + 1)).append(text).append('\n');
+	}
+	//endregion
+}
@@ -0,0 +1,32 @@
+package rime.source.codegen;
+
+import norswap.uranium.Reactor;
+import rime.source.ast.declarations.RootNode;
+import rime.source.runtime.CollectionMode;
+import rime.source.semantic.FrozenAttributes;
+
+
+
+/**
+ * A whole program translated to the source of a Java class, along with the constants an instance of it is
+ * created with for a run.
+ */
+public final class JavaProgram {
+	public final String source;
+	public final String className;
+	public final Object[] constants;
+	
+	JavaProgram(String source, String className, Object[] constants) {
+		this.source = source;
+		this.className = className;
+		this.constants = constants;
+	}
+	
+	public static JavaProgram generate(Reactor reactor, RootNode root) {
+		return generate(reactor, root, CollectionMode.COPYING);
+	}
+	
+	public static JavaProgram generate(Reactor reactor, RootNode root, CollectionMode collectionMode) {
+		return new JavaGenerator(FrozenAttributes.prepare(reactor, root, collectionMode)).generate(root);
+	}
+}
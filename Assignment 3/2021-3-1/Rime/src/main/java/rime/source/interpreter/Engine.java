@@ -0,0 +1,15 @@
+package rime.source.interpreter;
+
+import rime.source.ast.RimeNode;
+
+import java.util.ArrayList;
+
+
+
+/**
+ * Executes an analysed Rime program. Every implementation must behave exactly like {@link Interpreter},
+ * which is the reference semantics, including the exceptions surfaced to the caller.
+ */
+public interface Engine {
+	void interpret(RimeNode root, ArrayList<String> mainArgs);
+}
@@ -0,0 +1,36 @@
+package rime.source.interpreter;
+
+import norswap.uranium.Reactor;
+import rime.source.bytecode.BytecodeEngine;
+import rime.source.closure.ClosureEngine;
+import rime.source.codegen.CodegenEngine;
+import rime.source.jvm.JvmEngine;
+import rime.source.register.RegisterEngine;
+import rime.source.runtime.CollectionMode;
+
+import java.util.function.BiFunction;
+
+
+
+public enum EngineKind {
+	INTERPRETER(Interpreter::new),
+	CLOSURE(ClosureEngine::new),
+	BYTECODE(BytecodeEngine::new),
+	REGISTER(RegisterEngine::new),
+	JVM(JvmEngine::new),
+	CODEGEN(CodegenEngine::new);
+	
+	private final BiFunction<Reactor, CollectionMode, Engine> factory;
+	
+	EngineKind(BiFunction<Reactor, CollectionMode, Engine> factory) {
+		this.factory = factory;
+	}
+	
+	public Engine create(Reactor reactor) {
+		return create(reactor, CollectionMode.COPYING);
+	}
+	
+	public Engine create(Reactor reactor, CollectionMode collectionMode) {
+		return factory.apply(reactor, collectionMode);
+	}
+}
@@ -2,7 +2,6 @@ package rime.source.interpreter;
 
 import norswap.uranium.Reactor;
 import norswap.utils.exceptions.Exceptions;
-import norswap.utils.exceptions.NoStackException;
 import norswap.utils.visitors.ValuedVisitor;
 import rime.source.ast.RimeNode;
 import rime.source.ast.declarations.*;
@@ -11,34 +10,87 @@ import rime.source.ast.expressions.literals.BoolLiteral;
 import rime.source.ast.expressions.literals.IntLiteral;
 import rime.source.ast.expressions.literals.StringLiteral;
 import rime.source.ast.statements.*;
-import rime.source.parsing.RimeGrammar;
 import rime.source.interpreter.exceptions.InterpreterException;
 import rime.source.interpreter.exceptions.PassthroughException;
-import rime.source.semantic.scope.RootScope;
-import rime.source.semantic.scope.Scope;
+import rime.source.runtime.Builtins;
+import rime.source.runtime.CollectionKind;
+import rime.source.runtime.CollectionMode;
+import rime.source.runtime.Concatenation;
+import rime.source.runtime.Indexing;
+import rime.source.semantic.FrozenAttributes;
 import rime.source.semantic.types.*;
 
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 import static norswap.utils.Util.cast;
 import static norswap.utils.Vanilla.*;
-import static rime.source.semantic.AttributeName.*;
 import static rime.source.ast.constants.BinaryOperator.*;
 
 
 
-public final class Interpreter {
+public final class Interpreter implements Engine {
 	private final ValuedVisitor<RimeNode, Object> visitor = new ValuedVisitor<>();
 	private final Reactor reactor;
+	private final CollectionMode collectionMode;
 	private final ArrayList<String> mainArgs = new ArrayList<>();
-	private ScopeStorage rootStorage;
-	private ScopeStorage storage = null;
-	private RootScope rootScope;
+	private Object[] frame = null;
+	
+	/** Completions of {@link #execute(Statement)}, as in the closure engine */
+	private static final int NORMAL = 0;
+	private static final int RETURN = 1;
+	private static final int EXIT = 2;
+	private static final int TAIL_CALL = 3;
+	
+	/** The value of the last return statement, read by the call completing with {@link #RETURN} */
+	private Object returnValue;
+	
+	/** The frame bound to the arguments of the last call, or of the tail call completing with {@link #TAIL_CALL} */
+	private Object[] calleeFrame;
+	private int[] calleePrimitives;
+	
+	/** The statement being executed, named by the error of a failing program */
+	private Statement current;
+	
+	/** Holds the int and bool locals of the current function, in the same slots, bools being 0 or 1 */
+	private int[] primitives = null;
+	private FrozenAttributes attributes;
+	
+	/** What each call site resolved to when it first ran, indexed by the id of the {@link FunctionCall} */
+	private CallSite[] callSites;
+	
+	/**
+	 * The callee bound by a call site: a function of the program, with what binding its arguments needs, or the
+	 * handler of a predefined function. Sites naming a function keep it for good, those calling the value of a
+	 * local rebind when the value is no longer {@link #callee}.
+	 */
+	private static final class CallSite {
+		final Declaration callee;
+		final FunctionDefinition function;
+		final Block body;
+		final int[] slots;
+		final Parameter[] params;
+		final Function<Object[], Object> builtin;
+		
+		CallSite(Declaration callee, FunctionDefinition function, Block body, int[] slots, Parameter[] params,
+				Function<Object[], Object> builtin) {
+			this.callee = callee;
+			this.function = function;
+			this.body = body;
+			this.slots = slots;
+			this.params = params;
+			this.builtin = builtin;
+		}
+	}
 	
 	public Interpreter(Reactor reactor) {
+		this(reactor, CollectionMode.COPYING);
+	}
+	
+	public Interpreter(Reactor reactor, CollectionMode collectionMode) {
 		this.reactor = reactor;
+		this.collectionMode = collectionMode;
 		
 		// EXPRESSIONS
 		visitor.register(BoolLiteral.class, this::boolLiteral);
@@ -58,13 +110,8 @@ public final class Interpreter {
 		visitor.register(Assignment.class, this::assignment);
 		visitor.register(FunctionCall.class, this::functionCall);
 		
-		// STATEMENTS
-		visitor.register(Block.class, this::block);
+		// STATEMENTS, the control flow ones are dispatched by execute
 		visitor.register(ExpressionStatement.class, this::expressionStatement);
-		visitor.register(IfStatement.class, this::ifStatement);
-		visitor.register(WhileStatement.class, this::whileStatement);
-		visitor.register(ExitStatement.class, this::exitStatement);
-		visitor.register(ReturnStatement.class, this::returnStatement);
 		
 		// DECLARATIONS
 		visitor.register(VariableDefinition.class, this::variableDefinition);
@@ -75,51 +122,139 @@ public final class Interpreter {
 		visitor.registerFallback(node -> null);
 	}
 	
+	@Override
 	public void interpret(RimeNode root, ArrayList<String> mainArgs) {
 		this.mainArgs.addAll(mainArgs);
+		attributes = FrozenAttributes.prepare(reactor, cast(root), collectionMode);
+		callSites = new CallSite[attributes.size()];
 		
 		try {
-			run(root);
+			visitor.apply(root);
 		}
 		catch (PassthroughException e) {
 			throw Exceptions.runtime(e.getCause());
 		}
-	}
-	
-	private Object run(RimeNode node) {
-		try {
-			return visitor.apply(node);
-		}
-		catch (InterpreterException | PassthroughException | Exit | Return e) {
+		catch (InterpreterException e) {
 			throw e;
 		}
 		catch (RuntimeException e) {
-			throw new InterpreterException("exception while executing " + node, e);
+			throw new InterpreterException("exception while executing " + current, e);
+		}
+		finally {
+			current = null;
+			returnValue = null;
 		}
 	}
 	
 	private <T> T get(RimeNode node) {
-		return cast(run(node));
+		return cast(visitor.apply(node));
+	}
+	
+	/**
+	 * Executes a statement and returns how it completed: {@link #NORMAL}, {@link #RETURN}, {@link #EXIT} or
+	 * {@link #TAIL_CALL}. Unlike exceptions, the completion costs nothing to propagate through the enclosing statements.
+	 */
+	private int execute(Statement node) {
+		current = node;
+		
+		if (node instanceof Block) {
+			return block((Block) node);
+		}
+		
+		if (node instanceof IfStatement) {
+			return ifStatement((IfStatement) node);
+		}
+		
+		if (node instanceof WhileStatement) {
+			return whileStatement((WhileStatement) node);
+		}
+		
+		if (node instanceof ReturnStatement) {
+			return returnStatement((ReturnStatement) node);
+		}
+		
+		if (node instanceof ExitStatement) {
+			return EXIT;
+		}
+		
+		if (node instanceof ExpressionStatement && isTailCall(((ExpressionStatement) node).expression)) {
+			return tailCall((FunctionCall) ((ExpressionStatement) node).expression);
+		}
+		
+		visitor.apply(node);
+		return NORMAL;
 	}
 	
-	private static final class Return extends NoStackException {
-		/**
-		 * Used to implement the control flow of the return statement.
-		 */
+	/**
+	 * Evaluates an expression whose static type is int without boxing it, nor its operands when they are ints
+	 * too.
+	 */
+	private int getInt(Expression node) {
+		if (node instanceof IntLiteral) {
+			return ((IntLiteral) node).value;
+		}
+		
+		if (node instanceof Identifier) {
+			final int slot = attributes.slot((Identifier) node);
+			return isBoxed((Identifier) node) ? (Integer) frame[slot] : primitives[slot];
+		}
+		
+		if (node instanceof BinaryExpression) {
+			return intOperation((BinaryExpression) node);
+		}
+		
+		if (node instanceof UnaryExpression) {
+			return -getInt(((UnaryExpression) node).operand);
+		}
 		
-		public final Object value;
+		if (node instanceof FunctionCall && isBuiltin((FunctionCall) node)) {
+			final FunctionCall call = (FunctionCall) node;
+			final Object argument = get(call.arguments.get(0));
+			
+			return ((PredefinedFunction) attributes.declaration(call.name)).name.equals("length")
+				? Builtins.length(argument)
+				: Builtins.parseInt(argument);
+		}
 		
-		private Return(Object value) {
-			this.value = value;
+		if (node instanceof IndexedCollectionAccess && isListAccess((IndexedCollectionAccess) node)) {
+			final IndexedCollectionAccess access = (IndexedCollectionAccess) node;
+			
+			return attributes.isUnchecked(access)
+				? Indexing.getIntUnchecked(get(access.identifier), getInt(access.index))
+				: Indexing.getInt(cast(getList(access.identifier)), getInt(access.index));
 		}
+		
+		// Dict reads and calls: the value is already boxed
+		return (Integer) visitor.apply(node);
 	}
 	
-	private static final class Exit extends NoStackException {
-		/**
-		 * Used to implement the control flow of the exit statement.
-		 */
+	/**
+	 * Evaluates an expression whose static type is bool without boxing it, see {@link #getInt(Expression)}.
+	 */
+	private boolean getBoolean(Expression node) {
+		if (node instanceof BoolLiteral) {
+			return ((BoolLiteral) node).value;
+		}
+		
+		if (node instanceof Identifier) {
+			final int slot = attributes.slot((Identifier) node);
+			return isBoxed((Identifier) node) ? (Boolean) frame[slot] : primitives[slot] != 0;
+		}
+		
+		if (node instanceof BinaryExpression) {
+			return booleanOperation((BinaryExpression) node);
+		}
+		
+		if (node instanceof UnaryExpression) {
+			return !getBoolean(((UnaryExpression) node).operand);
+		}
+		
+		if (node instanceof FunctionCall && isBuiltin((FunctionCall) node)) {
+			final FunctionCall call = (FunctionCall) node;
+			return Builtins.contains(get(call.arguments.get(0)), get(call.arguments.get(1)));
+		}
 		
-		private Exit() { }
+		return (Boolean) visitor.apply(node);
 	}
 	
 	//region EXPRESSIONS
@@ -136,25 +271,39 @@ public final class Interpreter {
 	}
 	
 	private Object identifier(Identifier node) {
-		final Scope scope = reactor.get(node.attr(SCOPE));
-		final Declaration decl = reactor.get(node.attr(DECL));
+		final int slot = attributes.slot(node);
 		
-		if (node.value.equals(RimeGrammar.MAIN_ARGS)) {
-			return mainArgs;
+		if (slot >= 0) {
+			final Type type = attributes.type(node);
+			
+			if (isBoxed(node)) {
+				return frame[slot];
+			}
+			
+			if (type instanceof IntType) {
+				return primitives[slot];
+			}
+			
+			return type instanceof BoolType ? primitives[slot] != 0 : frame[slot];
 		}
 		
-		if (decl instanceof VariableDefinition || decl instanceof Parameter) {
-			return (scope == rootScope) ? rootStorage.get(scope, node.value) : storage.get(scope, node.value);
+		final Declaration decl = attributes.declaration(node);
+		
+		if (decl == attributes.rootScope.mainArgs) {
+			return mainArgs;
 		}
 		
 		return decl;
 	}
 	
 	private Object indexedCollectionAccess(IndexedCollectionAccess node) {
-		final Type collectionType = reactor.get(node.identifier.attr(TYPE));
+		final Type collectionType = attributes.type(node.identifier);
 		
-		if (collectionType instanceof ListType) {
-			final ArrayList<?> list = getList(node.identifier);
+		if (attributes.isUnchecked(node)) {
+			return Indexing.getUnchecked(get(node.identifier), getInt(node.index));
+		}
+		else if (collectionType instanceof ListType) {
+			final List<?> list = getList(node.identifier);
 			
 			try {
 				return list.get(getAndCheckListIndex(node.index));
@@ -179,84 +328,146 @@ public final class Interpreter {
 	}
 	
 	private Object binaryExpression(BinaryExpression node) {
-		final Type leftType = reactor.get(node.left.attr(TYPE));
-		final Type rightType = reactor.get(node.right.attr(TYPE));
+		final Type type = attributes.type(node);
+		
+		if (type instanceof IntType) {
+			return intOperation(node);
+		}
+		
+		if (type instanceof BoolType) {
+			return booleanOperation(node);
+		}
+		
+		// Only string concatenation is left
+		return Concatenation.concat(get(node.left), get(node.right));
+	}
+	
+	private int intOperation(BinaryExpression node) {
+		final int left = getInt(node.left);
+		final int right = getInt(node.right);
+		
+		switch (node.operator) {
+			case MULTIPLY:
+				return left * right;
+			case DIVIDE:
+				if (right != 0) {
+					return left / right;
+				}
+				else {
+					throw new ArithmeticException("Division by zero");
+				}
+			case REMAINDER:
+				return left % right;
+			case ADD:
+				return left + right;
+			case SUBTRACT:
+				return left - right;
+			default:
+				throw new Error("Should not reach here");
+		}
+	}
+	
+	private boolean booleanOperation(BinaryExpression node) {
+		final Type leftType = attributes.type(node.left);
+		final Type rightType = attributes.type(node.right);
 		
 		if (leftType instanceof BoolType && rightType instanceof BoolType) {
-			final boolean leftBool = (Boolean) extractUntilIsType(node.left, Boolean.class);
-			final boolean rightBool = (Boolean) extractUntilIsType(node.right, Boolean.class);
+			final boolean left = getBoolean(node.left);
+			final boolean right = getBoolean(node.right);
 			
 			switch (node.operator) {
 				case LOGICAL_AND:
-					return leftBool && rightBool;
+					return left && right;
 				case LOGICAL_OR:
-					return leftBool || rightBool;
+					return left || right;
 				case EQUAL_TO:
-					return leftBool == rightBool;
+					return left == right;
 				case NOT_EQUAL_TO:
-					return leftBool != rightBool;
+					return left != right;
 			}
 		}
 		
-		if (node.operator == ADD && (leftType instanceof StringType || rightType instanceof StringType)) {
-			return convertToString(extractUntilIsNotRimeNode(node.left)) + extractUntilIsNotRimeNode(get(node.right));
-		}
-		
 		if (leftType instanceof IntType && rightType instanceof IntType) {
-			final int leftInt = (Integer) extractUntilIsType(node.left, Integer.class);
-			final int rightInt = (Integer) extractUntilIsType(node.right, Integer.class);
+			final int left = getInt(node.left);
+			final int right = getInt(node.right);
 			
-			return switch (node.operator) {
-				case EQUAL_TO -> leftInt == rightInt;
-				case NOT_EQUAL_TO -> leftInt != rightInt;
-				default -> numericalOperation(node, leftInt, rightInt);
-			};
+			switch (node.operator) {
+				case GREATER_THAN:
+					return left > right;
+				case LESS_THAN:
+					return left < right;
+				case GREATER_THAN_EQUAL:
+					return left >= right;
+				case LESS_THAN_EQUAL:
+					return left <= right;
+				case EQUAL_TO:
+					return left == right;
+				case NOT_EQUAL_TO:
+					return left != right;
+				default:
+					throw new Error("Should not reach here");
+			}
 		}
 		
+		final Object left = get(node.left);
+		final Object right = get(node.right);
+		
 		return switch (node.operator) {
-			case EQUAL_TO -> leftType.isPrimitive() ? get(node.left).equals(get(node.right)) : get(node.left) == get(node.right);
-			case NOT_EQUAL_TO -> leftType.isPrimitive() ? !get(node.left).equals(get(node.right)) : get(node.left) != get(node.right);
+			case EQUAL_TO -> leftType.isPrimitive() ? Builtins.valueEqual(left, right) : left == right;
+			case NOT_EQUAL_TO -> leftType.isPrimitive() ? !Builtins.valueEqual(left, right) : left != right;
 			default -> throw new Error("Should not reach here");
 		};
 	}
 	
 	private Object unaryExpression(UnaryExpression node) {
 		return switch (node.operator) {
-			case NEGATIVE -> -(Integer) extractUntilIsType(node.operand, Integer.class);
-			case LOGICAL_COMPLEMENT -> !(Boolean) extractUntilIsType(node.operand, Boolean.class);
+			case NEGATIVE -> -getInt(node.operand);
+			case LOGICAL_COMPLEMENT -> !getBoolean(node.operand);
 		};
 	}
 	
-	private ArrayList<Object> emptyList(EmptyList node) {
-		return new ArrayList<>();
+	private List<Object> emptyList(EmptyList node) {
+		return CollectionKind.of(attributes, node).newList(0);
 	}
 	
-	private HashSet<Object> emptySet(EmptySet node) {
-		return new HashSet<>();
+	private Set<Object> emptySet(EmptySet node) {
+		return CollectionKind.of(attributes, node).newSet(0);
 	}
 	
-	private HashMap<Object, Object> emptyDict(EmptyDict node) {
-		return new HashMap<>();
+	private Map<Object, Object> emptyDict(EmptyDict node) {
+		return CollectionKind.of(attributes, node).newDict(0);
 	}
 	
-	private ArrayList<Object> listElements(ListElements node) {
-		return new ArrayList<>(Arrays.asList(map(node.elements, new Object[0], visitor)));
+	private List<Object> listElements(ListElements node) {
+		final List<Object> list = CollectionKind.of(attributes, node).newList(node.elements.size());
+		
+		for (Expression element : node.elements) {
+			list.add(get(element));
+		}
+		
+		return list;
 	}
 	
-	private HashSet<Object> setElements(SetElements node) {
-		return (HashSet<Object>) Arrays.stream(map(node.elements, new Object[0], visitor)).collect(Collectors.toSet());
+	private Set<Object> setElements(SetElements node) {
+		final Set<Object> set = CollectionKind.of(attributes, node).newSet(node.elements.size());
+		
+		for (Expression element : node.elements) {
+			set.add(get(element));
+		}
+		
+		return set;
 	}
 	
 	private Entry<Object, Object> dictElement(DictElement node) {
-		final Object key = extractUntilIsNotRimeNode(node.key);
-		final Object value = extractUntilIsNotRimeNode(node.value);
+		final Object key = get(node.key);
+		final Object value = get(node.value);
 		
 		return new AbstractMap.SimpleEntry<>(key, value);
 	}
 	
-	private HashMap<Object, Object> dictElements(DictElements node) {
+	private Map<Object, Object> dictElements(DictElements node) {
 		final Entry<?, ?>[] entries = (Entry<?, ?>[]) map(node.elements, new Entry<?, ?>[0], visitor);
-		final HashMap<Object, Object> map = new HashMap<>();
+		final Map<Object, Object> map = CollectionKind.of(attributes, node).newDict(entries.length);
 		
 		for (Entry<?, ?> entry : entries) {
 			map.put(entry.getKey(), entry.getValue());
@@ -267,78 +478,34 @@ public final class Interpreter {
 	
 	private Object assignment(Assignment node) {
 		if (node.left instanceof Identifier) {
-			final Scope scope = reactor.get(node.left.attr(SCOPE));
-			final String name = ((Identifier) node.left).value;
-			final Object val = get(node.right);
-			
-			storage.set(scope, name, val);
-			
-			return val;
+			final Identifier variable = (Identifier) node.left;
+			store(frame, primitives, attributes.slot(variable), attributes.declaration(variable), node.right);
+			return null;
 		}
 		else if (node.left instanceof IndexedCollectionAccess) {
-			final Type collectionType = reactor.get(((IndexedCollectionAccess) node.left).identifier.attr(TYPE));
 			final IndexedCollectionAccess access = (IndexedCollectionAccess) node.left;
-			final Scope scope = reactor.get(access.identifier.attr(SCOPE));
-			final String name = access.identifier.value;
+			final Type collectionType = attributes.type(access.identifier);
 			
 			if (collectionType instanceof ListType) {
+				final List<Object> list = cast(getList(access.identifier));
 				final int index = getAndCheckListIndex(access.index);
+				final Object val = get(node.right);
 				
-				if (storage.get(scope, name) instanceof ListElements) {
-					final ListElements elements = (ListElements) storage.get(scope, name);
-					
-					try {
-						final Expression val = (Expression) extractWhileIsRimeNode(node.right);
-						elements.elements.set(index, val);
-						return val;
-					}
-					catch (ArrayIndexOutOfBoundsException e) {
-						throw new PassthroughException(e);
-					}
+				try {
+					list.set(index, val);
+					return val;
 				}
-				else if (storage.get(scope, name) instanceof ArrayList) {
-					final ArrayList<Object> elements = (ArrayList<Object>) storage.get(scope, name);
-					
-					try {
-						final Object val = extractUntilIsNotRimeNode(node.right);
-						elements.set(index, val);
-						return val;
-					}
-					catch (ArrayIndexOutOfBoundsException e) {
-						throw new PassthroughException(e);
-					}
+				catch (ArrayIndexOutOfBoundsException e) {
+					throw new PassthroughException(e);
 				}
-				else {
-					throw new Error("Should not reach here");
-				}
-				
-				
 			}
 			else if (collectionType instanceof DictType) {
-				final Expression key = access.index;
-				final Expression value = (Expression) extractWhileIsRimeNode(node.right);
-				final DictElements elements;
-				
-				if (storage.get(scope, name) instanceof EmptyDict) {
-					storage.set(scope, name, new DictElements(new ArrayList<>() {{
-						add(new DictElement(key, value));
-					}}));
-				}
-				else {
-					elements = (DictElements) storage.get(scope, name);
-					
-					final Optional<DictElement> element = elements.elements.stream().filter(x -> x.key == key).reduce((x, y) -> y);
-					
-					if (element.isEmpty()) {
-						elements.elements.add(new DictElement(key, value));
-					}
-					else {
-						final int index = elements.elements.indexOf(element.orElseThrow());
-						elements.elements.set(index, new DictElement(key, value));
-					}
-				}
+				final Map<Object, Object> dict = cast(getHashMap(access.identifier));
+				final Object key = get(access.index);
+				final Object val = get(node.right);
 				
-				return value;
+				dict.put(key, val);
+				return val;
 			}
 			else {
 				throw new Error("Should not reach here");
@@ -349,64 +516,119 @@ public final class Interpreter {
 	}
 	
 	private Object functionCall(FunctionCall node) {
-		final Declaration decl = get(node.name);
+		final CallSite site = callSite(node);
+		
+		if (site.function != null) {
+			return call(site, node.arguments);
+		}
+		
 		final Object[] args = new Object[node.arguments.size()];
 		
 		for (int i = 0; i < args.length; i++) {
-			final RimeNode n = node.arguments.get(i);
-			
-			if (n instanceof Identifier && ((Identifier) n).value.equals(RimeGrammar.MAIN_ARGS)) {
-				args[i] = mainArgs;
-			}
-			else {
-				args[i] = extractUntilIsNotRimeNode(node.arguments.get(i));
-			}
+			args[i] = get(node.arguments.get(i));
 		}
 		
-		if (decl == null) {
+		if (site.builtin == null) {
 			throw new PassthroughException(new NullPointerException("Calling a null function"));
 		}
 		
-		if (decl instanceof PredefinedFunction) {
-			return builtin(((PredefinedFunction) decl).name, args);
-		}
-		
-		final ScopeStorage oldStorage = storage;
-		final Scope scope = reactor.get(decl.attr(SCOPE));
+		return site.builtin.apply(args);
+	}
+	
+	/**
+	 * Returns what the call site resolves to, bound on its first execution and, when it calls the value of a
+	 * local, again whenever that value changes.
+	 */
+	private CallSite callSite(FunctionCall node) {
+		final int index = attributes.index(node);
+		final int calleeSlot = attributes.slot(node.name);
+		final CallSite site = callSites[index];
 		
-		storage = new ScopeStorage(scope, storage);
+		if (site != null && (calleeSlot < 0 || site.callee == frame[calleeSlot])) {
+			return site;
+		}
 		
-		if (decl instanceof ProcDefinition) {
-			final ProcDefinition funDecl = (ProcDefinition) decl;
-			coIterate(args, funDecl.parameters.params, (arg, param) -> storage.set(scope, param.identifier.value, arg));
+		return callSites[index] = resolve(node, get(node.name));
+	}
+	
+	private CallSite resolve(FunctionCall node, Declaration callee) {
+		if (callee instanceof FunctionDefinition) {
+			final FunctionDefinition function = (FunctionDefinition) callee;
+			final List<Parameter> params = function instanceof ProcDefinition
+				? ((ProcDefinition) function).parameters.params
+				: ((FuncDefinition) function).parameters.params;
+			final Block body = function instanceof ProcDefinition
+				? ((ProcDefinition) function).body
+				: ((FuncDefinition) function).body;
+			final int[] slots = new int[params.size()];
 			
-			try {
-				get(funDecl.body);
+			for (int i = 0; i < slots.length; i++) {
+				slots[i] = attributes.slot(params.get(i));
 			}
-			catch (Exit e) {
-				return null;
-			}
-			finally {
-				storage = oldStorage;
-			}
-		}
-		else if (decl instanceof FuncDefinition) {
-			final FuncDefinition funDecl = (FuncDefinition) decl;
-			coIterate(args, funDecl.parameters.params, (arg, param) -> storage.set(scope, param.identifier.value, arg));
 			
-			try {
-				get(funDecl.body);
-			}
-			catch (Return r) {
-				return r.value;
-			}
-			finally {
-				storage = oldStorage;
-			}
+			return new CallSite(callee, function, body, slots, params.toArray(new Parameter[0]), null);
+		}
+		
+		if (attributes.isInPlace(node)) {
+			return new CallSite(callee, null, null, null, null, ((PredefinedFunction) callee).name.equals("append")
+				? args -> Builtins.appendInPlace(args[0], args[1])
+				: args -> Builtins.addInPlace(args[0], args[1]));
+		}
+		
+		// A null callee only fails once its arguments are evaluated, as before the sites were cached
+		return new CallSite(callee, null, null, null, null,
+			callee == null ? null : Builtins.handler(((PredefinedFunction) callee).name));
+	}
+	
+	private Object call(CallSite site, List<Expression> arguments) {
+		final Object[] oldFrame = frame;
+		final int[] oldPrimitives = primitives;
+		final Statement caller = current;
+		int completion;
+		
+		bind(site, arguments);
+		
+		// Tail calls to itself rebind the frame and run the body again, without nesting
+		do {
+			frame = calleeFrame;
+			primitives = calleePrimitives;
+			completion = execute(site.body);
+		}
+		while (completion == TAIL_CALL);
+		
+		frame = oldFrame;
+		primitives = oldPrimitives;
+		current = caller;
+		
+		if (completion == RETURN) {
+			final Object value = returnValue;
+			returnValue = null;
+			return value;
 		}
 		
 		return null;
 	}
+	
+	/**
+	 * Evaluates the arguments of a call to the function of {@code site} into a new {@link #calleeFrame}.
+	 */
+	private void bind(CallSite site, List<Expression> arguments) {
+		final int frameSize = attributes.frameSize(site.function);
+		final Object[] newFrame = new Object[frameSize];
+		final int[] newPrimitives = new int[frameSize];
+		
+		for (int i = 0; i < site.slots.length; i++) {
+			store(newFrame, newPrimitives, site.slots[i], site.params[i], arguments.get(i));
+		}
+		
+		calleeFrame = newFrame;
+		calleePrimitives = newPrimitives;
+	}
+	
+	private int tailCall(FunctionCall node) {
+		bind(callSite(node), node.arguments);
+		return TAIL_CALL;
+	}
 	//endregion
 	
 	//region STATEMENTS
@@ -418,49 +640,80 @@ public final class Interpreter {
 		return null;
 	}
 	
-	private Void block(Block node) {
-		final Scope scope = reactor.get(node.attr(SCOPE));
-		storage = new ScopeStorage(scope, storage);
-		node.statements.forEach(this::run);
-		storage = storage.parent;
+	private int block(Block node) {
+		for (Statement statement : node.statements) {
+			final int completion = execute(statement);
+			
+			if (completion != NORMAL) {
+				return completion;
+			}
+		}
 		
-		return null;
+		return NORMAL;
 	}
 	
-	private Void ifStatement(IfStatement node) {
-		if ((get(node.condition) instanceof BoolLiteral && ((BoolLiteral) get(node.condition)).value) ||
-			(get(node.condition) instanceof Boolean && (Boolean) get(node.condition))) {
-			get(node.trueBody);
+	private int ifStatement(IfStatement node) {
+		final boolean test = isUnboxedCondition(node.condition)
+			? getBoolean(node.condition)
+			: isTrue(get(node.condition));
+		
+		if (test) {
+			return execute(node.trueBody);
 		}
 		else if (node.falseBody != null) {
-			get(node.falseBody);
+			return execute(node.falseBody);
 		}
 		
-		return null;
+		return NORMAL;
 	}
 	
-	private Void whileStatement(WhileStatement node) {
-		while ((get(node.condition) instanceof BoolLiteral && ((BoolLiteral) get(node.condition)).value) ||
-			(get(node.condition) instanceof Boolean && (Boolean) get(node.condition))) {
-			get(node.body);
+	/**
+	 * Runs a while loop, deciding once how its condition is evaluated rather than at every iteration.
+	 * The condition is evaluated exactly once per iteration.
+	 */
+	private int whileStatement(WhileStatement node) {
+		final Expression condition = node.condition;
+		final Block body = node.body;
+		
+		if (isUnboxedCondition(condition)) {
+			while (getBoolean(condition)) {
+				final int completion = block(body);
+				
+				if (completion != NORMAL) {
+					return completion;
+				}
+				
+				current = node;
+			}
+		}
+		else {
+			while (isTrue(get(condition))) {
+				final int completion = block(body);
+				
+				if (completion != NORMAL) {
+					return completion;
+				}
+				
+				current = node;
+			}
 		}
 		
-		return null;
-	}
-	
-	private Void exitStatement(ExitStatement node) {
-		throw new Exit();
+		return NORMAL;
 	}
 	
-	private Void returnStatement(ReturnStatement node) {
-		throw new Return(node.expression == null ? null : get(node.expression));
+	private int returnStatement(ReturnStatement node) {
+		if (isTailCall(node.expression)) {
+			return tailCall((FunctionCall) node.expression);
+		}
+		
+		returnValue = node.expression == null ? null : get(node.expression);
+		return RETURN;
 	}
 	//endregion
 	
 	//region DECLARATIONS
 	private Void variableDefinition(VariableDefinition node) {
-		final Scope scope = reactor.get(node.attr(SCOPE));
-		storage.set(scope, ((Identifier) node.assignment.left).value, node.assignment.right);
+		store(frame, primitives, attributes.slot(node), node, node.assignment.right);
 		return null;
 	}
 	
@@ -469,20 +722,23 @@ public final class Interpreter {
 	}
 	
 	private Void rootNode(RootNode node) {
-		rootScope = reactor.get(node.attr(SCOPE));
-		storage = rootStorage = new ScopeStorage(rootScope, null);
-		storage.initRoot(rootScope);
-		storage.set(rootScope, RimeGrammar.MAIN_ARGS, mainArgs);
-		reactor.set(rootScope.mainArgs.attr(VALUE), mainArgs);
+		final ProcDefinition main = node.entryPoint.definition;
+		
+		final int frameSize = attributes.frameSize(main);
+		
+		frame = new Object[frameSize];
+		primitives = new int[frameSize];
+		frame[attributes.slot(main.parameters.params.get(0))] = mainArgs;
 		
 		try {
-			block(node.entryPoint.definition.body);
-		}
-		catch (Exit e) {
-			return null;
+			while (block(main.body) == TAIL_CALL) {
+				frame = calleeFrame;
+				primitives = calleePrimitives;
+			}
 		}
 		finally {
-			storage = null;
+			frame = null;
+			primitives = null;
 		}
 		
 		return null;
@@ -490,92 +746,28 @@ public final class Interpreter {
 	//endregion
 	
 	//region UTILS
-	private Object extractWhileIsRimeNode(Object node) {
-		if (!(node instanceof RimeNode)) {
-			throw new RuntimeException("Node is not a RimeNode");
-		}
-		
-		Object old = node;
-		Object current = get((RimeNode) old);
-		while (current instanceof RimeNode) {
-			old = current;
-			current = get((RimeNode) old);
-		}
-		return old;
-	}
-	
-	private Object extractUntilIsNotRimeNode(Object node) {
-		if (!(node instanceof RimeNode)) {
-			return node;
-		}
-		
-		Object o = get((RimeNode) node);
-		while (o instanceof RimeNode) {
-			o = get((RimeNode) o);
-		}
-		return o;
-	}
-	
-	private Object extractUntilIsType(Object node, Class<?> type) {
-		if (!(node instanceof RimeNode)) {
-			return node;
-		}
-		
-		Object o = get((RimeNode) node);
-		while (!type.isInstance(o)) {
-			o = get((RimeNode) o);
-		}
-		return o;
-	}
-	
-	private Object builtin(String name, Object[] args) {
-		return switch (name) {
-			case "print" -> _print(args);
-			case "parseInt" -> _parseInt(args);
-			case "length" -> _length(args);
-			case "append" -> _append(args);
-			case "add" -> _add(args);
-			case "contains" -> _contains(args);
-			default -> throw new Error("Should not reach here");
-		};
-	}
-	
-	private HashMap<?, ?> getHashMap(Expression node) {
+	private Map<?, ?> getHashMap(Expression node) {
 		final Object object = get(node);
 		
 		if (object == null) {
 			throw new PassthroughException(new NullPointerException("indexing null dict"));
 		}
 		
-		if (object instanceof HashMap) {
-			return (HashMap<?, ?>) object;
-		}
-		else {
-			return (HashMap<?, ?>) extractUntilIsType(object, HashMap.class);
-		}
+		return (Map<?, ?>) object;
 	}
 	
-	private ArrayList<?> getList(Expression node) {
-		if (node instanceof Identifier && ((Identifier) node).value.equals(RimeGrammar.MAIN_ARGS)) {
-			return mainArgs;
-		}
-		
+	private List<?> getList(Expression node) {
 		final Object object = get(node);
 		
 		if (object == null) {
 			throw new PassthroughException(new NullPointerException("indexing null list"));
 		}
 		
-		if (object instanceof ArrayList) {
-			return (ArrayList<?>) object;
-		}
-		else {
-			return (ArrayList<?>) extractUntilIsType(object, ArrayList.class);
-		}
+		return (List<?>) object;
 	}
 	
 	private int getAndCheckListIndex(Expression node) {
-		final int index = (Integer) extractUntilIsType(node, Integer.class);
+		final int index = getInt(node);
 		
 		if (index < 0) {
 			throw new ArrayIndexOutOfBoundsException("Negative index: " + index);
@@ -588,167 +780,61 @@ public final class Interpreter {
 		return index;
 	}
 	
-	public static String convertToString(Object arg) {
-		if (arg == null) {
-			return "null";
-		}
-		else if (arg instanceof Object[]) {
-			return Arrays.deepToString((Object[]) arg);
-		}
-		else if (arg instanceof ProcDefinition) {
-			return ((ProcDefinition) arg).name.value;
-		}
-		else if (arg instanceof FuncDefinition) {
-			return ((FuncDefinition) arg).name.value;
-		}
-		else if (arg instanceof BoolLiteral) {
-			return ((BoolLiteral) arg).value.toString();
+	/**
+	 * Evaluates {@code value} into the slot of a local, ints and bools unboxed unless they may be null.
+	 */
+	private void store(Object[] targetFrame, int[] targetPrimitives, int slot, Declaration decl, Expression value) {
+		final Type type = attributes.type(decl);
+		
+		if (attributes.isNullable(decl)) {
+			targetFrame[slot] = get(value);
 		}
-		else if (arg instanceof IntLiteral) {
-			return ((IntLiteral) arg).value.toString();
+		else if (type instanceof IntType) {
+			targetPrimitives[slot] = getInt(value);
 		}
-		else if (arg instanceof StringLiteral) {
-			return ((StringLiteral) arg).value;
+		else if (type instanceof BoolType) {
+			targetPrimitives[slot] = getBoolean(value) ? 1 : 0;
 		}
 		else {
-			return arg.toString();
-		}
-	}
-	
-	private static Object numericalOperation(BinaryExpression node, Integer left, Integer right) {
-		final int _left = left;
-		final int _right = right;
-		
-		switch (node.operator) {
-			case MULTIPLY:
-				return _left * _right;
-			case DIVIDE:
-				if (_right != 0) {
-					return _left / _right;
-				}
-				else {
-					throw new ArithmeticException("Division by zero");
-				}
-			case REMAINDER:
-				return _left % _right;
-			case ADD:
-				return _left + _right;
-			case SUBTRACT:
-				return _left - _right;
-			case GREATER_THAN:
-				return _left > _right;
-			case LESS_THAN:
-				return _left < _right;
-			case GREATER_THAN_EQUAL:
-				return _left >= _right;
-			case LESS_THAN_EQUAL:
-				return _left <= _right;
-			case EQUAL_TO:
-				return _left == _right;
-			case NOT_EQUAL_TO:
-				return _left != _right;
-			default:
-				throw new Error("Should not reach here");
+			targetFrame[slot] = get(value);
 		}
 	}
-	//endregion
 	
-	//region BUILTIN FUNCTIONS
-	public Void _print(Object[] args) {
-		final String out = convertToString(args[0]);
-		System.out.println(out);
-		return null;
+	/**
+	 * Whether a condition is a bool computed without looking up a value which could be null, such as a missing dict
+	 * entry: {@link #getBoolean(Expression)} then evaluates it unboxed, the other conditions are only true when their
+	 * value is {@code true}.
+	 */
+	private boolean isUnboxedCondition(Expression node) {
+		return attributes.type(node) instanceof BoolType && (
+			node instanceof BoolLiteral ||
+			node instanceof Identifier && attributes.slot((Identifier) node) >= 0 && !isBoxed((Identifier) node) ||
+			node instanceof BinaryExpression ||
+			node instanceof UnaryExpression ||
+			node instanceof FunctionCall && isBuiltin((FunctionCall) node));
 	}
 	
-	public Integer _parseInt(Object[] args) {
-		return Integer.parseInt(convertToString(args[0]));
+	/**
+	 * Whether a local int or bool is kept in {@link #frame} rather than {@link #primitives}, as it may be null.
+	 */
+	private boolean isBoxed(Identifier node) {
+		return attributes.isNullable(attributes.declaration(node));
 	}
 	
-	public int _length(Object[] args) {
-		if (args[0] instanceof EmptyList) {
-			return 0;
-		}
-		else if (args[0] instanceof ListElements) {
-			return listElements((ListElements) args[0]).size();
-		}
-		else if (args[0] instanceof ArrayList) {
-			return ((ArrayList<String>) args[0]).size();
-		}
-		else {
-			throw new IllegalArgumentException("Error, argument should be a list");
-		}
+	private boolean isTailCall(Expression node) {
+		return node instanceof FunctionCall && attributes.isTailCall((FunctionCall) node);
 	}
 	
-	public ArrayList<?> _append(Object[] args) {
-		final ArrayList<Object> list;
-		
-		if (args[0] instanceof EmptyList) {
-			list = new ArrayList<>();
-		}
-		else if (args[0] instanceof ListElements) {
-			list = listElements((ListElements) args[0]);
-		}
-		else if (args[0] instanceof ArrayList) {
-			list = new ArrayList<>((Collection<?>) args[0]);
-		}
-		else {
-			throw new IllegalArgumentException("Error, first argument should be a list");
-		}
-		
-		list.add(extractUntilIsNotRimeNode(args[1]));
-		return list;
+	private static boolean isTrue(Object value) {
+		return value instanceof Boolean && (Boolean) value;
 	}
 	
-	public Object _add(Object[] args) {
-		final Class<?> type = args[1].getClass();
-		final HashSet<Object> set;
-		
-		if (args[0] instanceof EmptySet) {
-			set = new HashSet<>();
-		}
-		else if (args[0] instanceof SetElements) {
-			set = setElements((SetElements) args[0]);
-		}
-		else if (args[0] instanceof HashSet<?>) {
-			set = new HashSet<>((Collection<?>) args[0]);
-		}
-		else {
-			throw new IllegalArgumentException("Error, first argument should be a set");
-		}
-		
-		set.add(extractUntilIsType(args[1], type));
-		return set;
+	private boolean isListAccess(IndexedCollectionAccess node) {
+		return attributes.type(node.identifier) instanceof ListType;
 	}
 	
-	public Object _contains(Object[] args) {
-		final Class<?> type = args[1].getClass();
-		final HashSet<?> set;
-		
-		if (args[0] instanceof EmptySet) {
-			return false;
-		}
-		else if (args[0] instanceof SetElements) {
-			set = setElements((SetElements) args[0]);
-			
-			if (set.isEmpty()) {
-				return false;
-			}
-		}
-		else if (args[0] instanceof HashSet) {
-			set = (HashSet<?>) args[0];
-			
-			if (set.isEmpty()) {
-				return false;
-			}
-		}
-		else if (args[0] instanceof FunctionCall) {
-			set = (HashSet<?>) extractUntilIsNotRimeNode(args[0]);
-		}
-		else {
-			throw new IllegalArgumentException("Error, first argument should be a set");
-		}
-		
-		return set.contains(extractUntilIsType(args[1], type));
+	private boolean isBuiltin(FunctionCall node) {
+		return attributes.declaration(node.name) instanceof PredefinedFunction && attributes.slot(node.name) < 0;
 	}
 	//endregion
 }
@@ -0,0 +1,10 @@
+package rime.source.interpreter.exceptions;
+
+/**
+ * Thrown when the Rime call stack of an engine exceeds its budget, its message lists the Rime call chain.
+ */
+public final class CallStackOverflowException extends RuntimeException {
+	public CallStackOverflowException(String message) {
+		super(message);
+	}
+}
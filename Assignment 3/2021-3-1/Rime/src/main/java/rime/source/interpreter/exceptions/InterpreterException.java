@@ -4,4 +4,16 @@ public final class InterpreterException extends RuntimeException {
 	public InterpreterException(String message, Throwable cause) {
 		super(message, cause);
 	}
+	
+	/**
+	 * Wraps an exception thrown while executing {@code location}, a statement or the name of a function. The
+	 * exceptions which are already located, or which an engine rethrows as is, are returned unchanged.
+	 */
+	public static RuntimeException wrap(RuntimeException e, Object location) {
+		if (e instanceof InterpreterException || e instanceof PassthroughException || e instanceof CallStackOverflowException) {
+			return e;
+		}
+		
+		return new InterpreterException("exception while executing " + location, e);
+	}
 }
@@ -0,0 +1,189 @@
+package rime.source.jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+
+
+/**
+ * Minimal writer for the class files produced by {@link JvmCompiler}: a final class extending {@code Object}
+ * with public static fields and methods only. See chapter 4 of the JVM specification for the format.
+ */
+final class ClassFileWriter {
+	private static final int JAVA_17 = 61;
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_STATIC = 0x0008;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+	
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	
+	final String className;
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(pool);
+	private final HashMap<String, Integer> poolIndices = new HashMap<>();
+	private int poolSize = 1;
+	private final ArrayList<byte[]> fields = new ArrayList<>();
+	private final ArrayList<byte[]> methods = new ArrayList<>();
+	
+	ClassFileWriter(String className) {
+		this.className = className;
+	}
+	
+	//region CONSTANT POOL
+	int utf8(String value) {
+		return entry("U" + value, out -> {
+			out.writeByte(CONSTANT_UTF8);
+			out.writeUTF(value);
+		});
+	}
+	
+	int integer(int value) {
+		return entry("I" + value, out -> {
+			out.writeByte(CONSTANT_INTEGER);
+			out.writeInt(value);
+		});
+	}
+	
+	int classRef(String internalName) {
+		final int name = utf8(internalName);
+		return entry("C" + internalName, out -> {
+			out.writeByte(CONSTANT_CLASS);
+			out.writeShort(name);
+		});
+	}
+	
+	int string(String value) {
+		final int utf8 = utf8(value);
+		return entry("S" + value, out -> {
+			out.writeByte(CONSTANT_STRING);
+			out.writeShort(utf8);
+		});
+	}
+	
+	int fieldRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+	}
+	
+	int methodRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+	}
+	
+	private int memberRef(int tag, String owner, String name, String descriptor) {
+		final int ownerIndex = classRef(owner);
+		final int nameIndex = utf8(name);
+		final int descriptorIndex = utf8(descriptor);
+		final int nameAndType = entry("N" + name + ":" + descriptor, out -> {
+			out.writeByte(CONSTANT_NAME_AND_TYPE);
+			out.writeShort(nameIndex);
+			out.writeShort(descriptorIndex);
+		});
+		
+		return entry(tag + owner + "." + name + ":" + descriptor, out -> {
+			out.writeByte(tag);
+			out.writeShort(ownerIndex);
+			out.writeShort(nameAndType);
+		});
+	}
+	
+	private int entry(String key, Entry entry) {
+		final Integer index = poolIndices.get(key);
+		
+		if (index != null) {
+			return index;
+		}
+		
+		try {
+			entry.write(poolOut);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		poolIndices.put(key, poolSize);
+		return poolSize++;
+	}
+	
+	interface Entry {
+		void write(DataOutputStream out) throws IOException;
+	}
+	//endregion
+	
+	//region MEMBERS
+	void staticField(String name, String descriptor) {
+		fields.add(bytes(out -> {
+			out.writeShort(ACC_PUBLIC | ACC_STATIC);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(0);
+		}));
+	}
+	
+	void staticMethod(String name, String descriptor, CodeBuilder code) {
+		final byte[] codeAttribute = code.toAttribute();
+		
+		methods.add(bytes(out -> {
+			out.writeShort(ACC_PUBLIC | ACC_STATIC);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(1);
+			out.writeShort(utf8("Code"));
+			out.writeInt(codeAttribute.length);
+			out.write(codeAttribute);
+		}));
+	}
+	
+	byte[] toByteArray() {
+		final int thisClass = classRef(className);
+		final int superClass = classRef("java/lang/Object");
+		
+		return bytes(out -> {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(JAVA_17);
+			out.writeShort(poolSize);
+			out.write(pool.toByteArray());
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0);
+			out.writeShort(fields.size());
+			
+			for (byte[] field : fields) {
+				out.write(field);
+			}
+			
+			out.writeShort(methods.size());
+			
+			for (byte[] method : methods) {
+				out.write(method);
+			}
+			
+			out.writeShort(0);
+		});
+	}
+	//endregion
+	
+	static byte[] bytes(Entry body) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		try {
+			body.write(new DataOutputStream(bytes));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,291 @@
+package rime.source.jvm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import static rime.source.jvm.JvmOpcodes.*;
+
+
+
+/**
+ * Builds the {@code Code} attribute of one method, tracking the depth of the operand stack and the positions
+ * needing a stack map frame.
+ * <p>
+ * {@link JvmCompiler} only branches between statements, where the operand stack is empty, and it gives every
+ * local a fixed type, assigned once at method entry. The frame is therefore the same at every branch target:
+ * all the locals with their types and an empty stack. The one exception handler, covering the whole method,
+ * only gets the parameters, which are the only locals assigned at the start of the method.
+ */
+final class CodeBuilder {
+	private final ClassFileWriter classFile;
+	private final boolean[] intLocals;
+	private final TreeSet<Integer> frames = new TreeSet<>();
+	private final ArrayList<Label> labels = new ArrayList<>();
+	private byte[] code = new byte[256];
+	private int size;
+	private int depth;
+	private int maxDepth;
+	
+	/** Set after an unconditional jump or return: the next instruction, if any, needs a frame */
+	private boolean afterJump;
+	
+	/** The start of the exception handler, if any, the class of the exceptions it catches and the locals it gets */
+	private int handlerPosition = -1;
+	private String handlerClass;
+	private int handlerLocals;
+	
+	static final class Label {
+		private int position = -1;
+		private final ArrayList<Integer> jumps = new ArrayList<>();
+	}
+	
+	/**
+	 * @param intLocals which locals hold an int or a boolean rather than a reference
+	 */
+	CodeBuilder(ClassFileWriter classFile, boolean[] intLocals) {
+		this.classFile = classFile;
+		this.intLocals = intLocals;
+	}
+	
+	//region INSTRUCTIONS
+	void op(int opcode, int stackEffect) {
+		start();
+		u1(opcode);
+		adjust(stackEffect);
+		
+		if (opcode == GOTO || opcode >= IRETURN && opcode <= RETURN || opcode == ATHROW) {
+			afterJump = true;
+		}
+	}
+	
+	void intConstant(int value) {
+		start();
+		
+		if (value >= -1 && value <= 5) {
+			u1(ICONST_0 + value);
+		}
+		else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			u1(BIPUSH);
+			u1(value);
+		}
+		else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			u1(SIPUSH);
+			u2(value);
+		}
+		else {
+			u1(LDC_W);
+			u2(classFile.integer(value));
+		}
+		
+		adjust(1);
+	}
+	
+	void stringConstant(String value) {
+		start();
+		u1(LDC_W);
+		u2(classFile.string(value));
+		adjust(1);
+	}
+	
+	void load(int local) {
+		start();
+		u1(intLocals[local] ? ILOAD : ALOAD);
+		u1(local);
+		adjust(1);
+	}
+	
+	void store(int local) {
+		start();
+		u1(intLocals[local] ? ISTORE : ASTORE);
+		u1(local);
+		adjust(-1);
+	}
+	
+	void getStatic(String owner, String name, String descriptor) {
+		start();
+		u1(GETSTATIC);
+		u2(classFile.fieldRef(owner, name, descriptor));
+		adjust(1);
+	}
+	
+	void invokeStatic(String owner, String name, String descriptor) {
+		start();
+		u1(INVOKESTATIC);
+		u2(classFile.methodRef(owner, name, descriptor));
+		adjust(stackEffect(descriptor));
+	}
+	
+	void newObjectArray() {
+		start();
+		u1(ANEWARRAY);
+		u2(classFile.classRef("java/lang/Object"));
+	}
+	
+	Label newLabel() {
+		final Label label = new Label();
+		labels.add(label);
+		return label;
+	}
+	
+	void jump(int opcode, Label label, int stackEffect) {
+		start();
+		label.jumps.add(size);
+		u1(opcode);
+		u2(0);
+		adjust(stackEffect);
+		
+		if (opcode == GOTO) {
+			afterJump = true;
+		}
+	}
+	
+	void bind(Label label) {
+		label.position = size;
+		frames.add(size);
+	}
+	
+	/**
+	 * Starts the handler of the exceptions of {@code exceptionClass} thrown by all the code so far. It gets the
+	 * exception on the stack and the first {@code locals} locals.
+	 */
+	void handler(String exceptionClass, int locals) {
+		handlerPosition = size;
+		handlerClass = exceptionClass;
+		handlerLocals = locals;
+		afterJump = false;
+		depth = 0;
+		adjust(1);
+	}
+	//endregion
+	
+	byte[] toAttribute() {
+		final int maxLocals = intLocals.length;
+		
+		for (Label label : labels) {
+			for (int jump : label.jumps) {
+				final int offset = label.position - jump;
+				code[jump + 1] = (byte) (offset >> 8);
+				code[jump + 2] = (byte) offset;
+			}
+		}
+		
+		return ClassFileWriter.bytes(out -> {
+			out.writeShort(maxDepth);
+			out.writeShort(maxLocals);
+			out.writeInt(size);
+			out.write(code, 0, size);
+			
+			if (handlerPosition >= 0) {
+				out.writeShort(1);
+				out.writeShort(0);
+				out.writeShort(handlerPosition);
+				out.writeShort(handlerPosition);
+				out.writeShort(classFile.classRef(handlerClass));
+			}
+			else {
+				out.writeShort(0);
+			}
+			
+			// Frames at the very end of the code are for labels nothing follows, which are never jumped to
+			final TreeSet<Integer> framePositions = new TreeSet<>(frames.headSet(size));
+			
+			if (handlerPosition >= 0) {
+				framePositions.add(handlerPosition);
+			}
+			
+			if (framePositions.isEmpty()) {
+				out.writeShort(0);
+				return;
+			}
+			
+			final int objectClass = classFile.classRef("java/lang/Object");
+			final byte[] frameTable = ClassFileWriter.bytes(table -> {
+				table.writeShort(framePositions.size());
+				int previous = -1;
+				
+				for (int position : framePositions) {
+					final boolean isHandler = position == handlerPosition;
+					final int locals = isHandler ? handlerLocals : maxLocals;
+					table.writeByte(255);
+					table.writeShort(position - previous - 1);
+					table.writeShort(locals);
+					
+					for (int local = 0; local < locals; local++) {
+						if (intLocals[local]) {
+							table.writeByte(1);
+						}
+						else {
+							table.writeByte(7);
+							table.writeShort(objectClass);
+						}
+					}
+					
+					if (isHandler) {
+						table.writeShort(1);
+						table.writeByte(7);
+						table.writeShort(classFile.classRef(handlerClass));
+					}
+					else {
+						table.writeShort(0);
+					}
+					
+					previous = position;
+				}
+			});
+			
+			out.writeShort(1);
+			out.writeShort(classFile.utf8("StackMapTable"));
+			out.writeInt(frameTable.length);
+			out.write(frameTable);
+		});
+	}
+	
+	//region UTILS
+	private void start() {
+		if (afterJump) {
+			frames.add(size);
+			afterJump = false;
+		}
+	}
+	
+	private void adjust(int stackEffect) {
+		depth += stackEffect;
+		maxDepth = Math.max(maxDepth, depth);
+	}
+	
+	/**
+	 * Returns the stack effect of a static call to a method with the given descriptor, whose parameters and
+	 * return value are all ints, booleans or references.
+	 */
+	private static int stackEffect(String descriptor) {
+		int effect = 0;
+		int i = 1;
+		
+		while (descriptor.charAt(i) != ')') {
+			effect--;
+			
+			while (descriptor.charAt(i) == '[') {
+				i++;
+			}
+			
+			i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+		}
+		
+		return descriptor.charAt(i + 1) == 'V' ? effect : effect + 1;
+	}
+	
+	private void u1(int value) {
+		if (size + 3 > code.length) {
+			code = Arrays.copyOf(code, code.length * 2);
+		}
+		
+		code[size++] = (byte) value;
+	}
+	
+	private void u2(int value) {
+		u1(value >> 8);
+		u1(value);
+	}
+	//endregion
+}
@@ -0,0 +1,743 @@
+package rime.source.jvm;
+
+import norswap.utils.visitors.ValuedVisitor;
+import rime.source.ast.RimeNode;
+import rime.source.ast.constants.BinaryOperator;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.*;
+import rime.source.ast.expressions.literals.BoolLiteral;
+import rime.source.ast.expressions.literals.IntLiteral;
+import rime.source.ast.expressions.literals.NullLiteral;
+import rime.source.ast.expressions.literals.StringLiteral;
+import rime.source.ast.statements.*;
+import rime.source.jvm.CodeBuilder.Label;
+import rime.source.runtime.CollectionKind;
+import rime.source.semantic.FrozenAttributes;
+import rime.source.semantic.types.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static rime.source.jvm.JvmOpcodes.*;
+
+
+
+/**
+ * Compiles an analysed program to a JVM class with one static method per proc and func, so that HotSpot
+ * compiles Rime code like any other Java code.
+ * <p>
+ * Variables, parameters and return values whose static type is int or bool are held unboxed; everything else is
+ * an {@code Object}. Operations on values of the latter kind, as well as the builtins, are calls to
+ * {@link JvmRuntime}. Expressions never branch, comparisons used as values being runtime calls too,
+ * which keeps the stack map frames trivial (see {@link CodeBuilder}).
+ */
+final class JvmCompiler {
+	static final String CLASS_NAME = "rime/source/jvm/RimeProgram";
+	private static final String RUNTIME = "rime/source/jvm/JvmRuntime";
+	private static final String OBJECT = "Ljava/lang/Object;";
+	private static final String OBJECT_ARRAY = "[Ljava/lang/Object;";
+	
+	/** How a value is held on the JVM stack and in locals */
+	private enum Kind {
+		INT("I"), BOOL("Z"), REF(OBJECT), VOID("V");
+		
+		final String descriptor;
+		
+		Kind(String descriptor) {
+			this.descriptor = descriptor;
+		}
+	}
+	
+	private final ValuedVisitor<RimeNode, Kind> visitor = new ValuedVisitor<>();
+	private final FrozenAttributes attributes;
+	private final ClassFileWriter classFile = new ClassFileWriter(CLASS_NAME);
+	private final IdentityHashMap<Declaration, String> names = new IdentityHashMap<>();
+	private final IdentityHashMap<Declaration, String> descriptors = new IdentityHashMap<>();
+	private final IdentityHashMap<Declaration, Kind[]> parameterKinds = new IdentityHashMap<>();
+	private final IdentityHashMap<Declaration, Kind> returnKinds = new IdentityHashMap<>();
+	private final ArrayList<Object> constants = new ArrayList<>();
+	private final IdentityHashMap<Object, Integer> constantIndices = new IdentityHashMap<>();
+	
+	private final IdentityHashMap<Declaration, Integer> locals = new IdentityHashMap<>();
+	private final ArrayList<Kind> localKinds = new ArrayList<>();
+	private CodeBuilder code;
+	private Kind returnKind;
+	
+	/** Where tail calls of the function to itself jump, after the initialization of its locals */
+	private Label start;
+	
+	JvmCompiler(FrozenAttributes attributes) {
+		this.attributes = attributes;
+		
+		// EXPRESSIONS
+		visitor.register(BoolLiteral.class, this::boolLiteral);
+		visitor.register(IntLiteral.class, this::intLiteral);
+		visitor.register(StringLiteral.class, this::stringLiteral);
+		visitor.register(NullLiteral.class, this::nullLiteral);
+		visitor.register(Identifier.class, this::identifier);
+		visitor.register(IndexedCollectionAccess.class, node -> indexedCollectionAccess(node, !attributes.isIntListsNullable()));
+		visitor.register(BinaryExpression.class, this::binaryExpression);
+		visitor.register(UnaryExpression.class, this::unaryExpression);
+		visitor.register(EmptyList.class, node -> collection("newList", node, List.of()));
+		visitor.register(EmptySet.class, node -> collection("newSet", node, List.of()));
+		visitor.register(EmptyDict.class, node -> collection("newDict", node, List.of()));
+		visitor.register(ListElements.class, node -> collection("newList", node, node.elements));
+		visitor.register(SetElements.class, node -> collection("newSet", node, node.elements));
+		visitor.register(DictElements.class, this::dictElements);
+		visitor.register(FunctionCall.class, this::functionCall);
+		
+		// STATEMENTS
+		visitor.register(Block.class, this::block);
+		visitor.register(ExpressionStatement.class, this::expressionStatement);
+		visitor.register(EmptyStatement.class, node -> null);
+		visitor.register(Assignment.class, this::assignment);
+		visitor.register(IfStatement.class, this::ifStatement);
+		visitor.register(WhileStatement.class, this::whileStatement);
+		visitor.register(ExitStatement.class, this::exitStatement);
+		visitor.register(ReturnStatement.class, this::returnStatement);
+		visitor.register(VariableDefinition.class, this::variableDefinition);
+		
+		// FALLBACK
+		visitor.registerFallback(node -> {
+			throw new Error("Cannot compile " + node);
+		});
+	}
+	
+	JvmProgram compile(RootNode root) {
+		final List<FunctionDefinition> definitions = new ArrayList<>(root.preMainDefinitions);
+		definitions.add(root.entryPoint.definition);
+		
+		for (FunctionDefinition definition : definitions) {
+			final Parameters parameters = parameters(definition);
+			final Kind[] kinds = new Kind[parameters.params.size()];
+			final StringBuilder descriptor = new StringBuilder("(");
+			
+			for (int i = 0; i < kinds.length; i++) {
+				kinds[i] = kind(parameters.params.get(i), attributes.type(parameters.params.get(i)));
+				descriptor.append(kinds[i].descriptor);
+			}
+			
+			final Kind returns = definition instanceof FuncDefinition
+				? kind(definition, ((FunctionType) attributes.type(definition)).returnType)
+				: Kind.VOID;
+			
+			names.put(definition, definition instanceof ProcDefinition
+				? ((ProcDefinition) definition).name.value
+				: ((FuncDefinition) definition).name.value);
+			descriptors.put(definition, descriptor.append(")").append(returns.descriptor).toString());
+			parameterKinds.put(definition, kinds);
+			returnKinds.put(definition, returns);
+		}
+		
+		classFile.staticField("constants", OBJECT_ARRAY);
+		classFile.staticField("functions", OBJECT);
+		classFile.staticField("mainArgs", OBJECT);
+		
+		for (FunctionDefinition definition : definitions) {
+			method(definition);
+		}
+		
+		final List<JvmProgram.Method> methods = new ArrayList<>();
+		
+		for (FunctionDefinition definition : definitions) {
+			methods.add(new JvmProgram.Method(definition, names.get(definition), descriptors.get(definition)));
+		}
+		
+		return new JvmProgram(classFile.toByteArray(), constants.toArray(), methods, root.entryPoint.definition);
+	}
+	
+	private void method(FunctionDefinition definition) {
+		final Parameters parameters = parameters(definition);
+		final Block body = definition instanceof ProcDefinition
+			? ((ProcDefinition) definition).body
+			: ((FuncDefinition) definition).body;
+		
+		locals.clear();
+		localKinds.clear();
+		
+		for (int i = 0; i < parameters.params.size(); i++) {
+			declareLocal(parameters.params.get(i), parameterKinds.get(definition)[i]);
+		}
+		
+		collectLocals(body);
+		
+		if (localKinds.size() > 255) {
+			throw new Error("Too many variables in " + names.get(definition));
+		}
+		
+		final boolean[] intLocals = new boolean[localKinds.size()];
+		
+		for (int i = 0; i < intLocals.length; i++) {
+			intLocals[i] = localKinds.get(i) != Kind.REF;
+		}
+		
+		code = new CodeBuilder(classFile, intLocals);
+		returnKind = returnKinds.get(definition);
+		
+		// Every variable gets its type from the start, so that all the branch targets share one frame
+		for (int local = parameters.params.size(); local < intLocals.length; local++) {
+			if (intLocals[local]) {
+				code.intConstant(0);
+			}
+			else {
+				code.op(ACONST_NULL, 1);
+			}
+			
+			code.store(local);
+		}
+		
+		if (attributes.isTailRecursive(definition)) {
+			start = code.newLabel();
+			code.bind(start);
+		}
+		
+		visitor.apply(body);
+		defaultReturn();
+		
+		// The callees wrap the exceptions they throw first, the interpreter reports the innermost statement
+		code.handler("java/lang/RuntimeException", parameters.params.size());
+		code.stringConstant(names.get(definition));
+		runtime("wrap", "(Ljava/lang/RuntimeException;Ljava/lang/String;)Ljava/lang/RuntimeException;");
+		code.op(ATHROW, -1);
+		
+		classFile.staticMethod(names.get(definition), descriptors.get(definition), code);
+	}
+	
+	/**
+	 * Gives every variable of the function its own JVM local, the slots the other engines share between sibling
+	 * blocks may hold values of different types.
+	 */
+	private void collectLocals(Statement node) {
+		if (node instanceof Block) {
+			((Block) node).statements.forEach(this::collectLocals);
+		}
+		else if (node instanceof IfStatement) {
+			collectLocals(((IfStatement) node).trueBody);
+			
+			if (((IfStatement) node).falseBody != null) {
+				collectLocals(((IfStatement) node).falseBody);
+			}
+		}
+		else if (node instanceof WhileStatement) {
+			collectLocals(((WhileStatement) node).body);
+		}
+		else if (node instanceof VariableDefinition) {
+			declareLocal((VariableDefinition) node, kind((VariableDefinition) node, attributes.type((VariableDefinition) node)));
+		}
+	}
+	
+	private void declareLocal(Declaration declaration, Kind kind) {
+		locals.put(declaration, localKinds.size());
+		localKinds.add(kind);
+	}
+	
+	//region EXPRESSIONS
+	/**
+	 * Compiles {@code node}, leaving its value on the stack as a {@code kind}.
+	 */
+	private void expression(Expression node, Kind kind) {
+		// An element of a list of ints may be null, it is then only read unboxed where an int is expected
+		if (kind == Kind.INT && node instanceof IndexedCollectionAccess) {
+			convert(indexedCollectionAccess((IndexedCollectionAccess) node, true), kind);
+		}
+		else {
+			convert(visitor.apply(node), kind);
+		}
+	}
+	
+	private Kind boolLiteral(BoolLiteral node) {
+		code.intConstant(node.value ? 1 : 0);
+		return Kind.BOOL;
+	}
+	
+	private Kind intLiteral(IntLiteral node) {
+		code.intConstant(node.value);
+		return Kind.INT;
+	}
+	
+	private Kind stringLiteral(StringLiteral node) {
+		code.stringConstant(node.value);
+		return Kind.REF;
+	}
+	
+	private Kind nullLiteral(NullLiteral node) {
+		code.op(ACONST_NULL, 1);
+		return Kind.REF;
+	}
+	
+	private Kind identifier(Identifier node) {
+		final Declaration decl = attributes.declaration(node);
+		final Integer local = locals.get(decl);
+		
+		if (local != null) {
+			code.load(local);
+			return localKinds.get(local);
+		}
+		
+		if (decl == attributes.rootScope.mainArgs) {
+			code.getStatic(CLASS_NAME, "mainArgs", OBJECT);
+		}
+		else {
+			code.getStatic(CLASS_NAME, "constants", OBJECT_ARRAY);
+			code.intConstant(constant(decl));
+			code.op(AALOAD, -1);
+		}
+		
+		return Kind.REF;
+	}
+	
+	private Kind indexedCollectionAccess(IndexedCollectionAccess node, boolean unboxed) {
+		final Type collectionType = attributes.type(node.identifier);
+		expression(node.identifier, Kind.REF);
+		
+		if (attributes.isUnchecked(node)) {
+			final boolean ints = unboxed && ((ListType) collectionType).elementType instanceof IntType;
+			expression(node.index, Kind.INT);
+			
+			if (ints) {
+				runtime("listGetIntUnchecked", "(Ljava/lang/Object;I)I");
+				return Kind.INT;
+			}
+			
+			runtime("listGetUnchecked", "(Ljava/lang/Object;I)Ljava/lang/Object;");
+		}
+		else if (unboxed && collectionType instanceof ListType && ((ListType) collectionType).elementType instanceof IntType) {
+			runtime("checkList", "(Ljava/lang/Object;)Ljava/lang/Object;");
+			expression(node.index, Kind.INT);
+			runtime("listGetInt", "(Ljava/lang/Object;I)I");
+			return Kind.INT;
+		}
+		else if (collectionType instanceof ListType) {
+			runtime("checkList", "(Ljava/lang/Object;)Ljava/lang/Object;");
+			expression(node.index, Kind.INT);
+			runtime("listGet", "(Ljava/lang/Object;I)Ljava/lang/Object;");
+		}
+		else if (collectionType instanceof DictType) {
+			runtime("checkDict", "(Ljava/lang/Object;)Ljava/lang/Object;");
+			expression(node.index, Kind.REF);
+			runtime("dictGet", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+		}
+		else {
+			throw new IllegalArgumentException("Node should be either a list or a dict");
+		}
+		
+		return Kind.REF;
+	}
+	
+	private Kind binaryExpression(BinaryExpression node) {
+		final Type leftType = attributes.type(node.left);
+		final Type rightType = attributes.type(node.right);
+		
+		if (leftType instanceof BoolType && rightType instanceof BoolType) {
+			switch (node.operator) {
+				case LOGICAL_AND:
+					return boolOperation(node, IAND, false);
+				case LOGICAL_OR:
+					return boolOperation(node, IOR, false);
+				case EQUAL_TO:
+					return boolOperation(node, IXOR, true);
+				case NOT_EQUAL_TO:
+					return boolOperation(node, IXOR, false);
+			}
+		}
+		
+		if (node.operator == BinaryOperator.ADD && (leftType instanceof StringType || rightType instanceof StringType)) {
+			expression(node.left, Kind.REF);
+			expression(node.right, Kind.REF);
+			runtime("concat", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+			return Kind.REF;
+		}
+		
+		if (leftType instanceof IntType && rightType instanceof IntType) {
+			expression(node.left, Kind.INT);
+			expression(node.right, Kind.INT);
+			
+			switch (node.operator) {
+				case ADD -> code.op(IADD, -1);
+				case SUBTRACT -> code.op(ISUB, -1);
+				case MULTIPLY -> code.op(IMUL, -1);
+				case DIVIDE -> runtime("divide", "(II)I");
+				case REMAINDER -> code.op(IREM, -1);
+				default -> {
+					runtime(comparison(node.operator), "(II)Z");
+					return Kind.BOOL;
+				}
+			}
+			
+			return Kind.INT;
+		}
+		
+		expression(node.left, Kind.REF);
+		expression(node.right, Kind.REF);
+		runtime(leftType.isPrimitive() ? "valueEqual" : "referenceEqual", "(Ljava/lang/Object;Ljava/lang/Object;)Z");
+		
+		switch (node.operator) {
+			case EQUAL_TO -> { }
+			case NOT_EQUAL_TO -> complement();
+			default -> throw new Error("Should not reach here");
+		}
+		
+		return Kind.BOOL;
+	}
+	
+	private Kind boolOperation(BinaryExpression node, int opcode, boolean complemented) {
+		expression(node.left, Kind.BOOL);
+		expression(node.right, Kind.BOOL);
+		code.op(opcode, -1);
+		
+		if (complemented) {
+			complement();
+		}
+		
+		return Kind.BOOL;
+	}
+	
+	private static String comparison(BinaryOperator operator) {
+		return switch (operator) {
+			case LESS_THAN -> "lessThan";
+			case LESS_THAN_EQUAL -> "lessThanEqual";
+			case GREATER_THAN -> "greaterThan";
+			case GREATER_THAN_EQUAL -> "greaterThanEqual";
+			case EQUAL_TO -> "intEqual";
+			case NOT_EQUAL_TO -> "intNotEqual";
+			default -> throw new Error("Should not reach here");
+		};
+	}
+	
+	private Kind unaryExpression(UnaryExpression node) {
+		switch (node.operator) {
+			case NEGATIVE -> {
+				expression(node.operand, Kind.INT);
+				code.op(INEG, 0);
+				return Kind.INT;
+			}
+			case LOGICAL_COMPLEMENT -> {
+				expression(node.operand, Kind.BOOL);
+				complement();
+				return Kind.BOOL;
+			}
+			default -> throw new Error("Should not reach here");
+		}
+	}
+	
+	private Kind dictElements(DictElements node) {
+		final List<Expression> keysAndValues = new ArrayList<>();
+		
+		for (DictElement element : node.elements) {
+			keysAndValues.add(element.key);
+			keysAndValues.add(element.value);
+		}
+		
+		return collection("newDict", node, keysAndValues);
+	}
+	
+	private Kind collection(String factory, Expression node, List<? extends Expression> elements) {
+		objectArray(elements);
+		code.intConstant(CollectionKind.of(attributes, node).ordinal());
+		runtime(factory, "([Ljava/lang/Object;I)Ljava/lang/Object;");
+		return Kind.REF;
+	}
+	
+	private Kind functionCall(FunctionCall node) {
+		final Declaration decl = attributes.declaration(node.name);
+		
+		if (decl instanceof FunctionDefinition) {
+			final Kind[] kinds = parameterKinds.get(decl);
+			
+			for (int i = 0; i < kinds.length; i++) {
+				expression(node.arguments.get(i), kinds[i]);
+			}
+			
+			code.invokeStatic(CLASS_NAME, names.get(decl), descriptors.get(decl));
+			return returnKinds.get(decl);
+		}
+		
+		if (decl instanceof PredefinedFunction) {
+			node.arguments.forEach(argument -> expression(argument, Kind.REF));
+			
+			switch (((PredefinedFunction) decl).name) {
+				case "print" -> runtime("print", "(Ljava/lang/Object;)V");
+				case "parseInt" -> runtime("parseInt", "(Ljava/lang/Object;)I");
+				case "length" -> runtime("length", "(Ljava/lang/Object;)I");
+				case "append" -> runtime(attributes.isInPlace(node) ? "appendInPlace" : "append", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+				case "add" -> runtime(attributes.isInPlace(node) ? "addInPlace" : "add", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+				case "contains" -> runtime("contains", "(Ljava/lang/Object;Ljava/lang/Object;)Z");
+				default -> throw new Error("Should not reach here");
+			}
+			
+			return switch (((PredefinedFunction) decl).name) {
+				case "print" -> Kind.VOID;
+				case "parseInt", "length" -> Kind.INT;
+				case "contains" -> Kind.BOOL;
+				default -> Kind.REF;
+			};
+		}
+		
+		expression(node.name, Kind.REF);
+		code.getStatic(CLASS_NAME, "functions", OBJECT);
+		objectArray(node.arguments);
+		runtime("callDynamic", "(Ljava/lang/Object;Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;");
+		return Kind.REF;
+	}
+	
+	private void objectArray(List<? extends Expression> elements) {
+		code.intConstant(elements.size());
+		code.newObjectArray();
+		
+		for (int i = 0; i < elements.size(); i++) {
+			code.op(DUP, 1);
+			code.intConstant(i);
+			expression(elements.get(i), Kind.REF);
+			code.op(AASTORE, -3);
+		}
+	}
+	//endregion
+	
+	//region STATEMENTS
+	private Kind block(Block node) {
+		node.statements.forEach(visitor::apply);
+		return null;
+	}
+	
+	private Kind expressionStatement(ExpressionStatement node) {
+		// Like the interpreter, only calls are executed as statements
+		if (node.expression instanceof FunctionCall && attributes.isTailCall((FunctionCall) node.expression)) {
+			tailCall((FunctionCall) node.expression);
+		}
+		else if (node.expression instanceof FunctionCall && visitor.apply(node.expression) != Kind.VOID) {
+			code.op(POP, -1);
+		}
+		
+		return null;
+	}
+	
+	private Kind assignment(Assignment node) {
+		if (node.left instanceof Identifier) {
+			final int local = locals.get(attributes.declaration((Identifier) node.left));
+			expression(node.right, localKinds.get(local));
+			code.store(local);
+			return null;
+		}
+		
+		final IndexedCollectionAccess access = (IndexedCollectionAccess) node.left;
+		final Type collectionType = attributes.type(access.identifier);
+		expression(access.identifier, Kind.REF);
+		
+		if (collectionType instanceof ListType) {
+			runtime("checkList", "(Ljava/lang/Object;)Ljava/lang/Object;");
+			expression(access.index, Kind.INT);
+			runtime("checkIndex", "(I)I");
+			expression(node.right, Kind.REF);
+			runtime("listSet", "(Ljava/lang/Object;ILjava/lang/Object;)V");
+		}
+		else if (collectionType instanceof DictType) {
+			runtime("checkDict", "(Ljava/lang/Object;)Ljava/lang/Object;");
+			expression(access.index, Kind.REF);
+			expression(node.right, Kind.REF);
+			runtime("dictSet", "(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;)V");
+		}
+		else {
+			throw new Error("Should not reach here");
+		}
+		
+		return null;
+	}
+	
+	private Kind ifStatement(IfStatement node) {
+		final Label falseBranch = code.newLabel();
+		jumpUnless(node.condition, falseBranch);
+		visitor.apply(node.trueBody);
+		
+		if (node.falseBody == null) {
+			code.bind(falseBranch);
+		}
+		else {
+			final Label end = code.newLabel();
+			code.jump(GOTO, end, 0);
+			code.bind(falseBranch);
+			visitor.apply(node.falseBody);
+			code.bind(end);
+		}
+		
+		return null;
+	}
+	
+	private Kind whileStatement(WhileStatement node) {
+		final Label start = code.newLabel();
+		final Label end = code.newLabel();
+		
+		code.bind(start);
+		jumpUnless(node.condition, end);
+		visitor.apply(node.body);
+		code.jump(GOTO, start, 0);
+		code.bind(end);
+		return null;
+	}
+	
+	/**
+	 * Emits a jump to {@code target} taken when {@code condition} does not hold. Int comparisons compile to a
+	 * single compare-and-branch instruction.
+	 */
+	private void jumpUnless(Expression condition, Label target) {
+		if (condition instanceof BinaryExpression) {
+			final BinaryExpression binary = (BinaryExpression) condition;
+			
+			if (attributes.type(binary.left) instanceof IntType && attributes.type(binary.right) instanceof IntType) {
+				final int jump = switch (binary.operator) {
+					case LESS_THAN -> IF_ICMPGE;
+					case LESS_THAN_EQUAL -> IF_ICMPGT;
+					case GREATER_THAN -> IF_ICMPLE;
+					case GREATER_THAN_EQUAL -> IF_ICMPLT;
+					case EQUAL_TO -> IF_ICMPNE;
+					case NOT_EQUAL_TO -> IF_ICMPEQ;
+					default -> -1;
+				};
+				
+				if (jump >= 0) {
+					expression(binary.left, Kind.INT);
+					expression(binary.right, Kind.INT);
+					code.jump(jump, target, -2);
+					return;
+				}
+			}
+		}
+		
+		if (visitor.apply(condition) != Kind.BOOL) {
+			runtime("isTrue", "(Ljava/lang/Object;)Z");
+		}
+		
+		code.jump(IFEQ, target, -1);
+	}
+	
+	private Kind exitStatement(ExitStatement node) {
+		defaultReturn();
+		return null;
+	}
+	
+	private Kind returnStatement(ReturnStatement node) {
+		if (node.expression instanceof FunctionCall && attributes.isTailCall((FunctionCall) node.expression)) {
+			tailCall((FunctionCall) node.expression);
+		}
+		else if (node.expression == null) {
+			defaultReturn();
+		}
+		else if (returnKind == Kind.VOID) {
+			expression(node.expression, Kind.VOID);
+			code.op(RETURN, 0);
+		}
+		else {
+			expression(node.expression, returnKind);
+			code.op(returnKind == Kind.REF ? ARETURN : IRETURN, -1);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Compiles a tail call of the function to itself: the arguments replace the parameters, which are the first
+	 * locals, then the method jumps back to its start.
+	 */
+	private void tailCall(FunctionCall node) {
+		final Kind[] kinds = parameterKinds.get(attributes.declaration(node.name));
+		
+		for (int i = 0; i < kinds.length; i++) {
+			expression(node.arguments.get(i), kinds[i]);
+		}
+		
+		for (int i = kinds.length - 1; i >= 0; i--) {
+			code.store(i);
+		}
+		
+		code.jump(GOTO, start, 0);
+	}
+	
+	private Kind variableDefinition(VariableDefinition node) {
+		final int local = locals.get(node);
+		expression(node.assignment.right, localKinds.get(local));
+		code.store(local);
+		return null;
+	}
+	//endregion
+	
+	//region UTILS
+	/**
+	 * Returns from the method with null, or with a zero in place of a missing primitive, which the semantic
+	 * analysis makes unreachable.
+	 */
+	private void defaultReturn() {
+		switch (returnKind) {
+			case VOID -> code.op(RETURN, 0);
+			case REF -> {
+				code.op(ACONST_NULL, 1);
+				code.op(ARETURN, -1);
+			}
+			default -> {
+				code.intConstant(0);
+				code.op(IRETURN, -1);
+			}
+		}
+	}
+	
+	private void convert(Kind from, Kind to) {
+		if (from == to) {
+			return;
+		}
+		
+		switch (to) {
+			case INT -> runtime("unboxInt", "(Ljava/lang/Object;)I");
+			case BOOL -> runtime("unboxBoolean", "(Ljava/lang/Object;)Z");
+			case REF -> {
+				switch (from) {
+					case INT -> runtime("box", "(I)Ljava/lang/Object;");
+					case BOOL -> runtime("box", "(Z)Ljava/lang/Object;");
+					case VOID -> code.op(ACONST_NULL, 1);
+				}
+			}
+			case VOID -> code.op(POP, -1);
+		}
+	}
+	
+	private void complement() {
+		code.intConstant(1);
+		code.op(IXOR, -1);
+	}
+	
+	private void runtime(String name, String descriptor) {
+		code.invokeStatic(RUNTIME, name, descriptor);
+	}
+	
+	private int constant(Object value) {
+		return constantIndices.computeIfAbsent(value, key -> {
+			constants.add(key);
+			return constants.size() - 1;
+		});
+	}
+	
+	/**
+	 * Returns the kind of a variable, parameter or func return of the given type, those which may be null are
+	 * kept boxed.
+	 */
+	private Kind kind(Declaration declaration, Type type) {
+		return attributes.isNullable(declaration) ? Kind.REF : kind(type);
+	}
+	
+	private static Kind kind(Type type) {
+		if (type instanceof IntType) {
+			return Kind.INT;
+		}
+		
+		if (type instanceof BoolType) {
+			return Kind.BOOL;
+		}
+		
+		return type instanceof VoidType ? Kind.VOID : Kind.REF;
+	}
+	
+	private static Parameters parameters(FunctionDefinition definition) {
+		return definition instanceof ProcDefinition
+			? ((ProcDefinition) definition).parameters
+			: ((FuncDefinition) definition).parameters;
+	}
+	//endregion
+}
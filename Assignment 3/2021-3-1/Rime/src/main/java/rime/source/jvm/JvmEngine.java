@@ -0,0 +1,86 @@
+package rime.source.jvm;
+
+import norswap.uranium.Reactor;
+import norswap.utils.exceptions.Exceptions;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.Declaration;
+import rime.source.interpreter.Engine;
+import rime.source.interpreter.exceptions.InterpreterException;
+import rime.source.interpreter.exceptions.PassthroughException;
+import rime.source.runtime.CollectionMode;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import static norswap.utils.Util.cast;
+
+
+
+/**
+ * Engine compiling the program to a JVM class (see {@link JvmCompiler}) and loading it as a hidden class,
+ * which is unloaded along with the engine once the program is done.
+ */
+public final class JvmEngine implements Engine {
+	private final Reactor reactor;
+	private final CollectionMode collectionMode;
+	
+	public JvmEngine(Reactor reactor) {
+		this(reactor, CollectionMode.COPYING);
+	}
+	
+	public JvmEngine(Reactor reactor, CollectionMode collectionMode) {
+		this.reactor = reactor;
+		this.collectionMode = collectionMode;
+	}
+	
+	@Override
+	public void interpret(RimeNode root, ArrayList<String> mainArgs) {
+		final JvmProgram program = JvmProgram.compile(reactor, cast(root), collectionMode);
+		final ArrayList<String> args = new ArrayList<>(mainArgs);
+		final MethodHandle main = load(program, args);
+		
+		try {
+			main.invoke((Object) args);
+		}
+		catch (PassthroughException e) {
+			throw Exceptions.runtime(e.getCause());
+		}
+		catch (RuntimeException e) {
+			throw InterpreterException.wrap(e, "main");
+		}
+		catch (Error e) {
+			throw e;
+		}
+		catch (Throwable t) {
+			throw new InterpreterException("exception while executing main", t);
+		}
+	}
+	
+	/**
+	 * Defines the class of {@code program}, initializes its static fields and returns its main method.
+	 */
+	public static MethodHandle load(JvmProgram program, ArrayList<String> mainArgs) {
+		try {
+			final MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(program.classFile, true);
+			final Class<?> programClass = lookup.lookupClass();
+			final IdentityHashMap<Declaration, MethodHandle> functions = new IdentityHashMap<>();
+			
+			for (JvmProgram.Method method : program.methods) {
+				final MethodType type = MethodType.fromMethodDescriptorString(method.descriptor, programClass.getClassLoader());
+				functions.put(method.definition, lookup.findStatic(programClass, method.name, type));
+			}
+			
+			lookup.findStaticVarHandle(programClass, "constants", Object[].class).set(program.constants);
+			lookup.findStaticVarHandle(programClass, "functions", Object.class).set(functions);
+			lookup.findStaticVarHandle(programClass, "mainArgs", Object.class).set(mainArgs);
+			
+			return functions.get(program.main);
+		}
+		catch (IllegalAccessException | NoSuchMethodException | NoSuchFieldException e) {
+			throw new Error("Cannot load the compiled program", e);
+		}
+	}
+}
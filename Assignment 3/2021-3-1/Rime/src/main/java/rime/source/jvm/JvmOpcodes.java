@@ -0,0 +1,48 @@
+package rime.source.jvm;
+
+
+
+/**
+ * The few JVM opcodes emitted by {@link JvmCompiler}, see chapter 6 of the JVM specification.
+ */
+final class JvmOpcodes {
+	private JvmOpcodes() { }
+	
+	static final int ACONST_NULL = 1;
+	static final int ICONST_0 = 3;
+	static final int ICONST_1 = 4;
+	static final int BIPUSH = 16;
+	static final int SIPUSH = 17;
+	static final int LDC_W = 19;
+	static final int ILOAD = 21;
+	static final int ALOAD = 25;
+	static final int AALOAD = 50;
+	static final int ISTORE = 54;
+	static final int ASTORE = 58;
+	static final int AASTORE = 83;
+	static final int POP = 87;
+	static final int DUP = 89;
+	static final int IADD = 96;
+	static final int ISUB = 100;
+	static final int IMUL = 104;
+	static final int IREM = 112;
+	static final int INEG = 116;
+	static final int IAND = 126;
+	static final int IOR = 128;
+	static final int IXOR = 130;
+	static final int IFEQ = 153;
+	static final int IF_ICMPEQ = 159;
+	static final int IF_ICMPNE = 160;
+	static final int IF_ICMPLT = 161;
+	static final int IF_ICMPGE = 162;
+	static final int IF_ICMPGT = 163;
+	static final int IF_ICMPLE = 164;
+	static final int GOTO = 167;
+	static final int IRETURN = 172;
+	static final int ARETURN = 176;
+	static final int RETURN = 177;
+	static final int GETSTATIC = 178;
+	static final int INVOKESTATIC = 184;
+	static final int ANEWARRAY = 189;
+	static final int ATHROW = 191;
+}
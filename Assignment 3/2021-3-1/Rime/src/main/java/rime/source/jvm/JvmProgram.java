@@ -0,0 +1,49 @@
+package rime.source.jvm;
+
+import norswap.uranium.Reactor;
+import rime.source.ast.declarations.FunctionDefinition;
+import rime.source.ast.declarations.RootNode;
+import rime.source.runtime.CollectionMode;
+import rime.source.semantic.FrozenAttributes;
+
+import java.util.List;
+
+
+
+/**
+ * A whole program compiled to a JVM class file, along with the values its static {@code constants} field
+ * must hold once it is loaded.
+ */
+public final class JvmProgram {
+	public final byte[] classFile;
+	public final Object[] constants;
+	public final List<Method> methods;
+	public final FunctionDefinition main;
+	
+	public static final class Method {
+		public final FunctionDefinition definition;
+		public final String name;
+		public final String descriptor;
+		
+		Method(FunctionDefinition definition, String name, String descriptor) {
+			this.definition = definition;
+			this.name = name;
+			this.descriptor = descriptor;
+		}
+	}
+	
+	JvmProgram(byte[] classFile, Object[] constants, List<Method> methods, FunctionDefinition main) {
+		this.classFile = classFile;
+		this.constants = constants;
+		this.methods = methods;
+		this.main = main;
+	}
+	
+	public static JvmProgram compile(Reactor reactor, RootNode root) {
+		return compile(reactor, root, CollectionMode.COPYING);
+	}
+	
+	public static JvmProgram compile(Reactor reactor, RootNode root, CollectionMode collectionMode) {
+		return new JvmCompiler(FrozenAttributes.prepare(reactor, root, collectionMode)).compile(root);
+	}
+}
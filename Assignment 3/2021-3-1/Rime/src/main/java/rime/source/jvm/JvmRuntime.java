@@ -0,0 +1,224 @@
+package rime.source.jvm;
+
+import norswap.utils.exceptions.Exceptions;
+import rime.source.ast.declarations.PredefinedFunction;
+import rime.source.interpreter.exceptions.InterpreterException;
+import rime.source.interpreter.exceptions.PassthroughException;
+import rime.source.runtime.Arithmetic;
+import rime.source.runtime.Builtins;
+import rime.source.runtime.CollectionKind;
+import rime.source.runtime.Concatenation;
+import rime.source.runtime.Indexing;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+
+/**
+ * Runtime support of the classes generated by {@link JvmCompiler}, which call these methods for everything
+ * that is not plain int and boolean arithmetic. They are small enough for HotSpot to inline them at their call sites.
+ */
+public final class JvmRuntime {
+	private JvmRuntime() { }
+	
+	//region BUILTINS
+	public static void print(Object value) {
+		Builtins.print(value);
+	}
+	
+	public static int parseInt(Object value) {
+		return Builtins.parseInt(value);
+	}
+	
+	public static int length(Object list) {
+		return Builtins.length(list);
+	}
+	
+	public static Object append(Object list, Object element) {
+		return Builtins.append(list, element);
+	}
+	
+	public static Object appendInPlace(Object list, Object element) {
+		return Builtins.appendInPlace(list, element);
+	}
+	
+	public static Object add(Object set, Object element) {
+		return Builtins.add(set, element);
+	}
+	
+	public static Object addInPlace(Object set, Object element) {
+		return Builtins.addInPlace(set, element);
+	}
+	
+	public static boolean contains(Object set, Object element) {
+		return Builtins.contains(set, element);
+	}
+	//endregion
+	
+	//region OPERATIONS
+	public static int divide(int left, int right) {
+		return Arithmetic.divide(left, right);
+	}
+	
+	public static boolean lessThan(int left, int right) {
+		return left < right;
+	}
+	
+	public static boolean lessThanEqual(int left, int right) {
+		return left <= right;
+	}
+	
+	public static boolean greaterThan(int left, int right) {
+		return left > right;
+	}
+	
+	public static boolean greaterThanEqual(int left, int right) {
+		return left >= right;
+	}
+	
+	public static boolean intEqual(int left, int right) {
+		return left == right;
+	}
+	
+	public static boolean intNotEqual(int left, int right) {
+		return left != right;
+	}
+	
+	public static Object concat(Object left, Object right) {
+		return Concatenation.concat(left, right);
+	}
+	
+	public static boolean valueEqual(Object left, Object right) {
+		return Builtins.valueEqual(left, right);
+	}
+	
+	public static boolean referenceEqual(Object left, Object right) {
+		return left == right;
+	}
+	//endregion
+	
+	//region CONVERSIONS
+	public static Object box(int value) {
+		return value;
+	}
+	
+	public static Object box(boolean value) {
+		return value;
+	}
+	
+	public static int unboxInt(Object value) {
+		return (Integer) value;
+	}
+	
+	public static boolean unboxBoolean(Object value) {
+		return (Boolean) value;
+	}
+	
+	/**
+	 * Truth of a condition whose static type is not bool, with the same leniency as the interpreter.
+	 */
+	public static boolean isTrue(Object value) {
+		return value instanceof Boolean && (Boolean) value;
+	}
+	//endregion
+	
+	//region COLLECTIONS
+	public static Object newList(Object[] elements, int kind) {
+		final List<Object> list = CollectionKind.of(kind).newList(elements.length);
+		Collections.addAll(list, elements);
+		return list;
+	}
+	
+	public static Object newSet(Object[] elements, int kind) {
+		final Set<Object> set = CollectionKind.of(kind).newSet(elements.length);
+		Collections.addAll(set, elements);
+		return set;
+	}
+	
+	public static Object newDict(Object[] keysAndValues, int kind) {
+		final Map<Object, Object> dict = CollectionKind.of(kind).newDict(keysAndValues.length / 2);
+		
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			dict.put(keysAndValues[i], keysAndValues[i + 1]);
+		}
+		
+		return dict;
+	}
+	
+	public static Object checkList(Object list) {
+		return Indexing.list(list);
+	}
+	
+	public static Object checkDict(Object dict) {
+		return Indexing.dict(dict);
+	}
+	
+	public static int checkIndex(int index) {
+		return Indexing.checkIndex(index);
+	}
+	
+	public static Object listGet(Object list, int index) {
+		return Indexing.get(Indexing.list(list), index);
+	}
+	
+	public static int listGetInt(Object list, int index) {
+		return Indexing.getInt(Indexing.list(list), index);
+	}
+	
+	public static Object listGetUnchecked(Object list, int index) {
+		return Indexing.getUnchecked(list, index);
+	}
+	
+	public static int listGetIntUnchecked(Object list, int index) {
+		return Indexing.getIntUnchecked(list, index);
+	}
+	
+	public static Object dictGet(Object dict, Object key) {
+		return Indexing.dict(dict).get(key);
+	}
+	
+	public static void listSet(Object list, int index, Object value) {
+		Indexing.set(Indexing.list(list), index, value);
+	}
+	
+	public static void dictSet(Object dict, Object key, Object value) {
+		Indexing.dict(dict).put(key, value);
+	}
+	//endregion
+	
+	/**
+	 * Reports an exception thrown by a generated method with the name of its function, see {@link InterpreterException#wrap}.
+	 */
+	public static RuntimeException wrap(RuntimeException e, String function) {
+		return InterpreterException.wrap(e, function);
+	}
+	
+	/**
+	 * Calls a function value, {@code functions} maps the declarations of the program to the generated methods.
+	 */
+	public static Object callDynamic(Object callee, Object functions, Object[] args) {
+		if (callee == null) {
+			throw new PassthroughException(new NullPointerException("Calling a null function"));
+		}
+		
+		if (callee instanceof PredefinedFunction) {
+			return Builtins.call(((PredefinedFunction) callee).name, args);
+		}
+		
+		final MethodHandle method = ((Map<?, MethodHandle>) functions).get(callee);
+		
+		try {
+			return method.invokeWithArguments(args);
+		}
+		catch (RuntimeException | Error e) {
+			throw e;
+		}
+		catch (Throwable t) {
+			throw Exceptions.runtime(t);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package rime.source.optimizer;
+
+import norswap.uranium.Reactor;
+import rime.source.ast.constants.BinaryOperator;
+import rime.source.ast.constants.VariableKind;
+import rime.source.ast.declarations.RootNode;
+import rime.source.ast.declarations.VariableDefinition;
+import rime.source.ast.expressions.BinaryExpression;
+import rime.source.ast.expressions.Expression;
+import rime.source.ast.expressions.Identifier;
+import rime.source.ast.expressions.UnaryExpression;
+import rime.source.ast.expressions.literals.BoolLiteral;
+import rime.source.ast.expressions.literals.IntLiteral;
+import rime.source.ast.expressions.literals.StringLiteral;
+import rime.source.ast.statements.*;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static rime.source.ast.constants.BinaryOperator.*;
+import static rime.source.semantic.AttributeName.DECL;
+
+
+
+/**
+ * Computes the operations on literals ahead of time, replaces the uses of the vals initialized with a constant by
+ * the constant, and simplifies the if and while statements whose condition is constant. The branch kept by an if
+ * statement stays a block, so that its locals keep their scope.
+ * <p>
+ * Nothing that fails at runtime is folded: a division or a remainder by zero stays in the program, to fail when it
+ * runs. Rime evaluates both operands of {@code &&} and {@code ||}, so a constant operand only decides the result,
+ * or drops out of it, when the other operand is {@linkplain TreeRewriter#isPure pure}.
+ */
+final class ConstantFolding extends TreeRewriter {
+	/** The constant initializing each val, if it has one */
+	private final HashMap<VariableDefinition, Expression> constants = new HashMap<>();
+	
+	int foldedConstants;
+	
+	ConstantFolding(Reactor reactor, RootNode root) {
+		super(reactor, root);
+	}
+	
+	//region STATEMENTS
+	@Override
+	void statement(Statement node, List<Statement> out) {
+		if (node instanceof VariableDefinition) {
+			final VariableDefinition definition = (VariableDefinition) node;
+			final Expression value = expression(definition.assignment.right);
+			
+			if (definition.variableKind == VariableKind.VAL && isConstant(value)) {
+				constants.put(definition, value);
+			}
+			
+			out.add(new VariableDefinition(definition.variableKind, type(definition.type), new Assignment(
+				new Identifier(((Identifier) definition.assignment.left).value), definition.assignment.operator, value)));
+		}
+		else if (node instanceof IfStatement) {
+			final IfStatement statement = (IfStatement) node;
+			final Expression condition = expression(statement.condition);
+			
+			if (!(condition instanceof BoolLiteral)) {
+				out.add(new IfStatement(
+					condition,
+					block(statement.trueBody),
+					statement.falseBody == null ? null : block(statement.falseBody)));
+				return;
+			}
+			
+			final Block branch = ((BoolLiteral) condition).value ? statement.trueBody : statement.falseBody;
+			foldedConstants++;
+			
+			if (branch != null) {
+				out.add(block(branch));
+			}
+		}
+		else if (node instanceof WhileStatement) {
+			final WhileStatement statement = (WhileStatement) node;
+			final Expression condition = expression(statement.condition);
+			
+			if (condition instanceof BoolLiteral && !((BoolLiteral) condition).value) {
+				foldedConstants++;
+				return;
+			}
+			
+			out.add(new WhileStatement(condition, block(statement.body)));
+		}
+		else {
+			super.statement(node, out);
+		}
+	}
+	//endregion
+	
+	//region EXPRESSIONS
+	@Override
+	Expression expression(Expression node) {
+		if (node instanceof Identifier) {
+			final Expression constant = constants.get(R.get(node.attr(DECL)));
+			
+			if (constant != null) {
+				foldedConstants++;
+				return super.expression(constant);
+			}
+		}
+		
+		if (node instanceof BinaryExpression) {
+			final BinaryExpression binary = (BinaryExpression) node;
+			return binaryExpression(expression(binary.left), binary.operator, expression(binary.right));
+		}
+		
+		if (node instanceof UnaryExpression) {
+			final UnaryExpression unary = (UnaryExpression) node;
+			final Expression operand = expression(unary.operand);
+			
+			if (operand instanceof IntLiteral) {
+				foldedConstants++;
+				return new IntLiteral(-((IntLiteral) operand).value);
+			}
+			
+			if (operand instanceof BoolLiteral) {
+				foldedConstants++;
+				return new BoolLiteral(!((BoolLiteral) operand).value);
+			}
+			
+			return new UnaryExpression(unary.operator, operand);
+		}
+		
+		return super.expression(node);
+	}
+	
+	private Expression binaryExpression(Expression left, BinaryOperator operator, Expression right) {
+		final Expression folded = isConstant(left) && isConstant(right)
+			? fold(left, operator, right)
+			: logicalOperation(left, operator, right);
+		
+		if (folded == null) {
+			return new BinaryExpression(left, operator, right);
+		}
+		
+		foldedConstants++;
+		return folded;
+	}
+	
+	/**
+	 * Returns the value of an operation on two literals, or null when it has to run to fail.
+	 */
+	private static Expression fold(Expression left, BinaryOperator operator, Expression right) {
+		if (operator == ADD && (left instanceof StringLiteral || right instanceof StringLiteral)) {
+			return new StringLiteral(literalString(left) + literalString(right));
+		}
+		
+		if (left instanceof IntLiteral && right instanceof IntLiteral) {
+			final int l = ((IntLiteral) left).value;
+			final int r = ((IntLiteral) right).value;
+			
+			return switch (operator) {
+				case ADD -> new IntLiteral(l + r);
+				case SUBTRACT -> new IntLiteral(l - r);
+				case MULTIPLY -> new IntLiteral(l * r);
+				case DIVIDE -> r == 0 ? null : new IntLiteral(l / r);
+				case REMAINDER -> r == 0 ? null : new IntLiteral(l % r);
+				case GREATER_THAN -> new BoolLiteral(l > r);
+				case GREATER_THAN_EQUAL -> new BoolLiteral(l >= r);
+				case LESS_THAN -> new BoolLiteral(l < r);
+				case LESS_THAN_EQUAL -> new BoolLiteral(l <= r);
+				case EQUAL_TO -> new BoolLiteral(l == r);
+				case NOT_EQUAL_TO -> new BoolLiteral(l != r);
+				default -> null;
+			};
+		}
+		
+		if (left instanceof BoolLiteral && right instanceof BoolLiteral) {
+			final boolean l = ((BoolLiteral) left).value;
+			final boolean r = ((BoolLiteral) right).value;
+			
+			return switch (operator) {
+				case LOGICAL_AND -> new BoolLiteral(l && r);
+				case LOGICAL_OR -> new BoolLiteral(l || r);
+				case EQUAL_TO -> new BoolLiteral(l == r);
+				case NOT_EQUAL_TO -> new BoolLiteral(l != r);
+				default -> null;
+			};
+		}
+		
+		if (left instanceof StringLiteral && right instanceof StringLiteral) {
+			final boolean equal = ((StringLiteral) left).value.equals(((StringLiteral) right).value);
+			
+			return switch (operator) {
+				case EQUAL_TO -> new BoolLiteral(equal);
+				case NOT_EQUAL_TO -> new BoolLiteral(!equal);
+				default -> null;
+			};
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Simplifies {@code &&} and {@code ||} with one constant operand, or returns null.
+	 */
+	private static Expression logicalOperation(Expression left, BinaryOperator operator, Expression right) {
+		if (operator != LOGICAL_AND && operator != LOGICAL_OR) {
+			return null;
+		}
+		
+		final Expression constant = left instanceof BoolLiteral ? left : right instanceof BoolLiteral ? right : null;
+		final Expression other = constant == left ? right : left;
+		
+		if (constant == null || !isPure(other)) {
+			return null;
+		}
+		
+		// TRUE && x and FALSE || x are x, FALSE && x and TRUE || x are the constant
+		return ((BoolLiteral) constant).value == (operator == LOGICAL_AND) ? other : constant;
+	}
+	//endregion
+	
+	//region UTILS
+	private static String literalString(Expression node) {
+		return node instanceof StringLiteral ? ((StringLiteral) node).value : String.valueOf(
+			node instanceof IntLiteral ? ((IntLiteral) node).value : ((BoolLiteral) node).value);
+	}
+	//endregion
+}
@@ -0,0 +1,178 @@
+package rime.source.optimizer;
+
+import norswap.uranium.Reactor;
+import rime.source.ast.RimeNode;
+import rime.source.ast.constants.VariableKind;
+import rime.source.ast.declarations.RootNode;
+import rime.source.ast.declarations.VariableDefinition;
+import rime.source.ast.expressions.Expression;
+import rime.source.ast.expressions.Identifier;
+import rime.source.ast.expressions.literals.BoolLiteral;
+import rime.source.ast.statements.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static rime.source.semantic.AttributeName.*;
+
+
+
+/**
+ * Removes what the program never runs or never needs: the statements following one which always leaves the function,
+ * the branches of if and while statements whose condition is a literal, the vals nothing reads whose initializer is
+ * {@linkplain TreeRewriter#isPure pure}, and the pass statements.
+ * <p>
+ * The RETURNS and EXITS attributes of an if statement only account for its true branch: they tell that a statement
+ * may leave the function, it always does when the else branch leaves too.
+ */
+final class DeadCodeElimination extends TreeRewriter {
+	/** The vals to remove, whose only reads, if any, are from other vals to remove */
+	private final HashSet<VariableDefinition> unusedVals = new HashSet<>();
+	
+	DeadCodeElimination(Reactor reactor, RootNode root) {
+		super(reactor, root);
+		
+		final HashMap<Object, Integer> reads = new HashMap<>();
+		final ArrayList<VariableDefinition> vals = new ArrayList<>();
+		final HashSet<RimeNode> declared = new HashSet<>();
+		
+		// The identifier naming a variable in its definition is not a read
+		forEachNode(root, node -> {
+			if (node instanceof VariableDefinition) {
+				final VariableDefinition definition = (VariableDefinition) node;
+				declared.add(definition.assignment.left);
+				
+				if (definition.variableKind == VariableKind.VAL) {
+					vals.add(definition);
+				}
+			}
+			else if (node instanceof Identifier && !declared.contains(node)) {
+				reads.merge(R.get(node.attr(DECL)), 1, Integer::sum);
+			}
+		});
+		
+		// Removing a val drops the reads of its initializer, which can leave other vals unused
+		final ArrayDeque<VariableDefinition> worklist = new ArrayDeque<>(vals);
+		
+		while (!worklist.isEmpty()) {
+			final VariableDefinition val = worklist.poll();
+			
+			if (reads.getOrDefault(val, 0) > 0 || !isPure(val.assignment.right) || !unusedVals.add(val)) {
+				continue;
+			}
+			
+			forEachNode(val.assignment.right, node -> {
+				if (node instanceof Identifier) {
+					final Object decl = R.get(node.attr(DECL));
+					reads.merge(decl, -1, Integer::sum);
+					
+					if (decl instanceof VariableDefinition && ((VariableDefinition) decl).variableKind == VariableKind.VAL) {
+						worklist.add((VariableDefinition) decl);
+					}
+				}
+			});
+		}
+	}
+	
+	//region STATEMENTS
+	@Override
+	Block block(Block node) {
+		final ArrayList<Statement> statements = new ArrayList<>();
+		
+		for (Statement statement : node.statements) {
+			statement(statement, statements);
+			
+			if (leaves(statement)) {
+				break;
+			}
+		}
+		
+		return new Block(statements);
+	}
+	
+	@Override
+	void statement(Statement node, List<Statement> out) {
+		if (node instanceof EmptyStatement || unusedVals.contains(node)) {
+			return;
+		}
+		
+		if (node instanceof IfStatement) {
+			ifStatement((IfStatement) node, out);
+		}
+		else if (node instanceof WhileStatement && isLiteral(((WhileStatement) node).condition, false)) {
+			return;
+		}
+		else {
+			super.statement(node, out);
+		}
+	}
+	
+	private void ifStatement(IfStatement node, List<Statement> out) {
+		if (node.condition instanceof BoolLiteral) {
+			final Block branch = ((BoolLiteral) node.condition).value ? node.trueBody : node.falseBody;
+			
+			if (branch != null) {
+				nonEmpty(block(branch), out);
+			}
+			
+			return;
+		}
+		
+		final Block trueBody = block(node.trueBody);
+		final Block falseBody = node.falseBody == null ? null : block(node.falseBody);
+		
+		// Both branches are gone, the condition only matters if evaluating it has effects
+		if (trueBody.statements.isEmpty() && (falseBody == null || falseBody.statements.isEmpty())) {
+			if (!isPure(node.condition)) {
+				out.add(new IfStatement(expression(node.condition), trueBody, null));
+			}
+			
+			return;
+		}
+		
+		out.add(new IfStatement(
+			expression(node.condition),
+			trueBody,
+			falseBody == null || falseBody.statements.isEmpty() ? null : falseBody));
+	}
+	
+	private static void nonEmpty(Block block, List<Statement> out) {
+		if (!block.statements.isEmpty()) {
+			out.add(block);
+		}
+	}
+	//endregion
+	
+	//region UTILS
+	/**
+	 * Whether a statement never completes normally, leaving the function through a return or exit statement.
+	 */
+	private boolean leaves(Statement node) {
+		if (node instanceof ReturnStatement || node instanceof ExitStatement) {
+			return true;
+		}
+		
+		if (!(node instanceof Block || node instanceof IfStatement) || !mayLeave(node)) {
+			return false;
+		}
+		
+		if (node instanceof Block) {
+			return ((Block) node).statements.stream().anyMatch(this::leaves);
+		}
+		
+		final IfStatement statement = (IfStatement) node;
+		return statement.falseBody != null && leaves(statement.trueBody) && leaves(statement.falseBody);
+	}
+	
+	private boolean mayLeave(Statement node) {
+		return Boolean.TRUE.equals(R.get(node.attr(RETURNS))) || Boolean.TRUE.equals(R.get(node.attr(EXITS)));
+	}
+	
+	private static boolean isLiteral(Expression node, boolean value) {
+		return node instanceof BoolLiteral && ((BoolLiteral) node).value == value;
+	}
+	//endregion
+}
@@ -0,0 +1,281 @@
+package rime.source.optimizer;
+
+import norswap.uranium.Reactor;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.*;
+import rime.source.ast.expressions.literals.BoolLiteral;
+import rime.source.ast.expressions.literals.IntLiteral;
+import rime.source.ast.expressions.literals.StringLiteral;
+import rime.source.ast.statements.*;
+
+import java.util.*;
+
+import static rime.source.ast.constants.BinaryOperator.ASSIGNMENT;
+import static rime.source.ast.constants.VariableKind.VAL;
+import static rime.source.semantic.AttributeName.DECL;
+
+
+
+/**
+ * Replaces the calls to small non-recursive functions by the body of the function, which saves binding a frame
+ * and dispatching the call. Recursion is found on the call graph, and bodies larger than {@link #MAX_BODY_SIZE}
+ * nodes are left alone.
+ * <p>
+ * A call making a whole statement, initializing a variable, assigned to a variable or returned is replaced by
+ * definitions binding its arguments to the parameters, then the statements of the body, and the statement itself
+ * uses the returned value in place of the call. Only bodies leaving the function at their end qualify: a proc
+ * without exit before its last statement, a func whose only return is its last statement.
+ * <p>
+ * Anywhere else in an expression, a call to a func made of a single return is replaced by the returned expression,
+ * provided every argument is a variable or a literal: substituting them for the parameters then evaluates nothing
+ * twice nor out of order.
+ * <p>
+ * Rime forbids shadowing a declaration, so the parameters and locals of an inlined body are renamed to names
+ * which nothing else in the program uses.
+ */
+final class Inlining extends TreeRewriter {
+	/** Bodies with more nodes than this are not inlined */
+	static final int MAX_BODY_SIZE = 40;
+	
+	private final HashSet<FunctionDefinition> inlinable = new HashSet<>();
+	
+	/** The expressions replacing the names of the parameters and locals of the body being inlined */
+	private Map<String, Expression> bindings = Map.of();
+	
+	int inlinedCalls;
+	
+	Inlining(Reactor reactor, RootNode root) {
+		super(reactor, root);
+		
+		final HashMap<FunctionDefinition, Set<FunctionDefinition>> callGraph = new HashMap<>();
+		
+		for (FunctionDefinition definition : root.preMainDefinitions) {
+			callGraph.put(definition, callees(definition));
+		}
+		
+		for (FunctionDefinition definition : root.preMainDefinitions) {
+			if (!reaches(definition, definition, callGraph, new HashSet<>())
+					&& size(body(definition)) <= MAX_BODY_SIZE
+					&& leavesAtEnd(definition)) {
+				inlinable.add(definition);
+			}
+		}
+	}
+	
+	//region ANALYSIS
+	private Set<FunctionDefinition> callees(FunctionDefinition definition) {
+		final HashSet<FunctionDefinition> callees = new HashSet<>();
+		
+		forEachNode(body(definition), node -> {
+			if (node instanceof FunctionCall) {
+				final Object decl = R.get(((FunctionCall) node).name.attr(DECL));
+				
+				if (decl instanceof FunctionDefinition) {
+					callees.add((FunctionDefinition) decl);
+				}
+			}
+		});
+		
+		return callees;
+	}
+	
+	private static boolean reaches(
+			FunctionDefinition from, FunctionDefinition target,
+			Map<FunctionDefinition, Set<FunctionDefinition>> callGraph, Set<FunctionDefinition> visited) {
+		for (FunctionDefinition callee : callGraph.getOrDefault(from, Set.of())) {
+			if (callee == target || visited.add(callee) && reaches(callee, target, callGraph, visited)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Whether the only exit or return statement of a function, if any, is the last statement of its body.
+	 */
+	private static boolean leavesAtEnd(FunctionDefinition definition) {
+		final List<Statement> statements = body(definition).statements;
+		final Statement last = statements.isEmpty() ? null : statements.get(statements.size() - 1);
+		final int[] leaves = { 0 };
+		
+		forEachNode(body(definition), node -> {
+			if (node instanceof ExitStatement || node instanceof ReturnStatement) {
+				leaves[0]++;
+			}
+		});
+		
+		return leaves[0] == 0 || leaves[0] == 1 && (last instanceof ExitStatement || last instanceof ReturnStatement);
+	}
+	
+	/**
+	 * Returns the callee of a call which can be inlined, or null.
+	 */
+	private FunctionDefinition inlinableCallee(Expression node) {
+		if (!(node instanceof FunctionCall)) {
+			return null;
+		}
+		
+		final Object decl = R.get(((FunctionCall) node).name.attr(DECL));
+		return inlinable.contains(decl) ? (FunctionDefinition) decl : null;
+	}
+	
+	/**
+	 * Returns the expression returned by a func made of a single return, or null.
+	 */
+	private static Expression returnedExpression(FunctionDefinition definition) {
+		final List<Statement> statements = body(definition).statements;
+		
+		if (definition instanceof FuncDefinition && statements.size() == 1 && statements.get(0) instanceof ReturnStatement) {
+			return ((ReturnStatement) statements.get(0)).expression;
+		}
+		
+		return null;
+	}
+	
+	private static boolean isAtom(Expression node) {
+		return node instanceof Identifier
+			|| node instanceof IntLiteral
+			|| node instanceof BoolLiteral
+			|| node instanceof StringLiteral;
+	}
+	//endregion
+	
+	//region STATEMENTS
+	@Override
+	void statement(Statement node, List<Statement> out) {
+		if (node instanceof ExpressionStatement) {
+			final Expression expression = ((ExpressionStatement) node).expression;
+			final FunctionDefinition callee = inlinableCallee(expression);
+			final Expression value = value(expression, out);
+			
+			if (value instanceof FunctionCall) {
+				out.add(new ExpressionStatement(value));
+			}
+			else if (value != null) {
+				// The value of the inlined body is unused, but evaluating it could still fail
+				out.add(new VariableDefinition(VAL, type(((FuncDefinition) callee).returnType),
+					new Assignment(new Identifier(freshName(name(callee) + "_result")), ASSIGNMENT, value)));
+			}
+		}
+		else if (node instanceof VariableDefinition) {
+			final VariableDefinition definition = (VariableDefinition) node;
+			final Expression value = value(definition.assignment.right, out);
+			
+			out.add(new VariableDefinition(definition.variableKind, type(definition.type),
+				new Assignment(expression(definition.assignment.left), ASSIGNMENT, value)));
+		}
+		else if (node instanceof Assignment && ((Assignment) node).left instanceof Identifier) {
+			// The body is only moved before the assignment when the target evaluates nothing
+			final Assignment assignment = (Assignment) node;
+			final Expression value = value(assignment.right, out);
+			
+			out.add(new Assignment(expression(assignment.left), assignment.operator, value));
+		}
+		else if (node instanceof ReturnStatement && ((ReturnStatement) node).expression != null) {
+			out.add(new ReturnStatement(value(((ReturnStatement) node).expression, out)));
+		}
+		else {
+			super.statement(node, out);
+		}
+	}
+	
+	/**
+	 * Returns the rewritten value of a statement, after appending to {@code out} the body of its callee when it is
+	 * an inlinable call. Returns null for an inlined proc or void func.
+	 */
+	private Expression value(Expression node, List<Statement> out) {
+		final FunctionDefinition callee = inlinableCallee(node);
+		return callee == null ? expression(node) : splice((FunctionCall) node, callee, out);
+	}
+	
+	private Expression splice(FunctionCall call, FunctionDefinition callee, List<Statement> out) {
+		final List<Parameter> params = parameters(callee);
+		final List<Statement> statements = body(callee).statements;
+		final HashMap<String, Expression> renames = new HashMap<>();
+		
+		// The arguments are evaluated in order, in the scope of the caller, before anything of the body
+		for (int i = 0; i < params.size(); i++) {
+			final Parameter param = params.get(i);
+			final Expression argument = value(call.arguments.get(i), out);
+			final String name = freshName(name(callee) + "_" + param.identifier.value);
+			
+			out.add(new VariableDefinition(VAL, type(param.type), new Assignment(new Identifier(name), ASSIGNMENT, argument)));
+			renames.put(param.identifier.value, new Identifier(name));
+		}
+		
+		forEachNode(body(callee), node -> {
+			if (node instanceof VariableDefinition) {
+				final String local = ((Identifier) ((VariableDefinition) node).assignment.left).value;
+				renames.put(local, new Identifier(freshName(name(callee) + "_" + local)));
+			}
+		});
+		
+		final Map<String, Expression> callerBindings = bindings;
+		bindings = renames;
+		inlinedCalls++;
+		
+		try {
+			for (Statement statement : statements) {
+				if (statement instanceof ReturnStatement) {
+					final Expression expression = ((ReturnStatement) statement).expression;
+					return expression == null ? null : value(expression, out);
+				}
+				
+				if (!(statement instanceof ExitStatement)) {
+					statement(statement, out);
+				}
+			}
+			
+			return null;
+		}
+		finally {
+			bindings = callerBindings;
+		}
+	}
+	//endregion
+	
+	//region EXPRESSIONS
+	@Override
+	Expression expression(Expression node) {
+		if (node instanceof Identifier) {
+			final Expression bound = bindings.get(((Identifier) node).value);
+			return super.expression(bound != null ? bound : node);
+		}
+		
+		if (node instanceof FunctionCall) {
+			return functionCall((FunctionCall) node);
+		}
+		
+		return super.expression(node);
+	}
+	
+	private Expression functionCall(FunctionCall node) {
+		final List<Expression> arguments = expressions(node.arguments);
+		final FunctionDefinition callee = inlinableCallee(node);
+		final Expression returned = callee == null ? null : returnedExpression(callee);
+		
+		if (returned == null || !arguments.stream().allMatch(Inlining::isAtom)) {
+			return new FunctionCall(new Identifier(node.name.value), arguments);
+		}
+		
+		final List<Parameter> params = parameters(callee);
+		final HashMap<String, Expression> substitutions = new HashMap<>();
+		
+		for (int i = 0; i < params.size(); i++) {
+			substitutions.put(params.get(i).identifier.value, arguments.get(i));
+		}
+		
+		final Map<String, Expression> callerBindings = bindings;
+		bindings = substitutions;
+		inlinedCalls++;
+		
+		try {
+			return expression(returned);
+		}
+		finally {
+			bindings = callerBindings;
+		}
+	}
+	//endregion
+}
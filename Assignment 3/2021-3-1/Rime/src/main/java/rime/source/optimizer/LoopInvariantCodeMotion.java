@@ -0,0 +1,405 @@
+package rime.source.optimizer;
+
+import norswap.uranium.Reactor;
+import rime.source.ast.constants.BasicType;
+import rime.source.ast.constants.BinaryOperator;
+import rime.source.ast.constants.UnaryOperator;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.*;
+import rime.source.ast.expressions.literals.BoolLiteral;
+import rime.source.ast.expressions.literals.IntLiteral;
+import rime.source.ast.expressions.literals.StringLiteral;
+import rime.source.ast.statements.*;
+import rime.source.ast.types.PrimitiveType;
+import rime.source.semantic.types.BoolType;
+import rime.source.semantic.types.IntType;
+import rime.source.semantic.types.StringType;
+import rime.source.semantic.types.Type;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static rime.source.ast.constants.BinaryOperator.ASSIGNMENT;
+import static rime.source.ast.constants.VariableKind.VAL;
+import static rime.source.semantic.AttributeName.DECL;
+import static rime.source.semantic.AttributeName.TYPE;
+
+
+
+/**
+ * Moves the expressions whose value is the same on every iteration of a while loop out of it, into vals defined
+ * before the loop. Only the expressions of type int, bool or string which make a call or index a collection are
+ * moved: the others are as cheap to evaluate as to read from a val, and a collection made once would be shared by
+ * every iteration.
+ * <p>
+ * An expression is invariant when the variables it reads are not assigned in the loop, and the functions it calls
+ * are free of effects, see {@link #PURE_BUILTINS}: a func qualifies when it neither prints, assigns an element of a
+ * collection nor calls a function which does. Reading an element, or passing a collection to a func, is invariant
+ * when the loop assigns no element and calls no such function.
+ * <p>
+ * An invariant expression can still fail, so it is only moved when nothing observable runs before it on the first
+ * iteration: it is evaluated in the condition, or at the start of the body, after {@linkplain TreeRewriter#isPure
+ * pure} expressions only. The expressions from the body are evaluated when the loop is entered, which takes a copy
+ * of the condition, in {@code if (condition) { ... while (condition) { ... } }}, allowed when the condition is pure.
+ */
+final class LoopInvariantCodeMotion extends TreeRewriter {
+	/** The predefined functions without effects, which give the same result for the same arguments */
+	static final Set<String> PURE_BUILTINS = Set.of("length", "contains", "parseInt", "append", "add");
+	
+	/** The functions which print, assign an element of a collection, or call a function doing either */
+	private final HashSet<FunctionDefinition> impure = new HashSet<>();
+	
+	/** The hoisted expressions of each loop, in order */
+	final LinkedHashMap<String, List<String>> hoisted = new LinkedHashMap<>();
+	
+	private Loop loop;
+	private String function = "main";
+	private int loops;
+	
+	LoopInvariantCodeMotion(Reactor reactor, RootNode root) {
+		super(reactor, root);
+		
+		final HashMap<FunctionDefinition, Set<FunctionDefinition>> callers = new HashMap<>();
+		final ArrayDeque<FunctionDefinition> worklist = new ArrayDeque<>();
+		
+		for (FunctionDefinition definition : root.preMainDefinitions) {
+			forEachNode(body(definition), node -> {
+				final Object callee = node instanceof FunctionCall ? R.get(((FunctionCall) node).name.attr(DECL)) : null;
+				
+				if (callee instanceof FunctionDefinition) {
+					callers.computeIfAbsent((FunctionDefinition) callee, key -> new HashSet<>()).add(definition);
+				}
+				else if (callee instanceof PredefinedFunction && !PURE_BUILTINS.contains(((PredefinedFunction) callee).name)
+						|| isElementAssignment(node)) {
+					worklist.add(definition);
+				}
+			});
+		}
+		
+		// A function calling an impure function is impure
+		while (!worklist.isEmpty()) {
+			final FunctionDefinition definition = worklist.poll();
+			
+			if (impure.add(definition)) {
+				worklist.addAll(callers.getOrDefault(definition, Set.of()));
+			}
+		}
+	}
+	
+	/**
+	 * What the loop being rewritten changes, and where its invariant expressions go.
+	 */
+	private final class Loop {
+		/** The variables assigned or defined in the loop */
+		final HashSet<Object> assigned = new HashSet<>();
+		
+		/** Whether the loop can assign an element of a collection */
+		boolean mutates;
+		
+		/** The definitions of the hoisted vals, to run before the loop */
+		List<Statement> out;
+		
+		/** Whether nothing observable has run before the expression being rewritten, on the first iteration */
+		boolean safe = true;
+		
+		final List<String> expressions = new ArrayList<>();
+		
+		Loop(WhileStatement node) {
+			forEachNode(node, child -> {
+				if (child instanceof VariableDefinition) {
+					assigned.add(child);
+				}
+				else if (child instanceof Assignment && ((Assignment) child).left instanceof Identifier) {
+					assigned.add(R.get(((Assignment) child).left.attr(DECL)));
+				}
+				else if (isElementAssignment(child) || child instanceof FunctionCall
+						&& impure.contains(R.get(((FunctionCall) child).name.attr(DECL)))) {
+					mutates = true;
+				}
+			});
+		}
+	}
+	
+	//region STATEMENTS
+	@Override
+	FunctionDefinition function(FunctionDefinition node) {
+		function = name(node);
+		loops = 0;
+		
+		try {
+			return super.function(node);
+		}
+		finally {
+			function = "main";
+			loops = 0;
+		}
+	}
+	
+	@Override
+	void statement(Statement node, List<Statement> out) {
+		if (!(node instanceof WhileStatement)) {
+			super.statement(node, out);
+			return;
+		}
+		
+		final WhileStatement statement = (WhileStatement) node;
+		final String name = function + ", loop " + ++loops + ": while (" + source(statement.condition) + ")";
+		final Loop outer = loop;
+		loop = new Loop(statement);
+		hoisted.put(name, loop.expressions);
+		
+		try {
+			loop.out = out;
+			final Expression condition = hoist(statement.condition);
+			
+			// The expressions of the body run once the loop is entered
+			final ArrayList<Statement> entry = new ArrayList<>();
+			loop.out = entry;
+			loop.safe = isPure(condition);
+			
+			final Block body = loopBody(statement.body);
+			
+			if (entry.isEmpty()) {
+				out.add(new WhileStatement(condition, body));
+			}
+			else {
+				entry.add(new WhileStatement(condition, body));
+				out.add(new IfStatement(expression(condition), new Block(entry), null));
+			}
+			
+			if (loop.expressions.isEmpty()) {
+				hoisted.remove(name);
+			}
+		}
+		finally {
+			loop = outer;
+		}
+	}
+	
+	/**
+	 * Rewrites the body of the current loop, hoisting from its statements until one of them may be observed.
+	 */
+	private Block loopBody(Block node) {
+		final ArrayList<Statement> statements = new ArrayList<>();
+		final Loop current = loop;
+		
+		for (Statement statement : node.statements) {
+			if (!current.safe) {
+				statement(statement, statements);
+			}
+			else if (statement instanceof VariableDefinition) {
+				final VariableDefinition definition = (VariableDefinition) statement;
+				final Expression value = hoist(definition.assignment.right);
+				
+				statements.add(new VariableDefinition(definition.variableKind, type(definition.type),
+					new Assignment(expression(definition.assignment.left), ASSIGNMENT, value)));
+			}
+			else if (statement instanceof Assignment && ((Assignment) statement).left instanceof Identifier) {
+				final Assignment assignment = (Assignment) statement;
+				final Expression value = hoist(assignment.right);
+				
+				statements.add(new Assignment(expression(assignment.left), assignment.operator, value));
+			}
+			else if (statement instanceof ExpressionStatement) {
+				statements.add(new ExpressionStatement(hoist(((ExpressionStatement) statement).expression)));
+			}
+			else {
+				current.safe = false;
+				statement(statement, statements);
+			}
+		}
+		
+		return new Block(statements);
+	}
+	//endregion
+	
+	//region EXPRESSIONS
+	/**
+	 * Rewrites an expression of the current loop, in evaluation order, moving out its invariant parts while nothing
+	 * evaluated before them may fail or have effects.
+	 */
+	private Expression hoist(Expression node) {
+		if (loop.safe && isWorthHoisting(node) && isInvariant(node)) {
+			final String name = freshName(node instanceof FunctionCall ? ((FunctionCall) node).name.value : "invariant");
+			
+			loop.out.add(new VariableDefinition(VAL, typeNode(R.get(node.attr(TYPE))),
+				new Assignment(new Identifier(name), ASSIGNMENT, expression(node))));
+			loop.expressions.add(source(node));
+			return new Identifier(name);
+		}
+		
+		if (node instanceof BinaryExpression) {
+			final BinaryExpression binary = (BinaryExpression) node;
+			final Expression left = hoist(binary.left);
+			final Expression right = hoist(binary.right);
+			
+			loop.safe &= binary.operator != BinaryOperator.DIVIDE && binary.operator != BinaryOperator.REMAINDER;
+			return new BinaryExpression(left, binary.operator, right);
+		}
+		
+		if (node instanceof UnaryExpression) {
+			final UnaryExpression unary = (UnaryExpression) node;
+			return new UnaryExpression(unary.operator, hoist(unary.operand));
+		}
+		
+		if (node instanceof FunctionCall) {
+			final FunctionCall call = (FunctionCall) node;
+			final ArrayList<Expression> arguments = new ArrayList<>();
+			
+			for (Expression argument : call.arguments) {
+				arguments.add(hoist(argument));
+			}
+			
+			loop.safe = false;
+			return new FunctionCall(new Identifier(call.name.value), arguments);
+		}
+		
+		if (node instanceof IndexedCollectionAccess) {
+			final IndexedCollectionAccess access = (IndexedCollectionAccess) node;
+			final Expression index = hoist(access.index);
+			
+			loop.safe = false;
+			return new IndexedCollectionAccess(new Identifier(access.identifier.value), index);
+		}
+		
+		loop.safe &= isPure(node);
+		return expression(node);
+	}
+	
+	private boolean isInvariant(Expression node) {
+		if (isConstant(node)) {
+			return true;
+		}
+		
+		if (node instanceof Identifier) {
+			return !loop.assigned.contains(R.get(node.attr(DECL)));
+		}
+		
+		if (node instanceof UnaryExpression) {
+			return isInvariant(((UnaryExpression) node).operand);
+		}
+		
+		if (node instanceof BinaryExpression) {
+			final BinaryExpression binary = (BinaryExpression) node;
+			return isInvariant(binary.left) && isInvariant(binary.right);
+		}
+		
+		if (node instanceof IndexedCollectionAccess) {
+			final IndexedCollectionAccess access = (IndexedCollectionAccess) node;
+			return !loop.mutates && isInvariant(access.identifier) && isInvariant(access.index);
+		}
+		
+		if (node instanceof FunctionCall) {
+			final FunctionCall call = (FunctionCall) node;
+			final Object callee = R.get(call.name.attr(DECL));
+			
+			if (callee instanceof PredefinedFunction) {
+				// Assigning an element changes neither the length of a list, nor a set
+				return PURE_BUILTINS.contains(((PredefinedFunction) callee).name)
+					&& call.arguments.stream().allMatch(this::isInvariant);
+			}
+			
+			return callee instanceof FunctionDefinition && !impure.contains(callee)
+				&& call.arguments.stream().allMatch(argument -> isInvariant(argument)
+					&& (!loop.mutates || isPrimitive(R.get(argument.attr(TYPE)))));
+		}
+		
+		return false;
+	}
+	
+	private boolean isWorthHoisting(Expression node) {
+		if (!(node instanceof FunctionCall || node instanceof IndexedCollectionAccess || node instanceof BinaryExpression)
+				|| !isPrimitive(R.get(node.attr(TYPE)))) {
+			return false;
+		}
+		
+		final boolean[] costly = { false };
+		
+		forEachNode(node, child -> {
+			costly[0] |= child instanceof FunctionCall || child instanceof IndexedCollectionAccess;
+		});
+		
+		return costly[0];
+	}
+	//endregion
+	
+	//region UTILS
+	private static boolean isElementAssignment(Object node) {
+		return node instanceof Assignment && ((Assignment) node).left instanceof IndexedCollectionAccess;
+	}
+	
+	private static boolean isPrimitive(Type type) {
+		return type instanceof IntType || type instanceof BoolType || type instanceof StringType;
+	}
+	
+	private static PrimitiveType typeNode(Type type) {
+		return new PrimitiveType(type instanceof IntType ? BasicType.INT : type instanceof BoolType ? BasicType.BOOL : BasicType.STRING);
+	}
+	
+	/**
+	 * Renders an expression in the syntax of Rime, for the report.
+	 */
+	static String source(Expression node) {
+		if (node instanceof Identifier) {
+			return ((Identifier) node).value;
+		}
+		
+		if (node instanceof IntLiteral) {
+			return String.valueOf(((IntLiteral) node).value);
+		}
+		
+		if (node instanceof BoolLiteral) {
+			return ((BoolLiteral) node).value ? "TRUE" : "FALSE";
+		}
+		
+		if (node instanceof StringLiteral) {
+			return ((StringLiteral) node).value;
+		}
+		
+		if (node instanceof FunctionCall) {
+			final FunctionCall call = (FunctionCall) node;
+			return call.name.value + "(" + call.arguments.stream().map(LoopInvariantCodeMotion::source).collect(Collectors.joining(", ")) + ")";
+		}
+		
+		if (node instanceof IndexedCollectionAccess) {
+			final IndexedCollectionAccess access = (IndexedCollectionAccess) node;
+			return access.identifier.value + "[" + source(access.index) + "]";
+		}
+		
+		if (node instanceof UnaryExpression) {
+			final UnaryExpression unary = (UnaryExpression) node;
+			return (unary.operator == UnaryOperator.NEGATIVE ? "-" : "!") + operand(unary.operand);
+		}
+		
+		if (node instanceof BinaryExpression) {
+			final BinaryExpression binary = (BinaryExpression) node;
+			return operand(binary.left) + " " + symbol(binary.operator) + " " + operand(binary.right);
+		}
+		
+		return node.toString();
+	}
+	
+	private static String operand(Expression node) {
+		return node instanceof BinaryExpression ? "(" + source(node) + ")" : source(node);
+	}
+	
+	private static String symbol(BinaryOperator operator) {
+		return switch (operator) {
+			case ADD -> "+";
+			case SUBTRACT -> "-";
+			case MULTIPLY -> "*";
+			case DIVIDE -> "/";
+			case REMAINDER -> "%";
+			case LESS_THAN -> "<";
+			case LESS_THAN_EQUAL -> "<=";
+			case GREATER_THAN -> ">";
+			case GREATER_THAN_EQUAL -> ">=";
+			case EQUAL_TO -> "==";
+			case NOT_EQUAL_TO -> "!=";
+			case LOGICAL_AND -> "&&";
+			case LOGICAL_OR -> "||";
+			case ASSIGNMENT -> "=";
+		};
+	}
+	//endregion
+}
@@ -0,0 +1,150 @@
+package rime.source.optimizer;
+
+import norswap.uranium.Reactor;
+import norswap.uranium.SemanticError;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.RootNode;
+import rime.source.semantic.SemanticAnalysis;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+
+/**
+ * Rewrites an analysed program into an equivalent one which the execution engines run faster.
+ * <p>
+ * The passes build a new tree rather than editing the nodes, whose fields are final, and the new nodes have no
+ * attributes yet: the result is analysed again, with its own reactor. Run it between {@link SemanticAnalysis} and
+ * {@link rime.source.interpreter.Engine#interpret}, on a program without semantic errors.
+ */
+public final class Optimizer {
+	public enum Pass {
+		/** Inlines small non-recursive functions at their call sites, see {@link Inlining} */
+		INLINING,
+		
+		/** Computes the operations on constants and propagates the constant vals, see {@link ConstantFolding} */
+		FOLDING,
+		
+		/** Removes unreachable statements, unused vals and pass statements, see {@link DeadCodeElimination} */
+		ELIMINATION,
+		
+		/** Moves the invariant calls and element reads out of while loops, see {@link LoopInvariantCodeMotion} */
+		HOISTING
+	}
+	
+	private final Set<Pass> passes;
+	
+	public static final class Result {
+		public final RootNode tree;
+		public final Reactor reactor;
+		
+		/** Number of calls replaced by the body of their callee */
+		public final int inlinedCalls;
+		
+		/** Number of expressions replaced by a constant, and of if and while statements with a constant condition */
+		public final int foldedConstants;
+		
+		/** Number of nodes in the tree before the elimination of dead code minus the number after */
+		public final int removedNodes;
+		
+		/** The expressions moved out of each while loop, by loop, in the order of the program */
+		public final Map<String, List<String>> hoistedExpressions;
+		
+		private Result(
+				RootNode tree, Reactor reactor, int inlinedCalls, int foldedConstants, int removedNodes,
+				Map<String, List<String>> hoistedExpressions) {
+			this.tree = tree;
+			this.reactor = reactor;
+			this.inlinedCalls = inlinedCalls;
+			this.foldedConstants = foldedConstants;
+			this.removedNodes = removedNodes;
+			this.hoistedExpressions = hoistedExpressions;
+		}
+		
+		/**
+		 * Lists the expressions moved out of each while loop, for the report mode.
+		 */
+		public String report() {
+			final StringBuilder sb = new StringBuilder();
+			
+			hoistedExpressions.forEach((loop, expressions) -> {
+				sb.append(loop).append("\n");
+				
+				for (String expression : expressions) {
+					sb.append("\t").append(expression).append("\n");
+				}
+			});
+			
+			return sb.toString();
+		}
+	}
+	
+	public Optimizer() {
+		this(EnumSet.allOf(Pass.class));
+	}
+	
+	/**
+	 * @param passes the passes to run, leaving one out disables it
+	 */
+	public Optimizer(Set<Pass> passes) {
+		this.passes = EnumSet.noneOf(Pass.class);
+		this.passes.addAll(passes);
+	}
+	
+	public Result optimize(RimeNode root, Reactor reactor) {
+		RootNode tree = (RootNode) root;
+		int inlinedCalls = 0;
+		int foldedConstants = 0;
+		int removedNodes = 0;
+		Map<String, List<String>> hoistedExpressions = Map.of();
+		
+		// Each pass reads the attributes of the tree it rewrites, the next one needs those of its result
+		if (passes.contains(Pass.INLINING)) {
+			final Inlining inlining = new Inlining(reactor, tree);
+			tree = inlining.rewrite();
+			reactor = analyze(tree);
+			inlinedCalls = inlining.inlinedCalls;
+		}
+		
+		if (passes.contains(Pass.FOLDING)) {
+			final ConstantFolding folding = new ConstantFolding(reactor, tree);
+			tree = folding.rewrite();
+			reactor = analyze(tree);
+			foldedConstants = folding.foldedConstants;
+		}
+		
+		if (passes.contains(Pass.ELIMINATION)) {
+			final int size = TreeRewriter.size(tree);
+			tree = new DeadCodeElimination(reactor, tree).rewrite();
+			reactor = analyze(tree);
+			removedNodes = size - TreeRewriter.size(tree);
+		}
+		
+		if (passes.contains(Pass.HOISTING)) {
+			final LoopInvariantCodeMotion motion = new LoopInvariantCodeMotion(reactor, tree);
+			tree = motion.rewrite();
+			reactor = analyze(tree);
+			hoistedExpressions = Collections.unmodifiableMap(motion.hoisted);
+		}
+		
+		return new Result(tree, reactor, inlinedCalls, foldedConstants, removedNodes, hoistedExpressions);
+	}
+	
+	private static Reactor analyze(RootNode tree) {
+		final Reactor reactor = new Reactor();
+		
+		SemanticAnalysis.createWalker(reactor).walk(tree);
+		reactor.run();
+		
+		if (!reactor.errors().isEmpty()) {
+			final SemanticError error = reactor.errors().iterator().next();
+			throw new IllegalStateException("The optimized program does not analyse: " + error);
+		}
+		
+		return reactor;
+	}
+}
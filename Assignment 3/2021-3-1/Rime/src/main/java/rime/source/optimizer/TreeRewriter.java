@@ -0,0 +1,331 @@
+package rime.source.optimizer;
+
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.*;
+import rime.source.ast.expressions.literals.BoolLiteral;
+import rime.source.ast.expressions.literals.IntLiteral;
+import rime.source.ast.expressions.literals.NullLiteral;
+import rime.source.ast.expressions.literals.StringLiteral;
+import rime.source.ast.statements.*;
+import rime.source.ast.types.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+import static rime.source.ast.constants.BinaryOperator.DIVIDE;
+import static rime.source.ast.constants.BinaryOperator.REMAINDER;
+
+
+
+/**
+ * Copies an analysed tree, node by node: the passes of {@link Optimizer} override the nodes they rewrite. They read
+ * the attributes of the original nodes from {@link #R}, the copies have none until the new tree is analysed again.
+ * A node of the new tree is never shared with the original one, nor used twice.
+ */
+abstract class TreeRewriter {
+	protected final Reactor R;
+	protected final RootNode root;
+	
+	/** Every name of the program, the names made by {@link #freshName} avoid them */
+	private HashSet<String> names;
+	private int renamed;
+	
+	TreeRewriter(Reactor reactor, RootNode root) {
+		this.R = reactor;
+		this.root = root;
+	}
+	
+	RootNode rewrite() {
+		final ArrayList<FunctionDefinition> definitions = new ArrayList<>();
+		
+		for (FunctionDefinition definition : root.preMainDefinitions) {
+			definitions.add(function(definition));
+		}
+		
+		return new RootNode(definitions, new EntryPoint(block(root.entryPoint.definition.body)));
+	}
+	
+	//region STATEMENTS
+	FunctionDefinition function(FunctionDefinition node) {
+		final ArrayList<Parameter> params = new ArrayList<>();
+		
+		for (Parameter param : parameters(node)) {
+			params.add(new Parameter(type(param.type), new Identifier(param.identifier.value)));
+		}
+		
+		final Parameters parameters = new Parameters(params);
+		
+		if (node instanceof ProcDefinition) {
+			final ProcDefinition proc = (ProcDefinition) node;
+			return new ProcDefinition(new Identifier(proc.name.value), parameters, block(proc.body));
+		}
+		
+		final FuncDefinition func = (FuncDefinition) node;
+		return new FuncDefinition(type(func.returnType), new Identifier(func.name.value), parameters, block(func.body));
+	}
+	
+	Block block(Block node) {
+		final ArrayList<Statement> statements = new ArrayList<>();
+		
+		for (Statement statement : node.statements) {
+			statement(statement, statements);
+		}
+		
+		return new Block(statements);
+	}
+	
+	/**
+	 * Appends the rewritten statement to {@code out}, which a pass may also extend with statements to run first,
+	 * or leave unchanged to remove the statement.
+	 */
+	void statement(Statement node, List<Statement> out) {
+		if (node instanceof ExpressionStatement) {
+			out.add(new ExpressionStatement(expression(((ExpressionStatement) node).expression)));
+		}
+		else if (node instanceof VariableDefinition) {
+			final VariableDefinition definition = (VariableDefinition) node;
+			
+			out.add(new VariableDefinition(definition.variableKind, type(definition.type), new Assignment(
+				expression(definition.assignment.left),
+				definition.assignment.operator,
+				expression(definition.assignment.right))));
+		}
+		else if (node instanceof Assignment) {
+			final Assignment assignment = (Assignment) node;
+			out.add(new Assignment(expression(assignment.left), assignment.operator, expression(assignment.right)));
+		}
+		else if (node instanceof ReturnStatement) {
+			final Expression expression = ((ReturnStatement) node).expression;
+			out.add(new ReturnStatement(expression == null ? null : expression(expression)));
+		}
+		else if (node instanceof IfStatement) {
+			final IfStatement statement = (IfStatement) node;
+			
+			out.add(new IfStatement(
+				expression(statement.condition),
+				block(statement.trueBody),
+				statement.falseBody == null ? null : block(statement.falseBody)));
+		}
+		else if (node instanceof WhileStatement) {
+			final WhileStatement statement = (WhileStatement) node;
+			out.add(new WhileStatement(expression(statement.condition), block(statement.body)));
+		}
+		else if (node instanceof Block) {
+			out.add(block((Block) node));
+		}
+		else if (node instanceof ExitStatement) {
+			out.add(new ExitStatement());
+		}
+		else if (node instanceof EmptyStatement) {
+			out.add(new EmptyStatement());
+		}
+		else {
+			throw new IllegalArgumentException("Unknown statement: " + node);
+		}
+	}
+	//endregion
+	
+	//region EXPRESSIONS
+	Expression expression(Expression node) {
+		if (node instanceof Identifier) {
+			return new Identifier(((Identifier) node).value);
+		}
+		
+		if (node instanceof IntLiteral) {
+			return new IntLiteral(((IntLiteral) node).value);
+		}
+		
+		if (node instanceof BoolLiteral) {
+			return new BoolLiteral(((BoolLiteral) node).value);
+		}
+		
+		if (node instanceof StringLiteral) {
+			return new StringLiteral(((StringLiteral) node).value);
+		}
+		
+		if (node instanceof NullLiteral) {
+			return NullLiteral.NULL;
+		}
+		
+		if (node instanceof FunctionCall) {
+			final FunctionCall call = (FunctionCall) node;
+			return new FunctionCall(new Identifier(call.name.value), expressions(call.arguments));
+		}
+		
+		if (node instanceof BinaryExpression) {
+			final BinaryExpression binary = (BinaryExpression) node;
+			return new BinaryExpression(expression(binary.left), binary.operator, expression(binary.right));
+		}
+		
+		if (node instanceof UnaryExpression) {
+			final UnaryExpression unary = (UnaryExpression) node;
+			return new UnaryExpression(unary.operator, expression(unary.operand));
+		}
+		
+		if (node instanceof IndexedCollectionAccess) {
+			final IndexedCollectionAccess access = (IndexedCollectionAccess) node;
+			return new IndexedCollectionAccess((Identifier) expression(access.identifier), expression(access.index));
+		}
+		
+		if (node instanceof ListElements) {
+			return new ListElements(expressions(((ListElements) node).elements));
+		}
+		
+		if (node instanceof SetElements) {
+			return new SetElements(expressions(((SetElements) node).elements));
+		}
+		
+		if (node instanceof DictElements) {
+			final ArrayList<DictElement> elements = new ArrayList<>();
+			
+			for (DictElement element : ((DictElements) node).elements) {
+				elements.add((DictElement) expression(element));
+			}
+			
+			return new DictElements(elements);
+		}
+		
+		if (node instanceof DictElement) {
+			final DictElement element = (DictElement) node;
+			return new DictElement(expression(element.key), expression(element.value));
+		}
+		
+		if (node instanceof EmptyList) {
+			return new EmptyList(primitiveType(((EmptyList) node).type));
+		}
+		
+		if (node instanceof EmptySet) {
+			return new EmptySet(primitiveType(((EmptySet) node).type));
+		}
+		
+		if (node instanceof EmptyDict) {
+			final EmptyDict dict = (EmptyDict) node;
+			return new EmptyDict(primitiveType(dict.keyType), primitiveType(dict.valueType));
+		}
+		
+		throw new IllegalArgumentException("Unknown expression: " + node);
+	}
+	
+	List<Expression> expressions(List<Expression> nodes) {
+		final ArrayList<Expression> expressions = new ArrayList<>();
+		
+		for (Expression node : nodes) {
+			expressions.add(expression(node));
+		}
+		
+		return expressions;
+	}
+	//endregion
+	
+	//region UTILS
+	static RimeType type(RimeType node) {
+		if (node instanceof ListTypeNode) {
+			return new ListTypeNode(primitiveType(((ListTypeNode) node).type));
+		}
+		
+		if (node instanceof SetTypeNode) {
+			return new SetTypeNode(primitiveType(((SetTypeNode) node).type));
+		}
+		
+		if (node instanceof DictTypeNode) {
+			final DictTypeNode dict = (DictTypeNode) node;
+			return new DictTypeNode(primitiveType(dict.keyType), primitiveType(dict.valueType));
+		}
+		
+		return node instanceof PrimitiveType ? primitiveType((PrimitiveType) node) : node;
+	}
+	
+	static PrimitiveType primitiveType(PrimitiveType node) {
+		return node instanceof AnyPrimitiveTypeNode ? node : new PrimitiveType(node.type);
+	}
+	
+	static boolean isConstant(Expression node) {
+		return node instanceof IntLiteral || node instanceof BoolLiteral || node instanceof StringLiteral;
+	}
+	
+	/**
+	 * Whether evaluating an expression has no effect, cannot fail and yields no null: literals and locals, and the
+	 * operations on them other than divisions and remainders.
+	 */
+	static boolean isPure(Expression node) {
+		if (isConstant(node) || node instanceof Identifier) {
+			return true;
+		}
+		
+		if (node instanceof UnaryExpression) {
+			return isPure(((UnaryExpression) node).operand);
+		}
+		
+		if (node instanceof BinaryExpression) {
+			final BinaryExpression binary = (BinaryExpression) node;
+			
+			return binary.operator != DIVIDE && binary.operator != REMAINDER
+				&& isPure(binary.left) && isPure(binary.right);
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Returns a name which nothing in the program uses, made from {@code base}.
+	 */
+	String freshName(String base) {
+		if (names == null) {
+			names = new HashSet<>();
+			
+			forEachNode(root, node -> {
+				if (node instanceof Identifier) {
+					names.add(((Identifier) node).value);
+				}
+			});
+		}
+		
+		String name;
+		
+		do {
+			name = base + "_" + ++renamed;
+		}
+		while (!names.add(name));
+		
+		return name;
+	}
+	
+	static String name(FunctionDefinition definition) {
+		return definition instanceof ProcDefinition
+			? ((ProcDefinition) definition).name.value
+			: ((FuncDefinition) definition).name.value;
+	}
+	
+	static List<Parameter> parameters(FunctionDefinition definition) {
+		return definition instanceof ProcDefinition
+			? ((ProcDefinition) definition).parameters.params
+			: ((FuncDefinition) definition).parameters.params;
+	}
+	
+	static Block body(FunctionDefinition definition) {
+		return definition instanceof ProcDefinition
+			? ((ProcDefinition) definition).body
+			: ((FuncDefinition) definition).body;
+	}
+	
+	static int size(RimeNode root) {
+		final int[] size = { 0 };
+		forEachNode(root, node -> size[0]++);
+		return size[0];
+	}
+	
+	static void forEachNode(RimeNode root, Consumer<RimeNode> action) {
+		final ReflectiveFieldWalker<RimeNode> walker = new ReflectiveFieldWalker<>(RimeNode.class, PRE_VISIT, POST_VISIT);
+		walker.registerFallback(PRE_VISIT, action::accept);
+		walker.registerFallback(POST_VISIT, node -> {});
+		walker.walk(root);
+	}
+	//endregion
+}
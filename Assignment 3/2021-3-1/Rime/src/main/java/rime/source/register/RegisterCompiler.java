@@ -0,0 +1,651 @@
+package rime.source.register;
+
+import norswap.utils.visitors.ValuedVisitor;
+import rime.source.ast.RimeNode;
+import rime.source.ast.constants.BinaryOperator;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.*;
+import rime.source.ast.expressions.literals.BoolLiteral;
+import rime.source.ast.expressions.literals.IntLiteral;
+import rime.source.ast.expressions.literals.NullLiteral;
+import rime.source.ast.expressions.literals.StringLiteral;
+import rime.source.ast.statements.*;
+import rime.source.runtime.CollectionKind;
+import rime.source.semantic.FrozenAttributes;
+import rime.source.semantic.types.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static rime.source.register.RegisterOpcodes.*;
+
+
+
+/**
+ * Lowers an analysed program to three-address code, taking the same decisions from the static types as the
+ * {@link rime.source.bytecode.BytecodeCompiler}.
+ * <p>
+ * Locals live in the registers at their slots, so reading one costs no instruction. The value of every other
+ * expression goes to a temporary above the locals; temporaries are allocated like a stack, an instruction
+ * reading all its operands before it writes its result, which lets the result reuse the registers of its operands.
+ * An expression can be given a destination register instead, which is how assignments write straight into locals.
+ */
+final class RegisterCompiler {
+	private final ValuedVisitor<RimeNode, Integer> visitor = new ValuedVisitor<>();
+	private final FrozenAttributes attributes;
+	private final IdentityHashMap<Declaration, RegisterFunction> functions = new IdentityHashMap<>();
+	private final ArrayList<Object> constants = new ArrayList<>();
+	private final HashMap<Object, Integer> constantIndices = new HashMap<>();
+	
+	private int[] code;
+	private int size;
+	private int localCount;
+	private int nextTemporary;
+	private int registerCount;
+	
+	/** Destination of the expression being compiled, or -1 to let it pick a register */
+	private int target;
+	
+	RegisterCompiler(FrozenAttributes attributes) {
+		this.attributes = attributes;
+		
+		// EXPRESSIONS
+		visitor.register(BoolLiteral.class, this::boolLiteral);
+		visitor.register(IntLiteral.class, this::intLiteral);
+		visitor.register(StringLiteral.class, this::stringLiteral);
+		visitor.register(NullLiteral.class, this::nullLiteral);
+		visitor.register(Identifier.class, this::identifier);
+		visitor.register(IndexedCollectionAccess.class, this::indexedCollectionAccess);
+		visitor.register(BinaryExpression.class, this::binaryExpression);
+		visitor.register(UnaryExpression.class, this::unaryExpression);
+		visitor.register(EmptyList.class, this::emptyList);
+		visitor.register(EmptySet.class, this::emptySet);
+		visitor.register(EmptyDict.class, this::emptyDict);
+		visitor.register(ListElements.class, this::listElements);
+		visitor.register(SetElements.class, this::setElements);
+		visitor.register(DictElements.class, this::dictElements);
+		visitor.register(FunctionCall.class, this::functionCall);
+		
+		// STATEMENTS
+		visitor.register(Block.class, this::block);
+		visitor.register(ExpressionStatement.class, this::expressionStatement);
+		visitor.register(EmptyStatement.class, this::emptyStatement);
+		visitor.register(Assignment.class, this::assignment);
+		visitor.register(IfStatement.class, this::ifStatement);
+		visitor.register(WhileStatement.class, this::whileStatement);
+		visitor.register(ExitStatement.class, this::exitStatement);
+		visitor.register(ReturnStatement.class, this::returnStatement);
+		visitor.register(VariableDefinition.class, this::variableDefinition);
+		
+		// FALLBACK
+		visitor.registerFallback(node -> {
+			throw new Error("Cannot compile " + node);
+		});
+	}
+	
+	RegisterProgram compile(RootNode root) {
+		final List<FunctionDefinition> definitions = new ArrayList<>(root.preMainDefinitions);
+		definitions.add(root.entryPoint.definition);
+		
+		for (FunctionDefinition definition : definitions) {
+			final Parameters parameters = definition instanceof ProcDefinition
+				? ((ProcDefinition) definition).parameters
+				: ((FuncDefinition) definition).parameters;
+			final String name = definition instanceof ProcDefinition
+				? ((ProcDefinition) definition).name.value
+				: ((FuncDefinition) definition).name.value;
+			final int[] parameterSlots = parameters.params.stream().mapToInt(attributes::slot).toArray();
+			
+			functions.put(definition, new RegisterFunction(name, definition, parameterSlots));
+		}
+		
+		for (FunctionDefinition definition : definitions) {
+			final Block body = definition instanceof ProcDefinition
+				? ((ProcDefinition) definition).body
+				: ((FuncDefinition) definition).body;
+			
+			code = new int[64];
+			size = 0;
+			localCount = attributes.frameSize(definition);
+			nextTemporary = localCount;
+			registerCount = localCount;
+			
+			statement(body);
+			emit(RETURN_VOID);
+			
+			final RegisterFunction function = functions.get(definition);
+			function.code = Arrays.copyOf(code, size);
+			function.registerCount = registerCount;
+		}
+		
+		final List<RegisterFunction> compiled = definitions.stream().map(functions::get).collect(Collectors.toList());
+		return new RegisterProgram(compiled, functions.get(root.entryPoint.definition), constants.toArray(), functions);
+	}
+	
+	//region EXPRESSIONS
+	/**
+	 * Compiles {@code node} and returns the register holding its value, which is {@code destination} unless it is -1.
+	 */
+	private int expression(Expression node, int destination) {
+		target = destination;
+		return visitor.apply(node);
+	}
+	
+	private Integer boolLiteral(BoolLiteral node) {
+		return loadConstant(target, node.value);
+	}
+	
+	private Integer intLiteral(IntLiteral node) {
+		return loadConstant(target, node.value);
+	}
+	
+	private Integer stringLiteral(StringLiteral node) {
+		return loadConstant(target, node.value);
+	}
+	
+	private Integer nullLiteral(NullLiteral node) {
+		return loadConstant(target, null);
+	}
+	
+	private int loadConstant(int destination, Object value) {
+		final int a = destination >= 0 ? destination : temporary();
+		emit(LOAD_CONST, a, constant(value));
+		return a;
+	}
+	
+	private Integer identifier(Identifier node) {
+		final int destination = target;
+		
+		final int slot = attributes.slot(node);
+		
+		if (slot >= 0) {
+			if (destination >= 0 && destination != slot) {
+				emit(MOVE, destination, slot);
+				return destination;
+			}
+			
+			return slot;
+		}
+		
+		final Declaration decl = attributes.declaration(node);
+		
+		if (decl == attributes.rootScope.mainArgs) {
+			final int a = destination >= 0 ? destination : temporary();
+			emit(MAIN_ARGS, a);
+			return a;
+		}
+		
+		return loadConstant(destination, decl);
+	}
+	
+	private Integer indexedCollectionAccess(IndexedCollectionAccess node) {
+		final int destination = target;
+		final int mark = nextTemporary;
+		final Type collectionType = attributes.type(node.identifier);
+		final int collection = expression(node.identifier, -1);
+		final boolean isList = collectionType instanceof ListType;
+		
+		if (!isList && !(collectionType instanceof DictType)) {
+			throw new IllegalArgumentException("Node should be either a list or a dict");
+		}
+		
+		if (!isTrivial(node.index) && !attributes.isUnchecked(node)) {
+			emit(isList ? CHECK_LIST : CHECK_DICT, collection);
+		}
+		
+		final int index = expression(node.index, -1);
+		nextTemporary = mark;
+		final int a = destination >= 0 ? destination : temporary();
+		emit(attributes.isUnchecked(node) ? LIST_GET_UNCHECKED : isList ? LIST_GET : DICT_GET, a, collection, index);
+		return a;
+	}
+	
+	private Integer binaryExpression(BinaryExpression node) {
+		final int destination = target;
+		final int mark = nextTemporary;
+		final Type leftType = attributes.type(node.left);
+		final Type rightType = attributes.type(node.right);
+		final int opcode = binaryOpcode(node.operator, leftType, rightType);
+		
+		if (opcode <= NOT_EQUAL) {
+			final int[] operands = intOperands(opcode, node.left, node.right);
+			nextTemporary = mark;
+			final int a = destination >= 0 ? destination : temporary();
+			emit(operands[0], a, operands[1], operands[2]);
+			return a;
+		}
+		
+		final int left = expression(node.left, -1);
+		final int right = expression(node.right, -1);
+		nextTemporary = mark;
+		final int a = destination >= 0 ? destination : temporary();
+		emit(opcode, a, left, right);
+		return a;
+	}
+	
+	/**
+	 * Compiles the operands of the int operation {@code opcode} and returns the opcode to emit followed by its two
+	 * operands. A literal on the right becomes an immediate operand; on the left, it does so only when the operation
+	 * can be mirrored, which otherwise leaves the operands in the order of the interpreter.
+	 */
+	private int[] intOperands(int opcode, Expression left, Expression right) {
+		if (right instanceof IntLiteral) {
+			final int b = expression(left, -1);
+			return new int[] { opcode + ADD_IMMEDIATE - ADD, b, ((IntLiteral) right).value };
+		}
+		
+		final int mirrored = mirror(opcode);
+		
+		if (left instanceof IntLiteral && mirrored >= 0) {
+			final int b = expression(right, -1);
+			return new int[] { mirrored + ADD_IMMEDIATE - ADD, b, ((IntLiteral) left).value };
+		}
+		
+		final int b = expression(left, -1);
+		final int c = expression(right, -1);
+		return new int[] { opcode, b, c };
+	}
+	
+	/**
+	 * Returns the operation computing the same result as {@code opcode} with its operands swapped, or -1.
+	 */
+	private static int mirror(int opcode) {
+		return switch (opcode) {
+			case ADD, MULTIPLY, EQUAL, NOT_EQUAL -> opcode;
+			case LESS_THAN -> GREATER_THAN;
+			case LESS_THAN_EQUAL -> GREATER_THAN_EQUAL;
+			case GREATER_THAN -> LESS_THAN;
+			case GREATER_THAN_EQUAL -> LESS_THAN_EQUAL;
+			default -> -1;
+		};
+	}
+	
+	private static int binaryOpcode(BinaryOperator operator, Type leftType, Type rightType) {
+		if (leftType instanceof BoolType && rightType instanceof BoolType) {
+			switch (operator) {
+				case LOGICAL_AND:
+					return AND;
+				case LOGICAL_OR:
+					return OR;
+				case EQUAL_TO:
+					return BOOL_EQUAL;
+				case NOT_EQUAL_TO:
+					return BOOL_NOT_EQUAL;
+			}
+		}
+		
+		if (operator == BinaryOperator.ADD && (leftType instanceof StringType || rightType instanceof StringType)) {
+			return CONCAT;
+		}
+		
+		if (leftType instanceof IntType && rightType instanceof IntType) {
+			return switch (operator) {
+				case ADD -> ADD;
+				case SUBTRACT -> SUBTRACT;
+				case MULTIPLY -> MULTIPLY;
+				case DIVIDE -> DIVIDE;
+				case REMAINDER -> REMAINDER;
+				case LESS_THAN -> LESS_THAN;
+				case LESS_THAN_EQUAL -> LESS_THAN_EQUAL;
+				case GREATER_THAN -> GREATER_THAN;
+				case GREATER_THAN_EQUAL -> GREATER_THAN_EQUAL;
+				case EQUAL_TO -> EQUAL;
+				case NOT_EQUAL_TO -> NOT_EQUAL;
+				default -> throw new Error("Should not reach here");
+			};
+		}
+		
+		return switch (operator) {
+			case EQUAL_TO -> leftType.isPrimitive() ? VALUE_EQUAL : REFERENCE_EQUAL;
+			case NOT_EQUAL_TO -> leftType.isPrimitive() ? VALUE_NOT_EQUAL : REFERENCE_NOT_EQUAL;
+			default -> throw new Error("Should not reach here");
+		};
+	}
+	
+	private Integer unaryExpression(UnaryExpression node) {
+		final int destination = target;
+		final int mark = nextTemporary;
+		final int operand = expression(node.operand, -1);
+		nextTemporary = mark;
+		final int a = destination >= 0 ? destination : temporary();
+		
+		switch (node.operator) {
+			case NEGATIVE -> emit(NEGATE, a, operand);
+			case LOGICAL_COMPLEMENT -> emit(NOT, a, operand);
+		}
+		
+		return a;
+	}
+	
+	private Integer emptyList(EmptyList node) {
+		return collection(NEW_LIST, node, List.of());
+	}
+	
+	private Integer emptySet(EmptySet node) {
+		return collection(NEW_SET, node, List.of());
+	}
+	
+	private Integer emptyDict(EmptyDict node) {
+		return collection(NEW_DICT, node, List.of());
+	}
+	
+	private Integer listElements(ListElements node) {
+		return collection(NEW_LIST, node, node.elements);
+	}
+	
+	private Integer setElements(SetElements node) {
+		return collection(NEW_SET, node, node.elements);
+	}
+	
+	private Integer dictElements(DictElements node) {
+		final List<Expression> keysAndValues = new ArrayList<>();
+		
+		for (DictElement element : node.elements) {
+			keysAndValues.add(element.key);
+			keysAndValues.add(element.value);
+		}
+		
+		final int destination = target;
+		final int mark = nextTemporary;
+		final int first = consecutive(keysAndValues);
+		nextTemporary = mark;
+		final int a = destination >= 0 ? destination : temporary();
+		emit(NEW_DICT, a, first, node.elements.size(), CollectionKind.of(attributes, node).ordinal());
+		return a;
+	}
+	
+	private int collection(int opcode, Expression node, List<Expression> elements) {
+		final int destination = target;
+		final int mark = nextTemporary;
+		final int first = consecutive(elements);
+		nextTemporary = mark;
+		final int a = destination >= 0 ? destination : temporary();
+		emit(opcode, a, first, elements.size(), CollectionKind.of(attributes, node).ordinal());
+		return a;
+	}
+	
+	private Integer functionCall(FunctionCall node) {
+		final int destination = target;
+		final int mark = nextTemporary;
+		final int argc = node.arguments.size();
+		final Declaration decl = attributes.slot(node.name) >= 0 ? null : attributes.declaration(node.name);
+		
+		if (decl instanceof FunctionDefinition) {
+			final int first = consecutive(node.arguments);
+			nextTemporary = mark;
+			final int a = destination >= 0 ? destination : temporary();
+			emit(CALL, a, constant(functions.get(decl)), first, argc);
+			return a;
+		}
+		
+		if (decl instanceof PredefinedFunction) {
+			final int opcode = switch (((PredefinedFunction) decl).name) {
+				case "print" -> PRINT;
+				case "parseInt" -> PARSE_INT;
+				case "length" -> LENGTH;
+				case "append" -> attributes.isInPlace(node) ? APPEND_IN_PLACE : APPEND;
+				case "add" -> attributes.isInPlace(node) ? ADD_TO_SET_IN_PLACE : ADD_TO_SET;
+				case "contains" -> CONTAINS;
+				default -> throw new Error("Should not reach here");
+			};
+			
+			final int b = expression(node.arguments.get(0), -1);
+			
+			if (argc == 1) {
+				nextTemporary = mark;
+				final int a = destination >= 0 ? destination : temporary();
+				emit(opcode, a, b);
+				return a;
+			}
+			
+			final int c = expression(node.arguments.get(1), -1);
+			nextTemporary = mark;
+			final int a = destination >= 0 ? destination : temporary();
+			emit(opcode, a, b, c);
+			return a;
+		}
+		
+		final int callee = expression(node.name, -1);
+		final int first = consecutive(node.arguments);
+		nextTemporary = mark;
+		final int a = destination >= 0 ? destination : temporary();
+		emit(CALL_DYNAMIC, a, callee, first, argc);
+		return a;
+	}
+	
+	/**
+	 * Compiles {@code expressions} into consecutive fresh temporaries and returns the first of them.
+	 */
+	private int consecutive(List<? extends Expression> expressions) {
+		final int first = nextTemporary;
+		
+		for (Expression expression : expressions) {
+			expression(expression, temporary());
+		}
+		
+		return first;
+	}
+	
+	/**
+	 * Whether {@code node} can neither fail nor have a side effect, so that the checks the interpreter performs
+	 * before evaluating it can be left to the instruction consuming its value.
+	 */
+	private boolean isTrivial(Expression node) {
+		if (node instanceof IntLiteral || node instanceof StringLiteral || node instanceof BoolLiteral
+				|| node instanceof NullLiteral || node instanceof Identifier) {
+			return true;
+		}
+		
+		if (node instanceof BinaryExpression) {
+			final BinaryExpression binary = (BinaryExpression) node;
+			final int opcode = binaryOpcode(binary.operator, attributes.type(binary.left), attributes.type(binary.right));
+			return opcode != DIVIDE && opcode != REMAINDER && opcode != CONCAT
+				&& isTrivial(binary.left) && isTrivial(binary.right);
+		}
+		
+		return false;
+	}
+	//endregion
+	
+	//region STATEMENTS
+	private void statement(Statement node) {
+		visitor.apply(node);
+		// No temporary outlives the statement computing it
+		nextTemporary = localCount;
+	}
+	
+	private Integer block(Block node) {
+		node.statements.forEach(this::statement);
+		return null;
+	}
+	
+	private Integer expressionStatement(ExpressionStatement node) {
+		// Like the interpreter, only calls are executed as statements
+		if (node.expression instanceof FunctionCall && attributes.isTailCall((FunctionCall) node.expression)) {
+			tailCall((FunctionCall) node.expression);
+		}
+		else if (node.expression instanceof FunctionCall) {
+			expression(node.expression, -1);
+		}
+		
+		return null;
+	}
+	
+	private Integer emptyStatement(EmptyStatement node) {
+		return null;
+	}
+	
+	private Integer assignment(Assignment node) {
+		if (node.left instanceof Identifier) {
+			expression(node.right, attributes.slot((Identifier) node.left));
+			return null;
+		}
+		
+		final IndexedCollectionAccess access = (IndexedCollectionAccess) node.left;
+		final Type collectionType = attributes.type(access.identifier);
+		final int collection = expression(access.identifier, -1);
+		
+		if (collectionType instanceof ListType) {
+			if (!isTrivial(access.index) || !isTrivial(node.right)) {
+				emit(CHECK_LIST, collection);
+			}
+			
+			final int index = expression(access.index, -1);
+			
+			if (!isTrivial(node.right)) {
+				emit(CHECK_INDEX, index);
+			}
+			
+			final int value = expression(node.right, -1);
+			emit(LIST_SET, collection, index, value);
+		}
+		else if (collectionType instanceof DictType) {
+			if (!isTrivial(access.index) || !isTrivial(node.right)) {
+				emit(CHECK_DICT, collection);
+			}
+			
+			final int key = expression(access.index, -1);
+			final int value = expression(node.right, -1);
+			emit(DICT_SET, collection, key, value);
+		}
+		else {
+			throw new Error("Should not reach here");
+		}
+		
+		return null;
+	}
+	
+	private Integer ifStatement(IfStatement node) {
+		final int jumpToFalse = jumpUnless(node.condition);
+		statement(node.trueBody);
+		
+		if (node.falseBody == null) {
+			patch(jumpToFalse);
+		}
+		else {
+			emit(JUMP, -1);
+			final int jumpToEnd = size - 1;
+			patch(jumpToFalse);
+			statement(node.falseBody);
+			patch(jumpToEnd);
+		}
+		
+		return null;
+	}
+	
+	private Integer whileStatement(WhileStatement node) {
+		final int start = size;
+		final int jumpToEnd = jumpUnless(node.condition);
+		statement(node.body);
+		emit(JUMP, start);
+		patch(jumpToEnd);
+		return null;
+	}
+	
+	/**
+	 * Emits a jump taken when {@code condition} does not hold, returns the position of its target operand.
+	 * Int comparisons compile to a single compare-and-branch instruction.
+	 */
+	private int jumpUnless(Expression condition) {
+		if (condition instanceof BinaryExpression) {
+			final BinaryExpression binary = (BinaryExpression) condition;
+			final int opcode = binaryOpcode(binary.operator, attributes.type(binary.left), attributes.type(binary.right));
+			
+			if (opcode >= LESS_THAN && opcode <= NOT_EQUAL) {
+				final int[] operands = intOperands(opcode, binary.left, binary.right);
+				final int jump = operands[0] <= NOT_EQUAL
+					? operands[0] - LESS_THAN + JUMP_IF_NOT_LESS_THAN
+					: operands[0] - LESS_THAN_IMMEDIATE + JUMP_IF_NOT_LESS_THAN_IMMEDIATE;
+				
+				emit(jump, operands[1], operands[2], -1);
+				nextTemporary = localCount;
+				return size - 1;
+			}
+		}
+		
+		final int value = expression(condition, -1);
+		emit(JUMP_IF_FALSE, value, -1);
+		nextTemporary = localCount;
+		return size - 1;
+	}
+	
+	private Integer exitStatement(ExitStatement node) {
+		emit(RETURN_VOID);
+		return null;
+	}
+	
+	private Integer returnStatement(ReturnStatement node) {
+		if (node.expression instanceof FunctionCall && attributes.isTailCall((FunctionCall) node.expression)) {
+			tailCall((FunctionCall) node.expression);
+		}
+		else if (node.expression == null) {
+			emit(RETURN_VOID);
+		}
+		else {
+			final int value = expression(node.expression, -1);
+			emit(RETURN, value);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Compiles a tail call of the function to itself: the arguments are computed into temporaries, moved to the
+	 * parameters, then the function starts over.
+	 */
+	private void tailCall(FunctionCall node) {
+		final int[] parameterSlots = functions.get(attributes.declaration(node.name)).parameterSlots;
+		final int first = consecutive(node.arguments);
+		
+		for (int i = 0; i < parameterSlots.length; i++) {
+			emit(MOVE, parameterSlots[i], first + i);
+		}
+		
+		emit(JUMP, 0);
+	}
+	
+	private Integer variableDefinition(VariableDefinition node) {
+		expression(node.assignment.right, attributes.slot(node));
+		return null;
+	}
+	//endregion
+	
+	//region EMISSION
+	private int temporary() {
+		final int register = nextTemporary++;
+		registerCount = Math.max(registerCount, nextTemporary);
+		return register;
+	}
+	
+	private int constant(Object value) {
+		return constantIndices.computeIfAbsent(value, key -> {
+			constants.add(key);
+			return constants.size() - 1;
+		});
+	}
+	
+	private void emit(int opcode, int... operands) {
+		append(opcode);
+		
+		for (int operand : operands) {
+			append(operand);
+		}
+	}
+	
+	private void patch(int operandPosition) {
+		code[operandPosition] = size;
+	}
+	
+	private void append(int value) {
+		if (size == code.length) {
+			code = Arrays.copyOf(code, size * 2);
+		}
+		
+		code[size++] = value;
+	}
+	//endregion
+}
@@ -0,0 +1,425 @@
+package rime.source.register;
+
+import norswap.uranium.Reactor;
+import norswap.utils.exceptions.Exceptions;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.PredefinedFunction;
+import rime.source.interpreter.Engine;
+import rime.source.interpreter.exceptions.InterpreterException;
+import rime.source.interpreter.exceptions.PassthroughException;
+import rime.source.runtime.Arithmetic;
+import rime.source.runtime.Builtins;
+import rime.source.runtime.CollectionKind;
+import rime.source.runtime.CollectionMode;
+import rime.source.runtime.Concatenation;
+import rime.source.runtime.Indexing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static norswap.utils.Util.cast;
+import static rime.source.register.RegisterOpcodes.*;
+
+
+
+/**
+ * Engine lowering the program to three-address code (see {@link RegisterCompiler}) and running it in a dispatch loop.
+ * Each call gets one {@code Object[]} register file, sized by the compiler from the locals and temporaries of the function.
+ */
+public final class RegisterEngine implements Engine {
+	private final Reactor reactor;
+	private final CollectionMode collectionMode;
+	private final boolean countInstructions;
+	private RegisterProgram program;
+	private Object[] constants;
+	private ArrayList<String> mainArgs;
+	private long instructionCount;
+	
+	public RegisterEngine(Reactor reactor) {
+		this(reactor, false);
+	}
+	
+	public RegisterEngine(Reactor reactor, CollectionMode collectionMode) {
+		this(reactor, collectionMode, false);
+	}
+	
+	/**
+	 * @param countInstructions whether to count the executed instructions, see {@link #instructionCount()}
+	 */
+	public RegisterEngine(Reactor reactor, boolean countInstructions) {
+		this(reactor, CollectionMode.COPYING, countInstructions);
+	}
+	
+	public RegisterEngine(Reactor reactor, CollectionMode collectionMode, boolean countInstructions) {
+		this.reactor = reactor;
+		this.collectionMode = collectionMode;
+		this.countInstructions = countInstructions;
+	}
+	
+	/**
+	 * Returns the number of instructions executed by the last run, if the engine was created to count them.
+	 */
+	public long instructionCount() {
+		return instructionCount;
+	}
+	
+	@Override
+	public void interpret(RimeNode root, ArrayList<String> mainArgs) {
+		program = RegisterProgram.compile(reactor, cast(root), collectionMode);
+		constants = program.constants;
+		this.mainArgs = new ArrayList<>(mainArgs);
+		instructionCount = 0;
+		
+		final Object[] registers = new Object[program.main.registerCount];
+		registers[program.main.parameterSlots[0]] = this.mainArgs;
+		
+		try {
+			execute(program.main, registers);
+		}
+		catch (PassthroughException e) {
+			throw Exceptions.runtime(e.getCause());
+		}
+		catch (RuntimeException e) {
+			throw InterpreterException.wrap(e, program.main.name);
+		}
+	}
+	
+	private Object execute(RegisterFunction function, Object[] r) {
+		final int[] code = function.code;
+		int pc = 0;
+		
+		try {
+			while (true) {
+				if (countInstructions) {
+					instructionCount++;
+				}
+				
+				switch (code[pc]) {
+					//region CONSTANTS AND MOVES
+					case MOVE -> {
+						r[code[pc + 1]] = r[code[pc + 2]];
+						pc += 3;
+					}
+					case LOAD_CONST -> {
+						r[code[pc + 1]] = constants[code[pc + 2]];
+						pc += 3;
+					}
+					case MAIN_ARGS -> {
+						r[code[pc + 1]] = mainArgs;
+						pc += 2;
+					}
+					//endregion
+					
+					//region OPERATIONS
+					case ADD -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] + (Integer) r[code[pc + 3]];
+						pc += 4;
+					}
+					case SUBTRACT -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] - (Integer) r[code[pc + 3]];
+						pc += 4;
+					}
+					case MULTIPLY -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] * (Integer) r[code[pc + 3]];
+						pc += 4;
+					}
+					case DIVIDE -> {
+						r[code[pc + 1]] = Arithmetic.divide((Integer) r[code[pc + 2]], (Integer) r[code[pc + 3]]);
+						pc += 4;
+					}
+					case REMAINDER -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] % (Integer) r[code[pc + 3]];
+						pc += 4;
+					}
+					case LESS_THAN -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] < (Integer) r[code[pc + 3]];
+						pc += 4;
+					}
+					case LESS_THAN_EQUAL -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] <= (Integer) r[code[pc + 3]];
+						pc += 4;
+					}
+					case GREATER_THAN -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] > (Integer) r[code[pc + 3]];
+						pc += 4;
+					}
+					case GREATER_THAN_EQUAL -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] >= (Integer) r[code[pc + 3]];
+						pc += 4;
+					}
+					case EQUAL -> {
+						r[code[pc + 1]] = ((Integer) r[code[pc + 2]]).intValue() == (Integer) r[code[pc + 3]];
+						pc += 4;
+					}
+					case NOT_EQUAL -> {
+						r[code[pc + 1]] = ((Integer) r[code[pc + 2]]).intValue() != (Integer) r[code[pc + 3]];
+						pc += 4;
+					}
+					case ADD_IMMEDIATE -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] + code[pc + 3];
+						pc += 4;
+					}
+					case SUBTRACT_IMMEDIATE -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] - code[pc + 3];
+						pc += 4;
+					}
+					case MULTIPLY_IMMEDIATE -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] * code[pc + 3];
+						pc += 4;
+					}
+					case DIVIDE_IMMEDIATE -> {
+						r[code[pc + 1]] = Arithmetic.divide((Integer) r[code[pc + 2]], code[pc + 3]);
+						pc += 4;
+					}
+					case REMAINDER_IMMEDIATE -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] % code[pc + 3];
+						pc += 4;
+					}
+					case LESS_THAN_IMMEDIATE -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] < code[pc + 3];
+						pc += 4;
+					}
+					case LESS_THAN_EQUAL_IMMEDIATE -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] <= code[pc + 3];
+						pc += 4;
+					}
+					case GREATER_THAN_IMMEDIATE -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] > code[pc + 3];
+						pc += 4;
+					}
+					case GREATER_THAN_EQUAL_IMMEDIATE -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] >= code[pc + 3];
+						pc += 4;
+					}
+					case EQUAL_IMMEDIATE -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] == code[pc + 3];
+						pc += 4;
+					}
+					case NOT_EQUAL_IMMEDIATE -> {
+						r[code[pc + 1]] = (Integer) r[code[pc + 2]] != code[pc + 3];
+						pc += 4;
+					}
+					case NEGATE -> {
+						r[code[pc + 1]] = -(Integer) r[code[pc + 2]];
+						pc += 3;
+					}
+					case NOT -> {
+						r[code[pc + 1]] = !(Boolean) r[code[pc + 2]];
+						pc += 3;
+					}
+					case AND -> {
+						r[code[pc + 1]] = (Boolean) r[code[pc + 2]] & (Boolean) r[code[pc + 3]];
+						pc += 4;
+					}
+					case OR -> {
+						r[code[pc + 1]] = (Boolean) r[code[pc + 2]] | (Boolean) r[code[pc + 3]];
+						pc += 4;
+					}
+					case BOOL_EQUAL -> {
+						r[code[pc + 1]] = ((Boolean) r[code[pc + 2]]).booleanValue() == (Boolean) r[code[pc + 3]];
+						pc += 4;
+					}
+					case BOOL_NOT_EQUAL -> {
+						r[code[pc + 1]] = ((Boolean) r[code[pc + 2]]).booleanValue() != (Boolean) r[code[pc + 3]];
+						pc += 4;
+					}
+					case CONCAT -> {
+						r[code[pc + 1]] = Concatenation.concat(r[code[pc + 2]], r[code[pc + 3]]);
+						pc += 4;
+					}
+					case VALUE_EQUAL -> {
+						r[code[pc + 1]] = Builtins.valueEqual(r[code[pc + 2]], r[code[pc + 3]]);
+						pc += 4;
+					}
+					case VALUE_NOT_EQUAL -> {
+						r[code[pc + 1]] = !Builtins.valueEqual(r[code[pc + 2]], r[code[pc + 3]]);
+						pc += 4;
+					}
+					case REFERENCE_EQUAL -> {
+						r[code[pc + 1]] = r[code[pc + 2]] == r[code[pc + 3]];
+						pc += 4;
+					}
+					case REFERENCE_NOT_EQUAL -> {
+						r[code[pc + 1]] = r[code[pc + 2]] != r[code[pc + 3]];
+						pc += 4;
+					}
+					//endregion
+					
+					//region COLLECTIONS
+					case NEW_LIST -> {
+						final int first = code[pc + 2];
+						final int count = code[pc + 3];
+						final List<Object> list = CollectionKind.of(code[pc + 4]).newList(count);
+						
+						for (int i = 0; i < count; i++) {
+							list.add(r[first + i]);
+						}
+						
+						r[code[pc + 1]] = list;
+						pc += 5;
+					}
+					case NEW_SET -> {
+						final int first = code[pc + 2];
+						final int count = code[pc + 3];
+						final Set<Object> set = CollectionKind.of(code[pc + 4]).newSet(count);
+						
+						for (int i = 0; i < count; i++) {
+							set.add(r[first + i]);
+						}
+						
+						r[code[pc + 1]] = set;
+						pc += 5;
+					}
+					case NEW_DICT -> {
+						final int first = code[pc + 2];
+						final int count = code[pc + 3];
+						final Map<Object, Object> dict = CollectionKind.of(code[pc + 4]).newDict(count);
+						
+						for (int i = 0; i < count; i++) {
+							dict.put(r[first + 2 * i], r[first + 2 * i + 1]);
+						}
+						
+						r[code[pc + 1]] = dict;
+						pc += 5;
+					}
+					case CHECK_LIST -> {
+						Indexing.list(r[code[pc + 1]]);
+						pc += 2;
+					}
+					case CHECK_DICT -> {
+						Indexing.dict(r[code[pc + 1]]);
+						pc += 2;
+					}
+					case CHECK_INDEX -> {
+						Indexing.checkIndex((Integer) r[code[pc + 1]]);
+						pc += 2;
+					}
+					case LIST_GET -> {
+						r[code[pc + 1]] = Indexing.get(Indexing.list(r[code[pc + 2]]), (Integer) r[code[pc + 3]]);
+						pc += 4;
+					}
+					case LIST_GET_UNCHECKED -> {
+						r[code[pc + 1]] = Indexing.getUnchecked(r[code[pc + 2]], (Integer) r[code[pc + 3]]);
+						pc += 4;
+					}
+					case DICT_GET -> {
+						r[code[pc + 1]] = Indexing.dict(r[code[pc + 2]]).get(r[code[pc + 3]]);
+						pc += 4;
+					}
+					case LIST_SET -> {
+						final List<Object> list = Indexing.list(r[code[pc + 1]]);
+						Indexing.set(list, Indexing.checkIndex((Integer) r[code[pc + 2]]), r[code[pc + 3]]);
+						pc += 4;
+					}
+					case DICT_SET -> {
+						Indexing.dict(r[code[pc + 1]]).put(r[code[pc + 2]], r[code[pc + 3]]);
+						pc += 4;
+					}
+					//endregion
+					
+					//region CALLS AND CONTROL FLOW
+					case CALL -> {
+						final RegisterFunction callee = (RegisterFunction) constants[code[pc + 2]];
+						r[code[pc + 1]] = call(callee, r, code[pc + 3], code[pc + 4]);
+						pc += 5;
+					}
+					case CALL_DYNAMIC -> {
+						final Object callee = r[code[pc + 2]];
+						final int first = code[pc + 3];
+						final int argc = code[pc + 4];
+						
+						if (callee == null) {
+							throw new PassthroughException(new NullPointerException("Calling a null function"));
+						}
+						
+						if (callee instanceof PredefinedFunction) {
+							final Object[] args = new Object[argc];
+							System.arraycopy(r, first, args, 0, argc);
+							r[code[pc + 1]] = Builtins.call(((PredefinedFunction) callee).name, args);
+						}
+						else {
+							r[code[pc + 1]] = call(program.byDeclaration.get(callee), r, first, argc);
+						}
+						
+						pc += 5;
+					}
+					case PRINT -> {
+						r[code[pc + 1]] = Builtins.print(r[code[pc + 2]]);
+						pc += 3;
+					}
+					case PARSE_INT -> {
+						r[code[pc + 1]] = Builtins.parseInt(r[code[pc + 2]]);
+						pc += 3;
+					}
+					case LENGTH -> {
+						r[code[pc + 1]] = Builtins.length(r[code[pc + 2]]);
+						pc += 3;
+					}
+					case APPEND -> {
+						r[code[pc + 1]] = Builtins.append(r[code[pc + 2]], r[code[pc + 3]]);
+						pc += 4;
+					}
+					case APPEND_IN_PLACE -> {
+						r[code[pc + 1]] = Builtins.appendInPlace(r[code[pc + 2]], r[code[pc + 3]]);
+						pc += 4;
+					}
+					case ADD_TO_SET -> {
+						r[code[pc + 1]] = Builtins.add(r[code[pc + 2]], r[code[pc + 3]]);
+						pc += 4;
+					}
+					case ADD_TO_SET_IN_PLACE -> {
+						r[code[pc + 1]] = Builtins.addInPlace(r[code[pc + 2]], r[code[pc + 3]]);
+						pc += 4;
+					}
+					case CONTAINS -> {
+						r[code[pc + 1]] = Builtins.contains(r[code[pc + 2]], r[code[pc + 3]]);
+						pc += 4;
+					}
+					case JUMP -> pc = code[pc + 1];
+					case JUMP_IF_FALSE -> {
+						final Object condition = r[code[pc + 1]];
+						pc = condition instanceof Boolean && (Boolean) condition ? pc + 3 : code[pc + 2];
+					}
+					case JUMP_IF_NOT_LESS_THAN -> pc = (Integer) r[code[pc + 1]] < (Integer) r[code[pc + 2]] ? pc + 4 : code[pc + 3];
+					case JUMP_IF_NOT_LESS_THAN_EQUAL -> pc = (Integer) r[code[pc + 1]] <= (Integer) r[code[pc + 2]] ? pc + 4 : code[pc + 3];
+					case JUMP_IF_NOT_GREATER_THAN -> pc = (Integer) r[code[pc + 1]] > (Integer) r[code[pc + 2]] ? pc + 4 : code[pc + 3];
+					case JUMP_IF_NOT_GREATER_THAN_EQUAL -> pc = (Integer) r[code[pc + 1]] >= (Integer) r[code[pc + 2]] ? pc + 4 : code[pc + 3];
+					case JUMP_IF_NOT_EQUAL -> pc = ((Integer) r[code[pc + 1]]).intValue() == (Integer) r[code[pc + 2]] ? pc + 4 : code[pc + 3];
+					case JUMP_IF_NOT_NOT_EQUAL -> pc = ((Integer) r[code[pc + 1]]).intValue() != (Integer) r[code[pc + 2]] ? pc + 4 : code[pc + 3];
+					case JUMP_IF_NOT_LESS_THAN_IMMEDIATE -> pc = (Integer) r[code[pc + 1]] < code[pc + 2] ? pc + 4 : code[pc + 3];
+					case JUMP_IF_NOT_LESS_THAN_EQUAL_IMMEDIATE -> pc = (Integer) r[code[pc + 1]] <= code[pc + 2] ? pc + 4 : code[pc + 3];
+					case JUMP_IF_NOT_GREATER_THAN_IMMEDIATE -> pc = (Integer) r[code[pc + 1]] > code[pc + 2] ? pc + 4 : code[pc + 3];
+					case JUMP_IF_NOT_GREATER_THAN_EQUAL_IMMEDIATE -> pc = (Integer) r[code[pc + 1]] >= code[pc + 2] ? pc + 4 : code[pc + 3];
+					case JUMP_IF_NOT_EQUAL_IMMEDIATE -> pc = (Integer) r[code[pc + 1]] == code[pc + 2] ? pc + 4 : code[pc + 3];
+					case JUMP_IF_NOT_NOT_EQUAL_IMMEDIATE -> pc = (Integer) r[code[pc + 1]] != code[pc + 2] ? pc + 4 : code[pc + 3];
+					case RETURN -> {
+						return r[code[pc + 1]];
+					}
+					case RETURN_VOID -> {
+						return null;
+					}
+					//endregion
+					default -> throw new Error("Unknown opcode " + code[pc] + " at " + pc + " in " + function.name);
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			throw InterpreterException.wrap(e, function.name);
+		}
+	}
+	
+	/**
+	 * Calls {@code function} with the {@code argc} arguments in the registers starting at {@code r[first]}.
+	 */
+	private Object call(RegisterFunction function, Object[] r, int first, int argc) {
+		final Object[] registers = new Object[function.registerCount];
+		
+		for (int i = 0; i < argc; i++) {
+			registers[function.parameterSlots[i]] = r[first + i];
+		}
+		
+		return execute(function, registers);
+	}
+}
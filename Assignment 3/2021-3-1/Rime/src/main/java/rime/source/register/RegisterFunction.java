@@ -0,0 +1,31 @@
+package rime.source.register;
+
+import rime.source.ast.declarations.FunctionDefinition;
+
+
+
+/**
+ * The three-address code of one proc or func, along with the size of its register file:
+ * its locals, at the slots assigned by {@link rime.source.semantic.SlotResolution}, followed by its temporaries.
+ */
+public final class RegisterFunction {
+	public final String name;
+	public final FunctionDefinition definition;
+	public final int[] parameterSlots;
+	int[] code;
+	int registerCount;
+	
+	RegisterFunction(String name, FunctionDefinition definition, int[] parameterSlots) {
+		this.name = name;
+		this.definition = definition;
+		this.parameterSlots = parameterSlots;
+	}
+	
+	public int[] code() {
+		return code;
+	}
+	
+	public int registerCount() {
+		return registerCount;
+	}
+}
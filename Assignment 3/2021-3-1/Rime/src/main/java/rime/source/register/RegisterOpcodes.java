@@ -0,0 +1,197 @@
+package rime.source.register;
+
+/**
+ * Three-address instruction set of the register VM. An instruction is its opcode followed by its operands, stored
+ * inline in the {@code int[]} code of a function. Operands are register numbers unless stated otherwise; the
+ * register file of a function holds its locals first, at their slots, followed by its temporaries.
+ */
+public final class RegisterOpcodes {
+	private RegisterOpcodes() { }
+	
+	/** {@code MOVE a b}: {@code r[a] = r[b]} */
+	public static final int MOVE = 0;
+	/** {@code LOAD_CONST a k}: {@code r[a] = constants[k]} */
+	public static final int LOAD_CONST = 1;
+	/** {@code MAIN_ARGS a}: {@code r[a]} = the arguments passed to the program */
+	public static final int MAIN_ARGS = 2;
+	/** {@code ADD a b c}: {@code r[a] = r[b] + r[c]}, and likewise for the int operations up to {@link #NOT_EQUAL} */
+	public static final int ADD = 3;
+	public static final int SUBTRACT = 4;
+	public static final int MULTIPLY = 5;
+	public static final int DIVIDE = 6;
+	public static final int REMAINDER = 7;
+	public static final int LESS_THAN = 8;
+	public static final int LESS_THAN_EQUAL = 9;
+	public static final int GREATER_THAN = 10;
+	public static final int GREATER_THAN_EQUAL = 11;
+	public static final int EQUAL = 12;
+	public static final int NOT_EQUAL = 13;
+	/** {@code ADD_IMMEDIATE a b n}: {@code r[a] = r[b] + n}, and likewise up to {@link #NOT_EQUAL_IMMEDIATE} */
+	public static final int ADD_IMMEDIATE = 14;
+	public static final int SUBTRACT_IMMEDIATE = 15;
+	public static final int MULTIPLY_IMMEDIATE = 16;
+	public static final int DIVIDE_IMMEDIATE = 17;
+	public static final int REMAINDER_IMMEDIATE = 18;
+	public static final int LESS_THAN_IMMEDIATE = 19;
+	public static final int LESS_THAN_EQUAL_IMMEDIATE = 20;
+	public static final int GREATER_THAN_IMMEDIATE = 21;
+	public static final int GREATER_THAN_EQUAL_IMMEDIATE = 22;
+	public static final int EQUAL_IMMEDIATE = 23;
+	public static final int NOT_EQUAL_IMMEDIATE = 24;
+	public static final int NEGATE = 25;
+	public static final int NOT = 26;
+	/** Rime does not short-circuit, both operands are already in registers */
+	public static final int AND = 27;
+	public static final int OR = 28;
+	public static final int BOOL_EQUAL = 29;
+	public static final int BOOL_NOT_EQUAL = 30;
+	public static final int CONCAT = 31;
+	public static final int VALUE_EQUAL = 32;
+	public static final int VALUE_NOT_EQUAL = 33;
+	public static final int REFERENCE_EQUAL = 34;
+	public static final int REFERENCE_NOT_EQUAL = 35;
+	/** {@code NEW_LIST a first count k}: {@code r[a]} = a list of the registers {@code [first, first + count)}, represented as the {@link rime.source.runtime.CollectionKind} of ordinal {@code k} */
+	public static final int NEW_LIST = 36;
+	public static final int NEW_SET = 37;
+	/** {@code NEW_DICT a first count k}: {@code r[a]} = a dict of the {@code count} key-value register pairs from {@code first} */
+	public static final int NEW_DICT = 38;
+	/** Fails if {@code r[a]} is a null list. Only emitted when a side effect could otherwise happen before the failure */
+	public static final int CHECK_LIST = 39;
+	public static final int CHECK_DICT = 40;
+	public static final int CHECK_INDEX = 41;
+	/** {@code LIST_GET a b c}: {@code r[a] = r[b][r[c]]} */
+	public static final int LIST_GET = 42;
+	/** Like {@link #LIST_GET}, at an index known to be within the list, see {@link rime.source.semantic.BoundsChecks} */
+	public static final int LIST_GET_UNCHECKED = 43;
+	public static final int DICT_GET = 44;
+	/** {@code LIST_SET a b c}: {@code r[a][r[b]] = r[c]} */
+	public static final int LIST_SET = 45;
+	public static final int DICT_SET = 46;
+	/** {@code CALL a k first argc}: {@code r[a]} = the function in {@code constants[k]} called with the registers {@code [first, first + argc)} */
+	public static final int CALL = 47;
+	/** {@code CALL_DYNAMIC a b first argc}: like {@link #CALL}, for the function value in {@code r[b]} */
+	public static final int CALL_DYNAMIC = 48;
+	/** {@code PRINT a b}: {@code r[a] = print(r[b])}, and likewise for the other builtins */
+	public static final int PRINT = 49;
+	public static final int PARSE_INT = 50;
+	public static final int LENGTH = 51;
+	public static final int APPEND = 52;
+	public static final int ADD_TO_SET = 53;
+	public static final int CONTAINS = 54;
+	/** {@code APPEND_IN_PLACE a b c}: like {@link #APPEND}, and likewise for {@link #ADD_TO_SET}, adding to the collection itself, see {@link rime.source.semantic.InPlaceAppends} */
+	public static final int APPEND_IN_PLACE = 55;
+	public static final int ADD_TO_SET_IN_PLACE = 56;
+	/** {@code JUMP target} */
+	public static final int JUMP = 57;
+	/** {@code JUMP_IF_FALSE a target}: jumps unless {@code r[a]} is true */
+	public static final int JUMP_IF_FALSE = 58;
+	/** {@code JUMP_IF_NOT_LESS_THAN a b target}: jumps unless {@code r[a] < r[b]}, and likewise up to {@link #JUMP_IF_NOT_EQUAL_IMMEDIATE} */
+	public static final int JUMP_IF_NOT_LESS_THAN = 59;
+	public static final int JUMP_IF_NOT_LESS_THAN_EQUAL = 60;
+	public static final int JUMP_IF_NOT_GREATER_THAN = 61;
+	public static final int JUMP_IF_NOT_GREATER_THAN_EQUAL = 62;
+	public static final int JUMP_IF_NOT_EQUAL = 63;
+	public static final int JUMP_IF_NOT_NOT_EQUAL = 64;
+	public static final int JUMP_IF_NOT_LESS_THAN_IMMEDIATE = 65;
+	public static final int JUMP_IF_NOT_LESS_THAN_EQUAL_IMMEDIATE = 66;
+	public static final int JUMP_IF_NOT_GREATER_THAN_IMMEDIATE = 67;
+	public static final int JUMP_IF_NOT_GREATER_THAN_EQUAL_IMMEDIATE = 68;
+	public static final int JUMP_IF_NOT_EQUAL_IMMEDIATE = 69;
+	public static final int JUMP_IF_NOT_NOT_EQUAL_IMMEDIATE = 70;
+	/** {@code RETURN a}: returns {@code r[a]} to the caller */
+	public static final int RETURN = 71;
+	/** Returns null to the caller, ends procs and implements exit */
+	public static final int RETURN_VOID = 72;
+	
+	private static final String[] names = new String[73];
+	private static final int[] operandCounts = new int[73];
+	
+	static {
+		define(MOVE, "MOVE", 2);
+		define(LOAD_CONST, "LOAD_CONST", 2);
+		define(MAIN_ARGS, "MAIN_ARGS", 1);
+		define(ADD, "ADD", 3);
+		define(SUBTRACT, "SUBTRACT", 3);
+		define(MULTIPLY, "MULTIPLY", 3);
+		define(DIVIDE, "DIVIDE", 3);
+		define(REMAINDER, "REMAINDER", 3);
+		define(LESS_THAN, "LESS_THAN", 3);
+		define(LESS_THAN_EQUAL, "LESS_THAN_EQUAL", 3);
+		define(GREATER_THAN, "GREATER_THAN", 3);
+		define(GREATER_THAN_EQUAL, "GREATER_THAN_EQUAL", 3);
+		define(EQUAL, "EQUAL", 3);
+		define(NOT_EQUAL, "NOT_EQUAL", 3);
+		define(ADD_IMMEDIATE, "ADD_IMMEDIATE", 3);
+		define(SUBTRACT_IMMEDIATE, "SUBTRACT_IMMEDIATE", 3);
+		define(MULTIPLY_IMMEDIATE, "MULTIPLY_IMMEDIATE", 3);
+		define(DIVIDE_IMMEDIATE, "DIVIDE_IMMEDIATE", 3);
+		define(REMAINDER_IMMEDIATE, "REMAINDER_IMMEDIATE", 3);
+		define(LESS_THAN_IMMEDIATE, "LESS_THAN_IMMEDIATE", 3);
+		define(LESS_THAN_EQUAL_IMMEDIATE, "LESS_THAN_EQUAL_IMMEDIATE", 3);
+		define(GREATER_THAN_IMMEDIATE, "GREATER_THAN_IMMEDIATE", 3);
+		define(GREATER_THAN_EQUAL_IMMEDIATE, "GREATER_THAN_EQUAL_IMMEDIATE", 3);
+		define(EQUAL_IMMEDIATE, "EQUAL_IMMEDIATE", 3);
+		define(NOT_EQUAL_IMMEDIATE, "NOT_EQUAL_IMMEDIATE", 3);
+		define(NEGATE, "NEGATE", 2);
+		define(NOT, "NOT", 2);
+		define(AND, "AND", 3);
+		define(OR, "OR", 3);
+		define(BOOL_EQUAL, "BOOL_EQUAL", 3);
+		define(BOOL_NOT_EQUAL, "BOOL_NOT_EQUAL", 3);
+		define(CONCAT, "CONCAT", 3);
+		define(VALUE_EQUAL, "VALUE_EQUAL", 3);
+		define(VALUE_NOT_EQUAL, "VALUE_NOT_EQUAL", 3);
+		define(REFERENCE_EQUAL, "REFERENCE_EQUAL", 3);
+		define(REFERENCE_NOT_EQUAL, "REFERENCE_NOT_EQUAL", 3);
+		define(NEW_LIST, "NEW_LIST", 4);
+		define(NEW_SET, "NEW_SET", 4);
+		define(NEW_DICT, "NEW_DICT", 4);
+		define(CHECK_LIST, "CHECK_LIST", 1);
+		define(CHECK_DICT, "CHECK_DICT", 1);
+		define(CHECK_INDEX, "CHECK_INDEX", 1);
+		define(LIST_GET, "LIST_GET", 3);
+		define(LIST_GET_UNCHECKED, "LIST_GET_UNCHECKED", 3);
+		define(DICT_GET, "DICT_GET", 3);
+		define(LIST_SET, "LIST_SET", 3);
+		define(DICT_SET, "DICT_SET", 3);
+		define(CALL, "CALL", 4);
+		define(CALL_DYNAMIC, "CALL_DYNAMIC", 4);
+		define(PRINT, "PRINT", 2);
+		define(PARSE_INT, "PARSE_INT", 2);
+		define(LENGTH, "LENGTH", 2);
+		define(APPEND, "APPEND", 3);
+		define(ADD_TO_SET, "ADD_TO_SET", 3);
+		define(CONTAINS, "CONTAINS", 3);
+		define(APPEND_IN_PLACE, "APPEND_IN_PLACE", 3);
+		define(ADD_TO_SET_IN_PLACE, "ADD_TO_SET_IN_PLACE", 3);
+		define(JUMP, "JUMP", 1);
+		define(JUMP_IF_FALSE, "JUMP_IF_FALSE", 2);
+		define(JUMP_IF_NOT_LESS_THAN, "JUMP_IF_NOT_LESS_THAN", 3);
+		define(JUMP_IF_NOT_LESS_THAN_EQUAL, "JUMP_IF_NOT_LESS_THAN_EQUAL", 3);
+		define(JUMP_IF_NOT_GREATER_THAN, "JUMP_IF_NOT_GREATER_THAN", 3);
+		define(JUMP_IF_NOT_GREATER_THAN_EQUAL, "JUMP_IF_NOT_GREATER_THAN_EQUAL", 3);
+		define(JUMP_IF_NOT_EQUAL, "JUMP_IF_NOT_EQUAL", 3);
+		define(JUMP_IF_NOT_NOT_EQUAL, "JUMP_IF_NOT_NOT_EQUAL", 3);
+		define(JUMP_IF_NOT_LESS_THAN_IMMEDIATE, "JUMP_IF_NOT_LESS_THAN_IMMEDIATE", 3);
+		define(JUMP_IF_NOT_LESS_THAN_EQUAL_IMMEDIATE, "JUMP_IF_NOT_LESS_THAN_EQUAL_IMMEDIATE", 3);
+		define(JUMP_IF_NOT_GREATER_THAN_IMMEDIATE, "JUMP_IF_NOT_GREATER_THAN_IMMEDIATE", 3);
+		define(JUMP_IF_NOT_GREATER_THAN_EQUAL_IMMEDIATE, "JUMP_IF_NOT_GREATER_THAN_EQUAL_IMMEDIATE", 3);
+		define(JUMP_IF_NOT_EQUAL_IMMEDIATE, "JUMP_IF_NOT_EQUAL_IMMEDIATE", 3);
+		define(JUMP_IF_NOT_NOT_EQUAL_IMMEDIATE, "JUMP_IF_NOT_NOT_EQUAL_IMMEDIATE", 3);
+		define(RETURN, "RETURN", 1);
+		define(RETURN_VOID, "RETURN_VOID", 0);
+	}
+	
+	private static void define(int opcode, String name, int operandCount) {
+		names[opcode] = name;
+		operandCounts[opcode] = operandCount;
+	}
+	
+	public static String name(int opcode) {
+		return names[opcode];
+	}
+	
+	public static int operandCount(int opcode) {
+		return operandCounts[opcode];
+	}
+}
@@ -0,0 +1,37 @@
+package rime.source.register;
+
+import norswap.uranium.Reactor;
+import rime.source.ast.declarations.Declaration;
+import rime.source.ast.declarations.RootNode;
+import rime.source.runtime.CollectionMode;
+import rime.source.semantic.FrozenAttributes;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+
+
+/**
+ * A whole program lowered to three-address code, with the constant pool shared by its functions.
+ */
+public final class RegisterProgram {
+	public final List<RegisterFunction> functions;
+	public final RegisterFunction main;
+	public final Object[] constants;
+	final IdentityHashMap<Declaration, RegisterFunction> byDeclaration;
+	
+	RegisterProgram(List<RegisterFunction> functions, RegisterFunction main, Object[] constants, IdentityHashMap<Declaration, RegisterFunction> byDeclaration) {
+		this.functions = functions;
+		this.main = main;
+		this.constants = constants;
+		this.byDeclaration = byDeclaration;
+	}
+	
+	public static RegisterProgram compile(Reactor reactor, RootNode root) {
+		return compile(reactor, root, CollectionMode.COPYING);
+	}
+	
+	public static RegisterProgram compile(Reactor reactor, RootNode root, CollectionMode collectionMode) {
+		return new RegisterCompiler(FrozenAttributes.prepare(reactor, root, collectionMode)).compile(root);
+	}
+}
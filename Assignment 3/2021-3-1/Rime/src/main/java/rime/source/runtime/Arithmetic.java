@@ -0,0 +1,13 @@
+package rime.source.runtime;
+
+public final class Arithmetic {
+	private Arithmetic() { }
+	
+	public static int divide(int left, int right) {
+		if (right == 0) {
+			throw new ArithmeticException("Division by zero");
+		}
+		
+		return left / right;
+	}
+}
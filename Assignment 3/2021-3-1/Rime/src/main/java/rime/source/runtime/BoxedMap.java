@@ -0,0 +1,31 @@
+package rime.source.runtime;
+
+import java.util.HashMap;
+
+
+
+/**
+ * The runtime representation of the dicts of other keys than ints, see {@link CollectionKind#BOXED}: a
+ * {@link HashMap} of the keys flattened by {@link Concatenation#flatten}, like {@link BoxedSet}.
+ */
+public final class BoxedMap extends HashMap<Object, Object> {
+	@Override
+	public Object get(Object key) {
+		return super.get(Concatenation.flatten(key));
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return super.containsKey(Concatenation.flatten(key));
+	}
+	
+	@Override
+	public Object put(Object key, Object value) {
+		return super.put(Concatenation.flatten(key), value);
+	}
+	
+	@Override
+	public Object remove(Object key) {
+		return super.remove(Concatenation.flatten(key));
+	}
+}
@@ -0,0 +1,34 @@
+package rime.source.runtime;
+
+import java.util.Collection;
+import java.util.HashSet;
+
+
+
+/**
+ * The runtime representation of the sets of other elements than ints, see {@link CollectionKind#BOXED}: a
+ * {@link HashSet} of the elements flattened by {@link Concatenation#flatten}, which hash and compare as strings.
+ */
+public final class BoxedSet extends HashSet<Object> {
+	public BoxedSet() { }
+	
+	public BoxedSet(Collection<?> elements) {
+		super(Math.max((int) (elements.size() / .75f) + 1, 16));
+		addAll(elements);
+	}
+	
+	@Override
+	public boolean add(Object element) {
+		return super.add(Concatenation.flatten(element));
+	}
+	
+	@Override
+	public boolean contains(Object element) {
+		return super.contains(Concatenation.flatten(element));
+	}
+	
+	@Override
+	public boolean remove(Object element) {
+		return super.remove(Concatenation.flatten(element));
+	}
+}
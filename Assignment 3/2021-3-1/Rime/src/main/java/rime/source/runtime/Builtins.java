@@ -0,0 +1,165 @@
+package rime.source.runtime;
+
+import rime.source.ast.declarations.FuncDefinition;
+import rime.source.ast.declarations.ProcDefinition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+
+
+/**
+ * Runtime implementation of the predefined functions, shared by every execution engine.
+ */
+public final class Builtins {
+	private Builtins() { }
+	
+	/**
+	 * Calls a predefined function, for the calls through function values, see {@link #handler}.
+	 */
+	public static Object call(String name, Object[] args) {
+		return handler(name).apply(args);
+	}
+	
+	/**
+	 * Returns the implementation of a predefined function, for the call sites resolving it once rather than on
+	 * every call.
+	 */
+	public static Function<Object[], Object> handler(String name) {
+		return switch (name) {
+			case "print" -> args -> print(args[0]);
+			case "parseInt" -> args -> parseInt(args[0]);
+			case "length" -> args -> length(args[0]);
+			case "append" -> args -> append(args[0], args[1]);
+			case "add" -> args -> add(args[0], args[1]);
+			case "contains" -> args -> contains(args[0], args[1]);
+			default -> throw new Error("Should not reach here");
+		};
+	}
+	
+	public static Void print(Object value) {
+		System.out.println(convertToString(value));
+		return null;
+	}
+	
+	public static int parseInt(Object value) {
+		return Integer.parseInt(convertToString(value));
+	}
+	
+	/**
+	 * Runs in constant time: a list literal is evaluated once into one of the {@link CollectionKind} lists, which
+	 * all keep their size.
+	 */
+	public static int length(Object list) {
+		if (list instanceof List) {
+			return ((List<?>) list).size();
+		}
+		else {
+			throw new IllegalArgumentException("Error, argument should be a list");
+		}
+	}
+	
+	public static List<Object> append(Object list, Object element) {
+		if (!(list instanceof List)) {
+			throw new IllegalArgumentException("Error, first argument should be a list");
+		}
+		else if (list instanceof PersistentList) {
+			return ((PersistentList) list).appended(element);
+		}
+		
+		final List<Object> result = list instanceof IntList && element instanceof Integer
+			? new IntList((IntList) list)
+			: new ArrayList<>((List<?>) list);
+		
+		result.add(element);
+		return result;
+	}
+	
+	/**
+	 * Appends to the list itself rather than to a copy, for the appends marked by
+	 * {@link rime.source.semantic.InPlaceAppends}, whose list nothing else references.
+	 */
+	public static List<Object> appendInPlace(Object list, Object element) {
+		if (!(list instanceof List)) {
+			throw new IllegalArgumentException("Error, first argument should be a list");
+		}
+		
+		// append accepts any element, which an int list can only hold in a boxed copy
+		if (list instanceof IntList && !(element instanceof Integer)) {
+			return append(list, element);
+		}
+		
+		((List<Object>) list).add(element);
+		return (List<Object>) list;
+	}
+	
+	public static Set<Object> add(Object set, Object element) {
+		if (!(set instanceof Set)) {
+			throw new IllegalArgumentException("Error, first argument should be a set");
+		}
+		else if (set instanceof PersistentSet) {
+			return ((PersistentSet) set).with(element);
+		}
+		
+		final Set<Object> result = set instanceof IntSet && element instanceof Integer
+			? new IntSet((IntSet) set)
+			: new BoxedSet((Set<?>) set);
+		
+		result.add(element);
+		return result;
+	}
+	
+	/**
+	 * Adds to the set itself rather than to a copy, like {@link #appendInPlace}.
+	 */
+	public static Set<Object> addInPlace(Object set, Object element) {
+		if (!(set instanceof Set)) {
+			throw new IllegalArgumentException("Error, first argument should be a set");
+		}
+		
+		if (set instanceof IntSet && !(element instanceof Integer)) {
+			return add(set, element);
+		}
+		
+		((Set<Object>) set).add(element);
+		return (Set<Object>) set;
+	}
+	
+	public static boolean contains(Object set, Object element) {
+		if (!(set instanceof Set)) {
+			throw new IllegalArgumentException("Error, first argument should be a set");
+		}
+		
+		return ((Set<?>) set).contains(element);
+	}
+	
+	/**
+	 * Compares two values of a primitive type, strings by their characters whether or not they are a
+	 * {@link Concatenation}.
+	 */
+	public static boolean valueEqual(Object left, Object right) {
+		return Objects.equals(Concatenation.flatten(left), Concatenation.flatten(right));
+	}
+	
+	public static String convertToString(Object arg) {
+		if (arg == null) {
+			return "null";
+		}
+		else if (arg instanceof Object[]) {
+			return Arrays.deepToString((Object[]) arg);
+		}
+		else if (arg instanceof ProcDefinition) {
+			return ((ProcDefinition) arg).name.value;
+		}
+		else if (arg instanceof FuncDefinition) {
+			return ((FuncDefinition) arg).name.value;
+		}
+		else {
+			return arg.toString();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package rime.source.runtime;
+
+import rime.source.ast.constants.BasicType;
+import rime.source.ast.expressions.EmptyDict;
+import rime.source.ast.expressions.EmptyList;
+import rime.source.ast.expressions.EmptySet;
+import rime.source.ast.expressions.Expression;
+import rime.source.semantic.FrozenAttributes;
+import rime.source.semantic.types.DictType;
+import rime.source.semantic.types.IntType;
+import rime.source.semantic.types.ListType;
+import rime.source.semantic.types.SetType;
+import rime.source.semantic.types.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+
+/**
+ * The runtime representation of a collection, which the engines choose at each allocation site from its static
+ * type: the collections of ints keep them unboxed, in an {@link IntList}, an {@link IntSet}, an {@link IntIntMap}
+ * or an {@link IntObjectMap}, the others are an {@link ArrayList}, a {@link BoxedSet} or a {@link BoxedMap}.
+ * <p>
+ * In the {@link CollectionMode#PERSISTENT} mode, every collection is {@link #PERSISTENT} instead.
+ * <p>
+ * Every representation implements {@link List}, {@link Set} or {@link Map}, which is all the engines rely on.
+ */
+public enum CollectionKind {
+	BOXED,
+	INT,
+	INT_TO_INT,
+	INT_TO_OBJECT,
+	PERSISTENT;
+	
+	private static final CollectionKind[] KINDS = values();
+	
+	/**
+	 * Returns the representation of the collection a literal allocates. The empty literals are typed by their
+	 * context, if any, and carry their own element types, which are used instead.
+	 */
+	public static CollectionKind of(FrozenAttributes attributes, Expression node) {
+		if (attributes.collectionMode == CollectionMode.PERSISTENT) {
+			return PERSISTENT;
+		}
+		else if (node instanceof EmptyList) {
+			return ((EmptyList) node).type.type == BasicType.INT ? INT : BOXED;
+		}
+		else if (node instanceof EmptySet) {
+			return ((EmptySet) node).type.type == BasicType.INT ? INT : BOXED;
+		}
+		else if (node instanceof EmptyDict) {
+			final EmptyDict dict = (EmptyDict) node;
+			return dictKind(dict.keyType.type == BasicType.INT, dict.valueType.type == BasicType.INT);
+		}
+		
+		return of(attributes.type(node));
+	}
+	
+	public static CollectionKind of(Type type) {
+		if (type instanceof ListType) {
+			return ((ListType) type).elementType instanceof IntType ? INT : BOXED;
+		}
+		else if (type instanceof SetType) {
+			return ((SetType) type).elementType instanceof IntType ? INT : BOXED;
+		}
+		else if (type instanceof DictType) {
+			final DictType dict = (DictType) type;
+			return dictKind(dict.keyType instanceof IntType, dict.valueType instanceof IntType);
+		}
+		
+		return BOXED;
+	}
+	
+	private static CollectionKind dictKind(boolean intKeys, boolean intValues) {
+		return !intKeys ? BOXED : intValues ? INT_TO_INT : INT_TO_OBJECT;
+	}
+	
+	/**
+	 * Returns the kind of the given {@link #ordinal()}, for the engines encoding it as an operand.
+	 */
+	public static CollectionKind of(int ordinal) {
+		return KINDS[ordinal];
+	}
+	
+	public List<Object> newList(int capacity) {
+		return switch (this) {
+			case INT -> new IntList(capacity);
+			case PERSISTENT -> new PersistentList();
+			default -> new ArrayList<>(capacity);
+		};
+	}
+	
+	public Set<Object> newSet(int capacity) {
+		return switch (this) {
+			case INT -> new IntSet(capacity);
+			case PERSISTENT -> new PersistentSet();
+			default -> new BoxedSet();
+		};
+	}
+	
+	public Map<Object, Object> newDict(int capacity) {
+		return switch (this) {
+			case INT_TO_INT -> new IntIntMap(capacity);
+			case INT_TO_OBJECT -> new IntObjectMap(capacity);
+			case PERSISTENT -> new PersistentMap();
+			default -> new BoxedMap();
+		};
+	}
+}
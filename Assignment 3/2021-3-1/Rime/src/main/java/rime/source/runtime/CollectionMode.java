@@ -0,0 +1,15 @@
+package rime.source.runtime;
+
+
+
+/**
+ * How the engines represent the collections of a program, an option of the engine running it, see
+ * {@link rime.source.interpreter.EngineKind#create(norswap.uranium.Reactor, CollectionMode)}.
+ */
+public enum CollectionMode {
+	/** Each collection is represented after its static type, see {@link CollectionKind}, and copied by {@code append} and {@code add} */
+	COPYING,
+	
+	/** Every collection is {@link CollectionKind#PERSISTENT}, which {@code append} and {@code add} extend in O(log n) rather than copy */
+	PERSISTENT
+}
@@ -0,0 +1,86 @@
+package rime.source.runtime;
+
+
+
+/**
+ * A string built by {@code +}, which every engine evaluates with {@link #concat}. The concatenations share a
+ * {@link StringBuilder}, each one being the prefix of a given length of its builder: appending to the longest of
+ * them appends to the builder, in amortized constant time, rather than copying the whole string. The characters of
+ * a prefix are never changed, so the strings keep their value, and appending to a shorter one copies it to a new
+ * builder.
+ * <p>
+ * The string is only built, once, by {@link #toString}, which {@link Builtins#convertToString} calls for
+ * {@code print} and {@code parseInt}. Equality and hashing go through {@link #flatten}, in
+ * {@link Builtins#valueEqual} and in the sets and dicts, so that a concatenation is the same value as a string of
+ * the same characters.
+ */
+public final class Concatenation implements CharSequence {
+	/** Shorter concatenations are built as strings right away, as the engines did before */
+	static final int MIN_LENGTH = 64;
+	
+	private final StringBuilder builder;
+	private final int length;
+	private String string;
+	
+	private Concatenation(StringBuilder builder) {
+		this.builder = builder;
+		this.length = builder.length();
+	}
+	
+	/**
+	 * Returns {@code left + right}, each converted to a string the way {@code print} does.
+	 */
+	public static Object concat(Object left, Object right) {
+		final String suffix = Builtins.convertToString(right);
+		
+		if (left instanceof Concatenation) {
+			final Concatenation prefix = (Concatenation) left;
+			
+			if (prefix.builder.length() == prefix.length) {
+				return new Concatenation(prefix.builder.append(suffix));
+			}
+			
+			final StringBuilder builder = new StringBuilder(2 * (prefix.length + suffix.length()));
+			return new Concatenation(builder.append(prefix.builder, 0, prefix.length).append(suffix));
+		}
+		
+		final String prefix = Builtins.convertToString(left);
+		
+		if (prefix.length() + suffix.length() < MIN_LENGTH) {
+			return prefix + suffix;
+		}
+		
+		return new Concatenation(new StringBuilder(2 * (prefix.length() + suffix.length())).append(prefix).append(suffix));
+	}
+	
+	/**
+	 * Returns the string a concatenation stands for, or the value itself if it is not one.
+	 */
+	public static Object flatten(Object value) {
+		return value instanceof Concatenation ? value.toString() : value;
+	}
+	
+	@Override
+	public int length() {
+		return length;
+	}
+	
+	@Override
+	public char charAt(int index) {
+		return toString().charAt(index);
+	}
+	
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+	
+	@Override
+	public String toString() {
+		if (string == null) {
+			string = builder.substring(0, length);
+		}
+		
+		return string;
+	}
+}
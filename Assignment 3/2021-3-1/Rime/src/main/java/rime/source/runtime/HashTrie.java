@@ -0,0 +1,180 @@
+package rime.source.runtime;
+
+import java.util.List;
+import java.util.Objects;
+
+
+
+/**
+ * The hash array mapped trie behind {@link PersistentMap} and {@link PersistentSet}. Each node consumes five bits
+ * of the hashes and only holds the children present, selected by a bitmap. No node is ever modified once built,
+ * so a {@link #put} copies a single path of the trie and shares the rest of it.
+ * <p>
+ * The nodes store their entries as pairs in {@link Node#array}: a key and its value, or a child node and
+ * {@code null}. Once the 32 bits of the hashes are consumed, the node lists the colliding entries instead.
+ */
+final class HashTrie {
+	private HashTrie() { }
+	
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+	
+	static final Object ABSENT = new Object();
+	static final Node EMPTY = new Node(0, new Object[0]);
+	
+	static final class Node {
+		final int bitmap;
+		final Object[] array;
+		
+		Node(int bitmap, Object[] array) {
+			this.bitmap = bitmap;
+			this.array = array;
+		}
+	}
+	
+	static int hash(Object key) {
+		return Objects.hashCode(key);
+	}
+	
+	/**
+	 * Returns the value of the key, or {@link #ABSENT}.
+	 */
+	static Object get(Node node, int hash, Object key) {
+		for (int shift = 0; ; shift += BITS) {
+			if (shift >= Integer.SIZE) {
+				final int index = collision(node, key);
+				return index < 0 ? ABSENT : node.array[index + 1];
+			}
+			
+			final int bit = 1 << ((hash >>> shift) & MASK);
+			
+			if ((node.bitmap & bit) == 0) {
+				return ABSENT;
+			}
+			
+			final int index = index(node.bitmap, bit);
+			final Object entry = node.array[index];
+			
+			if (entry instanceof Node) {
+				node = (Node) entry;
+			}
+			else {
+				return Objects.equals(entry, key) ? node.array[index + 1] : ABSENT;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the trie mapping the key to the value, and stores its previous value, or {@link #ABSENT}, in
+	 * {@code previous[0]}.
+	 */
+	static Node put(Node node, int shift, int hash, Object key, Object value, Object[] previous) {
+		if (shift >= Integer.SIZE) {
+			final int index = collision(node, key);
+			return index < 0
+				? new Node(0, inserted(node.array, node.array.length, key, value, previous))
+				: replaced(node, index, value, previous);
+		}
+		
+		final int bit = 1 << ((hash >>> shift) & MASK);
+		final int index = index(node.bitmap, bit);
+		
+		if ((node.bitmap & bit) == 0) {
+			return new Node(node.bitmap | bit, inserted(node.array, index, key, value, previous));
+		}
+		
+		final Object entry = node.array[index];
+		
+		if (entry instanceof Node) {
+			final Node child = put((Node) entry, shift + BITS, hash, key, value, previous);
+			
+			if (child == entry) {
+				return node;
+			}
+			
+			final Object[] array = node.array.clone();
+			array[index] = child;
+			return new Node(node.bitmap, array);
+		}
+		else if (Objects.equals(entry, key)) {
+			return replaced(node, index, value, previous);
+		}
+		
+		previous[0] = ABSENT;
+		final Object[] array = node.array.clone();
+		array[index] = pair(shift + BITS, hash(entry), entry, node.array[index + 1], hash, key, value);
+		array[index + 1] = null;
+		return new Node(node.bitmap, array);
+	}
+	
+	/**
+	 * Adds the key and value of every entry of the trie to the list, in turn.
+	 */
+	static void collect(Node node, List<Object> keysAndValues) {
+		for (int i = 0; i < node.array.length; i += 2) {
+			if (node.array[i] instanceof Node) {
+				collect((Node) node.array[i], keysAndValues);
+			}
+			else {
+				keysAndValues.add(node.array[i]);
+				keysAndValues.add(node.array[i + 1]);
+			}
+		}
+	}
+	
+	private static int index(int bitmap, int bit) {
+		return 2 * Integer.bitCount(bitmap & (bit - 1));
+	}
+	
+	private static int collision(Node node, Object key) {
+		for (int i = 0; i < node.array.length; i += 2) {
+			if (Objects.equals(node.array[i], key)) {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	private static Object[] inserted(Object[] array, int index, Object key, Object value, Object[] previous) {
+		previous[0] = ABSENT;
+		final Object[] copy = new Object[array.length + 2];
+		System.arraycopy(array, 0, copy, 0, index);
+		copy[index] = key;
+		copy[index + 1] = value;
+		System.arraycopy(array, index, copy, index + 2, array.length - index);
+		return copy;
+	}
+	
+	private static Node replaced(Node node, int index, Object value, Object[] previous) {
+		previous[0] = node.array[index + 1];
+		
+		if (previous[0] == value) {
+			return node;
+		}
+		
+		final Object[] array = node.array.clone();
+		array[index + 1] = value;
+		return new Node(node.bitmap, array);
+	}
+	
+	/**
+	 * Returns the trie holding the two entries, whose hashes agree on the bits below {@code shift}.
+	 */
+	private static Node pair(int shift, int hash1, Object key1, Object value1, int hash2, Object key2, Object value2) {
+		if (shift >= Integer.SIZE) {
+			return new Node(0, new Object[] { key1, value1, key2, value2 });
+		}
+		
+		final int bit1 = (hash1 >>> shift) & MASK;
+		final int bit2 = (hash2 >>> shift) & MASK;
+		
+		if (bit1 == bit2) {
+			return new Node(1 << bit1, new Object[] { pair(shift + BITS, hash1, key1, value1, hash2, key2, value2), null });
+		}
+		
+		return new Node((1 << bit1) | (1 << bit2), bit1 < bit2
+			? new Object[] { key1, value1, key2, value2 }
+			: new Object[] { key2, value2, key1, value1 });
+	}
+}
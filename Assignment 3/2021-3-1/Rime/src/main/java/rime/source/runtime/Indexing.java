@@ -0,0 +1,94 @@
+package rime.source.runtime;
+
+import rime.source.interpreter.exceptions.PassthroughException;
+
+import java.util.List;
+import java.util.Map;
+
+import static norswap.utils.Util.cast;
+
+
+
+/**
+ * Runtime checks of indexed collection accesses, shared by the execution engines so that they all report
+ * the same errors as {@link rime.source.interpreter.Interpreter}.
+ */
+public final class Indexing {
+	private Indexing() { }
+	
+	public static List<Object> list(Object value) {
+		if (value == null) {
+			throw new PassthroughException(new NullPointerException("indexing null list"));
+		}
+		
+		return cast(value);
+	}
+	
+	public static Map<Object, Object> dict(Object value) {
+		if (value == null) {
+			throw new PassthroughException(new NullPointerException("indexing null dict"));
+		}
+		
+		return cast(value);
+	}
+	
+	public static int checkIndex(int index) {
+		if (index < 0) {
+			throw new ArrayIndexOutOfBoundsException("Negative index: " + index);
+		}
+		
+		if (index >= Integer.MAX_VALUE - 1) {
+			throw new ArrayIndexOutOfBoundsException("Index exceeds max array index (2ˆ31 - 1): " + index);
+		}
+		
+		return index;
+	}
+	
+	/**
+	 * Reads {@code list[index]}, an invalid index is reported to the caller of the engine as is.
+	 */
+	public static Object get(List<Object> list, int index) {
+		try {
+			return list.get(checkIndex(index));
+		}
+		catch (ArrayIndexOutOfBoundsException e) {
+			throw new PassthroughException(e);
+		}
+	}
+	
+	/**
+	 * Reads {@code list[index]} from a list of ints, without boxing it when the list is an {@link IntList}.
+	 */
+	public static int getInt(List<Object> list, int index) {
+		try {
+			return list instanceof IntList ? ((IntList) list).getInt(checkIndex(index)) : (Integer) list.get(checkIndex(index));
+		}
+		catch (ArrayIndexOutOfBoundsException e) {
+			throw new PassthroughException(e);
+		}
+	}
+	
+	/**
+	 * Reads {@code list[index]} at an index known to be within the list, see
+	 * {@link rime.source.semantic.BoundsChecks}: the list is not null, as its length has been read.
+	 */
+	public static Object getUnchecked(Object list, int index) {
+		return ((List<?>) list).get(index);
+	}
+	
+	public static int getIntUnchecked(Object list, int index) {
+		return list instanceof IntList ? ((IntList) list).getIntUnchecked(index) : (Integer) ((List<?>) list).get(index);
+	}
+	
+	/**
+	 * Writes {@code list[index]}, the index must already have gone through {@link #checkIndex(int)}.
+	 */
+	public static void set(List<Object> list, int index, Object value) {
+		try {
+			list.set(index, value);
+		}
+		catch (ArrayIndexOutOfBoundsException e) {
+			throw new PassthroughException(e);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package rime.source.runtime;
+
+import static rime.source.runtime.IntKeys.FREE;
+
+
+
+/**
+ * The runtime representation of the {@code {int:int}} dicts, whose values are unboxed too. A value which is not an
+ * int, such as the null read from a missing entry of another dict, moves all the values to {@link #boxed} for good,
+ * the one of the zero key last, as {@link IntList} does.
+ */
+public final class IntIntMap extends IntKeyedMap {
+	private int[] values;
+	private int zeroValue;
+	private Object[] boxed;
+	
+	public IntIntMap() {
+		this(0);
+	}
+	
+	public IntIntMap(int capacity) {
+		super(capacity);
+		values = new int[keys.length];
+	}
+	
+	@Override
+	Object value(int slot) {
+		if (boxed != null) {
+			return boxed[slot < 0 ? keys.length : slot];
+		}
+		
+		return slot < 0 ? zeroValue : values[slot];
+	}
+	
+	@Override
+	void setValue(int slot, Object value) {
+		if (boxed == null && !(value instanceof Integer)) {
+			box();
+		}
+		
+		if (boxed != null) {
+			boxed[slot < 0 ? keys.length : slot] = value;
+		}
+		else if (slot < 0) {
+			zeroValue = (Integer) value;
+		}
+		else {
+			values[slot] = (Integer) value;
+		}
+	}
+	
+	private void box() {
+		boxed = new Object[keys.length + 1];
+		
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != FREE) {
+				boxed[i] = values[i];
+			}
+		}
+		
+		boxed[keys.length] = zeroValue;
+		values = null;
+	}
+	
+	@Override
+	void rehashValues(int[] oldKeys) {
+		if (boxed != null) {
+			final Object[] old = boxed;
+			boxed = new Object[keys.length + 1];
+			
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != FREE) {
+					boxed[IntKeys.slot(keys, oldKeys[i])] = old[i];
+				}
+			}
+			
+			boxed[keys.length] = old[oldKeys.length];
+			return;
+		}
+		
+		final int[] old = values;
+		values = new int[keys.length];
+		
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				values[IntKeys.slot(keys, oldKeys[i])] = old[i];
+			}
+		}
+	}
+}
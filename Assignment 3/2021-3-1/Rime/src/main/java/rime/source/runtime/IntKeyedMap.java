@@ -0,0 +1,135 @@
+package rime.source.runtime;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import static rime.source.runtime.IntKeys.FREE;
+
+
+
+/**
+ * The runtime representation of the dicts with int keys, an open addressing hash table of unboxed keys, see
+ * {@link IntKeys}. It behaves as a {@link java.util.HashMap} with {@link Integer} keys, but for its iteration order.
+ * The subclasses store the values, the one of the zero key is in slot -1.
+ */
+abstract class IntKeyedMap extends AbstractMap<Object, Object> {
+	private static final int ABSENT = Integer.MIN_VALUE;
+	
+	int[] keys;
+	private boolean hasZero;
+	private int size;
+	
+	IntKeyedMap(int capacity) {
+		keys = new int[IntKeys.capacity(capacity)];
+	}
+	
+	abstract Object value(int slot);
+	
+	abstract void setValue(int slot, Object value);
+	
+	/**
+	 * Moves the values to the slots of their keys in {@link #keys}, which has just been rehashed from {@code oldKeys}.
+	 */
+	abstract void rehashValues(int[] oldKeys);
+	
+	private int find(Object key) {
+		if (!(key instanceof Integer)) {
+			return ABSENT;
+		}
+		
+		final int value = (Integer) key;
+		
+		if (value == FREE) {
+			return hasZero ? -1 : ABSENT;
+		}
+		
+		final int slot = IntKeys.slot(keys, value);
+		return keys[slot] == value ? slot : ABSENT;
+	}
+	
+	@Override
+	public Object get(Object key) {
+		final int slot = find(key);
+		return slot == ABSENT ? null : value(slot);
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return find(key) != ABSENT;
+	}
+	
+	@Override
+	public Object put(Object key, Object value) {
+		final int intKey = (Integer) key;
+		int slot = intKey == FREE ? -1 : IntKeys.slot(keys, intKey);
+		
+		if (slot < 0 ? hasZero : keys[slot] == intKey) {
+			final Object previous = value(slot);
+			setValue(slot, value);
+			return previous;
+		}
+		
+		if (slot < 0) {
+			hasZero = true;
+		}
+		else {
+			if (IntKeys.isFull(keys, size)) {
+				rehash();
+				slot = IntKeys.slot(keys, intKey);
+			}
+			
+			keys[slot] = intKey;
+		}
+		
+		setValue(slot, value);
+		size++;
+		return null;
+	}
+	
+	private void rehash() {
+		final int[] old = keys;
+		keys = new int[old.length * 2];
+		
+		for (int key : old) {
+			if (key != FREE) {
+				keys[IntKeys.slot(keys, key)] = key;
+			}
+		}
+		
+		rehashValues(old);
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public Set<Entry<Object, Object>> entrySet() {
+		final class Entries extends IntKeys.SlotIterator implements Iterator<Entry<Object, Object>> {
+			Entries() {
+				super(keys, hasZero);
+			}
+			
+			@Override
+			public Entry<Object, Object> next() {
+				final int slot = nextSlot();
+				return new SimpleImmutableEntry<>(slot < 0 ? FREE : keys[slot], value(slot));
+			}
+		}
+		
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Entry<Object, Object>> iterator() {
+				return new Entries();
+			}
+			
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+}
@@ -0,0 +1,85 @@
+package rime.source.runtime;
+
+import java.util.NoSuchElementException;
+
+
+
+/**
+ * Open addressing on a power-of-two array of int keys with linear probing, shared by {@link IntSet},
+ * {@link IntIntMap} and {@link IntObjectMap}. The key 0 marks the free slots, so the tables keep it apart.
+ */
+final class IntKeys {
+	static final int FREE = 0;
+	
+	private IntKeys() { }
+	
+	/**
+	 * Returns the slot of a non-zero key, or the free slot where it would go.
+	 */
+	static int slot(int[] keys, int key) {
+		final int mask = keys.length - 1;
+		final int hash = key * 0x9E3779B9;
+		int slot = (hash ^ hash >>> 16) & mask;
+		
+		while (keys[slot] != FREE && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		
+		return slot;
+	}
+	
+	/**
+	 * Returns the capacity holding {@code size} keys at most three quarters full.
+	 */
+	static int capacity(int size) {
+		return Math.max(Integer.highestOneBit(Math.max(size * 4 / 3, 1)) << 1, 8);
+	}
+	
+	static boolean isFull(int[] keys, int size) {
+		return size >= keys.length - (keys.length >> 2);
+	}
+	
+	/**
+	 * Iterates over the slots of a table, the zero key first when the table holds it.
+	 */
+	abstract static class SlotIterator {
+		private final int[] keys;
+		private boolean zero;
+		private int slot = -1;
+		
+		SlotIterator(int[] keys, boolean hasZero) {
+			this.keys = keys;
+			this.zero = hasZero;
+			advance();
+		}
+		
+		private void advance() {
+			do {
+				slot++;
+			}
+			while (slot < keys.length && keys[slot] == FREE);
+		}
+		
+		public boolean hasNext() {
+			return zero || slot < keys.length;
+		}
+		
+		/**
+		 * Returns the slot of the next key, or -1 for the zero key.
+		 */
+		int nextSlot() {
+			if (zero) {
+				zero = false;
+				return -1;
+			}
+			
+			if (slot >= keys.length) {
+				throw new NoSuchElementException();
+			}
+			
+			final int current = slot;
+			advance();
+			return current;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package rime.source.runtime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+
+
+/**
+ * The runtime representation of the {@code [int]} lists, a growable array of unboxed ints. It behaves as an
+ * {@link java.util.ArrayList} of {@link Integer}, failing on the same indices with the same exceptions, and boxes
+ * its elements only when they are read through the {@link java.util.List} interface rather than {@link #getInt}.
+ * <p>
+ * An element which is not an int, such as the null read from a missing dict entry, moves all the elements to
+ * {@link #boxed} for good, as {@link Builtins#append} copies such a list to an {@link java.util.ArrayList}.
+ */
+public final class IntList extends AbstractList<Object> implements RandomAccess {
+	private int[] values;
+	private Object[] boxed;
+	private int size;
+	
+	public IntList() {
+		this(0);
+	}
+	
+	public IntList(int capacity) {
+		values = new int[Math.max(capacity, 4)];
+	}
+	
+	/**
+	 * Copies a list, leaving room for one more element.
+	 */
+	public IntList(IntList list) {
+		if (list.boxed != null) {
+			boxed = Arrays.copyOf(list.boxed, list.size + 1);
+		}
+		else {
+			values = Arrays.copyOf(list.values, list.size + 1);
+		}
+		
+		size = list.size;
+	}
+	
+	/**
+	 * Reads an element which must be an int, failing on null as unboxing an {@link Integer} does.
+	 */
+	public int getInt(int index) {
+		Objects.checkIndex(index, size);
+		return boxed != null ? (Integer) boxed[index] : values[index];
+	}
+	
+	/**
+	 * Reads an element at an index known to be below the size, see {@link Indexing#getIntUnchecked}.
+	 */
+	int getIntUnchecked(int index) {
+		return boxed != null ? (Integer) boxed[index] : values[index];
+	}
+	
+	public void addInt(int value) {
+		if (boxed != null) {
+			addBoxed(value);
+			return;
+		}
+		
+		if (size == values.length) {
+			values = Arrays.copyOf(values, Math.max(size + (size >> 1), 4));
+		}
+		
+		values[size++] = value;
+	}
+	
+	private void addBoxed(Object value) {
+		if (size == boxed.length) {
+			boxed = Arrays.copyOf(boxed, Math.max(size + (size >> 1), 4));
+		}
+		
+		boxed[size++] = value;
+	}
+	
+	/**
+	 * Moves the elements to {@link #boxed}, to hold one which is not an int.
+	 */
+	private void box() {
+		boxed = new Object[values.length];
+		
+		for (int i = 0; i < size; i++) {
+			boxed[i] = values[i];
+		}
+		
+		values = null;
+	}
+	
+	@Override
+	public Object get(int index) {
+		Objects.checkIndex(index, size);
+		
+		if (boxed != null) {
+			return boxed[index];
+		}
+		
+		return values[index];
+	}
+	
+	@Override
+	public Object set(int index, Object value) {
+		Objects.checkIndex(index, size);
+		
+		if (boxed == null && !(value instanceof Integer)) {
+			box();
+		}
+		
+		if (boxed != null) {
+			final Object previous = boxed[index];
+			boxed[index] = value;
+			return previous;
+		}
+		
+		final int previous = values[index];
+		values[index] = (Integer) value;
+		return previous;
+	}
+	
+	@Override
+	public boolean add(Object value) {
+		if (boxed == null && !(value instanceof Integer)) {
+			box();
+		}
+		
+		if (boxed != null) {
+			addBoxed(value);
+		}
+		else {
+			addInt((Integer) value);
+		}
+		
+		modCount++;
+		return true;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,49 @@
+package rime.source.runtime;
+
+import static rime.source.runtime.IntKeys.FREE;
+
+
+
+/**
+ * The runtime representation of the dicts with int keys and bool or string values.
+ */
+public final class IntObjectMap extends IntKeyedMap {
+	private Object[] values;
+	private Object zeroValue;
+	
+	public IntObjectMap() {
+		this(0);
+	}
+	
+	public IntObjectMap(int capacity) {
+		super(capacity);
+		values = new Object[keys.length];
+	}
+	
+	@Override
+	Object value(int slot) {
+		return slot < 0 ? zeroValue : values[slot];
+	}
+	
+	@Override
+	void setValue(int slot, Object value) {
+		if (slot < 0) {
+			zeroValue = value;
+		}
+		else {
+			values[slot] = value;
+		}
+	}
+	
+	@Override
+	void rehashValues(int[] oldKeys) {
+		final Object[] old = values;
+		values = new Object[keys.length];
+		
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				values[IntKeys.slot(keys, oldKeys[i])] = old[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package rime.source.runtime;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+import static rime.source.runtime.IntKeys.FREE;
+
+
+
+/**
+ * The runtime representation of the {@code {int}} sets, an open addressing hash table of unboxed ints, see
+ * {@link IntKeys}. It behaves as a {@link java.util.HashSet} of {@link Integer}, but for its iteration order.
+ */
+public final class IntSet extends AbstractSet<Object> {
+	private int[] keys;
+	private boolean hasZero;
+	private int size;
+	
+	public IntSet() {
+		this(0);
+	}
+	
+	public IntSet(int capacity) {
+		keys = new int[IntKeys.capacity(capacity)];
+	}
+	
+	public IntSet(IntSet set) {
+		keys = set.keys.clone();
+		hasZero = set.hasZero;
+		size = set.size;
+	}
+	
+	public boolean containsInt(int key) {
+		return key == FREE ? hasZero : keys[IntKeys.slot(keys, key)] == key;
+	}
+	
+	public boolean addInt(int key) {
+		if (key == FREE) {
+			final boolean added = !hasZero;
+			hasZero = true;
+			size += added ? 1 : 0;
+			return added;
+		}
+		
+		int slot = IntKeys.slot(keys, key);
+		
+		if (keys[slot] == key) {
+			return false;
+		}
+		
+		if (IntKeys.isFull(keys, size)) {
+			rehash();
+			slot = IntKeys.slot(keys, key);
+		}
+		
+		keys[slot] = key;
+		size++;
+		return true;
+	}
+	
+	private void rehash() {
+		final int[] old = keys;
+		keys = new int[old.length * 2];
+		
+		for (int key : old) {
+			if (key != FREE) {
+				keys[IntKeys.slot(keys, key)] = key;
+			}
+		}
+	}
+	
+	@Override
+	public boolean contains(Object value) {
+		return value instanceof Integer && containsInt((Integer) value);
+	}
+	
+	@Override
+	public boolean add(Object value) {
+		return addInt((Integer) value);
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public Iterator<Object> iterator() {
+		final class Keys extends IntKeys.SlotIterator implements Iterator<Object> {
+			Keys() {
+				super(keys, hasZero);
+			}
+			
+			@Override
+			public Object next() {
+				final int slot = nextSlot();
+				return slot < 0 ? FREE : keys[slot];
+			}
+		}
+		
+		return new Keys();
+	}
+}
@@ -0,0 +1,160 @@
+package rime.source.runtime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+
+
+/**
+ * The runtime representation of the lists in the persistent collections mode, see {@link CollectionKind#PERSISTENT}:
+ * a 32-way trie of the elements, whose last (up to 32) elements are kept apart in a tail array. No node is ever
+ * modified once built, so {@link #appended} returns a new list in O(log n) which shares all but one path of the
+ * trie with this one.
+ * <p>
+ * The list itself is still mutable, as Rime lists are: {@link #set} and {@link #add} copy the path to the element
+ * then make this list point to the new trie, which leaves the lists sharing the old one unchanged.
+ */
+public final class PersistentList extends AbstractList<Object> implements RandomAccess {
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+	private static final Object[] EMPTY = new Object[0];
+	
+	private int size;
+	/** The number of bits of an index consumed above the leaves, a multiple of {@link #BITS}. */
+	private int shift;
+	private Object[] root;
+	private Object[] tail;
+	
+	public PersistentList() {
+		this(0, BITS, new Object[WIDTH], EMPTY);
+	}
+	
+	private PersistentList(int size, int shift, Object[] root, Object[] tail) {
+		this.size = size;
+		this.shift = shift;
+		this.root = root;
+		this.tail = tail;
+	}
+	
+	/**
+	 * Returns the index of the first element held by {@link #tail}.
+	 */
+	private int tailOffset() {
+		return size < WIDTH ? 0 : (size - 1) >>> BITS << BITS;
+	}
+	
+	private Object[] leafFor(int index) {
+		if (index >= tailOffset()) {
+			return tail;
+		}
+		
+		Object[] node = root;
+		
+		for (int level = shift; level > 0; level -= BITS) {
+			node = (Object[]) node[(index >>> level) & MASK];
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * Returns a new list made of this one followed by the given element, sharing its trie with this one.
+	 */
+	public PersistentList appended(Object value) {
+		if (size - tailOffset() < WIDTH) {
+			final Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+			newTail[tail.length] = value;
+			return new PersistentList(size + 1, shift, root, newTail);
+		}
+		
+		// the tail is full, it moves into the trie, which grows a level when its root is full
+		if ((size >>> BITS) > (1 << shift)) {
+			final Object[] newRoot = new Object[WIDTH];
+			newRoot[0] = root;
+			newRoot[1] = path(shift, tail);
+			return new PersistentList(size + 1, shift + BITS, newRoot, new Object[] { value });
+		}
+		
+		return new PersistentList(size + 1, shift, pushTail(shift, root), new Object[] { value });
+	}
+	
+	private Object[] pushTail(int level, Object[] parent) {
+		final int child = ((size - 1) >>> level) & MASK;
+		final Object[] copy = parent.clone();
+		
+		if (level == BITS) {
+			copy[child] = tail;
+		}
+		else {
+			copy[child] = parent[child] == null
+				? path(level - BITS, tail)
+				: pushTail(level - BITS, (Object[]) parent[child]);
+		}
+		
+		return copy;
+	}
+	
+	private static Object[] path(int level, Object[] leaf) {
+		if (level == 0) {
+			return leaf;
+		}
+		
+		final Object[] node = new Object[WIDTH];
+		node[0] = path(level - BITS, leaf);
+		return node;
+	}
+	
+	private static Object[] withElement(int level, Object[] node, int index, Object value) {
+		final Object[] copy = node.clone();
+		
+		if (level == 0) {
+			copy[index & MASK] = value;
+		}
+		else {
+			final int child = (index >>> level) & MASK;
+			copy[child] = withElement(level - BITS, (Object[]) node[child], index, value);
+		}
+		
+		return copy;
+	}
+	
+	@Override
+	public Object get(int index) {
+		Objects.checkIndex(index, size);
+		return leafFor(index)[index & MASK];
+	}
+	
+	@Override
+	public Object set(int index, Object value) {
+		final Object previous = get(index);
+		
+		if (index >= tailOffset()) {
+			tail = tail.clone();
+			tail[index & MASK] = value;
+		}
+		else {
+			root = withElement(shift, root, index, value);
+		}
+		
+		return previous;
+	}
+	
+	@Override
+	public boolean add(Object value) {
+		final PersistentList appended = appended(value);
+		size = appended.size;
+		shift = appended.shift;
+		root = appended.root;
+		tail = appended.tail;
+		modCount++;
+		return true;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,104 @@
+package rime.source.runtime;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Set;
+
+
+
+/**
+ * The runtime representation of the dicts in the persistent collections mode, see {@link CollectionKind#PERSISTENT}:
+ * a {@link HashTrie}, which {@link #with} extends into a new dict in O(log n), sharing all but one path of the trie.
+ * {@link #put} makes this dict itself point to the extended trie.
+ */
+public final class PersistentMap extends AbstractMap<Object, Object> {
+	private HashTrie.Node root;
+	private int size;
+	
+	public PersistentMap() {
+		this(HashTrie.EMPTY, 0);
+	}
+	
+	private PersistentMap(HashTrie.Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+	
+	/**
+	 * Returns a new dict mapping the key to the value and every other key as this one does.
+	 */
+	public PersistentMap with(Object key, Object value) {
+		final Object flat = Concatenation.flatten(key);
+		final Object[] previous = new Object[1];
+		final HashTrie.Node node = HashTrie.put(root, 0, HashTrie.hash(flat), flat, value, previous);
+		return new PersistentMap(node, previous[0] == HashTrie.ABSENT ? size + 1 : size);
+	}
+	
+	@Override
+	public Object get(Object key) {
+		final Object flat = Concatenation.flatten(key);
+		final Object value = HashTrie.get(root, HashTrie.hash(flat), flat);
+		return value == HashTrie.ABSENT ? null : value;
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		final Object flat = Concatenation.flatten(key);
+		return HashTrie.get(root, HashTrie.hash(flat), flat) != HashTrie.ABSENT;
+	}
+	
+	@Override
+	public Object put(Object key, Object value) {
+		final Object flat = Concatenation.flatten(key);
+		final Object[] previous = new Object[1];
+		root = HashTrie.put(root, 0, HashTrie.hash(flat), flat, value, previous);
+		
+		if (previous[0] == HashTrie.ABSENT) {
+			size++;
+			return null;
+		}
+		
+		return previous[0];
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public Set<Entry<Object, Object>> entrySet() {
+		final HashTrie.Node entries = root;
+		final int count = size;
+		
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Entry<Object, Object>> iterator() {
+				final ArrayList<Object> keysAndValues = new ArrayList<>(2 * count);
+				HashTrie.collect(entries, keysAndValues);
+				
+				return new Iterator<>() {
+					private int next = 0;
+					
+					@Override
+					public boolean hasNext() {
+						return next < keysAndValues.size();
+					}
+					
+					@Override
+					public Entry<Object, Object> next() {
+						next += 2;
+						return new SimpleImmutableEntry<>(keysAndValues.get(next - 2), keysAndValues.get(next - 1));
+					}
+				};
+			}
+			
+			@Override
+			public int size() {
+				return count;
+			}
+		};
+	}
+}
@@ -0,0 +1,82 @@
+package rime.source.runtime;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+
+
+/**
+ * The runtime representation of the sets in the persistent collections mode, see {@link CollectionKind#PERSISTENT}:
+ * a {@link HashTrie} mapping each element to itself, which {@link #with} extends into a new set in O(log n), sharing
+ * all but one path of the trie. {@link #add} makes this set itself point to the extended trie.
+ */
+public final class PersistentSet extends AbstractSet<Object> {
+	private HashTrie.Node root;
+	private int size;
+	
+	public PersistentSet() {
+		this(HashTrie.EMPTY, 0);
+	}
+	
+	private PersistentSet(HashTrie.Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+	
+	/**
+	 * Returns a new set holding the element and those of this one.
+	 */
+	public PersistentSet with(Object element) {
+		final Object flat = Concatenation.flatten(element);
+		final Object[] previous = new Object[1];
+		final HashTrie.Node node = HashTrie.put(root, 0, HashTrie.hash(flat), flat, flat, previous);
+		return new PersistentSet(node, previous[0] == HashTrie.ABSENT ? size + 1 : size);
+	}
+	
+	@Override
+	public boolean contains(Object element) {
+		final Object flat = Concatenation.flatten(element);
+		return HashTrie.get(root, HashTrie.hash(flat), flat) != HashTrie.ABSENT;
+	}
+	
+	@Override
+	public boolean add(Object element) {
+		final Object flat = Concatenation.flatten(element);
+		final Object[] previous = new Object[1];
+		root = HashTrie.put(root, 0, HashTrie.hash(flat), flat, flat, previous);
+		
+		if (previous[0] != HashTrie.ABSENT) {
+			return false;
+		}
+		
+		size++;
+		return true;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public Iterator<Object> iterator() {
+		final ArrayList<Object> keysAndValues = new ArrayList<>(2 * size);
+		HashTrie.collect(root, keysAndValues);
+		
+		return new Iterator<>() {
+			private int next = 0;
+			
+			@Override
+			public boolean hasNext() {
+				return next < keysAndValues.size();
+			}
+			
+			@Override
+			public Object next() {
+				next += 2;
+				return keysAndValues.get(next - 2);
+			}
+		};
+	}
+}
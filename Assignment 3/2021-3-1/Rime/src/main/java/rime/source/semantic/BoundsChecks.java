@@ -0,0 +1,330 @@
+package rime.source.semantic;
+
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.*;
+import rime.source.ast.expressions.literals.IntLiteral;
+import rime.source.ast.statements.*;
+import rime.source.semantic.types.IntType;
+import rime.source.semantic.types.ListType;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+import static rime.source.ast.constants.BinaryOperator.*;
+import static rime.source.semantic.AttributeName.DECL;
+import static rime.source.semantic.AttributeName.TYPE;
+
+
+
+/**
+ * Marks the list reads {@code xs[i]} whose index is known to be within the list, which the engines execute without
+ * checking the index. Run by {@link FrozenAttributes#prepare}.
+ * <p>
+ * The read must be reached through the condition {@code i < length(xs)} of a while or if statement, or
+ * {@code i < n} with {@code n} assigned {@code length(xs)}, without assigning {@code i} nor {@code xs} in between.
+ * A list never shrinks, so the index stays below its length until either variable is assigned. The index must also
+ * be a local int variable which is never negative: every value assigned to it is a non-negative literal, a length,
+ * another such variable, or such a variable plus one where it is known to be below a length.
+ */
+public final class BoundsChecks {
+	private final Reactor R;
+	private final FrozenAttributes A;
+	
+	/** The int variables of the function assumed never negative, all of them at first */
+	private final HashSet<Object> nonNegative = new HashSet<>();
+	
+	/** The variables of {@link #nonNegative} found to be assigned a value which could be negative */
+	private final HashSet<Object> negative = new HashSet<>();
+	
+	/**
+	 * What is known of a variable where it is in the set: {@code 0 <= variable < length(list)} when strict,
+	 * {@code variable <= length(list)} otherwise.
+	 */
+	private static final class Bound {
+		final Object variable;
+		final Object list;
+		final boolean strict;
+		
+		Bound(Object variable, Object list, boolean strict) {
+			this.variable = variable;
+			this.list = list;
+			this.strict = strict;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Bound
+				&& ((Bound) other).variable == variable
+				&& ((Bound) other).list == list
+				&& ((Bound) other).strict == strict;
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(variable, list, strict);
+		}
+	}
+	
+	private BoundsChecks(Reactor reactor, FrozenAttributes attributes) {
+		this.R = reactor;
+		this.A = attributes;
+	}
+	
+	static void mark(Reactor reactor, RootNode root, FrozenAttributes attributes) {
+		for (FunctionDefinition definition : root.preMainDefinitions) {
+			mark(reactor, attributes, definition instanceof ProcDefinition
+				? ((ProcDefinition) definition).body
+				: ((FuncDefinition) definition).body);
+		}
+		
+		mark(reactor, attributes, root.entryPoint.definition.body);
+	}
+	
+	private static void mark(Reactor reactor, FrozenAttributes attributes, Block body) {
+		final BoundsChecks checks = new BoundsChecks(reactor, attributes);
+		
+		forEachNode(body, node -> {
+			if (node instanceof VariableDefinition && reactor.get(node.attr(TYPE)) instanceof IntType) {
+				checks.nonNegative.add(node);
+			}
+		});
+		
+		// A variable found to be possibly negative can invalidate the bounds which made another one non-negative,
+		// the reads are marked by the last pass, which finds none
+		do {
+			checks.negative.clear();
+			checks.block(body, new HashSet<>());
+			checks.nonNegative.removeAll(checks.negative);
+		}
+		while (!checks.negative.isEmpty());
+	}
+	
+	//region STATEMENTS
+	/**
+	 * Returns the bounds known after the block, given those known before it.
+	 */
+	private Set<Bound> block(Block node, Set<Bound> bounds) {
+		for (Statement statement : node.statements) {
+			bounds = statement(statement, bounds);
+		}
+		
+		return bounds;
+	}
+	
+	private Set<Bound> statement(Statement node, Set<Bound> bounds) {
+		if (node instanceof Block) {
+			return block((Block) node, bounds);
+		}
+		else if (node instanceof IfStatement) {
+			final IfStatement statement = (IfStatement) node;
+			block(statement.trueBody, condition(statement.condition, bounds));
+			
+			if (statement.falseBody != null) {
+				block(statement.falseBody, bounds);
+			}
+			
+			return withoutAssigned(bounds, node);
+		}
+		else if (node instanceof WhileStatement) {
+			// What the loop does not assign holds on every test of its condition
+			final WhileStatement loop = (WhileStatement) node;
+			final Set<Bound> invariant = withoutAssigned(bounds, node);
+			block(loop.body, condition(loop.condition, invariant));
+			return invariant;
+		}
+		
+		reads(node, bounds);
+		
+		if (node instanceof VariableDefinition) {
+			return assignment(node, ((VariableDefinition) node).assignment.right, bounds);
+		}
+		else if (node instanceof Assignment && ((Assignment) node).left instanceof Identifier) {
+			return assignment(R.get(((Assignment) node).left.attr(DECL)), ((Assignment) node).right, bounds);
+		}
+		
+		return bounds;
+	}
+	
+	private Set<Bound> assignment(Object variable, Expression value, Set<Bound> bounds) {
+		if (nonNegative.contains(variable) && !isNonNegative(value, bounds)) {
+			negative.add(variable);
+		}
+		
+		final Set<Bound> after = without(bounds, Set.of(variable));
+		final Object list = lengthOf(value);
+		
+		if (list != null) {
+			after.add(new Bound(variable, list, false));
+		}
+		
+		return after;
+	}
+	
+	/**
+	 * Marks the reads of a condition, and returns the bounds known when it holds.
+	 */
+	private Set<Bound> condition(Expression node, Set<Bound> bounds) {
+		reads(node, bounds);
+		return holding(node, bounds);
+	}
+	
+	/**
+	 * Returns the bounds known when the condition holds. Both sides of a conjunction are always evaluated, so those
+	 * of its left side only hold after it.
+	 */
+	private Set<Bound> holding(Expression node, Set<Bound> bounds) {
+		if (node instanceof BinaryExpression && ((BinaryExpression) node).operator == LOGICAL_AND) {
+			return holding(((BinaryExpression) node).right, holding(((BinaryExpression) node).left, bounds));
+		}
+		
+		if (!(node instanceof BinaryExpression) || ((BinaryExpression) node).operator != LESS_THAN
+				|| !(((BinaryExpression) node).left instanceof Identifier)) {
+			return bounds;
+		}
+		
+		final BinaryExpression comparison = (BinaryExpression) node;
+		final Object index = R.get(comparison.left.attr(DECL));
+		Object list = lengthOf(comparison.right);
+		
+		if (list == null && comparison.right instanceof Identifier) {
+			list = boundingList(R.get(comparison.right.attr(DECL)), bounds);
+		}
+		
+		if (list == null || !nonNegative.contains(index)) {
+			return bounds;
+		}
+		
+		final Set<Bound> holding = new HashSet<>(bounds);
+		holding.add(new Bound(index, list, true));
+		return holding;
+	}
+	//endregion
+	
+	//region EXPRESSIONS
+	/**
+	 * Marks the list reads of a statement without nested statements, or of an expression.
+	 */
+	private void reads(RimeNode node, Set<Bound> bounds) {
+		forEachNode(node, child -> {
+			if (child instanceof IndexedCollectionAccess) {
+				final IndexedCollectionAccess access = (IndexedCollectionAccess) child;
+				
+				A.setUnchecked(access, access.index instanceof Identifier
+					&& R.get(access.identifier.attr(TYPE)) instanceof ListType
+					&& bounds.contains(new Bound(R.get(access.index.attr(DECL)), R.get(access.identifier.attr(DECL)), true)));
+			}
+		});
+		
+		// The target of an element assignment is not a read
+		if (node instanceof Assignment && ((Assignment) node).left instanceof IndexedCollectionAccess) {
+			A.setUnchecked((IndexedCollectionAccess) ((Assignment) node).left, false);
+		}
+	}
+	
+	private boolean isNonNegative(Expression node, Set<Bound> bounds) {
+		if (node instanceof IntLiteral) {
+			return ((IntLiteral) node).value >= 0;
+		}
+		else if (node instanceof Identifier) {
+			return nonNegative.contains(R.get(node.attr(DECL)));
+		}
+		else if (lengthOf(node) != null) {
+			return true;
+		}
+		else if (!(node instanceof BinaryExpression) || ((BinaryExpression) node).operator != ADD) {
+			return false;
+		}
+		
+		// Below a length, which is at most Integer.MAX_VALUE, adding one cannot overflow
+		final BinaryExpression sum = (BinaryExpression) node;
+		final Expression other = isOne(sum.left) ? sum.right : isOne(sum.right) ? sum.left : null;
+		
+		if (!(other instanceof Identifier)) {
+			return false;
+		}
+		
+		final Object variable = R.get(other.attr(DECL));
+		return bounds.stream().anyMatch(bound -> bound.strict && bound.variable == variable);
+	}
+	
+	private static boolean isOne(Expression node) {
+		return node instanceof IntLiteral && ((IntLiteral) node).value == 1;
+	}
+	
+	/**
+	 * Returns the declaration of {@code xs} if the node is {@code length(xs)}, null otherwise.
+	 */
+	private Object lengthOf(Expression node) {
+		if (!(node instanceof FunctionCall)) {
+			return null;
+		}
+		
+		final FunctionCall call = (FunctionCall) node;
+		final Object callee = R.get(call.name.attr(DECL));
+		
+		return callee instanceof PredefinedFunction && ((PredefinedFunction) callee).name.equals("length")
+				&& call.arguments.get(0) instanceof Identifier
+			? R.get(call.arguments.get(0).attr(DECL))
+			: null;
+	}
+	
+	/**
+	 * Returns a list whose length is known to be at least the value of the variable, if any.
+	 */
+	private static Object boundingList(Object variable, Set<Bound> bounds) {
+		for (Bound bound : bounds) {
+			if (bound.variable == variable) {
+				return bound.list;
+			}
+		}
+		
+		return null;
+	}
+	//endregion
+	
+	//region UTILITIES
+	/**
+	 * Returns the bounds which still hold after the node, which could assign any variable it assigns.
+	 */
+	private Set<Bound> withoutAssigned(Set<Bound> bounds, RimeNode node) {
+		final HashSet<Object> assigned = new HashSet<>();
+		
+		forEachNode(node, child -> {
+			if (child instanceof VariableDefinition) {
+				assigned.add(child);
+			}
+			else if (child instanceof Assignment && ((Assignment) child).left instanceof Identifier) {
+				assigned.add(R.get(((Assignment) child).left.attr(DECL)));
+			}
+		});
+		
+		return without(bounds, assigned);
+	}
+	
+	private static Set<Bound> without(Set<Bound> bounds, Set<Object> assigned) {
+		final HashSet<Bound> remaining = new HashSet<>();
+		
+		for (Bound bound : bounds) {
+			if (!assigned.contains(bound.variable) && !assigned.contains(bound.list)) {
+				remaining.add(bound);
+			}
+		}
+		
+		return remaining;
+	}
+	
+	private static void forEachNode(RimeNode root, Consumer<RimeNode> action) {
+		final ReflectiveFieldWalker<RimeNode> walker = new ReflectiveFieldWalker<>(RimeNode.class, PRE_VISIT, POST_VISIT);
+		walker.registerFallback(PRE_VISIT, action::accept);
+		walker.registerFallback(POST_VISIT, node -> {});
+		walker.walk(root);
+	}
+	//endregion
+}
@@ -0,0 +1,255 @@
+package rime.source.semantic;
+
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.Expression;
+import rime.source.ast.expressions.FunctionCall;
+import rime.source.ast.expressions.Identifier;
+import rime.source.ast.expressions.IndexedCollectionAccess;
+import rime.source.runtime.CollectionKind;
+import rime.source.runtime.CollectionMode;
+import rime.source.semantic.scope.RootScope;
+import rime.source.semantic.types.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+
+import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+import static rime.source.semantic.AttributeName.*;
+
+
+
+/**
+ * Snapshot of the TYPE, DECL and SCOPE attributes resolved by {@link SemanticAnalysis}, taken once
+ * after {@code reactor.run()} so that the execution engines never query the reactor (nor allocate
+ * attribute keys) while running, along with the results of the analyses run by {@link #prepare}.
+ * <p>
+ * The dense tables below are indexed by the {@link RimeNode#id} of the nodes, less the lowest id of the tree. The
+ * ids come from one counter for the whole process, and a tree holding nodes created apart, such as a new root over
+ * the definitions of a tree parsed long before, has them spread out: when they span more than twice its number of
+ * nodes, the nodes are numbered in the order of the tree instead, which an {@link IdentityHashMap} maps them to.
+ * Nothing is stored on the nodes themselves: the reflective walkers would follow declarations back into the
+ * tree, and a tree shared between engines, or prepared again after optimization, would keep stale results.
+ */
+public final class FrozenAttributes {
+	private final int base;
+	/** The index of each node when the ids of the tree are too sparse for {@link #base}, null otherwise */
+	private final IdentityHashMap<RimeNode, Integer> indices;
+	private final Type[] types;
+	private final Declaration[] declarations;
+	private final int[] slots;
+	private final int[] frameSizes;
+	private final BitSet tailRecursive = new BitSet();
+	private final BitSet tailCalls = new BitSet();
+	private final BitSet inPlaceAppends = new BitSet();
+	private final BitSet uncheckedReads = new BitSet();
+	private final BitSet nullable = new BitSet();
+	private boolean intListsNullable;
+	public final RootScope rootScope;
+	/** The representation of the collections the tree is prepared for, see {@link CollectionKind#of(FrozenAttributes, Expression)} */
+	public final CollectionMode collectionMode;
+	
+	private FrozenAttributes(int base, IdentityHashMap<RimeNode, Integer> indices, Type[] types, Declaration[] declarations, RootScope rootScope, CollectionMode collectionMode) {
+		this.base = base;
+		this.indices = indices;
+		this.types = types;
+		this.declarations = declarations;
+		this.slots = new int[types.length];
+		this.frameSizes = new int[types.length];
+		this.rootScope = rootScope;
+		this.collectionMode = collectionMode;
+		Arrays.fill(slots, -1);
+	}
+	
+	public static FrozenAttributes prepare(Reactor reactor, RootNode root) {
+		return prepare(reactor, root, CollectionMode.COPYING);
+	}
+	
+	/**
+	 * Freezes the attributes, then runs the analyses every engine relies on: the one preparation of a tree for
+	 * execution, which the engines all go through.
+	 */
+	public static FrozenAttributes prepare(Reactor reactor, RootNode root, CollectionMode collectionMode) {
+		final FrozenAttributes attributes = freeze(reactor, root, collectionMode);
+		SlotResolution.createWalker(reactor, attributes).walk(root);
+		NullableValues.mark(root, attributes);
+		TailCalls.mark(reactor, root, attributes);
+		InPlaceAppends.mark(reactor, root, attributes);
+		BoundsChecks.mark(reactor, root, attributes);
+		return attributes;
+	}
+	
+	public static FrozenAttributes freeze(Reactor reactor, RootNode root) {
+		return freeze(reactor, root, CollectionMode.COPYING);
+	}
+	
+	private static FrozenAttributes freeze(Reactor reactor, RootNode root, CollectionMode collectionMode) {
+		final ReflectiveFieldWalker<RimeNode> walker = new ReflectiveFieldWalker<>(RimeNode.class, PRE_VISIT, POST_VISIT);
+		final ArrayList<RimeNode> nodes = new ArrayList<>();
+		
+		walker.registerFallback(PRE_VISIT, nodes::add);
+		walker.registerFallback(POST_VISIT, node -> {});
+		
+		walker.walk(root);
+		
+		// The ids need not be contiguous, the nodes of the tree may have been created apart
+		final int base = nodes.stream().mapToInt(node -> node.id).min().getAsInt();
+		final int range = nodes.stream().mapToInt(node -> node.id).max().getAsInt() - base + 1;
+		IdentityHashMap<RimeNode, Integer> indices = null;
+		
+		if (range > 2 * nodes.size()) {
+			indices = new IdentityHashMap<>();
+			
+			for (RimeNode node : nodes) {
+				indices.putIfAbsent(node, indices.size());
+			}
+		}
+		
+		final int size = indices == null ? range : indices.size();
+		final Type[] types = new Type[size];
+		final Declaration[] declarations = new Declaration[size];
+		final FrozenAttributes attributes = new FrozenAttributes(base, indices, types, declarations, reactor.get(root.attr(SCOPE)), collectionMode);
+		
+		for (RimeNode node : nodes) {
+			if (node instanceof Expression || node instanceof Declaration) {
+				types[attributes.index(node)] = reactor.get(node.attr(TYPE));
+			}
+			
+			if (node instanceof Identifier) {
+				declarations[attributes.index(node)] = reactor.get(node.attr(DECL));
+			}
+		}
+		
+		return attributes;
+	}
+	
+	public Type type(Expression node) {
+		return types[index(node)];
+	}
+	
+	/**
+	 * Returns the type of a variable, parameter or function declared in the tree.
+	 */
+	public Type type(Declaration node) {
+		return types[index(node)];
+	}
+	
+	public Declaration declaration(Identifier node) {
+		return declarations[index(node)];
+	}
+	
+	/**
+	 * Returns the slot of a local variable or parameter in the frame of its function, see {@link SlotResolution},
+	 * or -1 for an identifier referring to a function.
+	 */
+	public int slot(Identifier node) {
+		return slots[index(node)];
+	}
+	
+	public int slot(Parameter node) {
+		return slots[index(node)];
+	}
+	
+	public int slot(VariableDefinition node) {
+		return slots[index(node)];
+	}
+	
+	public int frameSize(FunctionDefinition node) {
+		return frameSizes[index(node)];
+	}
+	
+	/**
+	 * Whether a function makes tail calls to itself, see {@link TailCalls}.
+	 */
+	public boolean isTailRecursive(FunctionDefinition node) {
+		return tailRecursive.get(index(node));
+	}
+	
+	/**
+	 * Whether a call is one a function makes to itself in tail position, see {@link TailCalls}.
+	 */
+	public boolean isTailCall(FunctionCall node) {
+		return tailCalls.get(index(node));
+	}
+	
+	/**
+	 * Whether an append or add can update its collection in place, see {@link InPlaceAppends}.
+	 */
+	public boolean isInPlace(FunctionCall node) {
+		return inPlaceAppends.get(index(node));
+	}
+	
+	/**
+	 * Whether a list read has its index known to be within the list, see {@link BoundsChecks}.
+	 */
+	public boolean isUnchecked(IndexedCollectionAccess node) {
+		return uncheckedReads.get(index(node));
+	}
+	
+	/**
+	 * Whether an int or bool variable, parameter or func return may hold null, see {@link NullableValues}.
+	 */
+	public boolean isNullable(Declaration node) {
+		return nullable.get(index(node));
+	}
+	
+	/**
+	 * Whether a list of ints may hold null or another value which is not an int, see {@link NullableValues}.
+	 */
+	public boolean isIntListsNullable() {
+		return intListsNullable;
+	}
+	
+	/**
+	 * Returns the index of a node in the tables, below {@link #size}.
+	 */
+	public int index(RimeNode node) {
+		return indices == null ? node.id - base : indices.get(node);
+	}
+	
+	/**
+	 * Returns the size of the tables, which bounds the {@link #index} of the nodes.
+	 */
+	public int size() {
+		return types.length;
+	}
+	
+	//region ANALYSES
+	void setSlot(RimeNode node, int slot) {
+		slots[index(node)] = slot;
+	}
+	
+	void setFrameSize(FunctionDefinition node, int frameSize) {
+		frameSizes[index(node)] = frameSize;
+	}
+	
+	void setTailRecursive(FunctionDefinition node) {
+		tailRecursive.set(index(node));
+	}
+	
+	void setTailCall(FunctionCall node) {
+		tailCalls.set(index(node));
+	}
+	
+	void setInPlace(FunctionCall node) {
+		inPlaceAppends.set(index(node));
+	}
+	
+	void setUnchecked(IndexedCollectionAccess node, boolean unchecked) {
+		uncheckedReads.set(index(node), unchecked);
+	}
+	
+	void setNullable(Declaration node) {
+		nullable.set(index(node));
+	}
+	
+	void setIntListsNullable() {
+		intListsNullable = true;
+	}
+	//endregion
+}
@@ -0,0 +1,129 @@
+package rime.source.semantic;
+
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import rime.source.ast.RimeNode;
+import rime.source.ast.constants.VariableKind;
+import rime.source.ast.declarations.PredefinedFunction;
+import rime.source.ast.declarations.RootNode;
+import rime.source.ast.declarations.VariableDefinition;
+import rime.source.ast.expressions.*;
+import rime.source.ast.statements.Assignment;
+import rime.source.semantic.types.ListType;
+import rime.source.semantic.types.SetType;
+import rime.source.semantic.types.Type;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+import static rime.source.semantic.AttributeName.DECL;
+import static rime.source.semantic.AttributeName.TYPE;
+
+
+
+/**
+ * Marks the appends of the form {@code x = append(x, v)} and {@code x = add(x, v)} which the engines execute by
+ * adding to the list or set of {@code x} itself rather than to a copy of it, which makes building a collection in a
+ * loop linear rather than quadratic. Run by {@link FrozenAttributes#prepare}.
+ * <p>
+ * The collection of {@code x} must be referenced by nothing else: {@code x} is a var only ever assigned a new
+ * collection, from a literal, an append or an add, and only ever read to be added to, indexed, measured or searched.
+ * Any other read, such as assigning it to another variable or passing it to a function, could share the
+ * collection, and the appends to {@code x} then copy it as before: the copy is only made on the writes a reference
+ * sharing the collection could observe.
+ */
+public final class InPlaceAppends {
+	private static final Set<String> APPENDS = Set.of("append", "add");
+	
+	/** The predefined functions which do not keep a reference to their first argument */
+	private static final Set<String> BORROWING = Set.of("append", "add", "length", "contains");
+	
+	private InPlaceAppends() { }
+	
+	static void mark(Reactor reactor, RootNode root, FrozenAttributes attributes) {
+		final ReflectiveFieldWalker<RimeNode> walker = new ReflectiveFieldWalker<>(RimeNode.class, PRE_VISIT, POST_VISIT);
+		final HashSet<RimeNode> borrowed = new HashSet<>();
+		final HashSet<Object> shared = new HashSet<>();
+		final ArrayList<FunctionCall> selfAppends = new ArrayList<>();
+		
+		// A node is visited after its parent, which tells whether its identifiers can share the list
+		walker.registerFallback(PRE_VISIT, node -> {
+			if (node instanceof VariableDefinition) {
+				final VariableDefinition definition = (VariableDefinition) node;
+				borrowed.add(definition.assignment.left);
+				
+				if (definition.variableKind != VariableKind.VAR
+						|| !isCollection(reactor.get(definition.attr(TYPE)))
+						|| !isNewCollection(reactor, definition.assignment.right)) {
+					shared.add(definition);
+				}
+			}
+			else if (node instanceof Assignment && ((Assignment) node).left instanceof Identifier) {
+				final Assignment assignment = (Assignment) node;
+				final Object decl = reactor.get(assignment.left.attr(DECL));
+				borrowed.add(assignment.left);
+				
+				if (!isNewCollection(reactor, assignment.right)) {
+					shared.add(decl);
+				}
+				else if (isAppend(reactor, assignment.right)) {
+					final FunctionCall call = (FunctionCall) assignment.right;
+					final Expression list = call.arguments.get(0);
+					
+					if (list instanceof Identifier && reactor.get(list.attr(DECL)) == decl) {
+						selfAppends.add(call);
+					}
+				}
+			}
+			else if (node instanceof FunctionCall) {
+				final FunctionCall call = (FunctionCall) node;
+				final Object callee = reactor.get(call.name.attr(DECL));
+				borrowed.add(call.name);
+				
+				if (callee instanceof PredefinedFunction && BORROWING.contains(((PredefinedFunction) callee).name)) {
+					borrowed.add(call.arguments.get(0));
+				}
+			}
+			else if (node instanceof IndexedCollectionAccess) {
+				borrowed.add(((IndexedCollectionAccess) node).identifier);
+			}
+			else if (node instanceof Identifier && !borrowed.contains(node)) {
+				shared.add(reactor.get(node.attr(DECL)));
+			}
+		});
+		walker.registerFallback(POST_VISIT, node -> {});
+		
+		walker.walk(root);
+		
+		for (FunctionCall call : selfAppends) {
+			if (!shared.contains(reactor.get(call.arguments.get(0).attr(DECL)))) {
+				attributes.setInPlace(call);
+			}
+		}
+	}
+	
+	private static boolean isCollection(Type type) {
+		return type instanceof ListType || type instanceof SetType;
+	}
+	
+	private static boolean isNewCollection(Reactor reactor, Expression node) {
+		return node instanceof ListElements || node instanceof EmptyList
+			|| node instanceof SetElements || node instanceof EmptySet
+			|| isAppend(reactor, node);
+	}
+	
+	/**
+	 * Whether a node is a call to append or add.
+	 */
+	private static boolean isAppend(Reactor reactor, Expression node) {
+		if (!(node instanceof FunctionCall)) {
+			return false;
+		}
+		
+		final Object callee = reactor.get(((FunctionCall) node).name.attr(DECL));
+		return callee instanceof PredefinedFunction && APPENDS.contains(((PredefinedFunction) callee).name);
+	}
+}
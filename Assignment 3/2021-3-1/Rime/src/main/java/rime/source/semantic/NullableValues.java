@@ -0,0 +1,204 @@
+package rime.source.semantic;
+
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.*;
+import rime.source.ast.expressions.literals.NullLiteral;
+import rime.source.ast.statements.Assignment;
+import rime.source.ast.statements.ReturnStatement;
+import rime.source.semantic.types.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+
+
+
+/**
+ * Marks the int and bool variables, parameters and func returns which may hold null, which the engines keep boxed
+ * rather than in a primitive. Run by {@link FrozenAttributes#prepare}.
+ * <p>
+ * An int or bool is null when read from a dict which does not hold the key, or from a list holding null, and may
+ * then be passed along by any variable, parameter or return it flows to. The parameters of a function used
+ * as a value, and the result of a call to such a value, may be null too, the calls through it are not known.
+ * <p>
+ * A list of ints holds null, or another value which is not an int, only if the program puts one in a list of ints:
+ * as an element of a literal, by assigning an element, or by appending it. The reads of the lists of ints are
+ * otherwise never null, whichever list they read.
+ */
+public final class NullableValues {
+	private final FrozenAttributes A;
+	
+	/** The values flowing to each declaration: the initializer and assigned values, the arguments or the returns */
+	private final ArrayList<Declaration> targets = new ArrayList<>();
+	private final ArrayList<Expression> sources = new ArrayList<>();
+	
+	private final HashSet<Declaration> nullable = new HashSet<>();
+	
+	/** The values put in a list of ints, and whether one of them may not be an int */
+	private final ArrayList<Expression> intListElements = new ArrayList<>();
+	private boolean intListsNullable;
+	
+	/** The identifiers naming a function where it is defined or called, which are not uses of it as a value */
+	private final HashSet<RimeNode> names = new HashSet<>();
+	private final HashSet<RimeNode> initializers = new HashSet<>();
+	private FunctionDefinition function;
+	
+	private NullableValues(FrozenAttributes attributes) {
+		this.A = attributes;
+	}
+	
+	static void mark(RootNode root, FrozenAttributes attributes) {
+		final NullableValues values = new NullableValues(attributes);
+		values.collect(root);
+		
+		boolean changed = true;
+		
+		while (changed) {
+			changed = false;
+			
+			for (int i = 0; i < values.targets.size(); i++) {
+				final Declaration target = values.targets.get(i);
+				
+				if (!values.nullable.contains(target) && values.isNullable(values.sources.get(i))) {
+					values.nullable.add(target);
+					changed = true;
+				}
+			}
+			
+			if (!values.intListsNullable && values.intListElements.stream().anyMatch(values::isNullable)) {
+				values.intListsNullable = true;
+				changed = true;
+			}
+		}
+		
+		for (Declaration declaration : values.nullable) {
+			attributes.setNullable(declaration);
+		}
+		
+		if (values.intListsNullable) {
+			attributes.setIntListsNullable();
+		}
+	}
+	
+	private void collect(RootNode root) {
+		final ReflectiveFieldWalker<RimeNode> walker = new ReflectiveFieldWalker<>(RimeNode.class, PRE_VISIT, POST_VISIT);
+		
+		walker.registerFallback(PRE_VISIT, node -> {
+			if (node instanceof FuncDefinition) {
+				function = (FunctionDefinition) node;
+				names.add(((FuncDefinition) node).name);
+			}
+			else if (node instanceof ProcDefinition) {
+				function = (FunctionDefinition) node;
+				names.add(((ProcDefinition) node).name);
+			}
+			else if (node instanceof VariableDefinition) {
+				initializers.add(((VariableDefinition) node).assignment);
+				flow((VariableDefinition) node, ((VariableDefinition) node).assignment.right);
+			}
+			else if (node instanceof Assignment && ((Assignment) node).left instanceof Identifier && !initializers.contains(node)) {
+				flow(A.declaration((Identifier) ((Assignment) node).left), ((Assignment) node).right);
+			}
+			else if (node instanceof Assignment && ((Assignment) node).left instanceof IndexedCollectionAccess) {
+				final IndexedCollectionAccess access = (IndexedCollectionAccess) ((Assignment) node).left;
+				
+				if (isIntList(A.type(access.identifier))) {
+					intListElements.add(((Assignment) node).right);
+				}
+			}
+			else if (node instanceof ListElements && isIntList(A.type((ListElements) node))) {
+				intListElements.addAll(((ListElements) node).elements);
+			}
+			else if (node instanceof ReturnStatement && ((ReturnStatement) node).expression != null) {
+				flow(function, ((ReturnStatement) node).expression);
+			}
+			else if (node instanceof FunctionCall) {
+				final FunctionCall call = (FunctionCall) node;
+				final Declaration callee = A.declaration(call.name);
+				names.add(call.name);
+				
+				if (callee instanceof FunctionDefinition) {
+					final Parameters parameters = parameters((FunctionDefinition) callee);
+					
+					for (int i = 0; i < call.arguments.size(); i++) {
+						flow(parameters.params.get(i), call.arguments.get(i));
+					}
+				}
+				else if (isAppend(callee) && isIntList(A.type(call.arguments.get(0)))) {
+					// append takes any element, which the list of ints then holds as is
+					intListsNullable |= !(A.type(call.arguments.get(1)) instanceof IntType);
+					intListElements.add(call.arguments.get(1));
+				}
+			}
+			else if (node instanceof Identifier && !names.contains(node)) {
+				final Declaration decl = A.declaration((Identifier) node);
+				
+				// Called through a value, the function may get null for any of its parameters, and append anything
+				if (isAppend(decl)) {
+					intListsNullable = true;
+				}
+				else if (decl instanceof FunctionDefinition) {
+					for (Parameter param : parameters((FunctionDefinition) decl).params) {
+						if (isUnboxable(A.type(param))) {
+							nullable.add(param);
+						}
+					}
+				}
+			}
+		});
+		walker.registerFallback(POST_VISIT, node -> {});
+		
+		walker.walk(root);
+	}
+	
+	private void flow(Declaration target, Expression source) {
+		final Type type = target instanceof FuncDefinition
+			? ((FunctionType) A.type(target)).returnType
+			: A.type(target);
+		
+		if (isUnboxable(type)) {
+			targets.add(target);
+			sources.add(source);
+		}
+	}
+	
+	private static boolean isUnboxable(Type type) {
+		return type instanceof IntType || type instanceof BoolType;
+	}
+	
+	private boolean isNullable(Expression node) {
+		if (node instanceof NullLiteral) {
+			return true;
+		}
+		else if (node instanceof Identifier) {
+			return nullable.contains(A.declaration((Identifier) node));
+		}
+		else if (node instanceof IndexedCollectionAccess) {
+			return intListsNullable || !isIntList(A.type(((IndexedCollectionAccess) node).identifier));
+		}
+		else if (node instanceof FunctionCall) {
+			final Declaration callee = A.declaration(((FunctionCall) node).name);
+			return callee instanceof FunctionDefinition ? nullable.contains(callee) : !(callee instanceof PredefinedFunction);
+		}
+		
+		return false;
+	}
+	
+	private static boolean isIntList(Type type) {
+		return type instanceof ListType && ((ListType) type).elementType instanceof IntType;
+	}
+	
+	private static boolean isAppend(Declaration decl) {
+		return decl instanceof PredefinedFunction && ((PredefinedFunction) decl).name.equals("append");
+	}
+	
+	private static Parameters parameters(FunctionDefinition definition) {
+		return definition instanceof ProcDefinition
+			? ((ProcDefinition) definition).parameters
+			: ((FuncDefinition) definition).parameters;
+	}
+}
@@ -0,0 +1,103 @@
+package rime.source.semantic;
+
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import norswap.utils.visitors.Walker;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.Identifier;
+import rime.source.ast.statements.Block;
+
+import java.util.ArrayDeque;
+
+import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+import static rime.source.semantic.AttributeName.DECL;
+
+
+
+/**
+ * Assigns every local variable and parameter a slot in the activation frame of its enclosing function,
+ * and gives that slot to the identifiers referring to it. Run by {@link FrozenAttributes#prepare}.
+ * <p>
+ * Functions cannot be nested in Rime, so a local always lives in the frame of the function being executed:
+ * the (frame, slot) pair reduces to the slot alone. Sibling blocks reuse the same slots.
+ */
+public final class SlotResolution {
+	private final Reactor R;
+	private final FrozenAttributes A;
+	private final ArrayDeque<Integer> blockStarts = new ArrayDeque<>();
+	private int nextSlot;
+	private int frameSize;
+	
+	private SlotResolution(Reactor reactor, FrozenAttributes attributes) {
+		this.R = reactor;
+		this.A = attributes;
+	}
+	
+	static Walker<RimeNode> createWalker(Reactor reactor, FrozenAttributes attributes) {
+		final ReflectiveFieldWalker<RimeNode> walker = new ReflectiveFieldWalker<>(RimeNode.class, PRE_VISIT, POST_VISIT);
+		final SlotResolution resolution = new SlotResolution(reactor, attributes);
+		
+		walker.register(ProcDefinition.class, PRE_VISIT, resolution::enterFunction);
+		walker.register(FuncDefinition.class, PRE_VISIT, resolution::enterFunction);
+		walker.register(ProcDefinition.class, POST_VISIT, resolution::exitFunction);
+		walker.register(FuncDefinition.class, POST_VISIT, resolution::exitFunction);
+		
+		walker.register(Block.class, PRE_VISIT, resolution::enterBlock);
+		walker.register(Block.class, POST_VISIT, resolution::exitBlock);
+		
+		walker.register(Parameter.class, PRE_VISIT, resolution::parameter);
+		walker.register(VariableDefinition.class, PRE_VISIT, resolution::variableDefinition);
+		walker.register(Identifier.class, PRE_VISIT, resolution::identifier);
+		
+		// FALLBACK
+		walker.registerFallback(PRE_VISIT, node -> {});
+		walker.registerFallback(POST_VISIT, node -> {});
+		
+		return walker;
+	}
+	
+	private void enterFunction(FunctionDefinition node) {
+		frameSize = 0;
+		nextSlot = 0;
+	}
+	
+	private void exitFunction(FunctionDefinition node) {
+		A.setFrameSize(node, frameSize);
+	}
+	
+	private void enterBlock(Block node) {
+		blockStarts.push(nextSlot);
+	}
+	
+	private void exitBlock(Block node) {
+		// Locals of a block are dead once it is left, the next sibling block can reuse their slots
+		nextSlot = blockStarts.pop();
+	}
+	
+	private void parameter(Parameter node) {
+		A.setSlot(node, allocate());
+	}
+	
+	private void variableDefinition(VariableDefinition node) {
+		A.setSlot(node, allocate());
+	}
+	
+	private void identifier(Identifier node) {
+		final Declaration decl = R.get(node.attr(DECL));
+		
+		if (decl instanceof VariableDefinition) {
+			A.setSlot(node, A.slot((VariableDefinition) decl));
+		}
+		else if (decl instanceof Parameter) {
+			A.setSlot(node, A.slot((Parameter) decl));
+		}
+	}
+	
+	private int allocate() {
+		final int slot = nextSlot++;
+		frameSize = Math.max(frameSize, nextSlot);
+		return slot;
+	}
+}
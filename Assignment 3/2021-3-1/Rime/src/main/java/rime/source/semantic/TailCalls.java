@@ -0,0 +1,96 @@
+package rime.source.semantic;
+
+import norswap.uranium.Reactor;
+import rime.source.ast.declarations.*;
+import rime.source.ast.expressions.FunctionCall;
+import rime.source.ast.statements.*;
+
+import java.util.List;
+
+import static rime.source.semantic.AttributeName.DECL;
+
+
+
+/**
+ * Marks the calls a function makes to itself in tail position, which the engines execute as a jump back to the start
+ * of the function rather than as a nested call, so that tail recursion runs in constant stack depth.
+ * Run by {@link FrozenAttributes#prepare}.
+ * <p>
+ * A call is in tail position when it is the value of a return statement, or a statement of a proc after which
+ * the proc ends: the last statement of its body, of a branch of an if statement in tail position, or a statement
+ * followed by an exit statement.
+ */
+public final class TailCalls {
+	private final Reactor R;
+	private final FrozenAttributes A;
+	private final FunctionDefinition function;
+	
+	private TailCalls(Reactor reactor, FrozenAttributes attributes, FunctionDefinition function) {
+		this.R = reactor;
+		this.A = attributes;
+		this.function = function;
+	}
+	
+	static void mark(Reactor reactor, RootNode root, FrozenAttributes attributes) {
+		for (FunctionDefinition definition : root.preMainDefinitions) {
+			mark(reactor, attributes, definition);
+		}
+		
+		mark(reactor, attributes, root.entryPoint.definition);
+	}
+	
+	private static void mark(Reactor reactor, FrozenAttributes attributes, FunctionDefinition definition) {
+		final Block body = definition instanceof ProcDefinition
+			? ((ProcDefinition) definition).body
+			: ((FuncDefinition) definition).body;
+		
+		new TailCalls(reactor, attributes, definition).block(body, definition instanceof ProcDefinition);
+	}
+	
+	/**
+	 * @param tail whether the function ends after the block
+	 */
+	private void block(Block node, boolean tail) {
+		final List<Statement> statements = node.statements;
+		
+		for (int i = 0; i < statements.size(); i++) {
+			final Statement next = i + 1 < statements.size() ? statements.get(i + 1) : null;
+			statement(statements.get(i), tail && next == null || next instanceof ExitStatement);
+		}
+	}
+	
+	private void statement(Statement node, boolean tail) {
+		if (node instanceof Block) {
+			block((Block) node, tail);
+		}
+		else if (node instanceof IfStatement) {
+			block(((IfStatement) node).trueBody, tail);
+			
+			if (((IfStatement) node).falseBody != null) {
+				block(((IfStatement) node).falseBody, tail);
+			}
+		}
+		else if (node instanceof WhileStatement) {
+			block(((WhileStatement) node).body, false);
+		}
+		else if (node instanceof ExpressionStatement) {
+			call(((ExpressionStatement) node).expression, tail);
+		}
+		else if (node instanceof ReturnStatement) {
+			call(((ReturnStatement) node).expression, true);
+		}
+	}
+	
+	private void call(Object expression, boolean tail) {
+		if (!(expression instanceof FunctionCall)) {
+			return;
+		}
+		
+		final FunctionCall call = (FunctionCall) expression;
+		
+		if (tail && R.get(call.name.attr(DECL)) == function) {
+			A.setTailCall(call);
+			A.setTailRecursive(function);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.EngineKind;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Bytes allocated and allocation rate of every {@link EngineKind} on Prime.rime, which spends all its time in
+ * int arithmetic and comparisons. Allocations are those of the benchmark thread, as counted by HotSpot.
+ */
+public final class AllocationBenchmark {
+	public static void main(String[] args) throws IOException {
+		final Program program = analyzeExample("Prime.rime");
+		final ArrayList<String> programArgs = args(args.length > 0 ? args[0] : "5000");
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		
+		System.out.println("engine       |    allocated |         time |        rate");
+		
+		for (EngineKind kind : EngineKind.values()) {
+			final Runnable run = () -> kind.create(program.reactor).interpret(program.tree, programArgs);
+			silenced(run);
+			
+			final long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+			final long start = System.nanoTime();
+			silenced(run);
+			final long nanos = System.nanoTime() - start;
+			final long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+			
+			System.out.printf("%-12s | %9.1f MB | %12s | %6.0f MB/s%n",
+				kind,
+				bytes / 1e6,
+				millis(nanos),
+				bytes / 1e6 / (nanos / 1e9));
+		}
+	}
+}
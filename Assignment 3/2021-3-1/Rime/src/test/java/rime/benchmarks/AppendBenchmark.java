@@ -0,0 +1,52 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.EngineKind;
+import rime.source.semantic.InPlaceAppends;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Builds a list with {@code xs = append(xs, i)}, appending in place as marked by {@link InPlaceAppends}, and
+ * with a copy per append once another variable shares the list. Copying is quadratic, so it only runs on the
+ * smaller size.
+ */
+public final class AppendBenchmark {
+	private static final String PROGRAM = """
+		proc main([string]: _args_) {
+			val int: n = parseInt(_args_[0])
+			var [int]: xs = [int]
+			SHARE
+			var int: i = 0
+			
+			while (i < n) {
+				xs = append(xs, i)
+				i = i + 1
+			}
+			
+			print(length(xs))
+		}
+		""";
+	
+	public static void main(String[] args) {
+		final Program inPlace = analyze(PROGRAM.replace("SHARE", ""));
+		final Program copying = analyze(PROGRAM.replace("SHARE", "val [int]: empty = xs"));
+		final String small = args.length > 0 ? args[0] : "20000";
+		final String large = args.length > 1 ? args[1] : "1000000";
+		
+		System.out.printf("engine       | copying %-7s| in place %-6s| in place %s%n", small, small, large);
+		
+		for (EngineKind kind : EngineKind.values()) {
+			final long copied = medianNanos(1, 3, () ->
+				kind.create(copying.reactor).interpret(copying.tree, args(small)));
+			final long appended = medianNanos(1, 3, () ->
+				kind.create(inPlace.reactor).interpret(inPlace.tree, args(small)));
+			final long appendedLarge = medianNanos(1, 3, () ->
+				kind.create(inPlace.reactor).interpret(inPlace.tree, args(large)));
+			
+			System.out.printf("%-12s | %14s | %14s | %12s%n", kind, millis(copied), millis(appended), millis(appendedLarge));
+		}
+	}
+}
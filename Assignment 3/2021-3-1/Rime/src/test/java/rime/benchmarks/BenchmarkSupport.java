@@ -0,0 +1,140 @@
+package rime.benchmarks;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.uranium.Reactor;
+import norswap.uranium.SemanticError;
+import norswap.utils.visitors.Walker;
+import rime.source.ast.RimeNode;
+import rime.source.parsing.RimeGrammar;
+import rime.source.semantic.SemanticAnalysis;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static norswap.utils.Util.cast;
+
+
+
+/**
+ * Shared plumbing for the benchmark programs: parsing and analysing Rime sources, silencing their output
+ * and timing repeated runs. Benchmarks are plain main classes, run them with {@code gradle benchmark -Pbench=Name}.
+ */
+public final class BenchmarkSupport {
+	public static final String EXAMPLES_DIR = "src/main/java/rime/examples/rime/";
+	
+	private static final RimeGrammar parser = new RimeGrammar();
+	
+	private BenchmarkSupport() { }
+	
+	public static final class Program {
+		public final RimeNode tree;
+		public final Reactor reactor;
+		
+		private Program(RimeNode tree, Reactor reactor) {
+			this.tree = tree;
+			this.reactor = reactor;
+		}
+	}
+	
+	public static Program analyze(String source) {
+		final ParseResult result = Autumn.parse(parser.root, source, ParseOptions.get());
+		
+		if (!result.fullMatch) {
+			throw new IllegalArgumentException("Benchmark program does not parse");
+		}
+		
+		final RimeNode tree = cast(result.topValue());
+		final Reactor reactor = new Reactor();
+		final Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		
+		if (!reactor.errors().isEmpty()) {
+			for (SemanticError e : reactor.errors()) {
+				System.err.println("\tERROR: " + e);
+			}
+			throw new IllegalArgumentException("Benchmark program has semantic errors");
+		}
+		
+		return new Program(tree, reactor);
+	}
+	
+	public static Program analyzeExample(String name) throws IOException {
+		return analyze(Files.readString(Paths.get(EXAMPLES_DIR, name)));
+	}
+	
+	public static ArrayList<String> args(String... args) {
+		return new ArrayList<>(Arrays.asList(args));
+	}
+	
+	/**
+	 * Runs {@code body} with {@code System.out} discarded, so that printing does not dominate the measurements.
+	 */
+	public static void silenced(Runnable body) {
+		final PrintStream old = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		
+		try {
+			body.run();
+		}
+		finally {
+			System.setOut(old);
+		}
+	}
+	
+	/**
+	 * Returns the median wall time in nanoseconds of {@code runs} silenced executions of {@code body},
+	 * after {@code warmup} unmeasured ones.
+	 */
+	public static long medianNanos(int warmup, int runs, Runnable body) {
+		for (int i = 0; i < warmup; i++) {
+			silenced(body);
+		}
+		
+		final long[] times = new long[runs];
+		
+		for (int i = 0; i < runs; i++) {
+			final long start = System.nanoTime();
+			silenced(body);
+			times[i] = System.nanoTime() - start;
+		}
+		
+		Arrays.sort(times);
+		return times[runs / 2];
+	}
+	
+	public static String millis(long nanos) {
+		return String.format("%.2f ms", nanos / 1e6);
+	}
+	
+	/**
+	 * Returns the growth of the heap, after a collection, while the object built by {@code build} is still
+	 * reachable, or 0 if it built {@code null}.
+	 */
+	public static long retainedBytes(Supplier<Object> build) {
+		final long before = usedAfterGc();
+		final Object built = build.get();
+		final long after = usedAfterGc();
+		
+		return built == null ? 0 : after - before;
+	}
+	
+	private static long usedAfterGc() {
+		final Runtime runtime = Runtime.getRuntime();
+		
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,60 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.EngineKind;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Throughput of recursive calls: a func returning through {@code return} and a proc leaving through {@code exit},
+ * so that the cost of completing a call shows rather than the work done by the callee.
+ */
+public final class CallBenchmark {
+	private static final String PROGRAM = """
+		func int fib(int: n) {
+			if (n < 2) {
+				return n
+			}
+			return fib(n - 1) + fib(n - 2)
+		}
+		
+		proc countDown(int: n) {
+			if (n == 0) {
+				exit
+			}
+			countDown(n - 1)
+		}
+		
+		proc main([string]: _args_) {
+			val int: n = parseInt(_args_[0])
+			var int: i = 0
+			print(fib(n))
+			
+			while (i < 1000) {
+				countDown(n * 10)
+				i = i + 1
+			}
+		}
+		""";
+	
+	public static void main(String[] args) {
+		final Program program = analyze(PROGRAM);
+		final int n = args.length > 0 ? Integer.parseInt(args[0]) : 27;
+		final long calls = fibCalls(n) + 1000L * (n * 10 + 1);
+		
+		System.out.println("engine       |   total time |       calls/s");
+		
+		for (EngineKind kind : EngineKind.values()) {
+			final long nanos = medianNanos(2, 5, () ->
+				kind.create(program.reactor).interpret(program.tree, args(String.valueOf(n))));
+			
+			System.out.printf("%-12s | %12s | %13.0f%n", kind, millis(nanos), calls / (nanos / 1e9));
+		}
+	}
+	
+	private static long fibCalls(int n) {
+		return n < 2 ? 1 : 1 + fibCalls(n - 1) + fibCalls(n - 2);
+	}
+}
@@ -0,0 +1,57 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.EngineKind;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Overhead of a call, per invocation: an empty proc called in a loop, minus the same loop without the call.
+ */
+public final class CallSiteBenchmark {
+	private static final String CALLS = """
+		proc nothing() {
+		}
+		
+		proc main([string]: _args_) {
+			val int: n = parseInt(_args_[0])
+			var int: i = 0
+			
+			while (i < n) {
+				nothing()
+				i = i + 1
+			}
+		}
+		""";
+	
+	private static final String LOOP = """
+		proc main([string]: _args_) {
+			val int: n = parseInt(_args_[0])
+			var int: i = 0
+			
+			while (i < n) {
+				i = i + 1
+			}
+		}
+		""";
+	
+	public static void main(String[] args) {
+		final Program calls = analyze(CALLS);
+		final Program loop = analyze(LOOP);
+		final int n = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+		
+		System.out.println("engine       |   total time |    loop time |     ns/call");
+		
+		for (EngineKind kind : EngineKind.values()) {
+			final long withCalls = medianNanos(2, 5, () ->
+				kind.create(calls.reactor).interpret(calls.tree, args(String.valueOf(n))));
+			final long withoutCalls = medianNanos(2, 5, () ->
+				kind.create(loop.reactor).interpret(loop.tree, args(String.valueOf(n))));
+			
+			System.out.printf("%-12s | %12s | %12s | %11.2f%n",
+				kind, millis(withCalls), millis(withoutCalls), (withCalls - withoutCalls) / (double) n);
+		}
+	}
+}
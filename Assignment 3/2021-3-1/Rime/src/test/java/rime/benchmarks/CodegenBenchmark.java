@@ -0,0 +1,91 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.examples.java.Fibonacci;
+import rime.examples.java.FizzBuzz;
+import rime.examples.java.Prime;
+import rime.examples.java.Sort;
+import rime.examples.java.Uniq;
+import rime.source.codegen.CodegenEngine;
+import rime.source.codegen.InMemoryCompiler;
+import rime.source.codegen.JavaProgram;
+import rime.source.jvm.JvmEngine;
+import rime.source.jvm.JvmProgram;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static norswap.utils.Util.cast;
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Wall time of the example programs translated to Java source and compiled with javac, against the class files
+ * of the JVM backend and against the hand-written Java versions in {@code rime/examples/java}. The
+ * {@code javac} column is the one-time cost of generating and compiling the source; the {@code cached} column
+ * runs the engine again, which finds the class in the cache; the {@code loaded} columns rerun a single class.
+ */
+public final class CodegenBenchmark {
+	public static void main(String[] args) throws IOException {
+		final Random random = new Random(42);
+		
+		System.out.println("program        |        javac |       cached |       loaded |   jvm loaded |         java | loaded vs java");
+		
+		run("Fibonacci.rime", Fibonacci::main, args("1000"));
+		run("FizzBuzz.rime", FizzBuzz::main, args("100000"));
+		run("Prime.rime", Prime::main, args("300"));
+		run("Sort.rime", Sort::main, randomInts(random, 1000, 1_000_000));
+		run("Uniq.rime", Uniq::main, randomInts(random, 20_000, 1000));
+	}
+	
+	private static void run(String example, Consumer<String[]> java, ArrayList<String> programArgs) throws IOException {
+		final Program program = analyzeExample(example);
+		final String[] javaArgs = programArgs.toArray(new String[0]);
+		
+		final long compileStart = System.nanoTime();
+		final JavaProgram source = JavaProgram.generate(program.reactor, cast(program.tree));
+		InMemoryCompiler.compile(source.className, source.source);
+		final long compileNanos = System.nanoTime() - compileStart;
+		
+		final long cachedNanos = medianNanos(3, 5, () -> new CodegenEngine(program.reactor).interpret(program.tree, programArgs));
+		final long javaNanos = medianNanos(3, 5, () -> java.accept(javaArgs));
+		
+		final MethodHandle main = CodegenEngine.load(source, new ArrayList<>(programArgs));
+		final long loadedNanos = medianNanos(10, 5, () -> invoke(main, new ArrayList<Object>(programArgs)));
+		
+		final MethodHandle jvmMain = JvmEngine.load(JvmProgram.compile(program.reactor, cast(program.tree)), programArgs);
+		final long jvmNanos = medianNanos(10, 5, () -> invoke(jvmMain, programArgs));
+		
+		System.out.printf("%-14s | %12s | %12s | %12s | %12s | %12s | %13.2fx%n",
+			example,
+			millis(compileNanos),
+			millis(cachedNanos),
+			millis(loadedNanos),
+			millis(jvmNanos),
+			millis(javaNanos),
+			(double) javaNanos / loadedNanos);
+	}
+	
+	private static void invoke(MethodHandle main, ArrayList<?> programArgs) {
+		try {
+			main.invoke((Object) programArgs);
+		}
+		catch (Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+	
+	private static ArrayList<String> randomInts(Random random, int count, int bound) {
+		final ArrayList<String> numbers = new ArrayList<>();
+		
+		for (int i = 0; i < count; i++) {
+			numbers.add(String.valueOf(random.nextInt(bound)));
+		}
+		
+		return numbers;
+	}
+}
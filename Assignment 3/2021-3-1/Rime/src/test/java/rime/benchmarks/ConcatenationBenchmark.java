@@ -0,0 +1,55 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.EngineKind;
+import rime.source.runtime.Concatenation;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Builds a string of 1 MB with {@code s = s + piece} from 100,000 appends of ten characters, which extend the
+ * builder of a {@link Concatenation} in place, then prints it. Once each step also derives another string from
+ * {@code s}, which takes the end of the builder, every append copies the string as the engines did before. Copying
+ * is quadratic, so it only runs on the smaller size.
+ */
+public final class ConcatenationBenchmark {
+	private static final String PROGRAM = """
+		proc main([string]: _args_) {
+			val int: n = parseInt(_args_[0])
+			val string: piece = _args_[1]
+			var string: s = piece
+			var int: i = 1
+			
+			while (i < n) {
+				BRANCH
+				s = s + piece
+				i = i + 1
+			}
+			
+			print(s)
+		}
+		""";
+	
+	public static void main(String[] args) {
+		final Program fused = analyze(PROGRAM.replace("BRANCH", ""));
+		final Program copying = analyze(PROGRAM.replace("BRANCH", "val string: branch = s + i"));
+		final String piece = "0123456789";
+		final String small = args.length > 0 ? args[0] : "10000";
+		final String large = args.length > 1 ? args[1] : "100000";
+		
+		System.out.printf("engine       | copying %-7s| fused %-9s| fused %s%n", small, small, large);
+		
+		for (EngineKind kind : EngineKind.values()) {
+			final long copied = medianNanos(1, 3, () ->
+				kind.create(copying.reactor).interpret(copying.tree, args(small, piece)));
+			final long appended = medianNanos(1, 3, () ->
+				kind.create(fused.reactor).interpret(fused.tree, args(small, piece)));
+			final long appendedLarge = medianNanos(1, 3, () ->
+				kind.create(fused.reactor).interpret(fused.tree, args(large, piece)));
+			
+			System.out.printf("%-12s | %14s | %14s | %12s%n", kind, millis(copied), millis(appended), millis(appendedLarge));
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.EngineKind;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Inserts int keys into a dict then reads every one back, which takes constant time per access with dicts held
+ * in a hash map by every engine.
+ */
+public final class DictBenchmark {
+	private static final String PROGRAM = """
+		proc main([string]: _args_) {
+			val int: n = parseInt(_args_[0])
+			var {int:int}: squares = {int:int}
+			var int: i = 0
+			
+			while (i < n) {
+				squares[i * 7] = i * i
+				i = i + 1
+			}
+			
+			var int: total = 0
+			i = 0
+			
+			while (i < n) {
+				total = total + squares[i * 7] % 10
+				i = i + 1
+			}
+			
+			print(total)
+		}
+		""";
+	
+	public static void main(String[] args) {
+		final Program program = analyze(PROGRAM);
+		final String n = args.length > 0 ? args[0] : "1000000";
+		
+		System.out.println("engine       | " + n + " keys");
+		
+		for (EngineKind kind : EngineKind.values()) {
+			final long nanos = medianNanos(1, 3, () -> kind.create(program.reactor).interpret(program.tree, args(n)));
+			System.out.printf("%-12s | %12s%n", kind, millis(nanos));
+		}
+	}
+}
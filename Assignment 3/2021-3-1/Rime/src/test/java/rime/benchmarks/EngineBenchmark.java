@@ -0,0 +1,54 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.EngineKind;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Wall time of every {@link EngineKind} on the five example programs, relative to the tree-walking interpreter.
+ */
+public final class EngineBenchmark {
+	public static void main(String[] args) throws IOException {
+		final Random random = new Random(42);
+		
+		run("Fibonacci.rime", args("1000"));
+		run("FizzBuzz.rime", args("100000"));
+		run("Prime.rime", args("300"));
+		run("Sort.rime", randomInts(random, 1000, 1_000_000));
+		run("Uniq.rime", randomInts(random, 20_000, 1000));
+	}
+	
+	private static void run(String example, ArrayList<String> programArgs) throws IOException {
+		final Program program = analyzeExample(example);
+		long reference = 0;
+		
+		System.out.println(example);
+		
+		for (EngineKind kind : EngineKind.values()) {
+			final long nanos = medianNanos(3, 5, () -> kind.create(program.reactor).interpret(program.tree, programArgs));
+			
+			if (kind == EngineKind.INTERPRETER) {
+				reference = nanos;
+			}
+			
+			System.out.printf("\t%-12s %10s  x%.2f%n", kind, millis(nanos), (double) reference / nanos);
+		}
+	}
+	
+	private static ArrayList<String> randomInts(Random random, int count, int bound) {
+		final ArrayList<String> numbers = new ArrayList<>();
+		
+		for (int i = 0; i < count; i++) {
+			numbers.add(String.valueOf(random.nextInt(bound)));
+		}
+		
+		return numbers;
+	}
+}
@@ -0,0 +1,67 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.EngineKind;
+import rime.source.optimizer.Optimizer;
+import rime.source.optimizer.Optimizer.Pass;
+
+import java.util.EnumSet;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Tiny helpers called from a hot loop, run with and without the inlining of {@link Optimizer}.
+ */
+public final class InliningBenchmark {
+	private static final String PROGRAM = """
+		func bool isDivisible(int: n, int: d) {
+			return n % d == 0
+		}
+		
+		func int clamp(int: value, int: max) {
+			var int: result = value
+			
+			if (result > max) {
+				result = max
+			}
+			
+			return result
+		}
+		
+		proc main([string]: _args_) {
+			val int: n = parseInt(_args_[0])
+			var int: i = 0
+			var int: total = 0
+			
+			while (i < n) {
+				if (isDivisible(i, 3) || isDivisible(i, 5)) {
+					total = total + clamp(i % 100, 50)
+				}
+				
+				i = i + 1
+			}
+			
+			print(total)
+		}
+		""";
+	
+	public static void main(String[] args) {
+		final Program program = analyze(PROGRAM);
+		final Optimizer.Result inlined = new Optimizer().optimize(program.tree, program.reactor);
+		final Optimizer.Result notInlined = new Optimizer(EnumSet.noneOf(Pass.class)).optimize(program.tree, program.reactor);
+		final String n = args.length > 0 ? args[0] : "1000000";
+		
+		System.out.println("engine       |  not inlined |      inlined");
+		
+		for (EngineKind kind : EngineKind.values()) {
+			final long before = medianNanos(2, 5, () ->
+				kind.create(notInlined.reactor).interpret(notInlined.tree, args(n)));
+			final long after = medianNanos(2, 5, () ->
+				kind.create(inlined.reactor).interpret(inlined.tree, args(n)));
+			
+			System.out.printf("%-12s | %12s | %12s%n", kind, millis(before), millis(after));
+		}
+	}
+}
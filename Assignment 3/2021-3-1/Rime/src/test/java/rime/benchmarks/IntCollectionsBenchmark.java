@@ -0,0 +1,126 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.EngineKind;
+import rime.source.runtime.CollectionKind;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Compares the unboxed representations of the int collections with the boxed ones, see {@link CollectionKind}:
+ * the heap retained by a collection of n ints and the time to fill it then read it back, through the
+ * {@link List}, {@link Set} and {@link Map} interfaces the engines use, then the time each engine takes to run
+ * a program doing the same on Rime collections.
+ */
+public final class IntCollectionsBenchmark {
+	private static final String PROGRAM = """
+		proc main([string]: _args_) {
+			val int: n = parseInt(_args_[0])
+			var [int]: xs = [int]
+			var {int}: seen = {int}
+			var {int:int}: squares = {int:int}
+			var int: i = 0
+			
+			while (i < n) {
+				xs = append(xs, i)
+				seen = add(seen, i * 3)
+				squares[i] = i * i
+				i = i + 1
+			}
+			
+			var int: total = 0
+			i = 0
+			
+			while (i < n) {
+				if (contains(seen, xs[i])) {
+					total = total + squares[i] % 10
+				}
+				
+				i = i + 1
+			}
+			
+			print(total)
+		}
+		""";
+	
+	public static void main(String[] args) {
+		final int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+		
+		System.out.printf("collection of %d ints | boxed heap | unboxed heap | boxed time | unboxed time%n", n);
+		compare("[int]", n, kind -> list(kind, n));
+		compare("{int}", n, kind -> set(kind, n));
+		compare("{int:int}", n, kind -> dict(kind == CollectionKind.INT ? CollectionKind.INT_TO_INT : kind, n));
+		
+		final Program program = analyze(PROGRAM);
+		final String engineSize = args.length > 1 ? args[1] : String.valueOf(n);
+		System.out.printf("%nengine       | %s elements%n", engineSize);
+		
+		for (EngineKind kind : EngineKind.values()) {
+			final long nanos = medianNanos(1, 3, () -> kind.create(program.reactor).interpret(program.tree, args(engineSize)));
+			System.out.printf("%-12s | %12s%n", kind, millis(nanos));
+		}
+	}
+	
+	private static void compare(String name, int n, Function<CollectionKind, Object> build) {
+		final long boxedBytes = retainedBytes(() -> build.apply(CollectionKind.BOXED));
+		final long unboxedBytes = retainedBytes(() -> build.apply(CollectionKind.INT));
+		final long boxedNanos = medianNanos(1, 3, () -> build.apply(CollectionKind.BOXED));
+		final long unboxedNanos = medianNanos(1, 3, () -> build.apply(CollectionKind.INT));
+		
+		System.out.printf("%-21s | %7d MB | %9d MB | %10s | %12s%n",
+			name, boxedBytes >> 20, unboxedBytes >> 20, millis(boxedNanos), millis(unboxedNanos));
+	}
+	
+	private static Object list(CollectionKind kind, int n) {
+		final List<Object> list = kind.newList(0);
+		long total = 0;
+		
+		for (int i = 0; i < n; i++) {
+			list.add(i);
+		}
+		
+		for (int i = 0; i < n; i++) {
+			total += (Integer) list.get(i);
+		}
+		
+		return total == 0 ? null : list;
+	}
+	
+	private static Object set(CollectionKind kind, int n) {
+		final Set<Object> set = kind.newSet(0);
+		long total = 0;
+		
+		for (int i = 0; i < n; i++) {
+			set.add(i * 3);
+		}
+		
+		for (int i = 0; i < n; i++) {
+			total += set.contains(i) ? 1 : 0;
+		}
+		
+		return total == 0 ? null : set;
+	}
+	
+	private static Object dict(CollectionKind kind, int n) {
+		final Map<Object, Object> dict = kind.newDict(0);
+		long total = 0;
+		
+		for (int i = 0; i < n; i++) {
+			dict.put(i * 3, i);
+		}
+		
+		for (int i = 0; i < n; i++) {
+			final Object value = dict.get(i);
+			total += value == null ? 0 : (Integer) value;
+		}
+		
+		return total == 0 ? null : dict;
+	}
+}
@@ -0,0 +1,80 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.examples.java.Fibonacci;
+import rime.examples.java.FizzBuzz;
+import rime.examples.java.Prime;
+import rime.examples.java.Sort;
+import rime.examples.java.Uniq;
+import rime.source.interpreter.Interpreter;
+import rime.source.jvm.JvmEngine;
+import rime.source.jvm.JvmProgram;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static norswap.utils.Util.cast;
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Wall time of the example programs compiled to JVM classes, against the tree-walking interpreter and against
+ * the hand-written Java versions in {@code rime/examples/java}. The {@code jvm} column includes compiling and
+ * loading a fresh class on every run, whose code HotSpot must then warm up again; the {@code loaded} column
+ * reruns a single loaded class, as a long-running job would.
+ */
+public final class JvmBenchmark {
+	public static void main(String[] args) throws IOException {
+		final Random random = new Random(42);
+		
+		System.out.println("program        |  interpreter |          jvm |       loaded |         java | loaded vs interpreter | loaded vs java");
+		
+		run("Fibonacci.rime", Fibonacci::main, args("1000"));
+		run("FizzBuzz.rime", FizzBuzz::main, args("100000"));
+		run("Prime.rime", Prime::main, args("300"));
+		run("Sort.rime", Sort::main, randomInts(random, 1000, 1_000_000));
+		run("Uniq.rime", Uniq::main, randomInts(random, 20_000, 1000));
+	}
+	
+	private static void run(String example, Consumer<String[]> java, ArrayList<String> programArgs) throws IOException {
+		final Program program = analyzeExample(example);
+		final String[] javaArgs = programArgs.toArray(new String[0]);
+		
+		final long interpreterNanos = medianNanos(3, 5, () -> new Interpreter(program.reactor).interpret(program.tree, programArgs));
+		final long jvmNanos = medianNanos(3, 5, () -> new JvmEngine(program.reactor).interpret(program.tree, programArgs));
+		final long javaNanos = medianNanos(3, 5, () -> java.accept(javaArgs));
+		
+		final MethodHandle main = JvmEngine.load(JvmProgram.compile(program.reactor, cast(program.tree)), programArgs);
+		final long loadedNanos = medianNanos(10, 5, () -> {
+			try {
+				main.invoke((Object) programArgs);
+			}
+			catch (Throwable t) {
+				throw new RuntimeException(t);
+			}
+		});
+		
+		System.out.printf("%-14s | %12s | %12s | %12s | %12s | %20.2fx | %13.2fx%n",
+			example,
+			millis(interpreterNanos),
+			millis(jvmNanos),
+			millis(loadedNanos),
+			millis(javaNanos),
+			(double) interpreterNanos / loadedNanos,
+			(double) javaNanos / loadedNanos);
+	}
+	
+	private static ArrayList<String> randomInts(Random random, int count, int bound) {
+		final ArrayList<String> numbers = new ArrayList<>();
+		
+		for (int i = 0; i < count; i++) {
+			numbers.add(String.valueOf(random.nextInt(bound)));
+		}
+		
+		return numbers;
+	}
+}
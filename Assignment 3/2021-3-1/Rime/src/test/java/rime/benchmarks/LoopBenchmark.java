@@ -0,0 +1,51 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.Interpreter;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Iterations per second of the interpreter on while loops whose condition is a comparison, which is evaluated
+ * unboxed, and a call to a func, whose body is run once per iteration.
+ */
+public final class LoopBenchmark {
+	private static final String PROGRAM = """
+		func bool below(int: i, int: n) {
+			return i < n
+		}
+		
+		proc main([string]: _args_) {
+			val int: n = parseInt(_args_[0])
+			var int: i = 0
+			var int: total = 0
+			
+			while (i < n) {
+				total = total + i
+				i = i + 1
+			}
+			
+			i = 0
+			
+			while (below(i, n)) {
+				total = total - i
+				i = i + 1
+			}
+			
+			print(total)
+		}
+		""";
+	
+	public static void main(String[] args) {
+		final Program program = analyze(PROGRAM);
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		
+		final long nanos = medianNanos(3, 5, () ->
+			new Interpreter(program.reactor).interpret(program.tree, args(String.valueOf(iterations))));
+		
+		System.out.printf("%d iterations of each loop: %s, %.0f iterations/s%n",
+			iterations, millis(nanos), 2 * iterations / (nanos / 1e9));
+	}
+}
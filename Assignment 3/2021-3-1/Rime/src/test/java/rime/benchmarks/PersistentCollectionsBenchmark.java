@@ -0,0 +1,95 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.EngineKind;
+import rime.source.runtime.Builtins;
+import rime.source.runtime.CollectionKind;
+import rime.source.runtime.CollectionMode;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Compares the persistent collections, see {@link CollectionMode#PERSISTENT}, with the copies {@code append}
+ * and {@code add} make otherwise, when every version of a collection stays alive: the heap retained by the n
+ * versions of a list or set grown one element at a time, then the time each engine takes to run a program keeping
+ * its versions alive in the frames of a recursion.
+ */
+public final class PersistentCollectionsBenchmark {
+	private static final String PROGRAM = """
+		func int grow([int]: xs, {int}: seen, int: n) {
+			if (n == 0) {
+				return length(xs)
+			}
+			
+			val int: deeper = grow(append(xs, n), add(seen, n * 7), n - 1)
+			
+			if (contains(seen, (n + 1) * 7)) {
+				return deeper + xs[length(xs) - 1]
+			}
+			
+			return deeper
+		}
+		
+		proc main([string]: _args_) {
+			val [int]: xs = [int]
+			val {int}: seen = {int}
+			print(grow(xs, seen, parseInt(_args_[0])))
+		}
+		""";
+	
+	/** The recursion of the program runs on the Java stack of most engines */
+	private static final long STACK_SIZE = 1L << 30;
+	
+	public static void main(String[] args) throws InterruptedException {
+		final int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+		
+		System.out.printf("%d versions | copying heap | persistent heap | copying time | persistent time%n", n);
+		compare("[int]", n, kind -> kind.newList(0), Builtins::append);
+		compare("{int}", n, kind -> kind.newSet(0), Builtins::add);
+		
+		final Program program = analyze(PROGRAM);
+		final String depth = args.length > 1 ? args[1] : String.valueOf(n / 2);
+		System.out.printf("%nengine       | %s deep: copying | persistent%n", depth);
+		
+		final Thread thread = new Thread(null, () -> {
+			for (EngineKind kind : EngineKind.values()) {
+				final long copying = medianNanos(1, 3, () -> kind.create(program.reactor, CollectionMode.COPYING).interpret(program.tree, args(depth)));
+				final long persistent = medianNanos(1, 3, () -> kind.create(program.reactor, CollectionMode.PERSISTENT).interpret(program.tree, args(depth)));
+				System.out.printf("%-12s | %18s | %10s%n", kind, millis(copying), millis(persistent));
+			}
+		}, "benchmark", STACK_SIZE);
+		
+		thread.start();
+		thread.join();
+	}
+	
+	/**
+	 * Builds the n versions of a collection, each one the result of {@code extend} on the previous one and its
+	 * index, from an empty collection of the INT kind for the copies and of the PERSISTENT kind otherwise.
+	 */
+	private static void compare(String name, int n, Function<CollectionKind, Object> empty, BiFunction<Object, Object, Object> extend) {
+		final BiFunction<CollectionKind, Integer, Object> build = (kind, count) -> {
+			final Object[] versions = new Object[count + 1];
+			versions[0] = empty.apply(kind);
+			
+			for (int i = 1; i <= count; i++) {
+				versions[i] = extend.apply(versions[i - 1], i);
+			}
+			
+			return versions;
+		};
+		
+		final long copyingBytes = retainedBytes(() -> build.apply(CollectionKind.INT, n));
+		final long persistentBytes = retainedBytes(() -> build.apply(CollectionKind.PERSISTENT, n));
+		final long copyingNanos = medianNanos(1, 3, () -> build.apply(CollectionKind.INT, n));
+		final long persistentNanos = medianNanos(1, 3, () -> build.apply(CollectionKind.PERSISTENT, n));
+		
+		System.out.printf("%-16s | %9d MB | %12d MB | %12s | %15s%n",
+			name, copyingBytes >> 20, persistentBytes >> 20, millis(copyingNanos), millis(persistentNanos));
+	}
+}
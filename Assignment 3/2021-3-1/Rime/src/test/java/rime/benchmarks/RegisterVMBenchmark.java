@@ -0,0 +1,61 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.bytecode.BytecodeEngine;
+import rime.source.register.RegisterEngine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Instructions executed and wall time of the stack-based and the register-based VM on the five example programs.
+ * Instructions are counted in a separate run, so that counting does not weigh on the measured times.
+ */
+public final class RegisterVMBenchmark {
+	public static void main(String[] args) throws IOException {
+		final Random random = new Random(42);
+		
+		System.out.println("program        |  stack instructions | register instructions |   ratio |   stack time | register time");
+		
+		run("Fibonacci.rime", args("1000"));
+		run("FizzBuzz.rime", args("100000"));
+		run("Prime.rime", args("300"));
+		run("Sort.rime", randomInts(random, 1000, 1_000_000));
+		run("Uniq.rime", randomInts(random, 20_000, 1000));
+	}
+	
+	private static void run(String example, ArrayList<String> programArgs) throws IOException {
+		final Program program = analyzeExample(example);
+		
+		final BytecodeEngine stackCounter = new BytecodeEngine(program.reactor, true);
+		final RegisterEngine registerCounter = new RegisterEngine(program.reactor, true);
+		silenced(() -> stackCounter.interpret(program.tree, programArgs));
+		silenced(() -> registerCounter.interpret(program.tree, programArgs));
+		
+		final long stackNanos = medianNanos(3, 5, () -> new BytecodeEngine(program.reactor).interpret(program.tree, programArgs));
+		final long registerNanos = medianNanos(3, 5, () -> new RegisterEngine(program.reactor).interpret(program.tree, programArgs));
+		
+		System.out.printf("%-14s | %19d | %21d | %6.2f%% | %12s | %13s%n",
+			example,
+			stackCounter.instructionCount(),
+			registerCounter.instructionCount(),
+			100.0 * registerCounter.instructionCount() / stackCounter.instructionCount(),
+			millis(stackNanos),
+			millis(registerNanos));
+	}
+	
+	private static ArrayList<String> randomInts(Random random, int count, int bound) {
+		final ArrayList<String> numbers = new ArrayList<>();
+		
+		for (int i = 0; i < count; i++) {
+			numbers.add(String.valueOf(random.nextInt(bound)));
+		}
+		
+		return numbers;
+	}
+}
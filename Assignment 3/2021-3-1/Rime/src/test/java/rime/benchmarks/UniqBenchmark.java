@@ -0,0 +1,51 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.EngineKind;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Uniq.rime on a growing number of arguments, half of them repeated: with the adds to its set made in place, the
+ * time grows linearly with the input, four times the arguments taking at most four times as long. The smaller sizes
+ * still pay for part of the warm-up, so the ratio is often lower. Takes the largest size as its argument, 500,000 by
+ * default, at which every engine runs Uniq in well under a second.
+ */
+public final class UniqBenchmark {
+	public static void main(String[] args) throws IOException {
+		final Program program = analyzeExample("Uniq.rime");
+		final int largest = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+		final int[] sizes = { largest / 4, largest / 2, largest };
+		
+		System.out.printf("engine       | %12d | %12d | %12d | ratio%n", sizes[0], sizes[1], sizes[2]);
+		
+		for (EngineKind kind : EngineKind.values()) {
+			final long[] times = new long[sizes.length];
+			
+			for (int i = 0; i < sizes.length; i++) {
+				final ArrayList<String> programArgs = numbers(sizes[i]);
+				times[i] = medianNanos(1, 3, () -> kind.create(program.reactor).interpret(program.tree, programArgs));
+			}
+			
+			System.out.printf("%-12s | %12s | %12s | %12s | %5.1f%n",
+				kind, millis(times[0]), millis(times[1]), millis(times[2]), (double) times[2] / times[0]);
+		}
+	}
+	
+	private static ArrayList<String> numbers(int count) {
+		final Random random = new Random(42);
+		final ArrayList<String> numbers = new ArrayList<>();
+		
+		for (int i = 0; i < count; i++) {
+			numbers.add(String.valueOf(random.nextInt(count / 2)));
+		}
+		
+		return numbers;
+	}
+}
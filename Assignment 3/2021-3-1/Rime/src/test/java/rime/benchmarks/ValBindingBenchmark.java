@@ -0,0 +1,44 @@
+package rime.benchmarks;
+
+import rime.benchmarks.BenchmarkSupport.Program;
+import rime.source.interpreter.Interpreter;
+
+import static rime.benchmarks.BenchmarkSupport.*;
+
+
+
+/**
+ * Per-iteration cost of loops reading {@code val} bindings whose initializers are function calls.
+ * Before initializers were evaluated eagerly, every read of {@code n} and {@code step} re-ran {@code parseInt},
+ * so the cost per iteration grew with the number of reads; it should now stay flat as the iteration count grows.
+ */
+public final class ValBindingBenchmark {
+	private static final String PROGRAM = """
+		proc main([string]: _args_) {
+			val int: n = parseInt(_args_[0])
+			val int: step = parseInt(_args_[1])
+			var int: i = 0
+			var int: total = 0
+			
+			while (i < n) {
+				total = total + step
+				i = i + step
+			}
+			
+			print(total)
+		}
+		""";
+	
+	public static void main(String[] args) {
+		final Program program = analyze(PROGRAM);
+		
+		System.out.println("iterations | total time | per iteration");
+		
+		for (int iterations : new int[] { 10_000, 100_000, 1_000_000 }) {
+			final long nanos = medianNanos(3, 5, () ->
+				new Interpreter(program.reactor).interpret(program.tree, args(String.valueOf(iterations), "1")));
+			
+			System.out.printf("%10d | %10s | %.1f ns%n", iterations, millis(nanos), (double) nanos / iterations);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package rime.tests.interpreter;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.Walker;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import rime.source.ast.RimeNode;
+import rime.source.bytecode.BytecodeEngine;
+import rime.source.bytecode.BytecodeProgram;
+import rime.source.bytecode.Disassembler;
+import rime.source.interpreter.exceptions.CallStackOverflowException;
+import rime.source.parsing.RimeGrammar;
+import rime.source.semantic.SemanticAnalysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+import static norswap.utils.Util.cast;
+
+
+
+public class BytecodeTests {
+	private static final RimeGrammar parser = new RimeGrammar();
+	private Reactor reactor;
+	
+	@Test
+	public void test_disassembly() {
+		String input = """
+			func int square(int: x) {
+				return x * x
+			}
+			
+			proc main([string]: _args_) {
+				var int: i = 0
+				
+				while (i < 3) {
+					print("square: " + square(i))
+					i = i + 1
+				}
+			}
+			""";
+		
+		String expected = """
+			square (locals: 1, stack: 2)
+				0000 LOAD 0
+				0002 LOAD 0
+				0004 MULTIPLY
+				0005 RETURN
+				0006 RETURN_VOID
+			
+			main (locals: 2, stack: 2)
+				0000 INT 0
+				0002 STORE 1
+				0004 LOAD 1
+				0006 INT 3
+				0008 LESS_THAN
+				0009 JUMP_IF_FALSE 30
+				0011 CONST 0 ("square: ")
+				0013 LOAD 1
+				0015 CALL 1 1 (function square)
+				0018 CONCAT
+				0019 PRINT
+				0020 POP
+				0021 LOAD 1
+				0023 INT 1
+				0025 ADD
+				0026 STORE 1
+				0028 JUMP 4
+				0030 RETURN_VOID
+			
+			constants:
+				#0 "square: "
+				#1 function square
+			""";
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		BytecodeProgram program = BytecodeProgram.compile(reactor, cast(tree));
+		Assert.assertEquals(expected, Disassembler.disassemble(program));
+	}
+	
+	@Test
+	public void test_deepRecursion_heapCallStack() throws InterruptedException {
+		String input = """
+			func int sum(int: n) {
+				if (n == 0) {
+					return 0
+				}
+				
+				return n + sum(n - 1)
+			}
+			
+			proc main([string]: _args_) {
+				print(sum(parseInt(_args_[0])))
+			}
+			""";
+		
+		RimeNode tree = analyze(input);
+		ArrayList<String> args = new ArrayList<>();
+		args.add("1000000");
+		
+		// A million nested calls would overflow this stack if each one took Java frames
+		String[] output = new String[1];
+		Throwable[] failure = new Throwable[1];
+		Thread thread = new Thread(null, () -> {
+			try {
+				output[0] = captureOutput(new BytecodeEngine(reactor), tree, args);
+			}
+			catch (Throwable t) {
+				failure[0] = t;
+			}
+		}, "small stack", 512 * 1024);
+		
+		thread.start();
+		thread.join();
+		
+		Assert.assertNull(failure[0]);
+		Assert.assertEquals("1784293664" + System.lineSeparator(), output[0]);
+	}
+	
+	@Test
+	public void test_callStackBudget_overflow() {
+		String input = """
+			proc down(int: n) {
+				down(n + 1)
+				print(n)
+			}
+			
+			proc start() {
+				down(0)
+			}
+			
+			proc main([string]: _args_) {
+				start()
+			}
+			""";
+		
+		RimeNode tree = analyze(input);
+		
+		try {
+			captureOutput(new BytecodeEngine(reactor, false, 10_000), tree, new ArrayList<>());
+			Assert.fail("Expected a Rime call stack overflow");
+		}
+		catch (CallStackOverflowException e) {
+			String[] lines = e.getMessage().split(System.lineSeparator());
+			Assert.assertEquals(4, lines.length);
+			Assert.assertTrue(lines[0].startsWith("Rime call stack overflow"));
+			Assert.assertTrue(lines[1].matches("\\tat down \\(\\d+ calls\\)"));
+			Assert.assertEquals("\tat start", lines[2]);
+			Assert.assertEquals("\tat main", lines[3]);
+		}
+	}
+	
+	private RimeNode analyze(String input) {
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		return tree;
+	}
+	
+	private static String captureOutput(BytecodeEngine engine, RimeNode tree, ArrayList<String> args) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		PrintStream old = System.out;
+		System.setOut(new PrintStream(outputStream));
+		
+		try {
+			engine.interpret(tree, args);
+		}
+		finally {
+			System.out.flush();
+			System.setOut(old);
+		}
+		
+		return outputStream.toString();
+	}
+}
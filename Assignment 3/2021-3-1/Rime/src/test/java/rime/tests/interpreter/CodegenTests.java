@@ -0,0 +1,224 @@
+package rime.tests.interpreter;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.Walker;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import rime.source.ast.RimeNode;
+import rime.source.codegen.CodegenEngine;
+import rime.source.codegen.InMemoryCompiler;
+import rime.source.codegen.JavaProgram;
+import rime.source.interpreter.Engine;
+import rime.source.interpreter.Interpreter;
+import rime.source.parsing.RimeGrammar;
+import rime.source.semantic.SemanticAnalysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static norswap.utils.Util.cast;
+
+
+
+public class CodegenTests {
+	private static final RimeGrammar parser = new RimeGrammar();
+	
+	@Test
+	public void test_sortSource() throws IOException {
+		RimeNode tree = parse(Files.readString(Paths.get("src/main/java/rime/examples/rime/Sort.rime")));
+		Reactor reactor = analyze(tree);
+		
+		String expected = """
+			package rime.generated;
+			
+			import java.util.ArrayList;
+			import java.util.List;
+			import java.util.Map;
+			import java.util.Set;
+			
+			import rime.source.runtime.BoxedMap;
+			import rime.source.runtime.BoxedSet;
+			import rime.source.runtime.IntList;
+			import rime.source.runtime.IntSet;
+			import rime.source.runtime.IntIntMap;
+			import rime.source.runtime.IntObjectMap;
+			
+			import static rime.source.codegen.CodegenRuntime.*;
+			
+			public final class RimeProgram {
+			    public RimeProgram(Object[] constants, List<Object> mainArgs) {
+			    }
+			    
+			    public void main(List<Object> _args_) {
+			        try {
+			            List<Object> numbers = new IntList();
+			            int i = 0;
+			            while (i < length(_args_)) {
+			                int n = parseInt(atUnchecked(_args_, i));
+			                numbers = appendInPlace(numbers, n);
+			                i = i + 1;
+			            }
+			            i = 0;
+			            while (i < length(numbers)) {
+			                int j = i + 1;
+			                while (j < length(numbers)) {
+			                    int tmp = 0;
+			                    if (atIntUnchecked(numbers, i) > atIntUnchecked(numbers, j)) {
+			                        tmp = atIntUnchecked(numbers, i);
+			                        setAt(checkList(numbers), checkIndex(i), atIntUnchecked(numbers, j));
+			                        setAt(numbers, j, tmp);
+			                    }
+			                    j = j + 1;
+			                }
+			                i = i + 1;
+			            }
+			            i = 0;
+			            while (i < length(numbers)) {
+			                print(atIntUnchecked(numbers, i));
+			                i = i + 1;
+			            }
+			        }
+			        catch (RuntimeException e) {
+			            throw wrap(e, "main");
+			        }
+			    }
+			}
+			""";
+		
+		Assert.assertEquals(expected, JavaProgram.generate(reactor, cast(tree)).source);
+	}
+	
+	@Test
+	public void test_identicalSourcesShareClass() {
+		String input = """
+			proc main([string]: _args_) {
+				print(length(_args_))
+			}
+			""";
+		
+		RimeNode first = parse(input);
+		RimeNode second = parse(input);
+		JavaProgram firstProgram = JavaProgram.generate(analyze(first), cast(first));
+		JavaProgram secondProgram = JavaProgram.generate(analyze(second), cast(second));
+		
+		Assert.assertSame(
+			InMemoryCompiler.compile(firstProgram.className, firstProgram.source),
+			InMemoryCompiler.compile(secondProgram.className, secondProgram.source));
+	}
+	
+	@Test
+	public void test_sharedClassKeepsRunsApart() throws Throwable {
+		String input = """
+			func int count() {
+				return length(_args_)
+			}
+			
+			proc main([string]: _args_) {
+				print(count())
+			}
+			""";
+		
+		RimeNode first = parse(input);
+		RimeNode second = parse(input);
+		MethodHandle firstMain = CodegenEngine.load(JavaProgram.generate(analyze(first), cast(first)), new ArrayList<>(List.of("a")));
+		MethodHandle secondMain = CodegenEngine.load(JavaProgram.generate(analyze(second), cast(second)), new ArrayList<>(List.of("a", "b")));
+		
+		// The second run is loaded from the same class, but the first one still reads its own arguments
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		PrintStream old = System.out;
+		System.setOut(new PrintStream(outputStream));
+		
+		try {
+			firstMain.invoke((List<Object>) new ArrayList<Object>(List.of("a")));
+			secondMain.invoke((List<Object>) new ArrayList<Object>(List.of("a", "b")));
+		}
+		finally {
+			System.out.flush();
+			System.setOut(old);
+		}
+		
+		Assert.assertEquals("1\n2\n", outputStream.toString().replace("\r\n", "\n"));
+	}
+	
+	@Test
+	public void test_javaRestrictions() {
+		String input = """
+			func int default(int: new) {
+				var int: total = 0
+				
+				while (TRUE) {
+					if (total > new) {
+						return total
+						print("unreachable")
+					}
+					
+					total = total + new + 1
+				}
+				
+				return -1
+			}
+			
+			proc show([int]: list) {
+				print(list[2])
+				print("count: " + length(list) + " " + (1 + 2))
+				print(_args_[1])
+			}
+			
+			proc main([string]: _args_) {
+				val int: first = default(3)
+				val int: second = default(0)
+				val int: third = -default(2)
+				val [int]: values = [first, second, third]
+				show(values)
+				print(values[0] == values[1] || values[2] != -values[2])
+			}
+			""";
+		
+		RimeNode tree = parse(input);
+		Reactor reactor = analyze(tree);
+		ArrayList<String> args = new ArrayList<>(List.of("a", "b"));
+		
+		Assert.assertEquals(captureOutput(tree, new Interpreter(reactor), args), captureOutput(tree, new CodegenEngine(reactor), args));
+	}
+	
+	private static RimeNode parse(String input) {
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		return cast(result.topValue());
+	}
+	
+	private static Reactor analyze(RimeNode tree) {
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		return reactor;
+	}
+	
+	private static String captureOutput(RimeNode tree, Engine engine, ArrayList<String> args) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		PrintStream old = System.out;
+		System.setOut(new PrintStream(outputStream));
+		
+		try {
+			engine.interpret(tree, args);
+		}
+		finally {
+			System.out.flush();
+			System.setOut(old);
+		}
+		
+		return outputStream.toString();
+	}
+}
@@ -11,6 +11,8 @@ import org.junit.jupiter.api.Test;
 import rime.examples.java.*;
 import rime.source.ast.RimeNode;
 import rime.source.parsing.RimeGrammar;
+import rime.source.interpreter.Engine;
+import rime.source.interpreter.EngineKind;
 import rime.source.interpreter.Interpreter;
 import rime.source.semantic.SemanticAnalysis;
 
@@ -49,12 +51,66 @@ public final class ExampleProgramsTests {
 		}};
 		
 		String expected = generateFibonacciOutput(args);
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
 	}
 	
+	@Test
+	public void test_fibonacciProgram_constantStack() throws Exception {
+		String input = Files.readString(Paths.get(dir, "Fibonacci.rime"));
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		
+		printErrors(reactor.errors(), new Object() {}.getClass().getEnclosingMethod().getName());
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		Interpreter interpreter = new Interpreter(reactor);
+		ArrayList<String> args = new ArrayList<>() {{
+			add("1000000");
+		}};
+		
+		// fibonacciAux recurses once per number, far deeper than this stack allows unless its tail calls are loops
+		String[] output = new String[1];
+		Throwable[] failure = new Throwable[1];
+		Thread thread = new Thread(null, () -> {
+			try {
+				output[0] = getProgramOutput(tree, reactor, interpreter, args);
+			}
+			catch (Throwable t) {
+				failure[0] = t;
+			}
+		}, "small stack", 512 * 1024);
+		
+		thread.start();
+		thread.join();
+		
+		if (failure[0] != null) {
+			throw new AssertionError(failure[0]);
+		}
+		
+		int a = 0;
+		int b = 1;
+		
+		for (int i = 1; i < 1000000; i++) {
+			int next = a + b;
+			a = b;
+			b = next;
+		}
+		
+		String[] lines = output[0].split(System.lineSeparator());
+		Assert.assertEquals(1000000, lines.length);
+		Assert.assertEquals(String.valueOf(a), lines[lines.length - 1]);
+	}
+	
 	@Test
 	public void test_fizzBuzzProgram_interpreter() throws IOException {
 		String input = Files.readString(Paths.get(dir, "FizzBuzz.rime"));
@@ -77,7 +133,7 @@ public final class ExampleProgramsTests {
 		}};
 		
 		String expected = generateFizzBuzzOutput(args);
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -105,7 +161,7 @@ public final class ExampleProgramsTests {
 		}};
 		
 		String expected = generatePrimeOutput(args);
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -135,7 +191,7 @@ public final class ExampleProgramsTests {
 		Collections.shuffle(args);
 		
 		String expected = generateSortOutput(args);
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -166,7 +222,7 @@ public final class ExampleProgramsTests {
 		}
 		
 		String expected = generateUniqOutput(args);
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -237,13 +293,26 @@ public final class ExampleProgramsTests {
 		return outputStream.toString();
 	}
 	
-	private String getProgramOutput(RimeNode tree, Interpreter interpreter, ArrayList<String> args) {
+	private String getProgramOutput(RimeNode tree, Reactor reactor, Interpreter interpreter, ArrayList<String> args) {
+		String output = captureOutput(tree, interpreter, args);
+		
+		// Every other engine must print exactly what the interpreter prints
+		for (EngineKind kind : EngineKind.values()) {
+			if (kind != EngineKind.INTERPRETER) {
+				Assert.assertEquals("Output of the " + kind + " engine", output, captureOutput(tree, kind.create(reactor), args));
+			}
+		}
+		
+		return output;
+	}
+	
+	private String captureOutput(RimeNode tree, Engine engine, ArrayList<String> args) {
 		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 		PrintStream ps = new PrintStream(outputStream);
 		PrintStream old = System.out;
 		System.setOut(ps);
 		
-		interpreter.interpret(tree, args);
+		engine.interpret(tree, args);
 		
 		System.out.flush();
 		System.setOut(old);
@@ -10,6 +10,8 @@ import org.junit.Assert;
 import org.junit.jupiter.api.Test;
 import rime.source.ast.RimeNode;
 import rime.source.parsing.RimeGrammar;
+import rime.source.interpreter.Engine;
+import rime.source.interpreter.EngineKind;
 import rime.source.interpreter.Interpreter;
 import rime.source.semantic.SemanticAnalysis;
 
@@ -50,7 +52,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -85,7 +87,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -119,7 +121,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -154,7 +156,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -188,7 +190,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -229,7 +231,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -265,7 +267,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -298,7 +300,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -341,7 +343,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -381,7 +383,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -425,7 +427,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -460,7 +462,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -493,7 +495,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -530,7 +532,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -566,7 +568,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -609,7 +611,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -655,7 +657,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -713,7 +715,7 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
@@ -748,19 +750,219 @@ public class InterpreterTests {
 		Interpreter interpreter = new Interpreter(reactor);
 		ArrayList<String> args = new ArrayList<>();
 		
-		String output = getProgramOutput(tree, interpreter, args);
+		String output = getProgramOutput(tree, reactor, interpreter, args);
 		
 		Assert.assertEquals(expected, output);
 		interpreter.interpret(tree, args); // rerun to print the results
 	}
 	
-	private String getProgramOutput(RimeNode tree, Interpreter interpreter, ArrayList<String> args) {
+	@Test
+	public void test_valInitializer_evaluatedOnce() {
+		String input = """
+			func int answer() {
+				print("evaluated")
+				return 42
+			}
+			
+			proc main([string]: _args_) {
+				val int: x = answer()
+				print(x)
+				print(x)
+			}
+			""";
+		String expected = "\"evaluated\"" + System.lineSeparator()
+			+ "42" + System.lineSeparator()
+			+ "42" + System.lineSeparator();
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.recordCallStack(true).get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		
+		printErrors(reactor.errors(), new Object() {}.getClass().getEnclosingMethod().getName());
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		Interpreter interpreter = new Interpreter(reactor);
+		ArrayList<String> args = new ArrayList<>();
+		
+		String output = getProgramOutput(tree, reactor, interpreter, args);
+		
+		Assert.assertEquals(expected, output);
+		interpreter.interpret(tree, args); // rerun to print the results
+	}
+	
+	@Test
+	public void test_valInitializer_capturesValue() {
+		String input = """
+			proc main([string]: _args_) {
+				var int: x = 1
+				val int: y = x + 1
+				x = 5
+				print(y)
+			}
+			""";
+		String expected = "2" + System.lineSeparator();
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.recordCallStack(true).get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		
+		printErrors(reactor.errors(), new Object() {}.getClass().getEnclosingMethod().getName());
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		Interpreter interpreter = new Interpreter(reactor);
+		ArrayList<String> args = new ArrayList<>();
+		
+		String output = getProgramOutput(tree, reactor, interpreter, args);
+		
+		Assert.assertEquals(expected, output);
+		interpreter.interpret(tree, args); // rerun to print the results
+	}
+	
+	@Test
+	public void test_unboxedLocals_crossBoundaries() {
+		String input = """
+			func int scale(int: x, bool: negate) {
+				if (negate) {
+					return -x * 1000
+				}
+				
+				return x * 1000
+			}
+			
+			proc main([string]: _args_) {
+				var int: big = scale(7, FALSE)
+				var bool: flag = big > 6999 && !(big == 0)
+				var [int]: values = [int]
+				values = append(values, big)
+				values = append(values, scale(big, flag))
+				print(values[1] / values[0])
+				print(flag)
+				print("big: " + big)
+				flag = values[0] == big
+				print(flag)
+			}
+			""";
+		String expected = "-1000" + System.lineSeparator()
+			+ "true" + System.lineSeparator()
+			+ "\"big: \"7000" + System.lineSeparator()
+			+ "true" + System.lineSeparator();
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.recordCallStack(true).get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		
+		printErrors(reactor.errors(), new Object() {}.getClass().getEnclosingMethod().getName());
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		Interpreter interpreter = new Interpreter(reactor);
+		ArrayList<String> args = new ArrayList<>();
+		
+		String output = getProgramOutput(tree, reactor, interpreter, args);
+		
+		Assert.assertEquals(expected, output);
+		interpreter.interpret(tree, args); // rerun to print the results
+	}
+	
+	@Test
+	public void test_conditions_evaluatedOncePerTest() {
+		String input = """
+			func bool below(int: i, int: n) {
+				print("test " + i)
+				return i < n
+			}
+			
+			proc main([string]: _args_) {
+				var int: i = 0
+				
+				if (below(i, 1)) {
+					print("then")
+				}
+				
+				if (below(5, 1)) {
+					print("then")
+				} else {
+					print("else")
+				}
+				
+				while (below(i, 3)) {
+					i = i + 1
+				}
+				
+				print(i)
+			}
+			""";
+		String expected = "\"test \"0" + System.lineSeparator()
+			+ "\"then\"" + System.lineSeparator()
+			+ "\"test \"5" + System.lineSeparator()
+			+ "\"else\"" + System.lineSeparator()
+			+ "\"test \"0" + System.lineSeparator()
+			+ "\"test \"1" + System.lineSeparator()
+			+ "\"test \"2" + System.lineSeparator()
+			+ "\"test \"3" + System.lineSeparator()
+			+ "3" + System.lineSeparator();
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.recordCallStack(true).get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		
+		printErrors(reactor.errors(), new Object() {}.getClass().getEnclosingMethod().getName());
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		Interpreter interpreter = new Interpreter(reactor);
+		ArrayList<String> args = new ArrayList<>();
+		
+		String output = getProgramOutput(tree, reactor, interpreter, args);
+		
+		// One test per if statement, and one per iteration plus the failing one for the while loop
+		Assert.assertEquals(6, output.split("test").length - 1);
+		Assert.assertEquals(expected, output);
+		interpreter.interpret(tree, args); // rerun to print the results
+	}
+	
+	private String getProgramOutput(RimeNode tree, Reactor reactor, Interpreter interpreter, ArrayList<String> args) {
+		String output = captureOutput(tree, interpreter, args);
+		
+		// Every other engine must print exactly what the interpreter prints
+		for (EngineKind kind : EngineKind.values()) {
+			if (kind != EngineKind.INTERPRETER) {
+				Assert.assertEquals("Output of the " + kind + " engine", output, captureOutput(tree, kind.create(reactor), args));
+			}
+		}
+		
+		return output;
+	}
+	
+	private String captureOutput(RimeNode tree, Engine engine, ArrayList<String> args) {
 		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 		PrintStream ps = new PrintStream(outputStream);
 		PrintStream old = System.out;
 		System.setOut(ps);
 		
-		interpreter.interpret(tree, args);
+		engine.interpret(tree, args);
 		
 		System.out.flush();
 		System.setOut(old);
@@ -0,0 +1,139 @@
+package rime.tests.interpreter;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.Walker;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import rime.source.ast.RimeNode;
+import rime.source.interpreter.Engine;
+import rime.source.interpreter.Interpreter;
+import rime.source.jvm.JvmEngine;
+import rime.source.jvm.JvmProgram;
+import rime.source.parsing.RimeGrammar;
+import rime.source.semantic.SemanticAnalysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static norswap.utils.Util.cast;
+
+
+
+public class JvmTests {
+	private static final RimeGrammar parser = new RimeGrammar();
+	
+	@Test
+	public void test_primitivesUnboxed() {
+		String input = """
+			func bool isEven(int: n) {
+				return n % 2 == 0
+			}
+			
+			func [int] evens([int]: numbers, int: limit) {
+				var [int]: result = [int]
+				var int: i = 0
+				
+				while (i < limit) {
+					if (isEven(numbers[i])) {
+						result = append(result, numbers[i])
+					}
+					
+					i = i + 1
+				}
+				
+				return result
+			}
+			
+			proc main([string]: _args_) {
+				val [int]: numbers = [1, 2, 3, 4]
+				print(length(evens(numbers, 4)))
+			}
+			""";
+		
+		RimeNode tree = parse(input);
+		Reactor reactor = analyze(tree);
+		JvmProgram program = JvmProgram.compile(reactor, cast(tree));
+		List<String> signatures = program.methods.stream()
+			.map(method -> method.name + method.descriptor)
+			.collect(Collectors.toList());
+		
+		Assert.assertEquals(List.of(
+			"isEven(I)Z",
+			"evens(Ljava/lang/Object;I)Ljava/lang/Object;",
+			"main(Ljava/lang/Object;)V"
+		), signatures);
+	}
+	
+	@Test
+	public void test_siblingBlocks_earlyExit() {
+		String input = """
+			func int twice(int: x) {
+				return 2 * x
+			}
+			
+			proc show(int: n) {
+				if (n > 1) {
+					val int: value = n * 10
+					print(value)
+				}
+				else {
+					val string: value = "small"
+					print(value)
+					exit
+				}
+				
+				print(n < 3)
+			}
+			
+			proc main([string]: _args_) {
+				show(twice(1))
+				show(twice(0))
+				print(twice(21))
+			}
+			""";
+		
+		RimeNode tree = parse(input);
+		Reactor reactor = analyze(tree);
+		ArrayList<String> args = new ArrayList<>();
+		
+		Assert.assertEquals(captureOutput(tree, new Interpreter(reactor), args), captureOutput(tree, new JvmEngine(reactor), args));
+	}
+	
+	private static RimeNode parse(String input) {
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		return cast(result.topValue());
+	}
+	
+	private static Reactor analyze(RimeNode tree) {
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		return reactor;
+	}
+	
+	private static String captureOutput(RimeNode tree, Engine engine, ArrayList<String> args) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		PrintStream old = System.out;
+		System.setOut(new PrintStream(outputStream));
+		
+		try {
+			engine.interpret(tree, args);
+		}
+		finally {
+			System.out.flush();
+			System.setOut(old);
+		}
+		
+		return outputStream.toString();
+	}
+}
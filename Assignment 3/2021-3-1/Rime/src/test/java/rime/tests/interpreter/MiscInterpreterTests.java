@@ -11,14 +11,20 @@ import org.junit.Rule;
 import org.junit.jupiter.api.Test;
 import org.junit.rules.ExpectedException;
 import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.RootNode;
+import rime.source.interpreter.Engine;
+import rime.source.interpreter.EngineKind;
 import rime.source.interpreter.Interpreter;
 import rime.source.interpreter.exceptions.InterpreterException;
+import rime.source.optimizer.Optimizer;
 import rime.source.parsing.RimeGrammar;
+import rime.source.runtime.CollectionMode;
 import rime.source.semantic.SemanticAnalysis;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import static norswap.utils.Util.cast;
@@ -59,6 +65,8 @@ public class MiscInterpreterTests {
 		catch (Exception e) {
 			Assert.assertTrue(e instanceof ArrayIndexOutOfBoundsException);
 		}
+		
+		assertEnginesThrow(tree, reactor, args, ArrayIndexOutOfBoundsException.class);
 	}
 	
 	@Test
@@ -92,14 +100,530 @@ public class MiscInterpreterTests {
 		catch (Exception e) {
 			Assert.assertTrue(e instanceof InterpreterException);
 		}
+		
+		assertEnginesThrow(tree, reactor, args, InterpreterException.class);
+	}
+	
+	@Test
+	public void test_intCollections_sameOutput() {
+		String input = """
+			proc main([string]: _args_) {
+				var [int]: xs = [int]
+				var {int}: seen = {int}
+				var {int:int}: squares = {int:int}
+				var {int:string}: names = {0: "zero", -1: "minus one"}
+				var int: i = -20
+				
+				while (i < 1000) {
+					xs = append(xs, i)
+					seen = add(seen, i % 7)
+					squares[i * 1024] = i * i
+					i = i + 1
+				}
+				
+				val [int]: copy = append(xs, 5)
+				xs[0] = xs[1] + copy[length(copy) - 1]
+				names[1024] = "big"
+				
+				print(length(xs))
+				print(xs[0])
+				print(length(copy))
+				print(contains(seen, -6))
+				print(contains(seen, 7))
+				print(squares[0])
+				print(squares[-20 * 1024])
+				print(squares[999 * 1024])
+				print(squares[3])
+				print(names[0] + names[-1] + names[1024])
+				val [int]: literal = [1, 2, 3]
+				val {int:int}: pairs = {1: 10, 0: 20}
+				val {int}: small = {0, 5}
+				print(literal[2])
+				print(contains(small, 0))
+				print(pairs[0])
+				
+				var [int]: mixed = [1]
+				mixed = append(mixed, "two")
+				print(length(mixed))
+			}
+			""";
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		// The int collections grow past their initial tables, hold the zero key apart, and widen to a boxed list
+		// when append gives them a string
+		Assert.assertEquals(
+			"1020\n-14\n1021\ntrue\nfalse\n0\n400\n998001\nnull\n\"zero\"\"minus one\"\"big\"\n3\ntrue\n20\n2\n",
+			getProgramOutput(tree, reactor, new Interpreter(reactor), new ArrayList<>()).replace("\r\n", "\n"));
+	}
+	
+	@Test
+	public void test_missingValues_inPrimitiveLocals() {
+		String input = """
+			func int lookup({string:int}: counts, string: key) {
+				return counts[key]
+			}
+			
+			func int same(int: value) {
+				return value
+			}
+			
+			proc main([string]: _args_) {
+				var {string:int}: counts = {"a": 1}
+				var {string:bool}: flags = {"a": TRUE}
+				
+				val int: n = counts["b"]
+				print(n)
+				val bool: b = flags["b"]
+				print(b)
+				
+				if (b) {
+					print("set")
+				}
+				else {
+					print("unset")
+				}
+				
+				while (b) {
+					print("looping")
+				}
+				
+				val int: m = lookup(counts, "b")
+				print(m)
+				print(same(counts["b"]))
+				
+				var int: k = counts["b"]
+				k = counts["a"] + 2
+				print(k + 1)
+			}
+			""";
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		// A missing dict entry is null, which an int or bool variable holds as is, and which a condition takes as false
+		String expected = "null\nnull\n\"unset\"\nnull\nnull\n4\n";
+		Assert.assertEquals(expected,
+			getProgramOutput(tree, reactor, new Interpreter(reactor), new ArrayList<>()).replace("\r\n", "\n"));
+	}
+	
+	@Test
+	public void test_missingValue_failsInArithmetic() {
+		String input = """
+			proc main([string]: _args_) {
+				var {string:int}: counts = {"a": 1}
+				val int: n = counts["b"]
+				print(n + 1)
+			}
+			""";
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		assertEnginesThrow(tree, reactor, new ArrayList<>(), InterpreterException.class);
+	}
+	
+	@Test
+	public void test_exception_reportsFailingFunction() {
+		String input = """
+			func int ratio(int: total, int: count) {
+				var int: unused = 0
+				return total / count
+			}
+			
+			proc main([string]: _args_) {
+				print(ratio(4, 2))
+				print(ratio(4, 0))
+			}
+			""";
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		// The tree-walking engines report the statement which failed, the others the function running it
+		for (EngineKind kind : EngineKind.values()) {
+			try {
+				kind.create(reactor).interpret(tree, new ArrayList<>());
+				Assert.fail(kind + " engine did not fail");
+			}
+			catch (InterpreterException e) {
+				String expected = kind == EngineKind.INTERPRETER || kind == EngineKind.CLOSURE
+					? "exception while executing ReturnStatement(return BinaryExpression(Identifier(total) DIVIDE Identifier(count)))"
+					: "exception while executing ratio";
+				Assert.assertEquals(kind + " engine", expected, e.getMessage());
+				Assert.assertTrue(kind + " engine", e.getCause() instanceof ArithmeticException);
+			}
+		}
+	}
+	
+	@Test
+	public void test_missingValue_listElementAssigned() {
+		String input = """
+			proc main([string]: _args_) {
+				var {int:int}: d = {int:int}
+				var [int]: xs = [1, 2]
+				xs[0] = d[3]
+				print(xs[1])
+				print(xs[0])
+				print(xs[1] + 1)
+			}
+			""";
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		// A list of ints keeps the null assigned to one of its elements, the other elements are still ints
+		String expected = "2\nnull\n3\n";
+		Assert.assertEquals(expected,
+			getProgramOutput(tree, reactor, new Interpreter(reactor), new ArrayList<>()).replace("\r\n", "\n"));
+	}
+	
+	@Test
+	public void test_missingValue_dictValueAssigned() {
+		String input = """
+			proc main([string]: _args_) {
+				var {int:int}: d = {int:int}
+				var {int:int}: e = {1: 2, 0: 5}
+				e[1] = d[3]
+				e[0] = d[0]
+				e[2] = 4
+				print(e[1])
+				print(e[0])
+				print(e[2] + 1)
+			}
+			""";
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		// A dict of ints keeps the null assigned to one of its keys, the other values are still ints
+		String expected = "null\nnull\n5\n";
+		Assert.assertEquals(expected,
+			getProgramOutput(tree, reactor, new Interpreter(reactor), new ArrayList<>()).replace("\r\n", "\n"));
+	}
+	
+	@Test
+	public void test_missingValue_listLiteralElement() {
+		String input = """
+			proc main([string]: _args_) {
+				var {int:int}: d = {int:int}
+				val [int]: xs = [d[4], 7]
+				var int: sum = 0
+				var int: i = 1
+				while (i < length(xs)) {
+					sum = sum + xs[i]
+					i = i + 1
+				}
+				print(xs[0])
+				print(sum)
+			}
+			""";
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		// A list of ints literal holds a null element as is
+		String expected = "null\n7\n";
+		Assert.assertEquals(expected,
+			getProgramOutput(tree, reactor, new Interpreter(reactor), new ArrayList<>()).replace("\r\n", "\n"));
+	}
+	
+	@Test
+	public void test_persistentCollections_sameOutput() {
+		String input = """
+			proc main([string]: _args_) {
+				var [int]: xs = [int]
+				var {int}: seen = {int}
+				var {int:int}: squares = {int:int}
+				var int: i = 0
+				
+				while (i < 1100) {
+					xs = append(xs, i)
+					seen = add(seen, i * 31)
+					squares[i * 31] = i * i
+					i = i + 1
+				}
+				
+				val [int]: longer = append(xs, 1100)
+				val [int]: alias = xs
+				alias[5] = -5
+				alias[1090] = -1090
+				
+				print(length(xs))
+				print(length(longer))
+				print(xs[5] + xs[1090])
+				print(longer[5] + longer[1090])
+				print(longer[1056] + longer[1100])
+				print(contains(seen, 1099 * 31))
+				print(contains(seen, 1))
+				print(squares[1099 * 31])
+				print(squares[1])
+				
+				var {string}: words = {string}
+				words = add(words, "Aa")
+				val {string}: before = words
+				words = add(words, "BB")
+				words = add(words, "Aa")
+				print(contains(before, "BB"))
+				print(contains(words, "BB") && contains(words, "Aa"))
+				
+				var {string:int}: counts = {"Aa": 1, "BB": 2}
+				counts["Aa"] = counts["Aa"] + 10
+				print(counts["Aa"] + counts["BB"])
+				print(counts["C"])
+				
+				var [int]: mixed = [1]
+				mixed = append(mixed, "two")
+				print(length(mixed))
+			}
+			""";
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RootNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		// The lists grow a level in their trie past 1056 elements, "Aa" and "BB" have the same hash, and the older
+		// versions are left unchanged by the appends and adds, but not by the assignments through an alias
+		String expected = "1100\n1101\n-1095\n1095\n2156\ntrue\nfalse\n1207801\nnull\nfalse\ntrue\n13\nnull\n2\n";
+		String copying = getProgramOutput(tree, reactor, CollectionMode.COPYING, new ArrayList<>()).replace("\r\n", "\n");
+		String persistent = getProgramOutput(tree, reactor, CollectionMode.PERSISTENT, new ArrayList<>()).replace("\r\n", "\n");
+		
+		Assert.assertEquals(expected, copying);
+		Assert.assertEquals(expected, persistent);
+	}
+	
+	@Test
+	public void test_listLiteral_elementsEvaluatedOnce() {
+		String input = """
+			func int expensive(int: n) {
+				print(n)
+				var int: total = 0
+				var int: i = 0
+				
+				while (i < 1000 * n) {
+					total = total + i % 7
+					i = i + 1
+				}
+				
+				return total
+			}
+			
+			proc main([string]: _args_) {
+				val [int]: xs = [expensive(1), expensive(2), expensive(3)]
+				var int: sum = 0
+				var int: i = 0
+				
+				while (i < length(xs)) {
+					sum = sum + xs[i] + length(xs)
+					i = i + 1
+				}
+				
+				print(sum)
+				val [int]: ys = [expensive(4), expensive(5)]
+				print(length(ys))
+			}
+			""";
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RootNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		// Each element prints its argument once, when the literal is evaluated, however often the list is then
+		// read or measured, in the optimized program as well
+		String expected = "1\n2\n3\n17995\n4\n5\n2\n";
+		Optimizer.Result optimized = new Optimizer().optimize(tree, reactor);
+		
+		Assert.assertEquals(expected,
+			getProgramOutput(tree, reactor, new Interpreter(reactor), new ArrayList<>()).replace("\r\n", "\n"));
+		Assert.assertEquals(expected,
+			getProgramOutput(optimized.tree, optimized.reactor, new Interpreter(optimized.reactor), new ArrayList<>()).replace("\r\n", "\n"));
+	}
+	
+	@Test
+	public void test_stringConcatenation_sameValues() {
+		String input = """
+			func string zeros(string: prefix, int: count) {
+				var string: result = prefix
+				var int: i = 0
+				
+				while (i < count) {
+					result = result + 0
+					i = i + 1
+				}
+				
+				return result
+			}
+			
+			proc main([string]: _args_) {
+				var string: s = "<"
+				var string: t = "<"
+				var int: i = 0
+				
+				while (i < 100) {
+					s = s + i % 10
+					t = t + i % 10
+					i = i + 1
+				}
+				
+				val string: a = s + 1
+				val string: b = s + 2
+				s = s + 3
+				print(a)
+				print(b)
+				print(s)
+				print(a == b)
+				print(a == t + 1)
+				print(zeros(_args_[0], 70) == _args_[1])
+				print(parseInt(zeros(_args_[0], 70) + 42))
+				
+				var {string}: seen = {string}
+				seen = add(seen, a)
+				seen = add(seen, _args_[1])
+				print(contains(seen, s))
+				print(contains(seen, t + 1))
+				print(contains(seen, zeros(_args_[0], 70)))
+				
+				var {string:int}: counts = {zeros(_args_[0], 70): 1}
+				counts[b] = 2
+				counts[t + 2] = counts[b] + 1
+				print(counts[b])
+				print(counts[_args_[1]])
+			}
+			""";
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RootNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		// a and b extend the prefix which s extends, and each string is the same value however it was concatenated
+		ArrayList<String> args = new ArrayList<>(List.of("0", "0".repeat(71)));
+		String digits = "\"<\"" + "0123456789".repeat(10);
+		String expected = digits + "1\n" + digits + "2\n" + digits + "3\n" + "false\ntrue\ntrue\n42\nfalse\ntrue\ntrue\n3\n1\n";
+		String copying = getProgramOutput(tree, reactor, CollectionMode.COPYING, args).replace("\r\n", "\n");
+		String persistent = getProgramOutput(tree, reactor, CollectionMode.PERSISTENT, args).replace("\r\n", "\n");
+		
+		Assert.assertEquals(expected, copying);
+		Assert.assertEquals(expected, persistent);
+	}
+	
+	private static void assertEnginesThrow(RimeNode tree, Reactor reactor, ArrayList<String> args, Class<? extends Exception> expected) {
+		for (EngineKind kind : EngineKind.values()) {
+			try {
+				kind.create(reactor).interpret(tree, args);
+				Assert.fail(kind + " engine did not fail");
+			}
+			catch (Exception e) {
+				Assert.assertTrue(kind + " engine threw " + e, expected.isInstance(e));
+			}
+		}
+	}
+	
+	private String getProgramOutput(RimeNode tree, Reactor reactor, Interpreter interpreter, ArrayList<String> args) {
+		return getProgramOutput(tree, reactor, interpreter, CollectionMode.COPYING, args);
+	}
+	
+	private String getProgramOutput(RimeNode tree, Reactor reactor, CollectionMode collectionMode, ArrayList<String> args) {
+		return getProgramOutput(tree, reactor, new Interpreter(reactor, collectionMode), collectionMode, args);
+	}
+	
+	private String getProgramOutput(RimeNode tree, Reactor reactor, Interpreter interpreter, CollectionMode collectionMode, ArrayList<String> args) {
+		String output = captureOutput(tree, interpreter, args);
+		
+		// Every other engine must print exactly what the interpreter prints
+		for (EngineKind kind : EngineKind.values()) {
+			if (kind != EngineKind.INTERPRETER) {
+				Assert.assertEquals("Output of the " + kind + " engine", output, captureOutput(tree, kind.create(reactor, collectionMode), args));
+			}
+		}
+		
+		return output;
 	}
-	private String getProgramOutput(RimeNode tree, Interpreter interpreter, ArrayList<String> args) {
+	
+	private String captureOutput(RimeNode tree, Engine engine, ArrayList<String> args) {
 		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 		PrintStream ps = new PrintStream(outputStream);
 		PrintStream old = System.out;
 		System.setOut(ps);
 		
-		interpreter.interpret(tree, args);
+		engine.interpret(tree, args);
 		
 		System.out.flush();
 		System.setOut(old);
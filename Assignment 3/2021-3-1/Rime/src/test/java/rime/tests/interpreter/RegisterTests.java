@@ -0,0 +1,90 @@
+package rime.tests.interpreter;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.Walker;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import rime.source.ast.RimeNode;
+import rime.source.parsing.RimeGrammar;
+import rime.source.register.RegisterFunction;
+import rime.source.register.RegisterOpcodes;
+import rime.source.register.RegisterProgram;
+import rime.source.semantic.SemanticAnalysis;
+
+import static norswap.utils.Util.cast;
+
+
+
+public class RegisterTests {
+	private static final RimeGrammar parser = new RimeGrammar();
+	
+	@Test
+	public void test_lowering() {
+		String input = """
+			func int square(int: x) {
+				return x * x
+			}
+			
+			proc main([string]: _args_) {
+				var int: i = 0
+				
+				while (i < 3) {
+					print("square: " + square(i))
+					i = i + 1
+				}
+			}
+			""";
+		
+		String expected = """
+			square (registers: 2)
+				0000 MULTIPLY 1 0 0
+				0004 RETURN 1
+				0006 RETURN_VOID
+			main (registers: 4)
+				0000 LOAD_CONST 1 0
+				0003 JUMP_IF_NOT_LESS_THAN_IMMEDIATE 1 3 31
+				0007 LOAD_CONST 2 1
+				0010 MOVE 3 1
+				0013 CALL 3 2 3 1
+				0018 CONCAT 2 2 3
+				0022 PRINT 2 2
+				0025 ADD_IMMEDIATE 1 1 1
+				0029 JUMP 3
+				0031 RETURN_VOID
+			""";
+		
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Reactor reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		RegisterProgram program = RegisterProgram.compile(reactor, cast(tree));
+		StringBuilder sb = new StringBuilder();
+		
+		for (RegisterFunction function : program.functions) {
+			int[] code = function.code();
+			sb.append(String.format("%s (registers: %d)\n", function.name, function.registerCount()));
+			
+			for (int pc = 0; pc < code.length; pc += 1 + RegisterOpcodes.operandCount(code[pc])) {
+				sb.append(String.format("\t%04d %s", pc, RegisterOpcodes.name(code[pc])));
+				
+				for (int i = 1; i <= RegisterOpcodes.operandCount(code[pc]); i++) {
+					sb.append(" ").append(code[pc + i]);
+				}
+				
+				sb.append("\n");
+			}
+		}
+		
+		Assert.assertEquals(expected, sb.toString());
+	}
+}
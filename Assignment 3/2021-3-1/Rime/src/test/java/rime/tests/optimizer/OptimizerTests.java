@@ -0,0 +1,392 @@
+package rime.tests.optimizer;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.Walker;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import rime.source.ast.RimeNode;
+import rime.source.ast.expressions.FunctionCall;
+import rime.source.ast.expressions.literals.StringLiteral;
+import rime.source.ast.statements.ExpressionStatement;
+import rime.source.ast.statements.Statement;
+import rime.source.ast.statements.WhileStatement;
+import rime.source.interpreter.Engine;
+import rime.source.interpreter.EngineKind;
+import rime.source.optimizer.Optimizer;
+import rime.source.optimizer.Optimizer.Pass;
+import rime.source.parsing.RimeGrammar;
+import rime.source.semantic.SemanticAnalysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static norswap.utils.Util.cast;
+
+
+
+public class OptimizerTests {
+	private static final String dir = "src/main/java/rime/examples/rime/";
+	private static final RimeGrammar parser = new RimeGrammar();
+	private Reactor reactor;
+	
+	@Test
+	public void test_inlining_sameOutput() {
+		String input = """
+			func int square(int: x) {
+				return x * x
+			}
+			
+			func bool isDivisible(int: n, int: d) {
+				return n % d == 0
+			}
+			
+			func int clamp(int: value, int: max) {
+				var int: result = value
+				
+				if (result > max) {
+					result = max
+				}
+				
+				return result
+			}
+			
+			proc report(string: label, int: value) {
+				val string: text = label + value
+				print(text)
+			}
+			
+			func int factorial(int: n) {
+				if (n <= 1) {
+					return 1
+				}
+				
+				return n * factorial(n - 1)
+			}
+			
+			proc main([string]: _args_) {
+				val int: n = parseInt(_args_[0])
+				var int: i = 0
+				
+				while (i < n) {
+					val int: result = clamp(square(i), 50)
+					
+					if (isDivisible(i, 3)) {
+						report("square ", result)
+					}
+					
+					report("twice ", clamp(i + i, 10))
+					i = i + 1
+				}
+				
+				print(factorial(5))
+			}
+			""";
+		
+		RimeNode tree = analyze(input);
+		Optimizer.Result inlined = new Optimizer().optimize(tree, reactor);
+		Optimizer.Result notInlined = new Optimizer(EnumSet.noneOf(Pass.class)).optimize(tree, reactor);
+		
+		// square, clamp twice, isDivisible and report twice: the recursive factorial stays a call
+		Assert.assertEquals(6, inlined.inlinedCalls);
+		Assert.assertEquals(0, notInlined.inlinedCalls);
+		
+		String expected = captureOutput(EngineKind.INTERPRETER.create(reactor), tree, args("10"));
+		Assert.assertEquals(expected, captureOutput(EngineKind.INTERPRETER.create(notInlined.reactor), notInlined.tree, args("10")));
+		
+		for (EngineKind kind : EngineKind.values()) {
+			Assert.assertEquals("Output of the " + kind + " engine", expected,
+				captureOutput(kind.create(inlined.reactor), inlined.tree, args("10")));
+		}
+	}
+	
+	@Test
+	public void test_inlining_examplePrograms() throws IOException {
+		List<String> programs = List.of("Fibonacci.rime", "FizzBuzz.rime", "Prime.rime", "Sort.rime", "Uniq.rime");
+		
+		for (String program : programs) {
+			RimeNode tree = analyze(Files.readString(Paths.get(dir, program)));
+			Optimizer.Result inlined = new Optimizer().optimize(tree, reactor);
+			ArrayList<String> args = program.equals("Sort.rime") || program.equals("Uniq.rime")
+				? args("5", "3", "5", "1", "4")
+				: args("30");
+			
+			Assert.assertEquals(program,
+				captureOutput(EngineKind.INTERPRETER.create(reactor), tree, args),
+				captureOutput(EngineKind.INTERPRETER.create(inlined.reactor), inlined.tree, args));
+		}
+	}
+	
+	@Test
+	public void test_folding_sameOutput() {
+		String input = """
+			proc main([string]: _args_) {
+				val int: limit = 10
+				val int: step = limit / 5
+				val bool: verbose = FALSE
+				val string: label = "total: " + limit * 2
+				var int: i = 0
+				var int: total = 0
+				
+				while (i < limit + 1) {
+					val bool: even = i % step == 0
+					
+					if (TRUE && even) {
+						total = total + i
+					}
+					
+					if (verbose || limit < 0) {
+						print(i)
+					}
+					
+					i = i + step - 1
+				}
+				
+				while (verbose) {
+					print("never")
+				}
+				
+				print(label)
+				print(total * (3 - step))
+			}
+			""";
+		
+		RimeNode tree = analyze(input);
+		Optimizer.Result folded = new Optimizer(EnumSet.of(Pass.FOLDING)).optimize(tree, reactor);
+		List<Statement> statements = folded.tree.entryPoint.definition.body.statements;
+		
+		// The never-entered while is gone, and so is the if on verbose in the other loop
+		Assert.assertEquals(9, statements.size());
+		Assert.assertEquals(3, ((WhileStatement) statements.get(6)).body.statements.size());
+		
+		FunctionCall printLabel = cast(((ExpressionStatement) statements.get(7)).expression);
+		Assert.assertEquals("\"total: \"20", ((StringLiteral) printLabel.arguments.get(0)).value);
+		
+		String expected = captureOutput(EngineKind.INTERPRETER.create(reactor), tree, args());
+		
+		for (EngineKind kind : EngineKind.values()) {
+			Assert.assertEquals("Output of the " + kind + " engine", expected,
+				captureOutput(kind.create(folded.reactor), folded.tree, args()));
+		}
+	}
+	
+	@Test
+	public void test_folding_divisionByZero() {
+		String input = """
+			proc main([string]: _args_) {
+				val int: zero = 1 - 1
+				print("before")
+				print(7 % (zero + 1))
+				print(10 / zero)
+			}
+			""";
+		
+		RimeNode tree = analyze(input);
+		Optimizer.Result folded = new Optimizer(EnumSet.of(Pass.FOLDING)).optimize(tree, reactor);
+		
+		for (EngineKind kind : EngineKind.values()) {
+			Throwable expected = assertFails(kind.create(reactor), tree);
+			Throwable actual = assertFails(kind.create(folded.reactor), folded.tree);
+			
+			Assert.assertEquals("Error of the " + kind + " engine", expected.getClass(), actual.getClass());
+			Assert.assertEquals("Error of the " + kind + " engine", rootCause(expected).getMessage(), rootCause(actual).getMessage());
+			Assert.assertEquals("Division by zero", rootCause(actual).getMessage());
+		}
+	}
+	
+	@Test
+	public void test_elimination_sameOutput() {
+		String input = """
+			func int sign(int: x) {
+				if (x > 0) {
+					return 1
+				}
+				
+				if (x < 0) {
+					return -1
+				}
+				else {
+					return 0
+				}
+				
+				print("unreachable")
+				return 2
+			}
+			
+			proc check(int: x) {
+				if (x == 0) {
+					print("zero")
+					exit
+					print("unreachable")
+				}
+				
+				pass
+				print(x * sign(x))
+			}
+			
+			proc main([string]: _args_) {
+				val int: unused = 4
+				val int: twice = unused * 2
+				val int: used = 3
+				val int: quotient = 12 / used
+				var int: i = -2
+				
+				while (i < used) {
+					check(i)
+					pass
+					i = i + 1
+				}
+				
+				if (FALSE) {
+					print("never")
+				}
+				
+				while (FALSE) {
+					pass
+				}
+			}
+			""";
+		
+		RimeNode tree = analyze(input);
+		Optimizer.Result eliminated = new Optimizer(EnumSet.of(Pass.ELIMINATION)).optimize(tree, reactor);
+		List<Statement> statements = eliminated.tree.entryPoint.definition.body.statements;
+		
+		// Unused vals are gone unless their initializer can fail, like quotient: with the code after the last if of
+		// sign and after exit, the pass statements, and the statements on FALSE, that makes 35 nodes
+		Assert.assertEquals(4, statements.size());
+		Assert.assertEquals(2, ((WhileStatement) statements.get(3)).body.statements.size());
+		Assert.assertEquals(35, eliminated.removedNodes);
+		
+		String expected = captureOutput(EngineKind.INTERPRETER.create(reactor), tree, args());
+		
+		for (EngineKind kind : EngineKind.values()) {
+			Assert.assertEquals("Output of the " + kind + " engine", expected,
+				captureOutput(kind.create(eliminated.reactor), eliminated.tree, args()));
+		}
+	}
+	
+	@Test
+	public void test_hoisting_sameOutput() {
+		String input = """
+			func int total([int]: values) {
+				var int: sum = 0
+				var int: k = 0
+				
+				while (k < length(values)) {
+					sum = sum + values[k]
+					k = k + 1
+				}
+				
+				return sum
+			}
+			
+			proc main([string]: _args_) {
+				val [int]: xs = [3, 1, 2]
+				var [int]: ys = [5, 6]
+				var int: i = 0
+				
+				while (i < length(xs) + total(xs)) {
+					val int: limit = parseInt(_args_[0]) * 2
+					print(limit + i)
+					val int: size = length(ys)
+					i = i + size
+				}
+				
+				i = 0
+				
+				while (i < 2) {
+					val int: size = length(ys)
+					ys[i] = total(ys) + size
+					i = i + 1
+				}
+				
+				while (i < 0) {
+					val int: n = parseInt(_args_[5])
+				}
+				
+				print(ys[0] + ys[1])
+			}
+			""";
+		
+		RimeNode tree = analyze(input);
+		Optimizer.Result hoisted = new Optimizer(EnumSet.of(Pass.HOISTING)).optimize(tree, reactor);
+		
+		// Nothing moves past the print, total(ys) changes with the elements of ys, and the failing parseInt of the
+		// last loop only runs when the loop is entered
+		Assert.assertEquals(List.of(
+			"total, loop 1: while (k < length(values))",
+			"main, loop 1: while (i < (length(xs) + total(xs)))",
+			"main, loop 2: while (i < 2)",
+			"main, loop 3: while (i < 0)"),
+			List.copyOf(hoisted.hoistedExpressions.keySet()));
+		Assert.assertEquals(
+			List.of("length(xs) + total(xs)", "parseInt(_args_[0]) * 2"),
+			hoisted.hoistedExpressions.get("main, loop 1: while (i < (length(xs) + total(xs)))"));
+		Assert.assertEquals(List.of("length(ys)"), hoisted.hoistedExpressions.get("main, loop 2: while (i < 2)"));
+		Assert.assertTrue(hoisted.report().contains("\tparseInt(_args_[5])\n"));
+		
+		String expected = captureOutput(EngineKind.INTERPRETER.create(reactor), tree, args("12"));
+		
+		for (EngineKind kind : EngineKind.values()) {
+			Assert.assertEquals("Output of the " + kind + " engine", expected,
+				captureOutput(kind.create(hoisted.reactor), hoisted.tree, args("12")));
+		}
+	}
+	
+	private RimeNode analyze(String input) {
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		return tree;
+	}
+	
+	private static ArrayList<String> args(String... args) {
+		return new ArrayList<>(List.of(args));
+	}
+	
+	private static Throwable assertFails(Engine engine, RimeNode tree) {
+		try {
+			captureOutput(engine, tree, args());
+		}
+		catch (RuntimeException e) {
+			return e;
+		}
+		
+		throw new AssertionError("The program should fail");
+	}
+	
+	private static Throwable rootCause(Throwable e) {
+		return e.getCause() == null ? e : rootCause(e.getCause());
+	}
+	
+	private static String captureOutput(Engine engine, RimeNode tree, ArrayList<String> args) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		PrintStream old = System.out;
+		System.setOut(new PrintStream(outputStream));
+		
+		try {
+			engine.interpret(tree, args);
+		}
+		finally {
+			System.out.flush();
+			System.setOut(old);
+		}
+		
+		return outputStream.toString();
+	}
+}
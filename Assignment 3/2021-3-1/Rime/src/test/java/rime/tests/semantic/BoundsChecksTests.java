@@ -0,0 +1,226 @@
+package rime.tests.semantic;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import norswap.utils.visitors.Walker;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.RootNode;
+import rime.source.ast.expressions.IndexedCollectionAccess;
+import rime.source.interpreter.EngineKind;
+import rime.source.interpreter.exceptions.InterpreterException;
+import rime.source.parsing.RimeGrammar;
+import rime.source.semantic.FrozenAttributes;
+import rime.source.semantic.SemanticAnalysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static norswap.utils.Util.cast;
+import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+
+
+
+public class BoundsChecksTests {
+	private static final RimeGrammar parser = new RimeGrammar();
+	private Reactor reactor;
+	
+	@Test
+	public void test_loopIndexedReads_unchecked() {
+		String input = """
+			proc main([string]: _args_) {
+				var [int]: xs = [3, 1, 2]
+				var int: i = 0
+				var int: total = 0
+				
+				while (i < length(xs)) {
+					var int: j = i + 1
+					
+					while (j < length(xs) && i < j) {
+						total = total + xs[i] * xs[j]
+						j = j + 1
+					}
+					
+					xs[i] = xs[i] + 1
+					i = i + 1
+					total = total + xs[i - 1]
+				}
+				
+				val int: n = length(xs)
+				i = 0
+				
+				while (i < n) {
+					if (i < 2) {
+						total = total + xs[i]
+					}
+					
+					i = i + 1
+				}
+				
+				print(total)
+			}
+			""";
+		
+		RootNode tree = analyze(input);
+		FrozenAttributes attributes = FrozenAttributes.prepare(reactor, tree);
+		
+		// The index of xs[i - 1] is not a variable, and the target of xs[i] = ... is not a read
+		Assert.assertEquals(
+			List.of("Identifier(xs)[Identifier(i)]", "Identifier(xs)[Identifier(j)]", "Identifier(xs)[Identifier(i)]",
+				"Identifier(xs)[Identifier(i)]"),
+			reads(tree, attributes, true));
+		Assert.assertEquals(List.of("Identifier(xs)[Identifier(i)]", "Identifier(xs)[BinaryExpression(Identifier(i) SUBTRACT IntLiteral(1))]"), reads(tree, attributes, false));
+		
+		for (EngineKind kind : EngineKind.values()) {
+			Assert.assertEquals("Output of the " + kind + " engine", "26\n", captureOutput(kind, tree).replace("\r\n", "\n"));
+		}
+	}
+	
+	@Test
+	public void test_outOfBoundsReads_sameError() {
+		// Each loop reads out of its list, in a way which a bound on the index must not hide
+		String[] bodies = {
+			// the condition allows the length itself
+			"""
+				var int: i = 0
+				while (i <= length(xs)) {
+					print(xs[i])
+					i = i + 1
+				}
+			""",
+			// the index changes after the condition
+			"""
+				var int: i = 0
+				while (i < length(xs)) {
+					i = i + 1
+					print(xs[i])
+				}
+			""",
+			// the list changes after the condition
+			"""
+				var int: i = 2
+				while (i < length(xs)) {
+					xs = [1]
+					print(xs[i])
+					i = i + 1
+				}
+			""",
+			// the length was read before the list changed
+			"""
+				val int: n = length(xs)
+				xs = [1]
+				var int: i = 0
+				while (i < n) {
+					print(xs[i])
+					i = i + 1
+				}
+			""",
+			// the index can be negative
+			"""
+				var int: i = 0
+				i = i - 1
+				while (i < length(xs)) {
+					print(xs[i])
+					i = i + 1
+				}
+			""",
+			// both sides of a conjunction are evaluated
+			"""
+				var int: i = 0
+				var int: j = 3
+				while (i < length(xs) && xs[j] > 0) {
+					i = i + 1
+				}
+			""",
+		};
+		
+		for (String body : bodies) {
+			RootNode tree = analyze("proc main([string]: _args_) {\nvar [int]: xs = [1, 2, 3]\n" + body + "}\n");
+			FrozenAttributes attributes = FrozenAttributes.prepare(reactor, tree);
+			Assert.assertEquals("Unchecked reads of\n" + body, List.of(), reads(tree, attributes, true));
+			
+			final Throwable expected = failure(EngineKind.INTERPRETER, tree);
+			Assert.assertTrue(expected + " on\n" + body, error(expected) instanceof IndexOutOfBoundsException);
+			
+			for (EngineKind kind : EngineKind.values()) {
+				final Throwable actual = failure(kind, tree);
+				Assert.assertEquals(kind + " engine on\n" + body, expected.getClass(), actual.getClass());
+				Assert.assertEquals(kind + " engine on\n" + body, error(expected).getClass(), error(actual).getClass());
+				Assert.assertEquals(kind + " engine on\n" + body, error(expected).getMessage(), error(actual).getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Returns the list reads of the tree, in order, which are marked unchecked or not.
+	 */
+	private List<String> reads(RootNode tree, FrozenAttributes attributes, boolean unchecked) {
+		final ReflectiveFieldWalker<RimeNode> walker = new ReflectiveFieldWalker<>(RimeNode.class, PRE_VISIT, POST_VISIT);
+		final List<String> reads = new ArrayList<>();
+		
+		walker.registerFallback(PRE_VISIT, node -> {
+			if (node instanceof IndexedCollectionAccess && attributes.isUnchecked((IndexedCollectionAccess) node) == unchecked) {
+				reads.add(node.contents());
+			}
+		});
+		walker.registerFallback(POST_VISIT, node -> {});
+		walker.walk(tree);
+		
+		return reads;
+	}
+	
+	private Exception failure(EngineKind kind, RootNode tree) {
+		try {
+			captureOutput(kind, tree);
+		}
+		catch (Exception e) {
+			return e;
+		}
+		
+		throw new AssertionError(kind + " engine did not fail");
+	}
+	
+	/**
+	 * Returns the error the engines wrap in an {@link InterpreterException}, whose message depends on the engine.
+	 */
+	private static Throwable error(Throwable failure) {
+		return failure instanceof InterpreterException ? failure.getCause() : failure;
+	}
+	
+	private RootNode analyze(String input) {
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		return cast(tree);
+	}
+	
+	private String captureOutput(EngineKind kind, RootNode tree) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		PrintStream old = System.out;
+		System.setOut(new PrintStream(outputStream));
+		
+		try {
+			kind.create(reactor).interpret(tree, new ArrayList<>());
+		}
+		finally {
+			System.out.flush();
+			System.setOut(old);
+		}
+		
+		return outputStream.toString();
+	}
+}
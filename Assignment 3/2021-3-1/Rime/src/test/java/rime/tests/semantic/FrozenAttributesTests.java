@@ -0,0 +1,162 @@
+package rime.tests.semantic;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.Walker;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.FuncDefinition;
+import rime.source.ast.declarations.PredefinedFunction;
+import rime.source.ast.declarations.ProcDefinition;
+import rime.source.ast.declarations.RootNode;
+import rime.source.ast.declarations.VariableDefinition;
+import rime.source.ast.expressions.BinaryExpression;
+import rime.source.ast.expressions.FunctionCall;
+import rime.source.ast.expressions.Identifier;
+import rime.source.ast.statements.ExpressionStatement;
+import rime.source.ast.statements.ReturnStatement;
+import rime.source.interpreter.Interpreter;
+import rime.source.optimizer.Optimizer;
+import rime.source.parsing.RimeGrammar;
+import rime.source.semantic.FrozenAttributes;
+import rime.source.semantic.SemanticAnalysis;
+import rime.source.semantic.types.IntType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+import static norswap.utils.Util.cast;
+
+
+
+public class FrozenAttributesTests {
+	private static final RimeGrammar parser = new RimeGrammar();
+	
+	@Test
+	public void test_resolvedAttributes_frozen() {
+		String input = """
+			func int sum(int: x, int: y) {
+				return x + y
+			}
+			
+			proc main([string]: _args_) {
+				print(sum(1, 2))
+			}
+			""";
+		
+		Reactor reactor = new Reactor();
+		RootNode tree = analyze(input, reactor);
+		FrozenAttributes attributes = FrozenAttributes.freeze(reactor, tree);
+		FuncDefinition sum = cast(tree.preMainDefinitions.get(0));
+		ReturnStatement returnStatement = cast(sum.body.statements.get(0));
+		BinaryExpression addition = cast(returnStatement.expression);
+		Identifier x = cast(addition.left);
+		
+		ExpressionStatement printStatement = cast(tree.entryPoint.definition.body.statements.get(0));
+		FunctionCall print = cast(printStatement.expression);
+		FunctionCall sumCall = cast(print.arguments.get(0));
+		
+		Assert.assertEquals(IntType.INSTANCE, attributes.type(addition));
+		Assert.assertEquals(IntType.INSTANCE, attributes.type(x));
+		Assert.assertSame(sum.parameters.params.get(0), attributes.declaration(x));
+		Assert.assertSame(sum, attributes.declaration(sumCall.name));
+		Assert.assertTrue(attributes.declaration(print.name) instanceof PredefinedFunction);
+		Assert.assertNotNull(attributes.rootScope);
+		Assert.assertTrue(attributes.index(sumCall) < attributes.size());
+	}
+	
+	@Test
+	public void test_optimizedTree_preparedApart() {
+		String input = """
+			func int sum(int: x, int: y) {
+				val int: total = x + y
+				return total
+			}
+			
+			proc main([string]: _args_) {
+				val int: n = sum(1, 2)
+				print(n)
+			}
+			""";
+		
+		Reactor reactor = new Reactor();
+		RootNode tree = analyze(input, reactor);
+		FrozenAttributes attributes = FrozenAttributes.prepare(reactor, tree);
+		FuncDefinition sum = cast(tree.preMainDefinitions.get(0));
+		ProcDefinition main = tree.entryPoint.definition;
+		
+		// The optimized tree keeps some nodes of this one, its preparation must leave the results of this one alone
+		Optimizer.Result optimized = new Optimizer().optimize(tree, reactor);
+		FrozenAttributes.prepare(optimized.reactor, optimized.tree);
+		
+		Assert.assertEquals(3, attributes.frameSize(sum));
+		Assert.assertEquals(2, attributes.frameSize(main));
+		Assert.assertEquals(2, attributes.slot((VariableDefinition) sum.body.statements.get(0)));
+		Assert.assertEquals(1, attributes.slot((VariableDefinition) main.body.statements.get(0)));
+	}
+	
+	@Test
+	public void test_sparseIds_tablesSizedByNodes() {
+		String input = """
+			func int sum(int: x, int: y) {
+				val int: total = x + y
+				return total
+			}
+			
+			proc main([string]: _args_) {
+				val int: n = sum(1, 2)
+				print(n)
+			}
+			""";
+		
+		Reactor reactor = new Reactor();
+		RootNode tree = analyze(input, reactor);
+		int size = FrozenAttributes.prepare(reactor, tree).size();
+		
+		for (int i = 0; i < 100; i++) {
+			analyze(input, new Reactor());
+		}
+		
+		// A root created now gets an id far from those of the nodes it holds, the tables must not span the gap
+		RootNode sparse = new RootNode(tree.preMainDefinitions, tree.entryPoint);
+		Reactor sparseReactor = new Reactor();
+		SemanticAnalysis.createWalker(sparseReactor).walk(sparse);
+		sparseReactor.run();
+		Assert.assertEquals(0, sparseReactor.errors().size());
+		
+		FrozenAttributes attributes = FrozenAttributes.prepare(sparseReactor, sparse);
+		Assert.assertEquals(size, attributes.size());
+		
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		PrintStream old = System.out;
+		System.setOut(new PrintStream(outputStream));
+		
+		try {
+			new Interpreter(sparseReactor).interpret(sparse, new ArrayList<>());
+		}
+		finally {
+			System.out.flush();
+			System.setOut(old);
+		}
+		
+		Assert.assertEquals("3\n", outputStream.toString().replace("\r\n", "\n"));
+	}
+	
+	private static RootNode analyze(String input, Reactor reactor) {
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		
+		return cast(tree);
+	}
+}
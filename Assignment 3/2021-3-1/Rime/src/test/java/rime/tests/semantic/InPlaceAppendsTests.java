@@ -0,0 +1,155 @@
+package rime.tests.semantic;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.Walker;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.RootNode;
+import rime.source.ast.expressions.FunctionCall;
+import rime.source.ast.statements.Assignment;
+import rime.source.ast.statements.Statement;
+import rime.source.ast.statements.WhileStatement;
+import rime.source.interpreter.EngineKind;
+import rime.source.parsing.RimeGrammar;
+import rime.source.semantic.FrozenAttributes;
+import rime.source.semantic.SemanticAnalysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static norswap.utils.Util.cast;
+
+
+
+public class InPlaceAppendsTests {
+	private static final RimeGrammar parser = new RimeGrammar();
+	private Reactor reactor;
+	
+	@Test
+	public void test_unsharedLists_appendInPlace() {
+		String input = """
+			func int first([int]: values) {
+				return values[0]
+			}
+			
+			proc main([string]: _args_) {
+				var [int]: xs = [1]
+				var [int]: alias = xs
+				xs = append(xs, 2)
+				
+				var [int]: built = [int]
+				var int: i = 0
+				
+				while (i < 5) {
+					built = append(built, i * i)
+					i = i + 1
+				}
+				
+				var [int]: grown = append(built, 99)
+				grown = append(grown, 100)
+				
+				var [int]: passed = [7]
+				passed = append(passed, first(passed))
+				
+				print(length(alias))
+				print(length(built))
+				print(built[4])
+				print(length(grown))
+				print(grown[6])
+				print(passed[1])
+			}
+			""";
+		
+		RootNode tree = analyze(input);
+		List<Statement> statements = tree.entryPoint.definition.body.statements;
+		FrozenAttributes attributes = FrozenAttributes.prepare(reactor, tree);
+		
+		// xs is shared with alias, and passed with the parameter of first
+		Assert.assertFalse(attributes.isInPlace(append(statements.get(2))));
+		Assert.assertTrue(attributes.isInPlace(append(((WhileStatement) statements.get(5)).body.statements.get(0))));
+		Assert.assertTrue(attributes.isInPlace(append(statements.get(7))));
+		Assert.assertFalse(attributes.isInPlace(append(statements.get(9))));
+		
+		for (EngineKind kind : EngineKind.values()) {
+			Assert.assertEquals("Output of the " + kind + " engine",
+				"1\n5\n16\n7\n100\n7\n",
+				captureOutput(kind, tree).replace("\r\n", "\n"));
+		}
+	}
+	
+	@Test
+	public void test_unsharedSets_addInPlace() {
+		String input = """
+			proc main([string]: _args_) {
+				var {int}: seen = {int}
+				var {int}: before = {1}
+				var {int}: snapshot = before
+				var int: i = 0
+				
+				while (i < 6) {
+					seen = add(seen, i % 3)
+					before = add(before, i)
+					i = i + 1
+				}
+				
+				print(contains(seen, 2))
+				print(contains(before, 5))
+				print(contains(snapshot, 5))
+			}
+			""";
+		
+		RootNode tree = analyze(input);
+		List<Statement> body = ((WhileStatement) tree.entryPoint.definition.body.statements.get(4)).body.statements;
+		FrozenAttributes attributes = FrozenAttributes.prepare(reactor, tree);
+		
+		// before is shared with snapshot, which must not see the adds
+		Assert.assertTrue(attributes.isInPlace(append(body.get(0))));
+		Assert.assertFalse(attributes.isInPlace(append(body.get(1))));
+		
+		for (EngineKind kind : EngineKind.values()) {
+			Assert.assertEquals("Output of the " + kind + " engine",
+				"true\ntrue\nfalse\n",
+				captureOutput(kind, tree).replace("\r\n", "\n"));
+		}
+	}
+	
+	private static FunctionCall append(Statement statement) {
+		return cast(((Assignment) statement).right);
+	}
+	
+	private RootNode analyze(String input) {
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		return cast(tree);
+	}
+	
+	private String captureOutput(EngineKind kind, RootNode tree) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		PrintStream old = System.out;
+		System.setOut(new PrintStream(outputStream));
+		
+		try {
+			kind.create(reactor).interpret(tree, new ArrayList<>());
+		}
+		finally {
+			System.out.flush();
+			System.setOut(old);
+		}
+		
+		return outputStream.toString();
+	}
+}
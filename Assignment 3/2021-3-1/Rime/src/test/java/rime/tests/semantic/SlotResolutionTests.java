@@ -0,0 +1,98 @@
+package rime.tests.semantic;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.Walker;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import rime.source.ast.RimeNode;
+import rime.source.ast.declarations.FuncDefinition;
+import rime.source.ast.declarations.ProcDefinition;
+import rime.source.ast.declarations.RootNode;
+import rime.source.ast.declarations.VariableDefinition;
+import rime.source.ast.statements.Block;
+import rime.source.ast.statements.IfStatement;
+import rime.source.parsing.RimeGrammar;
+import rime.source.semantic.FrozenAttributes;
+import rime.source.semantic.SemanticAnalysis;
+
+import static norswap.utils.Util.cast;
+
+
+
+public class SlotResolutionTests {
+	private static final RimeGrammar parser = new RimeGrammar();
+	private Reactor reactor;
+	
+	@Test
+	public void test_parametersAndLocals_slots() {
+		String input = """
+			func int sum(int: x, int: y) {
+				val int: total = x + y
+				return total
+			}
+			
+			proc main([string]: _args_) {
+				print(sum(1, 2))
+			}
+			""";
+		
+		RootNode tree = analyze(input);
+		FrozenAttributes attributes = FrozenAttributes.prepare(reactor, tree);
+		FuncDefinition sum = cast(tree.preMainDefinitions.get(0));
+		VariableDefinition total = cast(sum.body.statements.get(0));
+		
+		Assert.assertEquals(0, attributes.slot(sum.parameters.params.get(0)));
+		Assert.assertEquals(1, attributes.slot(sum.parameters.params.get(1)));
+		Assert.assertEquals(2, attributes.slot(total));
+		Assert.assertEquals(3, attributes.frameSize(sum));
+		Assert.assertEquals(1, attributes.frameSize(tree.entryPoint.definition));
+	}
+	
+	@Test
+	public void test_siblingBlocks_shareSlots() {
+		String input = """
+			proc main([string]: _args_) {
+				val int: n = 3
+				
+				if (n > 1) {
+					val int: a = 1
+					val int: b = 2
+					print(a + b)
+				}
+				else {
+					val int: c = 3
+					print(c)
+				}
+			}
+			""";
+		
+		RootNode tree = analyze(input);
+		FrozenAttributes attributes = FrozenAttributes.prepare(reactor, tree);
+		ProcDefinition main = tree.entryPoint.definition;
+		IfStatement ifStatement = cast(main.body.statements.get(1));
+		Block trueBody = ifStatement.trueBody;
+		Block falseBody = ifStatement.falseBody;
+		
+		Assert.assertEquals(2, attributes.slot((VariableDefinition) trueBody.statements.get(0)));
+		Assert.assertEquals(3, attributes.slot((VariableDefinition) trueBody.statements.get(1)));
+		Assert.assertEquals(2, attributes.slot((VariableDefinition) falseBody.statements.get(0)));
+		Assert.assertEquals(4, attributes.frameSize(main));
+	}
+	
+	private RootNode analyze(String input) {
+		ParseResult result = Autumn.parse(parser.root, input, ParseOptions.get());
+		Assert.assertTrue(result.fullMatch);
+		
+		RimeNode tree = cast(result.topValue());
+		reactor = new Reactor();
+		Walker<RimeNode> walker = SemanticAnalysis.createWalker(reactor);
+		
+		walker.walk(tree);
+		reactor.run();
+		Assert.assertEquals(0, reactor.errors().size());
+		return cast(tree);
+	}
+}